@@ -17,6 +17,8 @@
  */
 package org.apache.pig;
 
+import java.io.Serializable;
+
 import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.classification.InterfaceStability;
 
@@ -26,7 +28,9 @@ import org.apache.pig.classification.InterfaceStability;
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public abstract class Expression {
+public abstract class Expression implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
  // Operator type
     public static  enum OpType {
@@ -50,6 +54,12 @@ public abstract class Expression {
         //binary logical
         OP_AND(" and "),
         OP_OR(" or "),
+
+        //unary
+        OP_NOT(" not "),
+        OP_NULL(" is null "),
+
+        //terms
         TERM_COL(" Column "),
         TERM_CONST(" Constant ");
 
@@ -123,6 +133,37 @@ public abstract class Expression {
         }
     }
 
+    public static class UnaryExpression extends Expression {
+
+        /**
+         * operand
+         */
+        Expression expr;
+
+        /**
+         * @param expr
+         */
+        public UnaryExpression(Expression expr, OpType opType) {
+            this.opType = opType;
+            this.expr = expr;
+        }
+
+        /**
+         * @return the operand
+         */
+        public Expression getExpression() {
+            return expr;
+        }
+
+        @Override
+        public String toString() {
+            if (opType == OpType.OP_NULL) {
+                return "(" + expr.toString() + " is null)";
+            }
+            return "(not " + expr.toString() + ")";
+        }
+    }
+
     public static class Column extends Expression {
 
         /**
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * This interface defines how Pig pushes the conditions of a filter that
+ * directly follows a load down to the loader. Unlike
+ * {@link LoadMetadata#setPartitionFilter(Expression)}, the conditions can be
+ * on any field the loader knows how to evaluate predicates on. A columnar or
+ * indexed loader can then skip the row groups, blocks or key ranges that
+ * cannot hold matching records. If a given loader does not implement this
+ * interface it will be assumed that it is unable to evaluate any predicate.
+ * <p>
+ * The filter is split on its top level ANDs, and each condition that only
+ * references the fields returned by {@link #getPredicateFields(String, Job)}
+ * and only uses the operators returned by
+ * {@link #getSupportedExpressionTypes()} is offered to the loader through
+ * {@link #pushPredicates(List)}. The loader answers with the conditions it
+ * evaluates fully, Pig drops those from the filter and keeps applying the
+ * others.
+ * <p>
+ * A condition evaluated fully must be evaluated with the semantics of Pig:
+ * a comparison with a null value is not satisfied. The loader must also keep
+ * reading the fields of the conditions it evaluates even when they are not in
+ * the projection later pushed through {@link LoadPushDown}.
+ * <p>
+ * This method is called in the front end, the loader has to pass what it
+ * needs to the back end itself, for instance through the UDFContext under
+ * the signature given by {@link LoadFunc#setUDFContextSignature(String)}.
+ * @since Pig 0.12
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface LoadPredicatePushdown {
+
+    /**
+     * Find what fields of the data the loader can evaluate predicates on.
+     * @param location Location as returned by
+     * {@link LoadFunc#relativeToAbsolutePath(String, org.apache.hadoop.fs.Path)}
+     * @param job The {@link Job} object - this should be used only to obtain
+     * cluster properties through {@link Job#getConfiguration()} and not to set/query
+     * any runtime job information.
+     * @return names of the fields, as in the schema of the loader.
+     * Implementations should return null to indicate that there are none.
+     * @throws IOException if an exception occurs while retrieving the fields
+     */
+    List<String> getPredicateFields(String location, Job job) throws IOException;
+
+    /**
+     * Find what operators the loader can evaluate in a predicate.
+     * @return the operators, including {@link OpType#TERM_COL} and
+     * {@link OpType#TERM_CONST} if columns and constants can be used.
+     * Implementations should return null to indicate that there are none.
+     */
+    List<OpType> getSupportedExpressionTypes();
+
+    /**
+     * Push the conditions of a filter down to the loader. All of them have
+     * to be satisfied by a record for it to pass the filter. This method is
+     * called at most once for a given load.
+     * @param predicates the conditions, from splitting the filter on its top
+     * level ANDs
+     * @return the conditions of the list the loader evaluates fully, that is
+     * it does not return the records that do not satisfy them. The others
+     * may only be used to skip data and are applied by Pig. Implementations
+     * should return null or an empty list if they evaluate none fully.
+     * @throws IOException if the conditions cannot be pushed
+     */
+    List<Expression> pushPredicates(List<Expression> predicates) throws IOException;
+}
@@ -47,6 +47,277 @@ public class PigConfiguration {
      */
     public static final String PARTAGG_MINREDUCTION = "pig.exec.mapPartAgg.minReduction";
 
+    /**
+     * Controls whether in-mapper Partial Aggregation keeps its aggregated results
+     * serialized in an off-heap hash table instead of on the Java heap. As this makes
+     * each group much cheaper to hold, the default minimum reduction drops to 2.
+     * Default is false.
+     */
+    public static final String PARTAGG_OFFHEAP = "pig.exec.mapPartAgg.offheap";
+
+    /**
+     * Size in bytes of the off-heap hash table used by in-mapper Partial Aggregation.
+     * The memory is allocated outside of the heap, so -XX:MaxDirectMemorySize of the
+     * task JVMs must leave room for it. Default is 64MB.
+     */
+    public static final String PARTAGG_OFFHEAP_SIZE = "pig.exec.mapPartAgg.offheap.size";
+
+    /**
+     * Controls whether in-mapper Partial Aggregation folds the values of the builtin
+     * SUM, COUNT, MIN, MAX and AVG functions into primitive accumulators as they come
+     * in, when those are the only functions being aggregated. This takes precedence over
+     * the off-heap table. Default is false.
+     */
+    public static final String PARTAGG_PRIMITIVE = "pig.exec.mapPartAgg.primitive";
+
+    /**
+     * Controls whether filters in the map plan evaluate their condition a batch of
+     * tuples at a time, using primitive column vectors, when the condition only
+     * uses operators that support it. Default is false.
+     */
+    public static final String PROP_EXEC_BATCH = "pig.exec.batch";
+
+    /**
+     * Number of tuples in a batch when {@link #PROP_EXEC_BATCH} is turned on.
+     * Default is 1024.
+     */
+    public static final String PROP_EXEC_BATCH_SIZE = "pig.exec.batch.size";
+
+    /**
+     * Controls whether the expression plans of filters and foreachs are compiled
+     * into Java classes at runtime, instead of being interpreted, when they only
+     * use operators that support it. Requires a JDK on the task nodes. Default is
+     * false.
+     */
+    public static final String PROP_EXEC_CODEGEN = "pig.exec.codegen";
+
+    /**
+     * Controls whether replicated joins write each replicated input once per node
+     * into a hashed binary file that the map tasks of the job memory map and probe,
+     * instead of loading it into a hash map in the heap of every task. This allows
+     * replicated inputs larger than the heap. Default is false.
+     */
+    public static final String FRJOIN_MMAP = "pig.frjoin.mmap";
+
+    /**
+     * Controls whether replicated joins that join the output of another
+     * replicated join in the same map or reduce plan are run together, probing
+     * the replicated inputs of all of them in a single pass. Default is false.
+     */
+    public static final String FRJOIN_CHAIN = "pig.frjoin.chain";
+
+    /**
+     * Controls whether the hash tables of replicated joins and the values of
+     * scalars built by a task are kept for the next tasks of the job that run
+     * in the same JVM, when mapred.job.reuse.jvm.num.tasks reuses the JVMs.
+     * Default is true.
+     */
+    public static final String TASK_JVM_CACHE = "pig.exec.jvm.cache";
+
+    /**
+     * Controls whether regular and skewed joins first build a Bloom filter of the
+     * keys of one of their inner inputs, and use it to drop the tuples of the last
+     * input that cannot match before they are shuffled. Default is false.
+     */
+    public static final String JOIN_BLOOM_FILTER = "pig.join.bloom";
+
+    /**
+     * Number of bits of the Bloom filters built when {@link #JOIN_BLOOM_FILTER}
+     * is turned on. Default is 8388608 (1MB).
+     */
+    public static final String JOIN_BLOOM_VECTOR_SIZE = "pig.join.bloom.vectorsize";
+
+    /**
+     * Number of hash functions of the Bloom filters built when
+     * {@link #JOIN_BLOOM_FILTER} is turned on. Default is 3.
+     */
+    public static final String JOIN_BLOOM_HASHES = "pig.join.bloom.hashes";
+
+    /**
+     * Controls whether map-reduce jobs are submitted as soon as the jobs they
+     * depend on are done, instead of in waves of jobs that wait for the whole
+     * previous wave to finish. Default is false.
+     */
+    public static final String PROP_EXEC_PIPELINED = "pig.exec.pipelined";
+
+    /**
+     * Maximum number of map-reduce jobs running at the same time when
+     * {@link #PROP_EXEC_PIPELINED} is turned on, the jobs with the most work
+     * left after them going first. Default is 0, no limit.
+     */
+    public static final String PROP_EXEC_PIPELINED_MAXJOBS = "pig.exec.pipelined.maxjobs";
+
+    /**
+     * Controls whether the intermediate files written between map-reduce
+     * jobs record the minimum, maximum and number of nulls of each field
+     * of their blocks, so that a filter right after loading them skips the
+     * blocks and splits it cannot match. Default is false.
+     */
+    public static final String PROP_TMPFILE_STATS = "pig.tmpfilestats";
+
+    /**
+     * Number of bytes of the blocks of intermediate files that statistics
+     * are recorded for when {@link #PROP_TMPFILE_STATS} is turned on.
+     * Default is 1048576 (1MB).
+     */
+    public static final String PROP_TMPFILE_STATS_BLOCKSIZE = "pig.tmpfilestats.blocksize";
+
+    /**
+     * Controls whether the intermediate files written between map-reduce
+     * jobs are stored column by column, so that the jobs reading them only
+     * read the fields they use. The columns are compressed with the codec
+     * of pig.tmpfilecompression.codec when pig.tmpfilecompression is turned
+     * on, which can then be any codec that {@link #PROP_SHUFFLE_COMPRESSION_CODEC}
+     * takes. Default is false.
+     */
+    public static final String PROP_TMPFILE_COLUMNAR = "pig.tmpfilecolumnar";
+
+    /**
+     * Maximum number of records of the row groups of intermediate files when
+     * {@link #PROP_TMPFILE_COLUMNAR} is turned on. Default is 10000.
+     */
+    public static final String PROP_TMPFILE_COLUMNAR_ROWS = "pig.tmpfilecolumnar.rows";
+
+    /**
+     * Maximum number of bytes that the records of a row group of an
+     * intermediate file take in memory when {@link #PROP_TMPFILE_COLUMNAR}
+     * is turned on. Default is 16777216 (16MB).
+     */
+    public static final String PROP_TMPFILE_COLUMNAR_BYTES = "pig.tmpfilecolumnar.bytes";
+
+    /**
+     * Codec that the map outputs of the jobs are compressed with: gz, gzip,
+     * deflate, bzip2, snappy, lzo, or the class name of a hadoop compression
+     * codec. Default is none, the hadoop settings are then left unchanged.
+     */
+    public static final String PROP_SHUFFLE_COMPRESSION_CODEC = "pig.shuffle.compression.codec";
+
+    /**
+     * Codec that the files that bags spill to are compressed with, block by
+     * block with a checksum for each block: snappy, deflate (the fastest
+     * level of java's deflate), or any codec that
+     * {@link #PROP_SHUFFLE_COMPRESSION_CODEC} takes. Snappy falls back to
+     * deflate when its native library cannot be loaded. Default is none.
+     */
+    public static final String PROP_SPILL_COMPRESSION_CODEC = "pig.spill.compression.codec";
+
+    /**
+     * Number of threads that sorted bags sort the tuples they keep in memory
+     * with, when their comparator can be used by several threads at once, such
+     * as the one of a nested ORDER BY on columns. Default is 1.
+     */
+    public static final String PROP_BAG_SORT_THREADS = "pig.bag.sort.threads";
+
+    /**
+     * Maximum number of spill files that sorted bags merge at once. When they
+     * spilled more, the files are first merged into fewer ones. Default is 100.
+     */
+    public static final String PROP_BAG_MERGE_FANIN = "pig.bag.merge.fanin";
+
+    /**
+     * Bag that nested DISTINCT collects the tuples in: "default" for
+     * {@link org.apache.pig.data.DistinctDataBag}, "hash" for
+     * {@link org.apache.pig.data.HashedDistinctBag}, which tells the tuples
+     * apart by 128-bit fingerprints and spills them partitioned by hash
+     * instead of sorted. Default is {@link org.apache.pig.data.InternalDistinctBag}.
+     */
+    public static final String PROP_DISTINCT_BAG_TYPE = "pig.cachedbag.distinct.type";
+
+    /**
+     * With the "hash" {@link #PROP_DISTINCT_BAG_TYPE}, the distinct bags
+     * that the combined COUNT and COUNT_STAR of nested DISTINCT read on the
+     * reduce side keep a HyperLogLog estimate of their size instead of
+     * spilling when they outgrow their memory, so that those counts become
+     * approximate for large groups. Default is false.
+     */
+    public static final String PROP_DISTINCT_APPROXIMATE = "pig.cachedbag.distinct.approximate";
+
+    /**
+     * Turns on the recording of the statistics of the jobs of a script, and
+     * their use when the script is compiled again: for the number of
+     * reducers, for map side partial aggregation when
+     * {@link #PROP_EXEC_MAP_PARTAGG} is not set, and for replicated joins
+     * when the right input was small. Default is false.
+     */
+    public static final String PROP_STATS_STORE = "pig.stats.store";
+
+    /**
+     * Class of the {@link org.apache.pig.tools.pigstats.PigStatsStore} the
+     * statistics are recorded in when {@link #PROP_STATS_STORE} is turned on.
+     * Default is {@link org.apache.pig.tools.pigstats.FilePigStatsStore}.
+     */
+    public static final String PROP_STATS_STORE_CLASS = "pig.stats.store.class";
+
+    /**
+     * Directory that {@link org.apache.pig.tools.pigstats.FilePigStatsStore}
+     * keeps the statistics in. Default is .pigstats in the home directory.
+     */
+    public static final String PROP_STATS_STORE_DIR = "pig.stats.store.dir";
+
+    /**
+     * Key the statistics of a script are recorded under. Default is the name
+     * of the script file, or a hash of the script when it has none.
+     */
+    public static final String PROP_STATS_STORE_KEY = "pig.stats.store.key";
+
+    /**
+     * Turns on the selection of a merge, replicated or skewed strategy for
+     * the joins that are not given one, from the sort orders, sizes and
+     * statistics of their inputs. Default is false.
+     */
+    public static final String JOIN_AUTO = "pig.join.auto";
+
+    /**
+     * Size in bytes under which the inputs of a join but the first are
+     * replicated, when {@link #JOIN_AUTO} is turned on or their size was
+     * recorded by an earlier run with {@link #PROP_STATS_STORE} turned on.
+     * Default is 10485760 (10MB).
+     */
+    public static final String JOIN_REPLICATED_THRESHOLD = "pig.join.replicated.threshold";
+
+    /**
+     * Fraction of the records of the first input of a join that one key must
+     * hold for a skewed join to be used when {@link #JOIN_AUTO} is turned on.
+     * Default is 0.1.
+     */
+    public static final String JOIN_SKEWED_FRACTION = "pig.join.skewed.fraction";
+
+    /**
+     * Number of records of the first input of a join that are read to find
+     * its most common key when {@link #JOIN_AUTO} is turned on and its
+     * loader does not report it. 0 turns sampling off. Default is 1000.
+     */
+    public static final String JOIN_SKEWED_SAMPLE = "pig.join.skewed.sample";
+
+    /**
+     * Turns on skewed group-bys: the keys of a group-by are sampled as for
+     * a skewed join, and the records of the keys too large for one reducer
+     * are spread over several reducers when the foreach after the group-by
+     * is algebraic, whose partial results are merged by an extra job. The
+     * other group-bys run in accumulative mode when they can and only report
+     * their hot keys. pig.skewedjoin.reduce.memusage and
+     * pig.skewedjoin.reduce.maxtuple apply. Default is false.
+     */
+    public static final String PROP_SKEWED_GROUP = "pig.skewedgroup";
+
+    /**
+     * Turns on the sampling of the input of an ORDER BY by the job before
+     * it, when it does more than load it: the job also stores a reservoir
+     * sample of each of its tasks, which the sampling job finds the
+     * quantiles from instead of reading the whole input again. Default is
+     * false.
+     */
+    public static final String PROP_SORT_SAMPLE_PIGGYBACK = "pig.sort.sample.piggyback";
+
+    /**
+     * Directory the quantile files of the ORDER BYs that sort a loaded
+     * input into a known number of reducers are kept in. An ORDER BY of the
+     * same input, unchanged since, on the same keys and into the same
+     * number of reducers reuses the file instead of running a sampling job.
+     * Not set by default, which turns the cache off.
+     */
+    public static final String PROP_SORT_QUANTILE_CACHE_DIR = "pig.sort.quantile.cache.dir";
+
     /**
      * Controls whether execution time of Pig UDFs should be tracked.
      * This feature uses counters; use judiciously.
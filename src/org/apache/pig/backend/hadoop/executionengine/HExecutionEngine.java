@@ -61,9 +61,12 @@ import org.apache.pig.newplan.logical.relational.LogToPhyTranslationVisitor;
 import org.apache.pig.newplan.logical.relational.LogicalPlan;
 import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
 import org.apache.pig.newplan.logical.rules.InputOutputFileValidator;
+import org.apache.pig.newplan.logical.visitor.JoinStrategySelector;
 import org.apache.pig.newplan.logical.visitor.SortInfoSetter;
 import org.apache.pig.newplan.logical.visitor.StoreAliasSetter;
 import org.apache.pig.pen.POOptimizeDisabler;
+import org.apache.pig.tools.pigstats.PigStatsStore;
+import org.apache.pig.tools.pigstats.ScriptState;
 
 public class HExecutionEngine {
     
@@ -274,6 +277,7 @@ public class HExecutionEngine {
         if (pigContext.inIllustrator) {
             disabledOptimizerRules.add("MergeForEach");
             disabledOptimizerRules.add("PartitionFilterOptimizer");
+            disabledOptimizerRules.add("PredicatePushdownOptimizer");
             disabledOptimizerRules.add("LimitOptimizer");
             disabledOptimizerRules.add("SplitFilter");
             disabledOptimizerRules.add("PushUpFilter");
@@ -287,10 +291,20 @@ public class HExecutionEngine {
         StoreAliasSetter storeAliasSetter = new StoreAliasSetter( plan );
         storeAliasSetter.visit();
         
+        if (!pigContext.inIllustrator) {
+            // pick the strategies of the joins the user did not give one for
+            PigStatsStore statsStore = ScriptState.get().getStatsStore(pigContext);
+            JoinStrategySelector joinStrategySelector =
+                    new JoinStrategySelector(plan, pigContext, statsStore);
+            if (joinStrategySelector.isEnabled()) {
+                joinStrategySelector.visit();
+            }
+        }
+
         // run optimizer
         LogicalPlanOptimizer optimizer = new LogicalPlanOptimizer(plan, 100, disabledOptimizerRules);
         optimizer.optimize();
-        
+
         // compute whether output data is sorted or not
         SortInfoSetter sortInfoSetter = new SortInfoSetter( plan );
         sortInfoSetter.visit();
@@ -54,11 +54,26 @@ public class AccumulatorOptimizer extends MROpPlanVisitor {
 
     private Log log = LogFactory.getLog(getClass());
 
+    private boolean skewedGroupsOnly;
+
     public AccumulatorOptimizer(MROperPlan plan) {
+        this(plan, false);
+    }
+
+    /**
+     * @param skewedGroupsOnly whether only the skewed group-bys are
+     * considered, whose hot keys could not be spread over several reducers
+     */
+    public AccumulatorOptimizer(MROperPlan plan, boolean skewedGroupsOnly) {
         super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.skewedGroupsOnly = skewedGroupsOnly;
     }
 
     public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (skewedGroupsOnly && (!mr.isSkewedGroup() || mr.isSkewedGroupSpread())) {
+            return;
+        }
+
         // See if this is a map-reduce job
         List<PhysicalOperator> pos = mr.reducePlan.getRoots();
         if (pos == null || pos.size() == 0) {        
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionCompiler;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * A visitor that turns on batch mode for the filters of the map plans
+ * whose condition can be evaluated a batch at a time. Only operators
+ * directly in the map plan are considered: nested plans never see the
+ * end of all input flag, which batch mode relies on to flush the last
+ * partial batch. This must run before the EndOfAllInputSetter.
+ */
+public class BatchModeOptimizer extends MROpPlanVisitor {
+
+    private Log log = LogFactory.getLog(getClass());
+
+    private int batchSize;
+
+    public BatchModeOptimizer(MROperPlan plan, int batchSize) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        for (PhysicalOperator op : mr.mapPlan) {
+            if (!(op instanceof POFilter)) {
+                continue;
+            }
+            POFilter filter = (POFilter) op;
+            if (VectorExpressionCompiler.isSupported(filter.getPlan())) {
+                log.info("Filter " + filter.getOperatorKey() + " is to run in batch mode.");
+                filter.setBatchMode(true);
+                filter.setBatchSize(batchSize);
+            }
+        }
+    }
+}
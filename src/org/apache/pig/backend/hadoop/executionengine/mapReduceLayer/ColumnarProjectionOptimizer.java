@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPreCombinerLocalRearrange;
+import org.apache.pig.impl.io.ColumnarInterStorage;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Tells the {@link ColumnarInterStorage} loads of intermediate files the
+ * fields that the plan after them uses, so that the other columns are not
+ * read. The fields keep their position, so the plan is left as it is.
+ * <p>
+ * The fields used are only known when the load is followed by filters and
+ * then a foreach, or the local rearrange and foreach of a combined group,
+ * whose plans only take fields of their input that they project one by one.
+ */
+public class ColumnarProjectionOptimizer extends MROpPlanVisitor {
+
+    private static final Log log = LogFactory.getLog(ColumnarProjectionOptimizer.class);
+
+    public ColumnarProjectionOptimizer(MROperPlan plan) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (mr.mapPlan == null) {
+            return;
+        }
+        for (PhysicalOperator root : mr.mapPlan.getRoots()) {
+            if (!(root instanceof POLoad)) {
+                continue;
+            }
+            POLoad load = (POLoad) root;
+            if (load.getLFile() == null
+                    || !ColumnarInterStorage.class.getName().equals(load.getLFile().getFuncName())
+                    || load.getLFile().getFuncSpec().getCtorArgs() != null) {
+                continue;
+            }
+            List<Integer> columns = getRequiredColumns(mr, load);
+            if (columns == null) {
+                continue;
+            }
+            int last = -1;
+            for (int column : columns) {
+                last = Math.max(last, column);
+            }
+            boolean[] requiredColumns = new boolean[last + 1];
+            for (int column : columns) {
+                requiredColumns[column] = true;
+            }
+            if (load.getSignature() == null) {
+                load.setSignature(load.getOperatorKey().toString());
+            }
+            try {
+                ColumnarInterStorage.setRequiredColumns(load.getSignature(), requiredColumns);
+            } catch (IOException e) {
+                throw new VisitorException(e);
+            }
+            log.info("Reading fields " + columns + " of " + load.getLFile().getFileName());
+        }
+    }
+
+    /**
+     * @return the fields of the tuples of load that the plan uses, null if
+     * they are not known
+     */
+    private static List<Integer> getRequiredColumns(MapReduceOper mr, POLoad load) {
+        List<Integer> columns = new ArrayList<Integer>();
+        PhysicalOperator op = load;
+        while (true) {
+            List<PhysicalOperator> successors = mr.mapPlan.getSuccessors(op);
+            if (successors == null || successors.size() != 1) {
+                return null;
+            }
+            op = successors.get(0);
+            if (op instanceof POFilter) {
+                if (!addColumns(((POFilter) op).getPlan(), columns)) {
+                    return null;
+                }
+            } else if (op instanceof POForEach) {
+                for (PhysicalPlan plan : ((POForEach) op).getInputPlans()) {
+                    if (!addColumns(plan, columns)) {
+                        return null;
+                    }
+                }
+                return columns;
+            } else if (op instanceof POPreCombinerLocalRearrange) {
+                for (PhysicalPlan plan : ((POPreCombinerLocalRearrange) op).getPlans()) {
+                    if (!addColumns(plan, columns)) {
+                        return null;
+                    }
+                }
+                // the foreach after it takes the key and the fields of the
+                // tuples of the bag holding the input tuple
+                successors = mr.mapPlan.getSuccessors(op);
+                if (successors == null || successors.size() != 1
+                        || !(successors.get(0) instanceof POForEach)) {
+                    return null;
+                }
+                for (PhysicalPlan plan : ((POForEach) successors.get(0)).getInputPlans()) {
+                    if (!addBagColumns(plan, columns)) {
+                        return null;
+                    }
+                }
+                return columns;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Adds the fields of the tuples of the bag of the (key, bag) input of
+     * plan that it takes to columns
+     * @return false if they are not known
+     */
+    private static boolean addBagColumns(PhysicalPlan plan, List<Integer> columns) {
+        for (PhysicalOperator root : plan.getRoots()) {
+            if (root instanceof ConstantExpression) {
+                continue;
+            }
+            if (!(root instanceof POProject)) {
+                return false;
+            }
+            POProject project = (POProject) root;
+            if (project.isStar() || project.isProjectToEnd()
+                    || project.getColumns().size() != 1) {
+                return false;
+            }
+            if (project.getColumns().get(0) == 0) {
+                // the key
+                continue;
+            }
+            List<PhysicalOperator> successors = plan.getSuccessors(project);
+            if (successors == null || successors.isEmpty()) {
+                return false;
+            }
+            for (PhysicalOperator successor : successors) {
+                if (!(successor instanceof POProject)
+                        || ((POProject) successor).isStar()
+                        || ((POProject) successor).isProjectToEnd()) {
+                    return false;
+                }
+                for (int column : ((POProject) successor).getColumns()) {
+                    if (!columns.contains(column)) {
+                        columns.add(column);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the fields of its input that plan takes to columns
+     * @return false if they are not known
+     */
+    private static boolean addColumns(PhysicalPlan plan, List<Integer> columns) {
+        for (PhysicalOperator root : plan.getRoots()) {
+            if (root instanceof ConstantExpression) {
+                continue;
+            }
+            if (!(root instanceof POProject)) {
+                return false;
+            }
+            POProject project = (POProject) root;
+            if (project.isStar() || project.isProjectToEnd()) {
+                return false;
+            }
+            for (int column : project.getColumns()) {
+                if (!columns.contains(column)) {
+                    columns.add(column);
+                }
+            }
+        }
+        return true;
+    }
+}
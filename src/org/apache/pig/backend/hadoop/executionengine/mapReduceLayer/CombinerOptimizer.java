@@ -61,6 +61,7 @@ import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.impl.plan.CompilationMessageCollector.MessageType;
 import org.apache.pig.impl.plan.optimizer.OptimizerException;
 import org.apache.pig.impl.util.Pair;
+import org.apache.pig.tools.pigstats.PigStatsStore;
 
 /**
  * Optimize map reduce plans to use the combiner where possible.
@@ -96,6 +97,10 @@ public class CombinerOptimizer extends MROpPlanVisitor {
 
     private boolean doMapAgg;
 
+    private PigStatsStore statsStore = null;
+
+    private int minReduction;
+
     public CombinerOptimizer(MROperPlan plan, boolean doMapAgg) {
         this(plan, doMapAgg, new CompilationMessageCollector());
     }
@@ -108,6 +113,40 @@ public class CombinerOptimizer extends MROpPlanVisitor {
         this.doMapAgg = doMapAgg;
     }
 
+    /**
+     * Turns on map side partial aggregation for the group-bys that a previous
+     * run of the script recorded to reduce their input at least minReduction
+     * times, when it is not turned on for all of them.
+     * @param statsStore the statistics of the previous runs
+     * @param minReduction the minimum number of input records per group
+     */
+    public void setStatsStore(PigStatsStore statsStore, int minReduction) {
+        this.statsStore = statsStore;
+        this.minReduction = minReduction;
+    }
+
+    private boolean isReducedByMapAgg(POLocalRearrange rearrange) {
+        if (statsStore == null || rearrange.getAlias() == null) {
+            return false;
+        }
+        Map<String, Long> stats = statsStore.getRelationStats(rearrange.getAlias());
+        if (stats == null) {
+            return false;
+        }
+        Long inputRecords = stats.get(PigStatsStore.MAP_INPUT_RECORDS);
+        Long groups = stats.get(PigStatsStore.RECORDS);
+        if (inputRecords == null || groups == null || groups <= 0) {
+            return false;
+        }
+        if (inputRecords / groups < minReduction) {
+            return false;
+        }
+        log.info("Using map side partial aggregation for " + rearrange.getAlias()
+                + " as a previous run grouped " + inputRecords + " records into "
+                + groups + " groups");
+        return true;
+    }
+
     public CompilationMessageCollector getMessageCollector() {
         return messageCollector;
     }
@@ -278,7 +317,7 @@ public class CombinerOptimizer extends MROpPlanVisitor {
                 POLocalRearrange mlr = getNewRearrange(rearrange);
 
                 POPartialAgg mapAgg = null;
-                if(doMapAgg){
+                if(doMapAgg || isReducedByMapAgg(rearrange)){
                     mapAgg = createPartialAgg(cfe);
                 }
 
@@ -935,7 +974,10 @@ public class CombinerOptimizer extends MROpPlanVisitor {
                 try {
                     String scope = proj.getOperatorKey().scope;
                     List<PhysicalOperator> funcInput = new ArrayList<PhysicalOperator>();
-                    FuncSpec fSpec = new FuncSpec(DISTINCT_UDF_CLASSNAME);
+                    // the bag of the final step may only be approximate when
+                    // the distinct tuples are counted, and not read
+                    FuncSpec fSpec = new FuncSpec(DISTINCT_UDF_CLASSNAME,
+                            Boolean.toString(isCounted(proj)));
                     funcInput.add(distinctPredecessor);
                     // explicitly set distinctPredecessor's result type to
                     // be tuple - this is relevant when distinctPredecessor is
@@ -963,6 +1005,20 @@ public class CombinerOptimizer extends MROpPlanVisitor {
             return distinct;
         }
 
+        /**
+         * @return whether the output of the project only goes to COUNT or
+         * COUNT_STAR
+         */
+        private boolean isCounted(POProject proj) {
+            List<PhysicalOperator> succs = mPlan.getSuccessors(proj);
+            if (succs == null || succs.size() != 1 || !(succs.get(0) instanceof POUserFunc)) {
+                return false;
+            }
+            String className = ((POUserFunc) succs.get(0)).getFuncSpec().getClassName();
+            return org.apache.pig.builtin.COUNT.class.getName().equals(className)
+                    || org.apache.pig.builtin.COUNT_STAR.class.getName().equals(className);
+        }
+
 
     }
 
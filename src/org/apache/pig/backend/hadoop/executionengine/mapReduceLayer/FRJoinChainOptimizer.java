@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoinChain;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.plan.optimizer.OptimizerException;
+
+/**
+ * A visitor that merges the replicated joins of a map or reduce plan that
+ * directly join the output of another replicated join into a
+ * {@link POFRJoinChain}, which probes all of their replicated inputs in a
+ * single pass over the tuples of the first one.
+ */
+public class FRJoinChainOptimizer extends MROpPlanVisitor {
+
+    private Log log = LogFactory.getLog(getClass());
+
+    public FRJoinChainOptimizer(MROperPlan plan) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        chainJoins(mr.mapPlan);
+        chainJoins(mr.reducePlan);
+    }
+
+    private void chainJoins(PhysicalPlan plan) throws VisitorException {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (PhysicalOperator op : plan) {
+                if (!(op instanceof POFRJoin)) {
+                    continue;
+                }
+                List<PhysicalOperator> preds = plan.getPredecessors(op);
+                if (preds == null || preds.size() != 1) {
+                    continue;
+                }
+                PhysicalOperator pred = preds.get(0);
+                if (!(pred instanceof POFRJoin || pred instanceof POFRJoinChain)
+                        || plan.getSuccessors(pred).size() != 1) {
+                    continue;
+                }
+                chain(plan, pred, (POFRJoin) op);
+                changed = true;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Replaces a join and the join or chain of joins it is the only
+     * successor of by a single chain
+     */
+    private void chain(PhysicalPlan plan, PhysicalOperator first, POFRJoin next)
+            throws VisitorException {
+        List<POFRJoin> joins = new ArrayList<POFRJoin>();
+        if (first instanceof POFRJoinChain) {
+            joins.addAll(((POFRJoinChain) first).getJoins());
+        } else {
+            joins.add((POFRJoin) first);
+        }
+        joins.add(next);
+
+        String scope = next.getOperatorKey().scope;
+        POFRJoinChain chain = new POFRJoinChain(new OperatorKey(scope,
+                NodeIdGenerator.getGenerator().getNextNodeId(scope)), joins);
+        chain.setInputs(new ArrayList<PhysicalOperator>(next.getInputs()));
+        try {
+            List<PhysicalOperator> preds = new ArrayList<PhysicalOperator>();
+            if (plan.getPredecessors(first) != null) {
+                preds.addAll(plan.getPredecessors(first));
+            }
+            plan.replace(next, chain);
+            plan.remove(first);
+            for (PhysicalOperator pred : preds) {
+                plan.connect(pred, chain);
+            }
+        } catch (PlanException e) {
+            int errCode = 2144;
+            String msg = "Problem while chaining replicated joins";
+            throw new OptimizerException(msg, errCode, PigException.BUG, e);
+        }
+        log.info("Chained " + joins.size() + " replicated joins into " + chain.getOperatorKey());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.Expression.UnaryExpression;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LessThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.NotEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PORelationToExprProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.InterStorage;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Gives the filter right after the load of an intermediate file to its
+ * {@link InterStorage}, so that the blocks and splits of the file that
+ * cannot match it are skipped. The filter stays in the plan.
+ * <p>
+ * The comparisons of a field with a constant, and is (not) null tests of a
+ * field, that the filter is the conjunction or disjunction of are given,
+ * the other conditions of a conjunction are left out.
+ */
+public class InterStorageFilterOptimizer extends MROpPlanVisitor {
+
+    private static final Log log = LogFactory.getLog(InterStorageFilterOptimizer.class);
+
+    private final boolean enabled;
+
+    public InterStorageFilterOptimizer(MROperPlan plan, PigContext pigContext) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        enabled = "true".equalsIgnoreCase(pigContext.getProperties().getProperty(
+                PigConfiguration.PROP_TMPFILE_STATS, "false"));
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (!enabled || mr.mapPlan == null) {
+            return;
+        }
+        for (PhysicalOperator root : mr.mapPlan.getRoots()) {
+            if (!(root instanceof POLoad)) {
+                continue;
+            }
+            POLoad load = (POLoad) root;
+            if (load.getLFile() == null
+                    || !InterStorage.class.getName().equals(load.getLFile().getFuncName())
+                    || load.getLFile().getFuncSpec().getCtorArgs() != null) {
+                continue;
+            }
+            List<PhysicalOperator> successors = mr.mapPlan.getSuccessors(load);
+            if (successors == null || successors.size() != 1
+                    || !(successors.get(0) instanceof POFilter)) {
+                continue;
+            }
+            POFilter filter = (POFilter) successors.get(0);
+            Expression expression = toExpression(filter.getPlan().getLeaves().get(0));
+            if (expression == null) {
+                continue;
+            }
+            if (load.getSignature() == null) {
+                load.setSignature(load.getOperatorKey().toString());
+            }
+            try {
+                InterStorage.setFilter(load.getSignature(), expression);
+            } catch (IOException e) {
+                throw new VisitorException(e);
+            }
+            log.info("Skipping the blocks of " + load.getLFile().getFileName()
+                    + " that cannot match " + expression);
+        }
+    }
+
+    /**
+     * @return the expression that the records matching op match, null if
+     * there is none
+     */
+    private static Expression toExpression(PhysicalOperator op) {
+        if (op instanceof POAnd) {
+            Expression lhs = toExpression(((POAnd) op).getLhs());
+            Expression rhs = toExpression(((POAnd) op).getRhs());
+            if (lhs == null || rhs == null) {
+                return lhs == null ? rhs : lhs;
+            }
+            return new BinaryExpression(lhs, rhs, OpType.OP_AND);
+        } else if (op instanceof POOr) {
+            Expression lhs = toExpression(((POOr) op).getLhs());
+            Expression rhs = toExpression(((POOr) op).getRhs());
+            if (lhs == null || rhs == null) {
+                return null;
+            }
+            return new BinaryExpression(lhs, rhs, OpType.OP_OR);
+        } else if (op instanceof POIsNull) {
+            Column column = toColumn(((POIsNull) op).getExpr());
+            return column == null ? null : new UnaryExpression(column, OpType.OP_NULL);
+        } else if (op instanceof PONot) {
+            // a left out condition under not would make it skip too much
+            PhysicalOperator expr = ((PONot) op).getExpr();
+            if (expr instanceof POIsNull) {
+                Expression isNull = toExpression(expr);
+                return isNull == null ? null : new UnaryExpression(isNull, OpType.OP_NOT);
+            }
+            return null;
+        } else if (op instanceof BinaryComparisonOperator) {
+            OpType opType = getOpType(op);
+            BinaryComparisonOperator comparison = (BinaryComparisonOperator) op;
+            Column column = toColumn(comparison.getLhs());
+            Const value = toConst(comparison.getRhs());
+            if (column == null && value == null) {
+                column = toColumn(comparison.getRhs());
+                value = toConst(comparison.getLhs());
+                opType = flip(opType);
+            }
+            if (opType == null || column == null || value == null) {
+                return null;
+            }
+            return new BinaryExpression(column, value, opType);
+        }
+        return null;
+    }
+
+    private static OpType getOpType(PhysicalOperator op) {
+        if (op instanceof EqualToExpr) {
+            return OpType.OP_EQ;
+        } else if (op instanceof NotEqualToExpr) {
+            return OpType.OP_NE;
+        } else if (op instanceof GreaterThanExpr) {
+            return OpType.OP_GT;
+        } else if (op instanceof GTOrEqualToExpr) {
+            return OpType.OP_GE;
+        } else if (op instanceof LessThanExpr) {
+            return OpType.OP_LT;
+        } else if (op instanceof LTOrEqualToExpr) {
+            return OpType.OP_LE;
+        }
+        return null;
+    }
+
+    private static OpType flip(OpType opType) {
+        if (opType == OpType.OP_GT) {
+            return OpType.OP_LT;
+        } else if (opType == OpType.OP_GE) {
+            return OpType.OP_LE;
+        } else if (opType == OpType.OP_LT) {
+            return OpType.OP_GT;
+        } else if (opType == OpType.OP_LE) {
+            return OpType.OP_GE;
+        }
+        return opType;
+    }
+
+    /**
+     * @return the column of the input that op projects, null if op is not
+     * such a projection
+     */
+    private static Column toColumn(PhysicalOperator op) {
+        if (!(op instanceof POProject) || op instanceof PORelationToExprProject) {
+            return null;
+        }
+        POProject project = (POProject) op;
+        if (project.isStar() || project.isProjectToEnd() || project.getColumns().size() != 1
+                || (project.getInputs() != null && !project.getInputs().isEmpty())) {
+            return null;
+        }
+        try {
+            return new Column(Integer.toString(project.getColumn()));
+        } catch (ExecException e) {
+            return null;
+        }
+    }
+
+    private static Const toConst(PhysicalOperator op) {
+        if (!(op instanceof ConstantExpression)) {
+            return null;
+        }
+        Object value = ((ConstantExpression) op).getValue();
+        return value == null ? null : new Const(value);
+    }
+}
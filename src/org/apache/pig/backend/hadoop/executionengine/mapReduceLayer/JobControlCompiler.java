@@ -40,6 +40,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.filecache.DistributedCache;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.WritableComparable;
@@ -55,6 +56,7 @@ import org.apache.hadoop.mapred.jobcontrol.JobControl;
 import org.apache.pig.ComparisonFunc;
 import org.apache.pig.ExecType;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.StoreFuncInterface;
 import org.apache.pig.backend.executionengine.ExecException;
@@ -70,6 +72,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlan
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
@@ -77,11 +80,13 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
 import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.SchemaTupleFrontend;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.builtin.PartitionSkewedKeys;
 import org.apache.pig.impl.io.FileLocalizer;
 import org.apache.pig.impl.io.FileSpec;
 import org.apache.pig.impl.io.NullableBigDecimalWritable;
@@ -97,6 +102,7 @@ import org.apache.pig.impl.io.NullablePartitionWritable;
 import org.apache.pig.impl.io.NullableText;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.io.ReadToEndLoader;
 import org.apache.pig.impl.plan.DepthFirstWalker;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
@@ -105,6 +111,7 @@ import org.apache.pig.impl.util.ObjectSerializer;
 import org.apache.pig.impl.util.Pair;
 import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.impl.util.Utils;
+import org.apache.pig.tools.pigstats.PigStatsStore;
 import org.apache.pig.tools.pigstats.ScriptState;
 
 /**
@@ -268,7 +275,25 @@ public class JobControlCompiler{
     public JobControl compile(MROperPlan plan, String grpName) throws JobCreationException{
         // Assert plan.size() != 0
         this.plan = plan;
+        List<MapReduceOper> roots = new LinkedList<MapReduceOper>();
+        roots.addAll(plan.getRoots());
+        for (MapReduceOper mro: roots) {
+            if(mro instanceof NativeMapReduceOper) {
+                return null;
+            }
+        }
+        JobControl jobCtrl = newJobControl(grpName);
+        for (Job job : compile(plan, roots)) {
+            jobCtrl.addJob(job);
+        }
+        return jobCtrl;
+    }
 
+    /**
+     * Creates an empty JobControl
+     * @param grpName - The name given to the JobControl
+     */
+    public JobControl newJobControl(String grpName) {
         int timeToSleep;
         String defaultPigJobControlSleep = pigContext.getExecType() == ExecType.LOCAL ? "100" : "5000";
         String pigJobControlSleep = conf.get("pig.jobcontrol.sleep", defaultPigJobControlSleep);
@@ -284,18 +309,27 @@ public class JobControlCompiler{
               " should be a time in ms. default=" + defaultPigJobControlSleep, e);
         }
 
-        JobControl jobCtrl = HadoopShims.newJobControl(grpName, timeToSleep);
+        return HadoopShims.newJobControl(grpName, timeToSleep);
+    }
 
+    /**
+     * Compiles the given jobs, to be added to a JobControl which may already
+     * be running. The jobs must have no dependencies left in the plan, and
+     * must not be native map-reduce jobs.
+     * @param plan - The MROperPlan the jobs belong to
+     * @param mros - The jobs to compile
+     * @return the compiled jobs
+     * @throws JobCreationException
+     */
+    public List<Job> compile(MROperPlan plan, List<MapReduceOper> mros)
+            throws JobCreationException {
+        this.plan = plan;
+        List<Job> jobs = new ArrayList<Job>(mros.size());
         try {
-            List<MapReduceOper> roots = new LinkedList<MapReduceOper>();
-            roots.addAll(plan.getRoots());
-            for (MapReduceOper mro: roots) {
-                if(mro instanceof NativeMapReduceOper) {
-                    return null;
-                }
+            for (MapReduceOper mro: mros) {
                 Job job = getJob(plan, mro, conf, pigContext);
                 jobMroMap.put(job, mro);
-                jobCtrl.addJob(job);
+                jobs.add(job);
             }
         } catch (JobCreationException jce) {
         	throw jce;
@@ -305,7 +339,7 @@ public class JobControlCompiler{
             throw new JobCreationException(msg, errCode, PigException.BUG, e);
         }
 
-        return jobCtrl;
+        return jobs;
     }
 
     // Update Map-Reduce plan with the execution status of the jobs. If one job
@@ -327,10 +361,7 @@ public class JobControlCompiler{
         {
             if (!completeFailedJobs.contains(job))
             {
-                MapReduceOper mro = jobMroMap.get(job);
-                if (!pigContext.inIllustrator && mro.isCounterOperation())
-                    saveCounters(job,mro.getOperationID());
-                plan.remove(mro);
+                removeSuccessfulJob(job);
             }
         }
         jobMroMap.clear();
@@ -338,6 +369,62 @@ public class JobControlCompiler{
         return sizeBefore-sizeAfter;
     }
 
+    /**
+     * Updates the Map-Reduce plan with the execution status of a single job,
+     * as soon as it is finished, while other jobs may still be running. If the
+     * job completely failed, all its dependent jobs are removed too.
+     * @return the number of MapReduceOper removed from the Map-Reduce plan
+     */
+    public int updateMROpPlan(Job job, boolean completeFailed) {
+        int sizeBefore = plan.size();
+        if (completeFailed) {
+            MapReduceOper mrOper = jobMroMap.get(job);
+            plan.trimBelow(mrOper);
+            plan.remove(mrOper);
+        } else {
+            removeSuccessfulJob(job);
+        }
+        jobMroMap.remove(job);
+        return sizeBefore - plan.size();
+    }
+
+    private void removeSuccessfulJob(Job job) {
+        MapReduceOper mro = jobMroMap.get(job);
+        if (!pigContext.inIllustrator && mro.isCounterOperation())
+            saveCounters(job,mro.getOperationID());
+        if (mro.getQuantFileCache() != null)
+            cacheQuantFile(mro);
+        plan.remove(mro);
+    }
+
+    /**
+     * Copies the quantile file that a sampling job wrote for the ORDER BY
+     * after it into the cache of quantile files, see
+     * {@link PigConfiguration#PROP_SORT_QUANTILE_CACHE_DIR}. The file is
+     * copied next to its place and renamed, so that a later script never
+     * reads part of it. Failing to copy it does not fail the job.
+     */
+    private void cacheQuantFile(MapReduceOper mro) {
+        List<MapReduceOper> succs = plan.getSuccessors(mro);
+        if (succs == null || succs.size() != 1 || succs.get(0).getQuantFile() == null) {
+            return;
+        }
+        Path src = new Path(succs.get(0).getQuantFile());
+        Path dst = new Path(mro.getQuantFileCache());
+        Path tmp = new Path(dst.getParent(), "_" + dst.getName() + "_" + System.currentTimeMillis());
+        try {
+            FileSystem fs = dst.getFileSystem(conf);
+            if (!FileUtil.copy(src.getFileSystem(conf), src, fs, tmp, false, conf)
+                    || !fs.rename(tmp, dst)) {
+                fs.delete(tmp, true);
+                log.warn("Unable to keep the quantile file " + src + " in " + dst);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to keep the quantile file " + src + " in " + dst + ": "
+                    + e.getMessage());
+        }
+    }
+
     /**
      * Reads the global counters produced by a job on the group labeled with PIG_MAP_RANK_NAME.
      * Then, it is calculated the cumulative sum, which consists on the sum of previous cumulative
@@ -775,6 +862,10 @@ public class JobControlCompiler{
                 nwJob.setGroupingComparatorClass(PigGroupingPartitionWritableComparator.class);
             }
 
+            if (mro.isSkewedGroup()) {
+                logHotKeys(mro, conf);
+            }
+
             if (mro.isCounterOperation()) {
                 if (mro.isRowNumber()) {
                     nwJob.setMapperClass(PigMapReduceCounter.PigMapCounter.class);
@@ -812,6 +903,15 @@ public class JobControlCompiler{
                 conf.set("pig.tmpfilecompression.codec", Utils.tmpFileCompressionCodec(pigContext));
             }
 
+            // map output compression setups
+            String shuffleCodec = pigContext.getProperties().getProperty(
+                    PigConfiguration.PROP_SHUFFLE_COMPRESSION_CODEC);
+            if (shuffleCodec != null && !shuffleCodec.isEmpty() && !shuffleCodec.equals("none")) {
+                conf.setBoolean("mapred.compress.map.output", true);
+                conf.set("mapred.map.output.compression.codec",
+                        Utils.getCompressionCodecClass(shuffleCodec, conf).getName());
+            }
+
             String tmp;
             long maxCombinedSplitSize = 0;
             if (!mro.combineSmallSplits() || pigContext.getProperties().getProperty("pig.splitCombination", "true").equals("false"))
@@ -894,6 +994,43 @@ public class JobControlCompiler{
         conf.setInt("mapred.reduce.tasks", jobParallelism);
     }
 
+    /**
+     * Logs the keys of a skewed group-by that its sampling job found too
+     * large for one reducer. Failing to read them does not fail the job.
+     */
+    @SuppressWarnings("unchecked")
+    private void logHotKeys(MapReduceOper mro, Configuration conf) {
+        ScriptState ss = ScriptState.get();
+        String alias = ss == null ? null : ss.getAlias(mro);
+        try {
+            ReadToEndLoader loader = new ReadToEndLoader(Utils.getTmpFileStorageObject(conf),
+                    conf, mro.getSkewedGroupKeyDistFile(), 0);
+            Tuple t = loader.getNext();
+            if (t == null) {
+                return;
+            }
+            Map<String, Object> distMap = (Map<String, Object>) t.get(0);
+            DataBag partitionList = (DataBag) distMap.get(PartitionSkewedKeys.PARTITION_LIST);
+            int totalReducers = (Integer) distMap.get(PartitionSkewedKeys.TOTAL_REDUCERS);
+            for (Tuple idxTuple : partitionList) {
+                // (key fields, min index of reducer, max index of reducer)
+                int size = idxTuple.size();
+                Tuple key = TupleFactory.getInstance().newTuple(size - 2);
+                for (int i = 0; i < size - 2; i++) {
+                    key.set(i, idxTuple.get(i));
+                }
+                int minIndex = (Integer) idxTuple.get(size - 2);
+                int maxIndex = (Integer) idxTuple.get(size - 1);
+                int reducers = (maxIndex >= minIndex ? 0 : totalReducers) + maxIndex - minIndex + 1;
+                log.warn("Hot key " + key + " of group-by " + alias + " needs " + reducers
+                        + " reducers" + (mro.isSkewedGroupSpread() ? ", its records are spread over them"
+                                : ", its records all go to one reducer"));
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read the hot keys of group-by " + alias + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Calculate the runtime #reducers based on the default_parallel, requested parallel and estimated
      * parallel, and save it to MapReduceOper's runtimeParallelism.
@@ -914,7 +1051,10 @@ public class JobControlCompiler{
         } else if (pigContext.defaultParallel > 0) {
             jobParallelism = pigContext.defaultParallel;
         } else {
-            mro.estimatedParallelism = estimateNumberOfReducers(nwJob, mro);
+            mro.estimatedParallelism = estimateNumberOfReducersFromHistory(nwJob, mro);
+            if (mro.estimatedParallelism <= 0) {
+                mro.estimatedParallelism = estimateNumberOfReducers(nwJob, mro);
+            }
             if (mro.estimatedParallelism > 0) {
                 jobParallelism = mro.estimatedParallelism;
             } else {
@@ -930,6 +1070,37 @@ public class JobControlCompiler{
         return jobParallelism;
     }
 
+    /**
+     * Estimates the number of reducers from the map output bytes that a
+     * previous run of the script recorded for the same job, when
+     * {@link PigConfiguration#PROP_STATS_STORE} is turned on.
+     * @return the number of reducers, or -1 if nothing was recorded
+     */
+    private int estimateNumberOfReducersFromHistory(org.apache.hadoop.mapreduce.Job job,
+            MapReduceOper mro) {
+        ScriptState ss = ScriptState.get();
+        PigStatsStore store = ss == null ? null : ss.getStatsStore(pigContext);
+        if (store == null) {
+            return -1;
+        }
+        String alias = ss.getAlias(mro);
+        Map<String, Long> stats = store.getJobStats(alias);
+        Long mapOutputBytes = stats == null ? null : stats.get(PigStatsStore.MAP_OUTPUT_BYTES);
+        if (mapOutputBytes == null || mapOutputBytes <= 0) {
+            return -1;
+        }
+        Configuration conf = job.getConfiguration();
+        long bytesPerReducer = conf.getLong(PigReducerEstimator.BYTES_PER_REDUCER_PARAM,
+                PigReducerEstimator.DEFAULT_BYTES_PER_REDUCER);
+        int maxReducers = conf.getInt(PigReducerEstimator.MAX_REDUCER_COUNT_PARAM,
+                PigReducerEstimator.DEFAULT_MAX_REDUCER_COUNT_PARAM);
+        int reducers = (int)Math.ceil((double)mapOutputBytes / bytesPerReducer);
+        reducers = Math.max(1, Math.min(reducers, maxReducers));
+        log.info("Setting the number of reducers of " + alias + " to " + reducers
+                + " from the " + mapOutputBytes + " bytes of map output of a previous run");
+        return reducers;
+    }
+
     /**
      * Looks up the estimator from REDUCER_ESTIMATOR_KEY and invokes it to find the number of
      * reducers to use. If REDUCER_ESTIMATOR_KEY isn't set, defaults to InputSizeReducerEstimator.
@@ -1623,6 +1794,30 @@ public class JobControlCompiler{
                 throw new VisitorException(msg, e);
             }
         }
+
+        @Override
+        public void visitLocalRearrange(POLocalRearrange lr)
+                throws VisitorException {
+
+            // XXX Hadoop currently doesn't support distributed cache in local mode.
+            // This line will be removed after the support is added
+            if (pigContext.getExecType() == ExecType.LOCAL) return;
+
+            FileSpec bloomFilterFile = lr.getBloomFilterFile();
+
+            // only set on the filtered input of joins
+            if (bloomFilterFile == null) return;
+
+            try {
+                String symlink = addSingleFileToDistributedCache(pigContext,
+                        conf, bloomFilterFile.getFileName(), "bloomfilter_");
+                lr.setBloomFilterFile(new FileSpec(symlink, bloomFilterFile.getFuncSpec()));
+            } catch (IOException e) {
+                String msg = "Internal error. Distributed cache could not " +
+                        "be set up for the join Bloom filter";
+                throw new VisitorException(msg, e);
+            }
+        }
     }
 
     private static class UdfDistributedCacheVisitor extends PhyPlanVisitor {
@@ -17,6 +17,7 @@
  */
 package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -28,10 +29,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.UUID;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.InputFormat;
@@ -43,6 +46,7 @@ import org.apache.pig.FuncSpec;
 import org.apache.pig.IndexableLoadFunc;
 import org.apache.pig.LoadFunc;
 import org.apache.pig.OrderedLoadFunc;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.PigWarning;
 import org.apache.pig.backend.executionengine.ExecException;
@@ -57,6 +61,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PlanPrinter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCounter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCross;
@@ -77,15 +82,18 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackageLite;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartitionRearrange;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PORank;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POReservoirSample;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSkewedJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POUnion;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.BloomJoinHelper;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
 import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
+import org.apache.pig.builtin.BuildBloom;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.builtin.DefaultIndexableLoader;
@@ -187,6 +195,10 @@ public class MRCompiler extends PhyPlanVisitor {
     public static final String USER_COMPARATOR_MARKER = "user.comparator.func:";
    
     private static final Log LOG = LogFactory.getLog(MRCompiler.class);
+
+    // Number of tuples that the input of an ORDER BY or a skewed join is
+    // sampled of per task
+    private static final int SAMPLES_PER_TASK = 100;
     
     public static final String FILE_CONCATENATION_THRESHOLD = "pig.files.concatenation.threshold";
     public static final String OPTIMISTIC_FILE_CONCATENATION = "pig.optimistic.files.concatenation";
@@ -695,6 +707,93 @@ public class MRCompiler extends PhyPlanVisitor {
         return mro;
     }
     
+    /**
+     * @return whether the job of the single input can also sample the input
+     * of the ORDER BY that it writes, see
+     * {@link PigConfiguration#PROP_SORT_SAMPLE_PIGGYBACK}. A job that only
+     * loads the input is left to the SampleOptimizer, which has the sampling
+     * job read the loaded files instead. Neither is a join, nor a group-by
+     * whose reduce plan the CombinerOptimizer or the SecondaryKeyOptimizer
+     * may still rewrite.
+     */
+    private boolean canPiggybackSample() throws VisitorException {
+        if (pigContext.inIllustrator || compiledInputs.length != 1
+                || !"true".equalsIgnoreCase(pigContext.getProperties().getProperty(
+                        PigConfiguration.PROP_SORT_SAMPLE_PIGGYBACK, "false"))) {
+            return false;
+        }
+        MapReduceOper mro = compiledInputs[0];
+        if (mro instanceof NativeMapReduceOper || (mro.isMapDone() && mro.isReduceDone())) {
+            return false;
+        }
+        // the optimizers of these jobs expect their plan to end with a store
+        if (mro.limit != -1 || mro.limitPlan != null || mro.isGlobalSort()
+                || mro.isSampler() || mro.isSkewedGroup() || mro.isSkewedJoin()
+                || mro.isRegularJoin()) {
+            return false;
+        }
+        if (mro.isMapDone() && isRewrittenByReduceOptimizers(mro.reducePlan)) {
+            return false;
+        }
+        return mro.isMapDone() || mro.mapPlan.size() > 1
+                || !(mro.mapPlan.getRoots().get(0) instanceof POLoad);
+    }
+
+    /**
+     * @return whether the reduce plan starts with a package followed by
+     * algebraic functions, which the CombinerOptimizer moves to the combiner,
+     * or by nested distincts and sorts, which the SecondaryKeyOptimizer
+     * moves to the shuffle
+     */
+    private static boolean isRewrittenByReduceOptimizers(PhysicalPlan reducePlan)
+            throws VisitorException {
+        List<PhysicalOperator> roots = reducePlan.getRoots();
+        if (roots.size() != 1 || !(roots.get(0) instanceof POPackage)) {
+            return false;
+        }
+        for (POUserFunc func : PlanHelper.getPhysicalOperators(reducePlan, POUserFunc.class)) {
+            if (func.combinable()) {
+                return true;
+            }
+        }
+        return !PlanHelper.getPhysicalOperators(reducePlan, PODistinct.class).isEmpty()
+                || !PlanHelper.getPhysicalOperators(reducePlan, POSort.class).isEmpty();
+    }
+
+    /**
+     * Ends the single input plan with a split that stores its output into
+     * fSpec, as {@link #endSingleInputPlanWithStr(FileSpec)} does, and a
+     * reservoir sample of the output of each task into sampleFile.
+     */
+    private MapReduceOper endSingleInputPlanWithSample(FileSpec fSpec, FileSpec sampleFile)
+            throws PlanException {
+        MapReduceOper mro = compiledInputs[0];
+        POStore str = getStore();
+        str.setSFile(fSpec);
+        PhysicalPlan strPlan = new PhysicalPlan();
+        strPlan.add(str);
+
+        POReservoirSample sample = new POReservoirSample(new OperatorKey(scope,
+                nig.getNextNodeId(scope)), SAMPLES_PER_TASK);
+        POStore sampleStr = getStore();
+        sampleStr.setSFile(sampleFile);
+        PhysicalPlan samplePlan = new PhysicalPlan();
+        samplePlan.add(sample);
+        samplePlan.addAsLeaf(sampleStr);
+
+        POSplit split = new POSplit(new OperatorKey(scope, nig.getNextNodeId(scope)));
+        split.addPlan(strPlan);
+        split.addPlan(samplePlan);
+        if (!mro.isMapDone()) {
+            mro.mapPlan.addAsLeaf(split);
+            mro.setMapDoneSingle(true);
+        } else {
+            mro.reducePlan.addAsLeaf(split);
+            mro.setReduceDone(true);
+        }
+        return mro;
+    }
+
     /**
      * Starts a new MRoper and connects it to the old
      * one by load-store. The assumption is that the 
@@ -1092,8 +1191,16 @@ public class MRCompiler extends PhyPlanVisitor {
     @Override
     public void visitGlobalRearrange(POGlobalRearrange op) throws VisitorException{
         try{
+            MapReduceOper bloomJob = getJoinBloomFilterJob(op);
+            FileSpec keyDistFile = getSkewedGroupKeyDistFile(op);
             blocking(op);
             curMROp.customPartitioner = op.getCustomPartitioner();
+            if (bloomJob != null) {
+                MRPlan.connect(bloomJob, curMROp);
+            }
+            if (keyDistFile != null) {
+                curMROp.setSkewedGroupKeyDistFile(keyDistFile.getFileName());
+            }
             phyToMROpMap.put(op, curMROp);
         }catch(Exception e){
             int errCode = 2034;
@@ -1135,6 +1242,255 @@ public class MRCompiler extends PhyPlanVisitor {
         }
     }
             
+    /**
+     * When {@link PigConfiguration#PROP_SKEWED_GROUP} is on and op is the
+     * global rearrange of a group-by, stores the input of the group-by into a
+     * temporary file and samples its keys in a separate job, as is done for
+     * the first input of skewed joins. The local rearrange is moved into a
+     * new job that loads the file, into which op is then compiled. Whether
+     * the hot keys are spread over several reducers is left to the
+     * {@link SkewedGroupOptimizer}, as it depends on the combiner.
+     * @return the file the sampling job writes the key distribution into,
+     * or null if the group-by is not sampled
+     */
+    private FileSpec getSkewedGroupKeyDistFile(POGlobalRearrange op) throws PlanException, IOException {
+        if (pigContext.inIllustrator || pigContext.getExecType() == ExecType.SPARK
+                || op.getCustomPartitioner() != null
+                || !"true".equalsIgnoreCase(pigContext.getProperties().getProperty(
+                        PigConfiguration.PROP_SKEWED_GROUP, "false"))) {
+            return null;
+        }
+        List<PhysicalOperator> succs = plan.getSuccessors(op);
+        if (compiledInputs.length != 1 || succs == null || succs.size() != 1
+                || !(succs.get(0) instanceof POPackage)) {
+            return null;
+        }
+        POPackage pkg = (POPackage)succs.get(0);
+        if (pkg.getPackageType() != PackageType.GROUP || pkg.getNumInps() != 1) {
+            return null;
+        }
+        MapReduceOper mro = compiledInputs[0];
+        List<PhysicalOperator> leaves = mro.mapPlan.getLeaves();
+        if (mro.isMapDone() || leaves == null || leaves.size() != 1
+                || !(leaves.get(0) instanceof POLocalRearrange)
+                || mro.mapPlan.getPredecessors(leaves.get(0)) == null) {
+            return null;
+        }
+        POLocalRearrange lr = (POLocalRearrange)leaves.get(0);
+        // the sampling job has no access to scalars
+        List<PhysicalPlan> keyPlans = new ArrayList<PhysicalPlan>(lr.getPlans().size());
+        for (PhysicalPlan keyPlan : lr.getPlans()) {
+            ScalarPhyFinder scalarPhyFinder = new ScalarPhyFinder(keyPlan);
+            scalarPhyFinder.visit();
+            if (!scalarPhyFinder.getScalars().isEmpty()) {
+                return null;
+            }
+            try {
+                keyPlans.add(keyPlan.clone());
+            } catch (CloneNotSupportedException e) {
+                LOG.info("Not sampling the keys of group-by: " + e.getMessage());
+                return null;
+            }
+        }
+
+        mro.mapPlan.remove(lr);
+        FileSpec fSpec = getTempFileSpec();
+        endSingleInputPlanWithStr(fSpec);
+
+        FileSpec keyDistFile = getTempFileSpec();
+        Pair<MapReduceOper, Integer> sampleJobPair = getSkewedSampleJob(op, keyPlans, mro,
+                fSpec, keyDistFile, op.getRequestedParallelism());
+
+        curMROp = startNew(fSpec, sampleJobPair.first);
+        curMROp.mapPlan.addAsLeaf(lr);
+        for (PhysicalPlan keyPlan : lr.getPlans()) {
+            processUDFs(keyPlan);
+        }
+        phyToMROpMap.put(lr, curMROp);
+        compiledInputs[0] = curMROp;
+        return keyDistFile;
+    }
+
+    /**
+     * When {@link PigConfiguration#JOIN_BLOOM_FILTER} is on and op is the
+     * global rearrange of a join, builds a Bloom filter of the keys of an
+     * inner input in a separate job, and sets it on the local rearrange of the
+     * last input of the join, which is expected to be the largest one, so that
+     * its tuples that cannot match are dropped before the shuffle. The inner
+     * input is stored into a temporary file that both the join and the new job
+     * load, as is done for the sampled input of skewed joins.
+     * @return the job building the filter, which the join has to wait for, or
+     * null if there is none
+     */
+    private MapReduceOper getJoinBloomFilterJob(POGlobalRearrange op) throws PlanException, IOException {
+        if (pigContext.getExecType() == ExecType.SPARK
+                || !BloomJoinHelper.isEnabled(pigContext.getProperties())) {
+            return null;
+        }
+        List<PhysicalOperator> succs = plan.getSuccessors(op);
+        if (succs == null || succs.size() != 1 || !(succs.get(0) instanceof POPackage)
+                || ((POPackage)succs.get(0)).getPackageType() != PackageType.JOIN) {
+            return null;
+        }
+        // sorted the same way as when the inputs were compiled
+        List<PhysicalOperator> preds = new ArrayList<PhysicalOperator>(plan.getPredecessors(op));
+        Collections.sort(preds);
+        if (preds.size() != compiledInputs.length) {
+            return null;
+        }
+        int probe = -1;
+        int build = -1;
+        int buildIndex = BloomJoinHelper.getBuildInput(((POPackage)succs.get(0)).getInner(),
+                preds.size() - 1);
+        for (int i = 0; i < preds.size(); i++) {
+            if (!(preds.get(i) instanceof POLocalRearrange)) {
+                return null;
+            }
+            int index = ((POLocalRearrange)preds.get(i)).getIndex();
+            if (index == preds.size() - 1) {
+                probe = i;
+            } else if (index == buildIndex) {
+                build = i;
+            }
+        }
+        if (probe == -1 || build == -1) {
+            return null;
+        }
+
+        POLocalRearrange buildLR = (POLocalRearrange)preds.get(build);
+        MapReduceOper mro = compiledInputs[build];
+        PhysicalPlan buildPlan = mro.isMapDone() ? mro.reducePlan : mro.mapPlan;
+        if (mro.isReduceDone() || buildPlan.getLeaves().size() != 1
+                || buildPlan.getLeaves().get(0) != buildLR) {
+            return null;
+        }
+        List<PhysicalPlan> keyPlans = cloneBloomKeyPlans(buildLR.getPlans());
+        if (keyPlans == null) {
+            return null;
+        }
+
+        // store the inner input before its local rearrange, and load it
+        // back for the join
+        FileSpec fSpec = getTempFileSpec();
+        buildPlan.remove(buildLR);
+        POStore str = getStore();
+        str.setSFile(fSpec);
+        if (!mro.isMapDone()) {
+            mro.mapPlan.addAsLeaf(str);
+            mro.setMapDoneSingle(true);
+        } else {
+            mro.reducePlan.addAsLeaf(str);
+            mro.setReduceDone(true);
+        }
+        compiledInputs[build] = startNew(fSpec, mro);
+        compiledInputs[build].mapPlan.addAsLeaf(buildLR);
+        phyToMROpMap.put(buildLR, compiledInputs[build]);
+
+        FileSpec bloomFile = getTempFileSpec();
+        MapReduceOper bloomJob = getBloomFilterJob(startNew(fSpec, mro), keyPlans, bloomFile);
+        ((POLocalRearrange)preds.get(probe)).setBloomFilterFile(bloomFile);
+        LOG.info("Filtering the last input of join " + op.getAlias()
+                + " with a Bloom filter of the keys of input " + buildIndex);
+        return bloomJob;
+    }
+
+    /**
+     * @return copies of the key plans of a join input, for the job building
+     * its Bloom filter, or null if they cannot be used there
+     */
+    private List<PhysicalPlan> cloneBloomKeyPlans(List<PhysicalPlan> plans) throws VisitorException {
+        List<PhysicalPlan> keyPlans = new ArrayList<PhysicalPlan>(plans.size());
+        for (PhysicalPlan keyPlan : plans) {
+            ScalarPhyFinder scalarPhyFinder = new ScalarPhyFinder(keyPlan);
+            scalarPhyFinder.visit();
+            if (!scalarPhyFinder.getScalars().isEmpty()) {
+                return null;
+            }
+            try {
+                keyPlans.add(keyPlan.clone());
+            } catch (CloneNotSupportedException e) {
+                LOG.info("Not using a Bloom filter for join: " + e.getMessage());
+                return null;
+            }
+        }
+        return keyPlans;
+    }
+
+    /**
+     * Completes mro, whose map plan loads a join input, into a job that
+     * computes the keys of the input with keyPlans and stores a Bloom filter
+     * of them into bloomFile, using {@link BuildBloom} in a group all.
+     */
+    private MapReduceOper getBloomFilterJob(MapReduceOper mro, List<PhysicalPlan> keyPlans,
+            FileSpec bloomFile) throws PlanException, VisitorException {
+        List<Boolean> flat = new ArrayList<Boolean>();
+        for (PhysicalPlan keyPlan : keyPlans) {
+            udfFinder.setPlan(keyPlan);
+            udfFinder.visit();
+            mro.UDFs.addAll(udfFinder.getUDFs());
+            flat.add(false);
+        }
+        POForEach keys = new POForEach(new OperatorKey(scope,nig.getNextNodeId(scope)), -1, keyPlans, flat);
+        keys.setResultType(DataType.TUPLE);
+        mro.mapPlan.addAsLeaf(keys);
+
+        PhysicalPlan ep = new PhysicalPlan();
+        ConstantExpression ce = new ConstantExpression(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        ce.setValue("all");
+        ce.setResultType(DataType.CHARARRAY);
+        ep.add(ce);
+        List<PhysicalPlan> eps = new ArrayList<PhysicalPlan>();
+        eps.add(ep);
+        POLocalRearrange lr = new POLocalRearrange(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        try {
+            lr.setIndex(0);
+        } catch (ExecException e) {
+            int errCode = 2058;
+            String msg = "Unable to set index on newly created POLocalRearrange.";
+            throw new PlanException(msg, errCode, PigException.BUG, e);
+        }
+        lr.setKeyType(DataType.CHARARRAY);
+        lr.setPlans(eps);
+        lr.setResultType(DataType.TUPLE);
+        mro.mapPlan.addAsLeaf(lr);
+        mro.setMapDone(true);
+
+        POPackage pkg = new POPackage(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        pkg.setKeyType(DataType.CHARARRAY);
+        pkg.setNumInps(1);
+        boolean[] inner = {false};
+        pkg.setInner(inner);
+        mro.reducePlan.add(pkg);
+
+        PhysicalPlan bloomPlan = new PhysicalPlan();
+        POProject prj = new POProject(new OperatorKey(scope,nig.getNextNodeId(scope)));
+        prj.setColumn(1);
+        prj.setResultType(DataType.BAG);
+        bloomPlan.add(prj);
+        List<PhysicalOperator> ufInps = new ArrayList<PhysicalOperator>();
+        ufInps.add(prj);
+        POUserFunc uf = new POUserFunc(new OperatorKey(scope,nig.getNextNodeId(scope)), -1, ufInps,
+                new FuncSpec(BuildBloom.class.getName(),
+                        BloomJoinHelper.getBuildBloomArgs(pigContext.getProperties())));
+        uf.setResultType(DataType.BYTEARRAY);
+        bloomPlan.add(uf);
+        bloomPlan.connect(prj, uf);
+        List<PhysicalPlan> bloomPlans = new ArrayList<PhysicalPlan>();
+        bloomPlans.add(bloomPlan);
+        List<Boolean> flattened = new ArrayList<Boolean>();
+        flattened.add(false);
+        POForEach fe = new POForEach(new OperatorKey(scope,nig.getNextNodeId(scope)), -1, bloomPlans, flattened);
+        fe.setResultType(DataType.TUPLE);
+        mro.reducePlan.addAsLeaf(fe);
+
+        POStore str = getStore();
+        str.setSFile(bloomFile);
+        mro.reducePlan.addAsLeaf(str);
+        mro.setReduceDone(true);
+        mro.requestedParallelism = 1;
+        return mro;
+    }
+
     /**
      * This is an operator which will have multiple inputs(= to number of join inputs)
      * But it prunes off all inputs but the fragment input and creates separate MR jobs
@@ -1830,6 +2186,22 @@ public class MRCompiler extends PhyPlanVisitor {
 			// based on default.
 			op.setRequestedParallelism(rp);
 						
+			// the first table is already stored, build the Bloom filter
+			// of its keys from there
+			List<PhysicalOperator> l = plan.getPredecessors(op);
+			MultiMap<PhysicalOperator, PhysicalPlan> joinPlans = op.getJoinPlans();
+			MapReduceOper bloomJob = null;
+			FileSpec bloomFile = null;
+			if (pigContext.getExecType() != ExecType.SPARK
+			        && BloomJoinHelper.isEnabled(pigContext.getProperties())
+			        && BloomJoinHelper.getBuildInput(op.getInnerFlags(), 1) == 0) {
+			    List<PhysicalPlan> keyPlans = cloneBloomKeyPlans(joinPlans.get(l.get(0)));
+			    if (keyPlans != null) {
+			        bloomFile = getTempFileSpec();
+			        bloomJob = getBloomFilterJob(startNew(fSpec, mro), keyPlans, bloomFile);
+			    }
+			}
+			
 			// load the temp file for first table as input of join            
 			MapReduceOper[] joinInputs = new MapReduceOper[] {startNew(fSpec, sampleJobPair.first), compiledInputs[1]};            
 			MapReduceOper[] rearrangeOutputs = new MapReduceOper[2];                       
@@ -1845,8 +2217,6 @@ public class MRCompiler extends PhyPlanVisitor {
 				throw new PlanException(msg, errCode, PigException.BUG, e);
 			}
 			
-			List<PhysicalOperator> l = plan.getPredecessors(op);
-			MultiMap<PhysicalOperator, PhysicalPlan> joinPlans = op.getJoinPlans();
 			List<PhysicalPlan> groups = joinPlans.get(l.get(0));
 			// check the type of group keys, if there are more than one field, the key is TUPLE.
 			byte type = DataType.TUPLE;
@@ -1891,6 +2261,9 @@ public class MRCompiler extends PhyPlanVisitor {
 			lr.setPlans(groups);
 			lr.setKeyType(type);            
 			lr.setResultType(DataType.BAG);
+			if (bloomFile != null) {
+			    lr.setBloomFilterFile(bloomFile);
+			}
 			
 			lr.visit(this);
 			if(lr.getRequestedParallelism() > curMROp.requestedParallelism)
@@ -1944,6 +2317,9 @@ public class MRCompiler extends PhyPlanVisitor {
 			
 			fe.visit(this);
 			
+			if (bloomJob != null) {
+			    MRPlan.connect(bloomJob, curMROp);
+			}
 			curMROp.setSkewedJoinPartitionFile(partitionFile.getFileName());
 			phyToMROpMap.put(op, curMROp);
         }catch(PlanException e) {
@@ -1961,15 +2337,37 @@ public class MRCompiler extends PhyPlanVisitor {
     @Override
     public void visitSort(POSort op) throws VisitorException {
         try{
-            FileSpec fSpec = getTempFileSpec();
-            MapReduceOper mro = endSingleInputPlanWithStr(fSpec);
-            FileSpec quantFile = getTempFileSpec();
             int rp = op.getRequestedParallelism();
             Pair<POProject, Byte>[] fields = getSortCols(op.getSortPlans());
-            Pair<MapReduceOper, Integer> quantJobParallelismPair = 
-                getQuantileJob(op, mro, fSpec, quantFile, rp);
-            curMROp = getSortJob(op, quantJobParallelismPair.first, fSpec, quantFile, 
-                    quantJobParallelismPair.second, fields);
+            String cacheFile = getQuantileCacheFile(op, rp);
+            if (cacheFile != null && FileLocalizer.fileExists(cacheFile, pigContext)) {
+                // the quantiles are known, the loaded input is sorted
+                // right away
+                LOG.info("Reusing quantile file " + cacheFile + " for ORDER BY "
+                        + op.getAlias());
+                int partitions = rp > 0 ? rp : pigContext.defaultParallel;
+                curMROp = getSortJob(op, compiledInputs[0],
+                        new FileSpec(cacheFile, new FuncSpec(Utils.getTmpFileCompressorName(pigContext))),
+                        partitions, fields);
+            } else {
+                FileSpec fSpec = getTempFileSpec();
+                FileSpec quantFile = getTempFileSpec();
+                FileSpec sampleLdFile;
+                MapReduceOper mro;
+                if (canPiggybackSample()) {
+                    FileSpec sampleFile = getTempFileSpec();
+                    mro = endSingleInputPlanWithSample(fSpec, sampleFile);
+                    sampleLdFile = sampleFile;
+                } else {
+                    mro = endSingleInputPlanWithStr(fSpec);
+                    sampleLdFile = getSampleLoaderFileSpec(fSpec, RandomSampleLoader.class.getName());
+                }
+                Pair<MapReduceOper, Integer> quantJobParallelismPair = 
+                    getQuantileJob(op, mro, sampleLdFile, quantFile, rp);
+                quantJobParallelismPair.first.setQuantFileCache(cacheFile);
+                curMROp = getSortJob(op, startNew(fSpec, quantJobParallelismPair.first), quantFile, 
+                        quantJobParallelismPair.second, fields);
+            }
             
             if(op.isUDFComparatorUsed){
                 curMROp.UDFs.add(op.getMSortFunc().getFuncSpec().toString());
@@ -2063,14 +2461,16 @@ public class MRCompiler extends PhyPlanVisitor {
         throw new PlanException(msg, errCode, PigException.BUG);
     }
     
+    /**
+     * Turns mro, whose map plan reads the input to sort, into the job that
+     * sorts it with the quantiles of quantFile.
+     */
     private MapReduceOper getSortJob(
             POSort sort,
-            MapReduceOper quantJob,
-            FileSpec lFile,
+            MapReduceOper mro,
             FileSpec quantFile,
             int rp,
             Pair<POProject, Byte>[] fields) throws PlanException{
-        MapReduceOper mro = startNew(lFile, quantJob);
         mro.setQuantFile(quantFile.getFileName());
         mro.setGlobalSort(true);
         mro.requestedParallelism = rp;
@@ -2229,7 +2629,7 @@ public class MRCompiler extends PhyPlanVisitor {
     private Pair<MapReduceOper,Integer> getQuantileJob(
             POSort inpSort,
             MapReduceOper prevJob,
-            FileSpec lFile,
+            FileSpec sampleLdFile,
             FileSpec quantFile,
             int rp) throws PlanException, VisitorException {
         
@@ -2256,9 +2656,131 @@ public class MRCompiler extends PhyPlanVisitor {
             }
         }
         
-        return getSamplingJob(sort, prevJob, null, lFile, quantFile, rp, null, FindQuantiles.class.getName(), ctorArgs, RandomSampleLoader.class.getName());
+        return getSamplingJob(sort, prevJob, null, sampleLdFile, quantFile, rp, null, FindQuantiles.class.getName(), ctorArgs);
     }
     
+    /**
+     * @return the file of the cache of quantile files, see
+     * {@link PigConfiguration#PROP_SORT_QUANTILE_CACHE_DIR}, that the
+     * quantiles of the ORDER BY of the single input are kept in, or null
+     * when they are not cached: the cache is off, the input is not loaded
+     * from files by a map of foreachs and filters only, or the number of
+     * reducers is only known at run time. The name of the file is a hash of
+     * the location and loader of the input, its size and last modification,
+     * the map plan, the sort keys and the number of reducers, so that a
+     * changed input is not sorted with the quantiles of its former content.
+     */
+    private String getQuantileCacheFile(POSort sort, int rp) {
+        String cacheDir = pigContext.getProperties().getProperty(
+                PigConfiguration.PROP_SORT_QUANTILE_CACHE_DIR);
+        int partitions = rp > 0 ? rp : pigContext.defaultParallel;
+        if (cacheDir == null || partitions <= 0 || pigContext.inIllustrator
+                || compiledInputs.length != 1) {
+            return null;
+        }
+        MapReduceOper mro = compiledInputs[0];
+        List<MapReduceOper> preds = MRPlan.getPredecessors(mro);
+        if (mro.isMapDone() || (preds != null && !preds.isEmpty())
+                || !isLoadWithMapOnlyOperators(mro.mapPlan)) {
+            return null;
+        }
+        FileSpec lFile = ((POLoad) mro.mapPlan.getRoots().get(0)).getLFile();
+        if (Utils.getTmpFileCompressorName(pigContext).equals(lFile.getFuncName())) {
+            return null;
+        }
+        try {
+            StringBuilder sb = new StringBuilder();
+            sb.append("LOAD: ").append(lFile.getFileName()).append(lFile.getFuncSpec());
+            Configuration conf = ConfigurationUtil.toConfiguration(pigContext.getProperties());
+            for (String location : LoadFunc.getPathStrings(lFile.getFileName())) {
+                if (!UriUtil.isHDFSFileOrLocalOrS3N(location)) {
+                    return null;
+                }
+                Path path = new Path(location);
+                FileStatus[] statuses = path.getFileSystem(conf).globStatus(path);
+                if (statuses == null || statuses.length == 0) {
+                    return null;
+                }
+                for (FileStatus status : statuses) {
+                    sb.append(" FILE: ").append(status.getPath()).append(status.getLen())
+                            .append('@').append(status.getModificationTime());
+                    if (status.isDir()) {
+                        for (FileStatus child : status.getPath().getFileSystem(conf)
+                                .listStatus(status.getPath())) {
+                            sb.append(" ").append(child.getPath().getName()).append(child.getLen())
+                                    .append('@').append(child.getModificationTime());
+                        }
+                    }
+                }
+            }
+            // the explain of the map plan, as the casts of the fields of a
+            // load with a schema, and of the sort plans
+            sb.append(" MAP: ").append(explainWithoutScopes(mro.mapPlan));
+            for (PhysicalPlan plan : sort.getSortPlans()) {
+                sb.append(" KEY: ").append(explainWithoutScopes(plan));
+            }
+            sb.append(" ASC: ").append(sort.getMAscCols());
+            if (sort.isUDFComparatorUsed) {
+                sb.append(" COMPARATOR: ").append(sort.getMSortFunc().getFuncSpec());
+            }
+            sb.append(" PARTITIONS: ").append(partitions);
+            return new Path(cacheDir, UUID.nameUUIDFromBytes(sb.toString().getBytes()).toString())
+                    .toString();
+        } catch (Exception e) {
+            LOG.warn("Unable to look up the quantile file of ORDER BY " + sort.getAlias()
+                    + " in " + cacheDir + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the plan is a single load followed by a chain of
+     * foreachs and filters
+     */
+    private static boolean isLoadWithMapOnlyOperators(PhysicalPlan plan) {
+        if (plan.getRoots().size() != 1 || !(plan.getRoots().get(0) instanceof POLoad)) {
+            return false;
+        }
+        PhysicalOperator op = plan.getRoots().get(0);
+        while (true) {
+            List<PhysicalOperator> succs = plan.getSuccessors(op);
+            if (succs == null || succs.isEmpty()) {
+                return true;
+            }
+            op = succs.get(0);
+            if (succs.size() != 1 || !(op instanceof POForEach || op instanceof POFilter)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the explain of the plan, without the scope numbers of its
+     * operators, which differ from one script to the other
+     */
+    private static String explainWithoutScopes(PhysicalPlan plan) throws VisitorException,
+            IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new PlanPrinter<PhysicalOperator, PhysicalPlan>(plan).print(baos);
+        return baos.toString().replaceAll("scope-\\d+", "");
+    }
+
+    /**
+     * @return the spec of lFile that samples it with the given sample
+     * loader
+     */
+    private FileSpec getSampleLoaderFileSpec(FileSpec lFile, String sampleLdrClassName) {
+        String[] rslargs = new String[2];
+        // SampleLoader expects string version of FuncSpec 
+        // as its first constructor argument.
+        
+        rslargs[0] = (new FuncSpec(Utils.getTmpFileCompressorName(pigContext))).toString();
+        
+        rslargs[1] = Integer.toString(SAMPLES_PER_TASK); // The value is calculated based on the file size for skewed join
+        return new FileSpec(lFile.getFileName(),
+        		new FuncSpec(sampleLdrClassName, rslargs));
+    }
+
     /**
      * Create Sampling job for skewed join.
      */
@@ -2268,7 +2790,20 @@ public class MRCompiler extends PhyPlanVisitor {
     	MultiMap<PhysicalOperator, PhysicalPlan> joinPlans = op.getJoinPlans();
     	
     	List<PhysicalOperator> l = plan.getPredecessors(op);
-    	List<PhysicalPlan> groups = joinPlans.get(l.get(0));
+    	return getSkewedSampleJob(op, joinPlans.get(l.get(0)), prevJob, lFile, sampleFile, rp);
+    }
+
+    /**
+     * Creates a job that samples the keys of a skewed join or group-by with
+     * the PoissonSampleLoader, and writes the reducers that the keys too
+     * large for one reducer should be spread over into sampleFile, with
+     * PartitionSkewedKeys.
+     * @param op the skewed join or the global rearrange of the group-by
+     * @param groups the plans of the keys
+     */
+    private Pair<MapReduceOper, Integer> getSkewedSampleJob(PhysicalOperator op, List<PhysicalPlan> groups,
+            MapReduceOper prevJob, FileSpec lFile, FileSpec sampleFile, int rp)
+            throws PlanException, VisitorException {
     	List<Boolean> ascCol = new ArrayList<Boolean>();
     	for(int i=0; i<groups.size(); i++) {    		    		
     		ascCol.add(false);
@@ -2306,8 +2841,9 @@ public class MRCompiler extends PhyPlanVisitor {
     		String mc = pigContext.getProperties().getProperty("pig.skewedjoin.reduce.maxtuple", "0");
     		String inputFile = lFile.getFileName();
 
-    		return getSamplingJob(sort, prevJob, transformPlans, lFile, sampleFile, rp, null, 
-    							PartitionSkewedKeys.class.getName(), new String[]{per, mc, inputFile}, PoissonSampleLoader.class.getName());
+    		return getSamplingJob(sort, prevJob, transformPlans,
+    		        getSampleLoaderFileSpec(lFile, PoissonSampleLoader.class.getName()), sampleFile, rp, null, 
+    							PartitionSkewedKeys.class.getName(), new String[]{per, mc, inputFile});
     	}catch(Exception e) {
     		throw new PlanException(e);
     	}
@@ -2328,33 +2864,22 @@ public class MRCompiler extends PhyPlanVisitor {
      * @param sort  the POSort operator used to sort the bag
      * @param prevJob  previous job of current sampling job
      * @param transformPlans  PhysicalPlans to transform input samples
-     * @param lFile  path of input file
+     * @param sampleLdFile  input file to sample, with the loader of the samples
      * @param sampleFile  path of output file
      * @param rp  configured parallemism
      * @param sortKeyPlans  PhysicalPlans to be set into POSort operator to get sorting keys
      * @param udfClassName  the class name of UDF
      * @param udfArgs   the arguments of UDF
-     * @param sampleLdrClassName class name for the sample loader
      * @return pair<mapreduceoper,integer>
      * @throws PlanException
      * @throws VisitorException
      */
   	@SuppressWarnings("deprecation")
     private Pair<MapReduceOper,Integer> getSamplingJob(POSort sort, MapReduceOper prevJob, List<PhysicalPlan> transformPlans,
-  			FileSpec lFile, FileSpec sampleFile, int rp, List<PhysicalPlan> sortKeyPlans, 
-  			String udfClassName, String[] udfArgs, String sampleLdrClassName ) throws PlanException, VisitorException {
+  			FileSpec sampleLdFile, FileSpec sampleFile, int rp, List<PhysicalPlan> sortKeyPlans, 
+  			String udfClassName, String[] udfArgs) throws PlanException, VisitorException {
   		
-  		String[] rslargs = new String[2];
-        // SampleLoader expects string version of FuncSpec 
-        // as its first constructor argument.
-        
-        rslargs[0] = (new FuncSpec(Utils.getTmpFileCompressorName(pigContext))).toString();
-        
-        rslargs[1] = "100"; // The value is calculated based on the file size for skewed join
-        FileSpec quantLdFilName = new FileSpec(lFile.getFileName(),
-        		new FuncSpec(sampleLdrClassName, rslargs));
-        
-        MapReduceOper mro = startNew(quantLdFilName, prevJob);
+        MapReduceOper mro = startNew(sampleLdFile, prevJob);
        
         if(sort.isUDFComparatorUsed) {
             mro.UDFs.add(sort.getMSortFunc().getFuncSpec().toString());
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PONative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartitionRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.SchemaTupleBackend;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.ReadToEndLoader;
+import org.apache.pig.impl.util.ObjectSerializer;
+
+/**
+ * Class that estimates the number of reducers based on the size of the map
+ * output rather than the size of the input. The map plan of the job is run
+ * on the client over the first records of each input, and the ratio of the
+ * bytes it outputs to the bytes of input it reads scales the size of that input, so
+ * that selective filters, projections and map side partial aggregation
+ * lower the number of reducers and operators that multiply records raise it.
+ * <p>
+ * It is used by setting pig.exec.reducer.estimator to the name of this
+ * class, and takes the properties of {@link InputSizeReducerEstimator} plus:
+ * <ul>
+ *     <li>pig.exec.reducers.sample.records -
+ *     how many records of each input the map plan is run over (default is 1000)</li>
+ * </ul>
+ * The records are read from the start of the input, and the combiner is not
+ * taken into account. Jobs whose map plan cannot run outside of a task, such
+ * as those with replicated or merge joins, streaming or side stores, jobs
+ * using SchemaTuples, and inputs that cannot be sampled keep the estimate
+ * from the input size.
+ */
+public class MapOutputSizeReducerEstimator implements PigReducerEstimator {
+    private static final Log log = LogFactory.getLog(MapOutputSizeReducerEstimator.class);
+
+    public static final String SAMPLE_RECORDS_PARAM = "pig.exec.reducers.sample.records";
+
+    public static final int DEFAULT_SAMPLE_RECORDS = 1000;
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends PhysicalOperator>[] UNSUPPORTED_OPERATORS =
+        new Class[] { POFRJoin.class, POMergeJoin.class, POMergeCogroup.class,
+            PONative.class, POPartitionRearrange.class, POSplit.class,
+            POStore.class, POStream.class };
+
+    /**
+     * Determines the number of reducers to be used.
+     *
+     * @param job job instance
+     * @param mapReduceOper
+     * @throws java.io.IOException
+     */
+    @Override
+    public int estimateNumberOfReducers(Job job, MapReduceOper mapReduceOper) throws IOException {
+        Configuration conf = job.getConfiguration();
+
+        long bytesPerReducer = conf.getLong(BYTES_PER_REDUCER_PARAM, DEFAULT_BYTES_PER_REDUCER);
+        int maxReducers = conf.getInt(MAX_REDUCER_COUNT_PARAM, DEFAULT_MAX_REDUCER_COUNT_PARAM);
+        int sampleRecords = conf.getInt(SAMPLE_RECORDS_PARAM, DEFAULT_SAMPLE_RECORDS);
+
+        List<POLoad> poLoads = PlanHelper.getPhysicalOperators(mapReduceOper.mapPlan, POLoad.class);
+        boolean canSample = sampleRecords > 0;
+        for (Class<? extends PhysicalOperator> opClass : UNSUPPORTED_OPERATORS) {
+            if (canSample && !PlanHelper.getPhysicalOperators(mapReduceOper.mapPlan, opClass).isEmpty()) {
+                log.info("Not sampling the map output of the job as its map plan contains "
+                        + opClass.getSimpleName());
+                canSample = false;
+            }
+        }
+
+        if (canSample && conf.getBoolean(PigConfiguration.SHOULD_USE_SCHEMA_TUPLE, false)) {
+            log.info("Not sampling the map output of the job as SchemaTuples are turned on");
+            canSample = false;
+        }
+
+        double totalMapOutputSize = 0;
+        boolean foundSize = false;
+        for (POLoad ld : poLoads) {
+            long inputSize = InputSizeReducerEstimator.getTotalInputFileSize(
+                    conf, Collections.singletonList(ld), job);
+            if (inputSize == -1) {
+                continue;
+            }
+            foundSize = true;
+            double ratio = canSample ? getMapOutputRatio(conf, mapReduceOper, ld, sampleRecords) : -1;
+            if (ratio < 0) {
+                totalMapOutputSize += inputSize;
+            } else {
+                log.info("Map output of " + ld.getLFile().getFileName() + " is estimated at "
+                        + ratio + " times its size of " + inputSize);
+                totalMapOutputSize += inputSize * ratio;
+            }
+        }
+
+        log.info("BytesPerReducer=" + bytesPerReducer + " maxReducers="
+            + maxReducers + " totalMapOutputSize=" + (long)totalMapOutputSize);
+
+        // if no input size is known, we can't estimate.
+        if (!foundSize) { return -1; }
+
+        int reducers = (int)Math.ceil(totalMapOutputSize / bytesPerReducer);
+        reducers = Math.max(1, reducers);
+        reducers = Math.min(maxReducers, reducers);
+
+        return reducers;
+    }
+
+    /**
+     * Runs a copy of the map plan over the first records of an input.
+     *
+     * @return the serialized size of the map output divided by the number of
+     * bytes of input read, or -1 if the input could not be sampled
+     */
+    static double getMapOutputRatio(Configuration conf, MapReduceOper mapReduceOper,
+            POLoad ld, int sampleRecords) {
+        Configuration savedConf = PigMapReduce.sJobConfInternal.get();
+        PigMapReduce.sJobConfInternal.set(conf);
+        ReadToEndLoader loader = null;
+        try {
+            SchemaTupleBackend.initializeWithoutCode();
+            // the same copy of the plan that the map tasks run, without its loads
+            PhysicalPlan mp = (PhysicalPlan)ObjectSerializer.deserialize(
+                    ObjectSerializer.serialize(mapReduceOper.mapPlan));
+            List<PhysicalOperator> targets = mp.getSuccessors(mp.getOperator(ld.getOperatorKey()));
+            if (targets == null) {
+                return -1;
+            }
+            List<PhysicalOperator> roots = new ArrayList<PhysicalOperator>(targets);
+            for (POLoad load : PlanHelper.getPhysicalOperators(mp, POLoad.class)) {
+                mp.remove(load);
+            }
+            if (mp.getLeaves().size() != 1) {
+                return -1;
+            }
+            PhysicalOperator leaf = mp.getLeaves().get(0);
+
+            loader = new ReadToEndLoader((LoadFunc)PigContext.instantiateFuncFromSpec(
+                    ld.getLFile().getFuncSpec()), conf, ld.getLFile().getFileName(), 0,
+                    ld.getSignature());
+
+            InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+            DataOutputBuffer buf = new DataOutputBuffer();
+            long inputBytes = 0;
+            long outputBytes = 0;
+            int records = 0;
+            Tuple t;
+            while (records < sampleRecords && (t = loader.getNext()) != null) {
+                buf.reset();
+                sedes.writeDatum(buf, t);
+                inputBytes += buf.getLength();
+                records++;
+                for (PhysicalOperator root : roots) {
+                    root.attachInput(TupleFactory.getInstance().newTupleNoCopy(t.getAll()));
+                }
+                outputBytes += runPipeline(leaf, sedes, buf);
+            }
+            if (mapReduceOper.isEndOfAllInputSetInMap()) {
+                mp.endOfAllInput = true;
+                outputBytes += runPipeline(leaf, sedes, buf);
+            }
+            // the bytes of the input, unless its loader does not report its progress,
+            // rather than the size of the records read, which the loader may have pruned
+            long bytesRead = loader.getBytesRead();
+            if (bytesRead > 0) {
+                inputBytes = bytesRead;
+            }
+            if (inputBytes == 0) {
+                return -1;
+            }
+            return (double)outputBytes / inputBytes;
+        } catch (Exception e) {
+            log.warn("Couldn't sample the map output of " + ld.getLFile().getFileName(), e);
+            return -1;
+        } finally {
+            PigMapReduce.sJobConfInternal.set(savedConf);
+            if (loader != null) {
+                try {
+                    loader.close();
+                } catch (IOException e) {
+                    log.warn("Couldn't close " + ld.getLFile().getFileName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the serialized size of the tuples output by the leaf
+     */
+    private static long runPipeline(PhysicalOperator leaf, InterSedes sedes,
+            DataOutputBuffer buf) throws IOException {
+        long bytes = 0;
+        while (true) {
+            Result res = leaf.getNextTuple();
+            if (res.returnStatus == POStatus.STATUS_OK) {
+                buf.reset();
+                sedes.writeDatum(buf, res.result);
+                bytes += buf.getLength();
+            } else if (res.returnStatus == POStatus.STATUS_EOP) {
+                return bytes;
+            } else if (res.returnStatus == POStatus.STATUS_ERR) {
+                throw new ExecException("Received Error while processing the map plan: "
+                        + res.result);
+            }
+        }
+    }
+}
@@ -22,9 +22,11 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -55,7 +57,9 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MRPrin
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.POPackageAnnotator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POJoinPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorBatch;
 import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.FileLocalizer;
@@ -69,6 +73,7 @@ import org.apache.pig.impl.util.LogUtils;
 import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.tools.pigstats.PigStats;
 import org.apache.pig.tools.pigstats.PigStatsUtil;
+import org.apache.pig.tools.pigstats.PigStatsStore;
 import org.apache.pig.tools.pigstats.ScriptState;
 
 
@@ -146,6 +151,10 @@ public class MapReduceLauncher extends Launcher{
         long sleepTime = 500;
         aggregateWarning = "true".equalsIgnoreCase(pc.getProperties().getProperty("aggregate.warning"));
         MROperPlan mrp = compile(php, pc);
+
+        // opens the statistics of the script if they are kept, so that this
+        // run gets recorded even when its compilation did not consult them
+        ScriptState.get().getStatsStore(pc);
                 
         ConfigurationValidator.validatePigProperties(pc.getProperties());
         Configuration conf = ConfigurationUtil.toConfiguration(pc.getProperties());
@@ -179,9 +188,28 @@ public class MapReduceLauncher extends Launcher{
         boolean stop_on_failure = 
             pc.getProperties().getProperty("stop.on.failure", "false").equals("true");
         
+        // submit the jobs as soon as the jobs they depend on are done
+        PipelinedJobScheduler scheduler = null;
+        Set<Job> finishedJobs = new HashSet<Job>();
+        if (conf.getBoolean(PigConfiguration.PROP_EXEC_PIPELINED, false)) {
+            scheduler = new PipelinedJobScheduler(mrp, conf);
+        }
+        
         // jc is null only when mrp.size == 0
         while(mrp.size() != 0) {
-            jc = jcc.compile(mrp, grpName);
+            if (scheduler == null) {
+                jc = jcc.compile(mrp, grpName);
+            } else {
+                // null when only native map-reduce jobs are left to run
+                jc = null;
+                List<MapReduceOper> ready = scheduler.getReadyJobs(0);
+                if (!ready.isEmpty()) {
+                    jc = jcc.newJobControl(grpName);
+                    for (Job job : jcc.compile(mrp, ready)) {
+                        jc.addJob(job);
+                    }
+                }
+            }
             if(jc == null) {
                 List<MapReduceOper> roots = new LinkedList<MapReduceOper>();
                 roots.addAll(mrp.getRoots());
@@ -326,7 +354,17 @@ public class MapReduceLauncher extends Launcher{
                 	}
                 	jobsWithoutIds.removeAll(jobsAssignedIdInThisRun);
     
-                	double prog = (numMRJobsCompl+calculateProgress(jc, jobClient))/totalMRJobs;
+                	double prog = numMRJobsCompl+calculateProgress(jc, jobClient);
+                	if (scheduler != null) {
+                	    // the finished jobs are credited to numMRJobsCompl already
+                	    // but stay among the successful jobs of jc
+                	    for (Job job : jc.getSuccessfulJobs()) {
+                	        if (finishedJobs.contains(job)) {
+                	            prog--;
+                	        }
+                	    }
+                	}
+                	prog /= totalMRJobs;
                 	if (notifyProgress(prog, lastProg)) {
                         lastProg = prog;
                     }
@@ -343,6 +381,15 @@ public class MapReduceLauncher extends Launcher{
                         log.warn("Ooops! Some job has failed! Specify -stop_on_failure if you "
                                 + "want Pig to stop immediately on failure.");
                     }
+
+                    if (scheduler != null) {
+                        // take the finished jobs out of the plan and submit
+                        // the jobs that depended on them only
+                        numMRJobsCompl += updatePipelinedJobs(jc, jcc, finishedJobs,
+                                completeFailedJobsInThisRun, failedJobs, succJobs);
+                        jobsWithoutIds.addAll(submitReadyJobs(scheduler, jc, jcc, mrp,
+                                scriptSubmittedTimestamp));
+                    }
                 }
                 
                 //check for the jobControlException first
@@ -365,26 +412,34 @@ public class MapReduceLauncher extends Launcher{
                     }
                 }
                 
-                if (!jc.getFailedJobs().isEmpty() ) {
-                    // stop if stop_on_failure is enabled
+                if (scheduler != null) {
+                    // the jobs that finished since the last poll, the jobs
+                    // that depend on them are left to the next JobControl
                     checkStopOnFailure(stop_on_failure);
+                    numMRJobsCompl += updatePipelinedJobs(jc, jcc, finishedJobs,
+                            completeFailedJobsInThisRun, failedJobs, succJobs);
+                } else {
+                    if (!jc.getFailedJobs().isEmpty() ) {
+                        // stop if stop_on_failure is enabled
+                        checkStopOnFailure(stop_on_failure);
                     
-                    // If we only have one store and that job fail, then we sure 
-                    // that the job completely fail, and we shall stop dependent jobs
-                    for (Job job : jc.getFailedJobs()) {
-                        completeFailedJobsInThisRun.add(job);
-                        log.info("job " + job.getAssignedJobID() + " has failed! Stop running all dependent jobs"); 
+                        // If we only have one store and that job fail, then we sure 
+                        // that the job completely fail, and we shall stop dependent jobs
+                        for (Job job : jc.getFailedJobs()) {
+                            completeFailedJobsInThisRun.add(job);
+                            log.info("job " + job.getAssignedJobID() + " has failed! Stop running all dependent jobs"); 
+                        }
+                        failedJobs.addAll(jc.getFailedJobs());
                     }
-                    failedJobs.addAll(jc.getFailedJobs());
-                }
                 
-                int removedMROp = jcc.updateMROpPlan(completeFailedJobsInThisRun);
+                    int removedMROp = jcc.updateMROpPlan(completeFailedJobsInThisRun);
                 
-                numMRJobsCompl += removedMROp;
+                    numMRJobsCompl += removedMROp;
     
-                List<Job> jobs = jc.getSuccessfulJobs();
-                jcc.moveResults(jobs);
-                succJobs.addAll(jobs);
+                    List<Job> jobs = jc.getSuccessfulJobs();
+                    jcc.moveResults(jobs);
+                    succJobs.addAll(jobs);
+                }
                             
                 // collecting final statistics
                 PigStatsUtil.accumulateStats(jc);
@@ -514,6 +569,65 @@ public class MapReduceLauncher extends Launcher{
                     PigException.REMOTE_ENVIRONMENT);
         }
     }
+
+    /**
+     * Takes the jobs of jc that finished since the last call out of the plan,
+     * with all the jobs that depend on them if they failed.
+     * @return the number of jobs taken out of the plan
+     */
+    private int updatePipelinedJobs(JobControl jc, JobControlCompiler jcc, Set<Job> finishedJobs,
+            List<Job> completeFailedJobs, List<Job> failedJobs, List<Job> succJobs)
+            throws IOException {
+        int removedMROp = 0;
+        for (Job job : jc.getFailedJobs()) {
+            if (finishedJobs.add(job)) {
+                completeFailedJobs.add(job);
+                failedJobs.add(job);
+                log.info("job " + job.getAssignedJobID() + " has failed! Stop running all dependent jobs");
+                removedMROp += jcc.updateMROpPlan(job, true);
+            }
+        }
+        List<Job> jobs = new ArrayList<Job>();
+        for (Job job : jc.getSuccessfulJobs()) {
+            if (finishedJobs.add(job)) {
+                jobs.add(job);
+                removedMROp += jcc.updateMROpPlan(job, false);
+            }
+        }
+        jcc.moveResults(jobs);
+        succJobs.addAll(jobs);
+        return removedMROp;
+    }
+
+    /**
+     * Compiles the jobs of the plan whose dependencies are done and adds them
+     * to the running jc
+     * @return the jobs added
+     */
+    private List<Job> submitReadyJobs(PipelinedJobScheduler scheduler, JobControl jc,
+            JobControlCompiler jcc, MROperPlan mrp, long scriptSubmittedTimestamp)
+            throws JobCreationException {
+        int running = jc.getWaitingJobs().size() + jc.getReadyJobs().size()
+                + jc.getRunningJobs().size();
+        List<MapReduceOper> ready = scheduler.getReadyJobs(running);
+        if (ready.isEmpty()) {
+            return new ArrayList<Job>();
+        }
+        List<Job> jobs = jcc.compile(mrp, ready);
+        log.info(jobs.size() + " map-reduce job(s) waiting for submission.");
+        ScriptState.get().emitJobsSubmittedNotification(jobs.size());
+        PigStatsUtil.updateJobMroMap(jcc.getJobMroMap());
+        for (Job job : jobs) {
+            JobConf jobConfCopy = job.getJobConf();
+            jobConfCopy.set("pig.script.submitted.timestamp",
+                    Long.toString(scriptSubmittedTimestamp));
+            jobConfCopy.set("pig.job.submitted.timestamp",
+                    Long.toString(System.currentTimeMillis()));
+            job.setJobConf(jobConfCopy);
+            jc.addJob(job);
+        }
+        return jobs;
+    }
     
     private String getStackStraceStr(Throwable e) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -587,10 +701,24 @@ public class MapReduceLauncher extends Launcher{
             boolean doMapAgg = 
                     Boolean.valueOf(pc.getProperties().getProperty(PigConfiguration.PROP_EXEC_MAP_PARTAGG,"false"));
             CombinerOptimizer co = new CombinerOptimizer(plan, doMapAgg);
+            if (pc.getProperties().getProperty(PigConfiguration.PROP_EXEC_MAP_PARTAGG) == null) {
+                PigStatsStore statsStore = ScriptState.get().getStatsStore(pc);
+                if (statsStore != null) {
+                    co.setStatsStore(statsStore, Integer.valueOf(pc.getProperties().getProperty(
+                            PigConfiguration.PARTAGG_MINREDUCTION,
+                            String.valueOf(POPartialAgg.DEFAULT_MIN_REDUCTION))));
+                }
+            }
             co.visit();
             //display the warning message(s) from the CombinerOptimizer
             co.getMessageCollector().logMessages(MessageType.Warning, aggregateWarning, log);
         }
+
+        // spread the hot keys of the skewed group-bys that can be merged
+        // back, which depends on the combiner
+        SkewedGroupOptimizer sgo = new SkewedGroupOptimizer(plan, pc);
+        sgo.visit();
+        sgo.adjust();
         
         // Optimize the jobs that have a load/store only first MR job followed
         // by a sample job.
@@ -629,6 +757,16 @@ public class MapReduceLauncher extends Launcher{
         // splits.
         NoopFilterRemover fRem = new NoopFilterRemover(plan);
         fRem.visit();
+
+        // lets the loads of intermediate files skip the blocks that the
+        // filter after them cannot match
+        InterStorageFilterOptimizer isfo = new InterStorageFilterOptimizer(plan, pc);
+        isfo.visit();
+
+        // lets the columnar loads of intermediate files only read the fields
+        // that the plan after them uses
+        ColumnarProjectionOptimizer cpo = new ColumnarProjectionOptimizer(plan);
+        cpo.visit();
         
         boolean isMultiQuery = 
             "true".equalsIgnoreCase(pc.getProperties().getProperty("opt.multiquery","true"));
@@ -646,6 +784,27 @@ public class MapReduceLauncher extends Launcher{
         NoopStoreRemover sRem = new NoopStoreRemover(plan);
         sRem.visit();
       
+        // runs the replicated joins that directly follow each other in a
+        // single pass
+        boolean isFRJoinChain = "true".equalsIgnoreCase(
+                pc.getProperties().getProperty(PigConfiguration.FRJOIN_CHAIN, "false"));
+        if (isFRJoinChain && !pc.inIllustrator) {
+            FRJoinChainOptimizer fco = new FRJoinChainOptimizer(plan);
+            fco.visit();
+        }
+
+        // turn on batch mode for the filters that support it. This has to
+        // run before the EndOfAllInputSetter, as batching filters need the
+        // end of all input flag to flush their last batch.
+        boolean isBatch =
+            "true".equalsIgnoreCase(pc.getProperties().getProperty(PigConfiguration.PROP_EXEC_BATCH, "false"));
+        if (isBatch && !pc.inIllustrator) {
+            int batchSize = Integer.parseInt(pc.getProperties().getProperty(
+                    PigConfiguration.PROP_EXEC_BATCH_SIZE, String.valueOf(VectorBatch.DEFAULT_SIZE)));
+            BatchModeOptimizer bmo = new BatchModeOptimizer(plan, batchSize);
+            bmo.visit();
+        }
+
         // check whether stream operator is present
         // after MultiQueryOptimizer because it can shift streams from
         // map to reduce, etc.
@@ -657,6 +816,11 @@ public class MapReduceLauncher extends Launcher{
         if (isAccum) {
             AccumulatorOptimizer accum = new AccumulatorOptimizer(plan);
             accum.visit();
+        } else {
+            // the skewed group-bys whose hot keys all go to one reducer
+            // still run in accumulative mode if they can
+            AccumulatorOptimizer accum = new AccumulatorOptimizer(plan, true);
+            accum.visit();
         }
         return plan;
     }
@@ -102,6 +102,10 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
     
     //The quantiles file name if globalSort is true
     String quantFile;
+
+    // File that a sampling job keeps the quantile file of its ORDER BY in
+    // once it succeeded, see PigConfiguration.PROP_SORT_QUANTILE_CACHE_DIR
+    private String quantFileCache;
     
     //The sort order of the columns;
     //asc is true and desc is false
@@ -149,6 +153,14 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
     // Name of the partition file generated by sampling process,
     // Used by Skewed Join
 	private String skewedJoinPartitionFile;
+
+    // Name of the key distribution file generated by sampling the keys of
+    // a group-by, see PigConfiguration.PROP_SKEWED_GROUP
+    private String skewedGroupKeyDistFile;
+
+    // Set to true when the records of the hot keys of a skewed group-by are
+    // spread over several reducers, see SkewedGroupOptimizer
+    private boolean skewedGroupSpread = false;
 	
 	// Flag to communicate from MRCompiler to JobControlCompiler what kind of
 	// comparator is used by Hadoop for sorting for this MROper. 
@@ -316,6 +328,26 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
     	return skewedJoinPartitionFile;
     }
 
+    public boolean isSkewedGroup() {
+        return (skewedGroupKeyDistFile != null);
+    }
+
+    public void setSkewedGroupKeyDistFile(String file) {
+        skewedGroupKeyDistFile = file;
+    }
+
+    public String getSkewedGroupKeyDistFile() {
+        return skewedGroupKeyDistFile;
+    }
+
+    public boolean isSkewedGroupSpread() {
+        return skewedGroupSpread;
+    }
+
+    public void setSkewedGroupSpread(boolean spread) {
+        skewedGroupSpread = spread;
+    }
+
 	public void setSkewedJoin(boolean skJoin) {
 		this.skewedJoin = skJoin;
 	}
@@ -400,6 +432,14 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
         this.quantFile = quantFile;
     }
 
+    public String getQuantFileCache() {
+        return quantFileCache;
+    }
+
+    public void setQuantFileCache(String quantFileCache) {
+        this.quantFileCache = quantFileCache;
+    }
+
     public void setSortOrder(boolean[] sortOrder) {
         if(null == sortOrder) return;
         this.sortOrder = new boolean[sortOrder.length];
@@ -270,6 +270,12 @@ public class PhyPlanSetter extends PhyPlanVisitor {
         join.setParentPlan(parent);
     }
 
+    @Override
+    public void visitFRJoinChain(POFRJoinChain chain) throws VisitorException {
+        chain.setParentPlan(parent);
+        super.visitFRJoinChain(chain);
+    }
+
     @Override
     public void visitMergeJoin(POMergeJoin join) throws VisitorException {
         join.setParentPlan(parent);
@@ -298,6 +304,11 @@ public class PhyPlanSetter extends PhyPlanVisitor {
        poPartialAgg.setParentPlan(parent);
     }
 
+    @Override
+    public void visitReservoirSample(POReservoirSample reservoirSample) {
+        reservoirSample.setParentPlan(parent);
+    }
+
     @Override
     public void visitPOOptimizedForEach(POOptimizedForEach optimizedForEach) {
         optimizedForEach.setParentPlan(parent);
@@ -39,6 +39,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.NullablePartitionWritable;
 import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.io.PigNullableWritable;
 import org.apache.pig.impl.util.ObjectSerializer;
@@ -72,6 +73,10 @@ public class PigCombiner {
         
         PigContext pigContext = null;
         private volatile boolean initialized = false;
+
+        // Set when the map output keys are wrapped with the partition the
+        // SkewedPartitioner picked, as in skewed group-bys
+        private boolean partitionedKeys = false;
         
         /**
          * Configures the Reduce plan, the POPackage operator
@@ -138,6 +143,7 @@ public class PigCombiner {
                 pigHadoopLogger.setReporter(PigStatusReporter.getInstance());
 
                 PhysicalOperator.setPigLogger(pigHadoopLogger);
+                partitionedKeys = key instanceof NullablePartitionWritable;
             }
             
             // In the case we optimize, we combine
@@ -196,7 +202,18 @@ public class PigCombiner {
                             outKey.setIndex(index);
                             val.setIndex(index);
 
-                            oc.write(outKey, val);
+                            if (partitionedKeys) {
+                                // the key is wrapped again with no partition
+                                // set (-1). Hadoop writes the combined records
+                                // to the partition being combined without
+                                // calling the partitioner, and the partition
+                                // is not serialized with the key
+                                NullablePartitionWritable wrappedKey = new NullablePartitionWritable(outKey);
+                                wrappedKey.setPartition(-1);
+                                oc.write(wrappedKey, val);
+                            } else {
+                                oc.write(outKey, val);
+                            }
 
                             continue;
                         }
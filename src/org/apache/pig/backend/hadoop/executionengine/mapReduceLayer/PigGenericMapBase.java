@@ -43,6 +43,8 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
 import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultAbstractBag;
+import org.apache.pig.data.ParallelSorter;
 import org.apache.pig.data.SchemaTupleBackend;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -162,6 +164,8 @@ public abstract class PigGenericMapBase extends Mapper<Text, Tuple, PigNullableW
         
         Configuration job = context.getConfiguration();
         SpillableMemoryManager.configure(ConfigurationUtil.toProperties(job));
+        DefaultAbstractBag.configureSpill(job);
+        ParallelSorter.configure(job);
         PigMapReduce.sJobContext = context;
         PigMapReduce.sJobConfInternal.set(context.getConfiguration());
         PigMapReduce.sJobConf = context.getConfiguration();
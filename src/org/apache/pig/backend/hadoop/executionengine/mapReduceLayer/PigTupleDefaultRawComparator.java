@@ -28,6 +28,7 @@ import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.BinInterSedes;
+import org.apache.pig.data.BinInterSedes.BinInterSedesTupleRawComparator;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -41,6 +42,7 @@ public class PigTupleDefaultRawComparator extends WritableComparator implements
     private boolean[] mAsc;
     private boolean mWholeTuple;
     private boolean mHasNullField;
+    private BinInterSedesTupleRawComparator mRawComparator;
 
     public PigTupleDefaultRawComparator() {
         super(TupleFactory.getInstance().tupleClass());
@@ -65,6 +67,18 @@ public class PigTupleDefaultRawComparator extends WritableComparator implements
         // If there's only one entry in mAsc, it means it's for the whole
         // tuple. So we can't be looking for each column.
         mWholeTuple = (mAsc.length == 1);
+        // the tuples are read as BinInterSedes tuples, so they can be compared
+        // on their bytes the same way, this comparator has no secondary sort
+        JobConf rawConf = new JobConf(jconf);
+        rawConf.set("pig.secondarySortOrder", "");
+        mRawComparator = new BinInterSedesTupleRawComparator() {
+            @Override
+            protected int compareDeserialized(byte[] b1, int s1, int l1,
+                    byte[] b2, int s2, int l2) {
+                return compareReadTuples(b1, s1, l1, b2, s2, l2);
+            }
+        };
+        mRawComparator.setConf(rawConf);
     }
 
     public Configuration getConf() {
@@ -84,16 +98,22 @@ public class PigTupleDefaultRawComparator extends WritableComparator implements
      * compared. Otherwise the null one is defined to be less.
      */
     public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
-        int rc = 0;
+        // Users are allowed to implement their own versions of tuples, but
+        // they are serialized as BinInterSedes tuples, so they are compared
+        // on the raw data, falling back to reading them back for the types
+        // that cannot.
         mHasNullField = false;
+        int rc = mRawComparator.compare(b1, s1, l1, b2, s2, l2);
+        mHasNullField = mHasNullField || mRawComparator.hasComparedTupleNull();
+        return rc;
+    }
 
+    private int compareReadTuples(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
         Tuple t1;
         Tuple t2;
 
-        // This can't be done on the raw data. Users are allowed to
-        // implement their own versions of tuples, which means we have no
-        // idea what the underlying representation is. So step one is to
-        // instantiate each object as a tuple.
+        // The tuples of a custom TupleFactory may not read the BinInterSedes
+        // format themselves, so they are instantiated by BinInterSedes.
         try {
             t1 = bis.readTuple(new DataInputStream(new ByteArrayInputStream(b1, s1, l1)));
             t2 = bis.readTuple(new DataInputStream(new ByteArrayInputStream(b2, s2, l2)));
@@ -102,9 +122,7 @@ public class PigTupleDefaultRawComparator extends WritableComparator implements
             throw new RuntimeException(ioe.getMessage(), ioe);
         }
 
-        rc = compareTuple(t1, t2); //TODO think about how SchemaTuple could speed this up
-
-        return rc;
+        return compareTuple(t1, t2);
     }
 
     public int compare(Object o1, Object o2) {
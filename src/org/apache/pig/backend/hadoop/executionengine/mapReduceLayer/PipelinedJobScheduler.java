@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Picks the jobs of a map-reduce plan to submit as soon as the jobs they
+ * depend on are done, see {@link PigConfiguration#PROP_EXEC_PIPELINED}.
+ * <p>
+ * When there are more jobs ready than can run at the same time, the jobs
+ * at the head of the longest chain of remaining work go first. The work of
+ * a job is estimated from the size of its inputs, the inputs written by
+ * other jobs of the plan being assumed as large as the inputs of those jobs.
+ */
+public class PipelinedJobScheduler {
+
+    private static final Log log = LogFactory.getLog(PipelinedJobScheduler.class);
+
+    private final MROperPlan plan;
+
+    // maximum number of jobs running at the same time, 0 if unlimited
+    private final int maxJobs;
+
+    // estimated bytes read by each job
+    private final Map<MapReduceOper, Long> inputSizes = new HashMap<MapReduceOper, Long>();
+
+    // estimated bytes read by the longest chain of jobs starting at each job
+    private final Map<MapReduceOper, Long> criticalPaths = new HashMap<MapReduceOper, Long>();
+
+    // the jobs already handed out, they stay in the plan until they are done
+    private final Set<MapReduceOper> scheduled = new HashSet<MapReduceOper>();
+
+    public PipelinedJobScheduler(MROperPlan plan, Configuration conf) throws IOException {
+        this(plan, conf, conf.getInt(PigConfiguration.PROP_EXEC_PIPELINED_MAXJOBS, 0));
+    }
+
+    public PipelinedJobScheduler(MROperPlan plan, Configuration conf, int maxJobs)
+            throws IOException {
+        this.plan = plan;
+        this.maxJobs = maxJobs;
+        Job job = new Job(conf);
+        for (MapReduceOper mro : plan.getRoots()) {
+            getCriticalPath(mro, job);
+        }
+    }
+
+    /**
+     * Hands out the jobs to submit now: the jobs of the plan that depend on
+     * no other job and have not been handed out yet, except the native
+     * map-reduce jobs that are run apart.
+     * @param running the number of jobs handed out that are not done yet
+     * @return the jobs, longest critical path first
+     */
+    public List<MapReduceOper> getReadyJobs(int running) {
+        List<MapReduceOper> ready = new ArrayList<MapReduceOper>();
+        for (MapReduceOper mro : plan.getRoots()) {
+            if (!(mro instanceof NativeMapReduceOper) && !scheduled.contains(mro)) {
+                ready.add(mro);
+            }
+        }
+        Collections.sort(ready, new Comparator<MapReduceOper>() {
+            @Override
+            public int compare(MapReduceOper o1, MapReduceOper o2) {
+                return getCriticalPath(o2).compareTo(getCriticalPath(o1));
+            }
+        });
+        if (maxJobs > 0 && ready.size() > maxJobs - running) {
+            ready = new ArrayList<MapReduceOper>(ready.subList(0, Math.max(0, maxJobs - running)));
+        }
+        scheduled.addAll(ready);
+        return ready;
+    }
+
+    /**
+     * @return the estimated bytes read by the longest chain of jobs starting
+     * at mro
+     */
+    public Long getCriticalPath(MapReduceOper mro) {
+        Long path = criticalPaths.get(mro);
+        return path == null ? Long.valueOf(0) : path;
+    }
+
+    private long getCriticalPath(MapReduceOper mro, Job job) {
+        Long path = criticalPaths.get(mro);
+        if (path != null) {
+            return path;
+        }
+        long longest = 0;
+        List<MapReduceOper> successors = plan.getSuccessors(mro);
+        if (successors != null) {
+            for (MapReduceOper successor : successors) {
+                longest = Math.max(longest, getCriticalPath(successor, job));
+            }
+        }
+        path = getInputSize(mro, job) + longest;
+        criticalPaths.put(mro, path);
+        return path;
+    }
+
+    private long getInputSize(MapReduceOper mro, Job job) {
+        Long size = inputSizes.get(mro);
+        if (size != null) {
+            return size;
+        }
+        long total = 0;
+        try {
+            List<POLoad> loads = PlanHelper.getPhysicalOperators(mro.mapPlan, POLoad.class);
+            total = Math.max(0, InputSizeReducerEstimator.getTotalInputFileSize(
+                    job.getConfiguration(), loads, job));
+        } catch (VisitorException e) {
+            log.debug("Couldn't get the inputs of job " + mro.getOperatorKey(), e);
+        } catch (IOException e) {
+            log.debug("Couldn't get the input size of job " + mro.getOperatorKey(), e);
+        }
+        // the outputs of the jobs it depends on do not exist yet
+        List<MapReduceOper> predecessors = plan.getPredecessors(mro);
+        if (predecessors != null) {
+            for (MapReduceOper predecessor : predecessors) {
+                total += getInputSize(predecessor, job);
+            }
+        }
+        inputSizes.put(mro, total);
+        return total;
+    }
+}
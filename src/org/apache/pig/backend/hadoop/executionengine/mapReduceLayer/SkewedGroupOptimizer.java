@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCombinerPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileLocalizer;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.plan.optimizer.OptimizerException;
+import org.apache.pig.impl.util.Utils;
+
+/**
+ * Decides how the group-bys whose keys were sampled by the MRCompiler, see
+ * {@link org.apache.pig.PigConfiguration#PROP_SKEWED_GROUP}, handle their
+ * hot keys. It has to run after the {@link CombinerOptimizer}.
+ * <p>
+ * When the foreach after the group-by is algebraic, the records of a hot key
+ * are spread over several reducers by the SkewedPartitioner, as for the
+ * first input of a skewed join. The reducers then only run the intermediate
+ * form of the functions, like the combiner, and store their partial results,
+ * which a new job groups again to run the final form of the functions and
+ * the rest of the reduce plan. That job reads one record per key and
+ * reducer.
+ * <p>
+ * Otherwise all the records of a key have to reach the same reducer, so the
+ * group-by is left as it is: it runs in accumulative mode when its functions
+ * allow it, see {@link AccumulatorOptimizer}, and its hot keys are only
+ * reported when the job is submitted.
+ */
+public class SkewedGroupOptimizer extends MROpPlanVisitor {
+
+    private Log log = LogFactory.getLog(getClass());
+
+    private List<MapReduceOper> opsToSplit = new ArrayList<MapReduceOper>();
+
+    private PigContext pigContext;
+
+    private NodeIdGenerator nig;
+
+    public SkewedGroupOptimizer(MROperPlan plan, PigContext pigContext) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.pigContext = pigContext;
+        nig = NodeIdGenerator.getGenerator();
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (!mr.isSkewedGroup()) {
+            return;
+        }
+        if (isSplittable(mr)) {
+            opsToSplit.add(mr);
+        } else {
+            log.info("Group-by is not algebraic, its hot keys will not be spread over several reducers");
+        }
+    }
+
+    /**
+     * Splits the reduce plans of the algebraic skewed group-bys found by
+     * {@link #visit()}, which must not be done while walking the plan.
+     */
+    public void adjust() throws VisitorException {
+        for (MapReduceOper mr : opsToSplit) {
+            try {
+                split(mr);
+            } catch (Exception e) {
+                int errCode = 2018;
+                String msg = "Internal error. Unable to spread the hot keys of group-by.";
+                throw new OptimizerException(msg, errCode, PigException.BUG, e);
+            }
+        }
+    }
+
+    /**
+     * @return whether the CombinerOptimizer moved the foreach after the
+     * group-by to the combiner, so that the reduce plan starts with a
+     * POCombinerPackage followed by the foreach with the final form of the
+     * functions, and the combine plan runs their intermediate form
+     */
+    private boolean isSplittable(MapReduceOper mr) {
+        if (mr.combinePlan.isEmpty() || mr.reducePlan.isEmpty()) {
+            return false;
+        }
+        List<PhysicalOperator> roots = mr.reducePlan.getRoots();
+        if (roots.size() != 1 || !(roots.get(0) instanceof POCombinerPackage)) {
+            return false;
+        }
+        List<PhysicalOperator> leaves = mr.reducePlan.getLeaves();
+        if (leaves.size() != 1 || !(leaves.get(0) instanceof POStore)) {
+            return false;
+        }
+        List<PhysicalOperator> combineRoots = mr.combinePlan.getRoots();
+        List<PhysicalOperator> combineLeaves = mr.combinePlan.getLeaves();
+        if (combineRoots.size() != 1 || !(combineRoots.get(0) instanceof POCombinerPackage)
+                || combineLeaves.size() != 1 || !(combineLeaves.get(0) instanceof POLocalRearrange)) {
+            return false;
+        }
+        List<PhysicalOperator> succs = mr.combinePlan.getSuccessors(combineRoots.get(0));
+        return succs != null && succs.size() == 1 && succs.get(0) instanceof POForEach;
+    }
+
+    private void split(MapReduceOper mr) throws CloneNotSupportedException, IOException,
+            PlanException {
+        String scope = mr.getOperatorKey().getScope();
+        FileSpec fSpec = new FileSpec(FileLocalizer.getTemporaryPath(pigContext).toString(),
+                new FuncSpec(Utils.getTmpFileCompressorName(pigContext)));
+
+        // the merge job groups the partial results by their key again, as
+        // the combiner does, and runs the original reduce plan
+        MapReduceOper mergeOp = new MapReduceOper(new OperatorKey(scope, nig.getNextNodeId(scope)));
+        POLoad ld = new POLoad(new OperatorKey(scope, nig.getNextNodeId(scope)));
+        ld.setPc(pigContext);
+        ld.setLFile(fSpec);
+        mergeOp.mapPlan.add(ld);
+        mergeOp.mapPlan.addAsLeaf(mr.combinePlan.getLeaves().get(0).clone());
+        mergeOp.reducePlan = mr.reducePlan;
+        mergeOp.setMapDone(true);
+        mergeOp.setReduceDone(true);
+        mergeOp.markGroupBy();
+        mergeOp.requestedParallelism = mr.requestedParallelism;
+        mergeOp.limit = mr.limit;
+        mergeOp.limitPlan = mr.limitPlan;
+        mergeOp.UDFs.addAll(mr.UDFs);
+        mergeOp.scalars.addAll(mr.scalars);
+        mr.limit = -1;
+        mr.limitPlan = null;
+
+        // the reducers of the skewed job run the combine plan instead,
+        // storing its output rather than rearranging it
+        PhysicalPlan partialPlan = mr.combinePlan.clone();
+        partialPlan.remove(partialPlan.getLeaves().get(0));
+        POStore st = new POStore(new OperatorKey(scope, nig.getNextNodeId(scope)));
+        st.setSFile(fSpec);
+        st.setIsTmpStore(true);
+        partialPlan.addAsLeaf(st);
+        mr.reducePlan = partialPlan;
+        mr.setSkewedJoinPartitionFile(mr.getSkewedGroupKeyDistFile());
+        mr.setSkewedGroupSpread(true);
+
+        // save a snapshot of the successors, as the plan is modified
+        List<MapReduceOper> successors = new ArrayList<MapReduceOper>();
+        if (mPlan.getSuccessors(mr) != null) {
+            successors.addAll(mPlan.getSuccessors(mr));
+        }
+        mPlan.add(mergeOp);
+        mPlan.connect(mr, mergeOp);
+        for (MapReduceOper succ : successors) {
+            mPlan.disconnect(mr, succ);
+            mPlan.connect(mergeOp, succ);
+        }
+        log.info("Spreading the hot keys of group-by over several reducers, "
+                + "merging their partial results in an extra job");
+    }
+}
@@ -32,6 +32,7 @@ import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.HDataType;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
@@ -128,6 +129,9 @@ public class WeightedRangePartitioner extends Partitioner<PigNullableWritable, W
                     conf.set("pig.tmpfilecompression.codec", configuration.get("pig.tmpfilecompression.codec"));
             }
             }
+            if (configuration.getBoolean(PigConfiguration.PROP_TMPFILE_COLUMNAR, false)) {
+                conf.setBoolean(PigConfiguration.PROP_TMPFILE_COLUMNAR, true);
+            }
             conf.set(MapRedUtil.FILE_SYSTEM_NAME, "file:///");
 
             ReadToEndLoader loader = new ReadToEndLoader(Utils.getTmpFileStorageObject(conf),
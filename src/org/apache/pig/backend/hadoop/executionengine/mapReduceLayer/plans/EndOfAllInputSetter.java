@@ -21,9 +21,11 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POReservoirSample;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
 import org.apache.pig.impl.plan.DepthFirstWalker;
@@ -101,6 +103,20 @@ public class EndOfAllInputSetter extends MROpPlanVisitor {
             endOfAllInputFlag = true;
         }
 
+        @Override
+        public void visitReservoirSample(POReservoirSample reservoirSample) {
+            // the sample is returned at the end of the input
+            endOfAllInputFlag = true;
+        }
+
+        @Override
+        public void visitFilter(POFilter fl) throws VisitorException {
+            // a filter in batch mode holds back its last partial batch
+            if (fl.isBatchMode()) {
+                endOfAllInputFlag = true;
+            }
+        }
+
         /**
          * @return if end of all input is present
          */
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.Tuple;
+
+/**
+ * Base class of the classes generated by {@link ExpressionClassGenerator}.
+ * A generated class evaluates a whole expression plan on an input tuple
+ * with primitive locals, without walking the operator tree or allocating
+ * a Result per operator.
+ */
+public abstract class CompiledExpression {
+
+    /**
+     * Returned by {@link #evaluate(Tuple)} when the input holds a value the
+     * generated code does not handle (a field of an unexpected type, a
+     * missing field, a division by zero). The caller then has to evaluate
+     * the expression plan itself, which knows how to warn about or report
+     * the problem.
+     */
+    public static final Object UNSUPPORTED = new Object();
+
+    /**
+     * Set the values of the constants of the expression plan. The generated
+     * code only depends on the types of the constants, so that a class can
+     * be shared by the plans that only differ in the values.
+     * @param constants values of the constants, in the order they were
+     * encountered by the generator
+     */
+    protected abstract void init(Object[] constants);
+
+    /**
+     * @param t input tuple
+     * @return the value of the expression, boxed as the expression plan
+     * would have returned it, or {@link #UNSUPPORTED}
+     * @throws ExecException
+     */
+    public abstract Object evaluate(Tuple t) throws ExecException;
+}
@@ -0,0 +1,624 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LessThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Mod;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Multiply;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.NotEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POBinCond;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Subtract;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.util.JavaCompilerHelper;
+
+import com.google.common.io.Files;
+
+/**
+ * This class generates a {@link CompiledExpression} for a physical expression
+ * plan. As for SchemaTuples, the Java code of the class is produced as a
+ * String and compiled with the {@link JavaCompilerHelper}; this is done in the
+ * task, the first time an operator evaluates the plan.
+ *
+ * Generated classes are cached by their code, which only depends on the shape
+ * of the plan and the types involved, not on the values of the constants. The
+ * plans of a script that only differ in their constants share a class, as do
+ * the tasks that run in a reused JVM.
+ *
+ * Only projections of single columns, constants, numeric casts, Add,
+ * Subtract, Multiply, Divide, Mod, negation, the comparison operators, AND,
+ * OR, NOT, IS NULL and bincond over int, long, float, double, boolean and
+ * chararray values are supported. For any other plan the generator returns
+ * null and the plan is interpreted as usual.
+ */
+public class ExpressionClassGenerator {
+    private static final Log LOG = LogFactory.getLog(ExpressionClassGenerator.class);
+
+    private static final String CLASS_NAME_PREFIX = "CompiledExpression_";
+
+    // The generated classes, by the code of their body
+    private static final Map<String, Class<? extends CompiledExpression>> classes =
+            new HashMap<String, Class<? extends CompiledExpression>>();
+
+    private static int nextGlobalClassIdentifier = 0;
+
+    private static File codeDir;
+
+    private static URLClassLoader classLoader;
+
+    // Set once a class could not be compiled, most likely because the
+    // task runs on a JRE that has no Java compiler
+    private static boolean compilerFailed = false;
+
+    /**
+     * A value computed by the generated code, given as the Java expression
+     * that tells whether it is null and the one for the value itself.
+     */
+    private static class Operand {
+        final byte type;
+        final String isNull;
+        final String value;
+
+        Operand(byte type, String isNull, String value) {
+            this.type = type;
+            this.isNull = isNull;
+            this.value = value;
+        }
+    }
+
+    private final PhysicalPlan plan;
+
+    private final List<Object> constants = new ArrayList<Object>();
+
+    private final StringBuilder fields = new StringBuilder();
+
+    private final StringBuilder init = new StringBuilder();
+
+    private final StringBuilder locals = new StringBuilder();
+
+    private final StringBuilder code = new StringBuilder();
+
+    private int nextLocal = 0;
+
+    private int indent = 2;
+
+    private ExpressionClassGenerator(PhysicalPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * @return true if expression plans are to be compiled for the job
+     * being run, see {@link PigConfiguration#PROP_EXEC_CODEGEN}
+     */
+    public static boolean isEnabled() {
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        if (conf == null || !conf.getBoolean(PigConfiguration.PROP_EXEC_CODEGEN, false)) {
+            return false;
+        }
+        synchronized (ExpressionClassGenerator.class) {
+            return !compilerFailed;
+        }
+    }
+
+    /**
+     * @param plan expression plan with a single leaf
+     * @return an instance of the class generated for the plan, or null if
+     * the plan cannot be compiled
+     */
+    public static CompiledExpression compile(PhysicalPlan plan) {
+        List<PhysicalOperator> leaves = plan.getLeaves();
+        if (leaves == null || leaves.size() != 1) {
+            return null;
+        }
+        ExpressionClassGenerator gen = new ExpressionClassGenerator(plan);
+        Operand result = gen.generate(leaves.get(0));
+        if (result == null) {
+            return null;
+        }
+        Class<? extends CompiledExpression> clazz = getCompiledClass(gen.produceCodeString(result));
+        if (clazz == null) {
+            return null;
+        }
+        CompiledExpression expr;
+        try {
+            expr = clazz.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException("Unable to instantiate " + clazz.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to instantiate " + clazz.getName(), e);
+        }
+        expr.init(gen.constants.toArray());
+        return expr;
+    }
+
+    /**
+     * Returns the class with the given body, compiling it if this is the
+     * first time it is asked for.
+     * @return the class, or null if it could not be compiled
+     */
+    private static synchronized Class<? extends CompiledExpression> getCompiledClass(String body) {
+        if (compilerFailed) {
+            return null;
+        }
+        Class<? extends CompiledExpression> clazz = classes.get(body);
+        if (clazz != null) {
+            return clazz;
+        }
+
+        String name = CLASS_NAME_PREFIX + nextGlobalClassIdentifier++;
+        StringBuilder sb = new StringBuilder();
+        sb.append("import org.apache.pig.backend.executionengine.ExecException;\n");
+        sb.append("import org.apache.pig.data.Tuple;\n\n");
+        sb.append("public class ").append(name).append(" extends ")
+                .append(CompiledExpression.class.getName()).append(" {\n");
+        sb.append(body);
+        sb.append("}\n");
+
+        try {
+            if (codeDir == null) {
+                codeDir = Files.createTempDir();
+                codeDir.deleteOnExit();
+                classLoader = new URLClassLoader(new URL[] { codeDir.toURI().toURL() },
+                        CompiledExpression.class.getClassLoader());
+            }
+            LOG.info("Compiling class " + name + " for expression plan");
+            JavaCompilerHelper compiler = new JavaCompilerHelper();
+            compiler.compile(codeDir.getAbsolutePath(),
+                    new JavaCompilerHelper.JavaSourceFromString(name, sb.toString()));
+            clazz = classLoader.loadClass(name).asSubclass(CompiledExpression.class);
+        } catch (Exception e) {
+            LOG.warn("Unable to compile expression plans, they will be interpreted", e);
+            compilerFailed = true;
+            return null;
+        }
+        classes.put(body, clazz);
+        return clazz;
+    }
+
+    private String produceCodeString(Operand result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(fields);
+        sb.append("\n");
+        sb.append("    @Override\n");
+        sb.append("    protected void init(Object[] constants) {\n");
+        sb.append(init);
+        sb.append("    }\n\n");
+        sb.append("    @Override\n");
+        sb.append("    public Object evaluate(Tuple t) throws ExecException {\n");
+        sb.append("        if (t == null) {\n");
+        sb.append("            return UNSUPPORTED;\n");
+        sb.append("        }\n");
+        sb.append("        Object o;\n");
+        sb.append(locals);
+        sb.append(code);
+        sb.append("        return ").append(result.isNull).append(" ? null : ")
+                .append(box(result.type, result.value)).append(";\n");
+        sb.append("    }\n");
+        return sb.toString();
+    }
+
+    private void add(String line) {
+        for (int i = 0; i < indent; i++) {
+            code.append("    ");
+        }
+        code.append(line).append("\n");
+    }
+
+    /**
+     * Declare a new pair of locals, nK for whether the value is null
+     * and vK for the value.
+     * @return K
+     */
+    private int newLocal(byte type) {
+        int k = nextLocal++;
+        locals.append("        boolean n").append(k).append(" = false;\n");
+        locals.append("        ").append(javaType(type)).append(" v").append(k)
+                .append(" = ").append(defaultValue(type)).append(";\n");
+        return k;
+    }
+
+    private Operand generate(PhysicalOperator op) {
+        if (op == null) {
+            return null;
+        }
+        if (op.getClass() == POProject.class) {
+            return generateProject((POProject) op);
+        } else if (op instanceof ConstantExpression) {
+            return generateConstant((ConstantExpression) op);
+        } else if (op instanceof POCast) {
+            return generateCast((POCast) op);
+        } else if (op instanceof Add || op instanceof Subtract || op instanceof Multiply
+                || op instanceof Divide || op instanceof Mod) {
+            return generateArithmetic((BinaryExpressionOperator) op);
+        } else if (op instanceof POAnd || op instanceof POOr) {
+            // checked before the comparisons, as AND and OR are binary
+            // comparison operators too
+            return generateLogical((BinaryExpressionOperator) op, op instanceof POAnd);
+        } else if (op instanceof BinaryComparisonOperator) {
+            return generateComparison((BinaryComparisonOperator) op);
+        } else if (op instanceof PONot) {
+            Operand in = generateBoolean(((PONot) op).getExpr());
+            return in == null ? null : new Operand(DataType.BOOLEAN, in.isNull, "!(" + in.value + ")");
+        } else if (op instanceof POIsNull) {
+            return generateIsNull((POIsNull) op);
+        } else if (op instanceof PONegative) {
+            byte type = op.getResultType();
+            Operand in = generate(((PONegative) op).getExpr());
+            if (!isNumeric(type) || in == null || in.type != type) {
+                return null;
+            }
+            return new Operand(type, in.isNull, "(-(" + in.value + "))");
+        } else if (op instanceof POBinCond) {
+            return generateBinCond((POBinCond) op);
+        }
+        return null;
+    }
+
+    private Operand generateBoolean(PhysicalOperator op) {
+        Operand o = generate(op);
+        return (o != null && o.type == DataType.BOOLEAN) ? o : null;
+    }
+
+    private Operand generateProject(POProject project) {
+        byte type = project.getResultType();
+        if (plan.getPredecessors(project) != null || project.isStar() || project.isProjectToEnd()
+                || project.isOverloaded() || project.getColumns().size() != 1
+                || !isSupportedType(type)) {
+            return null;
+        }
+        int col = project.getColumns().get(0);
+        int k = newLocal(type);
+        add("if (t.size() <= " + col + ") {");
+        add("    return UNSUPPORTED;");
+        add("}");
+        add("o = t.get(" + col + ");");
+        add("if (o == null) {");
+        add("    n" + k + " = true;");
+        add("} else if (o instanceof " + boxedType(type) + ") {");
+        add("    v" + k + " = " + unbox(type, "o") + ";");
+        add("} else {");
+        add("    return UNSUPPORTED;");
+        add("}");
+        return new Operand(type, "n" + k, "v" + k);
+    }
+
+    private Operand generateConstant(ConstantExpression constant) {
+        byte type = constant.getResultType();
+        if (!isSupportedType(type)) {
+            return null;
+        }
+        Object value = constant.getValue();
+        if (value == null) {
+            return new Operand(type, "true", defaultValue(type));
+        }
+        if (DataType.findType(value) != type) {
+            return null;
+        }
+        int k = constants.size();
+        constants.add(value);
+        fields.append("    private ").append(javaType(type)).append(" c").append(k).append(";\n");
+        init.append("        c").append(k).append(" = ")
+                .append(unbox(type, "constants[" + k + "]")).append(";\n");
+        return new Operand(type, "false", "c" + k);
+    }
+
+    private Operand generateCast(POCast cast) {
+        byte type = cast.getResultType();
+        List<PhysicalOperator> preds = plan.getPredecessors(cast);
+        if (!isNumeric(type) || preds == null || preds.size() != 1) {
+            return null;
+        }
+        Operand in = generate(preds.get(0));
+        if (in == null || !isNumeric(in.type)) {
+            return null;
+        }
+        if (in.type == type) {
+            return in;
+        }
+        return new Operand(type, in.isNull, "((" + javaType(type) + ") " + in.value + ")");
+    }
+
+    private Operand generateArithmetic(BinaryExpressionOperator op) {
+        byte type = op.getResultType();
+        if (!isNumeric(type)) {
+            return null;
+        }
+        String operator;
+        if (op instanceof Add) {
+            operator = "+";
+        } else if (op instanceof Subtract) {
+            operator = "-";
+        } else if (op instanceof Multiply) {
+            operator = "*";
+        } else if (op instanceof Divide) {
+            operator = "/";
+        } else {
+            if (type != DataType.INTEGER && type != DataType.LONG) {
+                return null;
+            }
+            operator = "%";
+        }
+        Operand lhs = generate(op.getLhs());
+        Operand rhs = generate(op.getRhs());
+        if (lhs == null || rhs == null || lhs.type != type || rhs.type != type) {
+            return null;
+        }
+        int k = newLocal(type);
+        add("n" + k + " = " + lhs.isNull + " || " + rhs.isNull + ";");
+        add("if (!n" + k + ") {");
+        if (op instanceof Divide || op instanceof Mod) {
+            // leave it to the operator to warn about the division by zero
+            add("    if (" + isZero(type, rhs.value) + ") {");
+            add("        return UNSUPPORTED;");
+            add("    }");
+        }
+        add("    v" + k + " = " + lhs.value + " " + operator + " " + rhs.value + ";");
+        add("}");
+        return new Operand(type, "n" + k, "v" + k);
+    }
+
+    private Operand generateLogical(BinaryExpressionOperator op, boolean isAnd) {
+        Operand lhs = generateBoolean(op.getLhs());
+        if (lhs == null) {
+            return null;
+        }
+        int k = newLocal(DataType.BOOLEAN);
+        // short circuit when the lhs is false for AND, true for OR
+        add("if (!" + lhs.isNull + " && " + (isAnd ? "!" : "") + "(" + lhs.value + ")) {");
+        add("    n" + k + " = false;");
+        add("    v" + k + " = " + !isAnd + ";");
+        add("} else {");
+        indent++;
+        Operand rhs = generateBoolean(op.getRhs());
+        if (rhs == null) {
+            return null;
+        }
+        // a null lhs gives null, unless the rhs decides on its own
+        add("n" + k + " = " + rhs.isNull + " || (" + lhs.isNull + " && "
+                + (isAnd ? "" : "!") + "(" + rhs.value + "));");
+        add("v" + k + " = " + rhs.value + ";");
+        indent--;
+        add("}");
+        return new Operand(DataType.BOOLEAN, "n" + k, "v" + k);
+    }
+
+    private Operand generateComparison(BinaryComparisonOperator op) {
+        byte type = op.getOperandType();
+        if (!isSupportedType(type)) {
+            return null;
+        }
+        String operator;
+        if (op instanceof EqualToExpr) {
+            operator = "==";
+        } else if (op instanceof NotEqualToExpr) {
+            operator = "!=";
+        } else if (op instanceof GreaterThanExpr) {
+            operator = ">";
+        } else if (op instanceof GTOrEqualToExpr) {
+            operator = ">=";
+        } else if (op instanceof LessThanExpr) {
+            operator = "<";
+        } else if (op instanceof LTOrEqualToExpr) {
+            operator = "<=";
+        } else {
+            return null;
+        }
+        Operand lhs = generate(op.getLhs());
+        Operand rhs = generate(op.getRhs());
+        if (lhs == null || rhs == null || lhs.type != type || rhs.type != type) {
+            return null;
+        }
+        int k = newLocal(DataType.BOOLEAN);
+        add("n" + k + " = " + lhs.isNull + " || " + rhs.isNull + ";");
+        add("if (!n" + k + ") {");
+        add("    v" + k + " = " + compare(type, lhs.value, rhs.value, operator) + ";");
+        add("}");
+        return new Operand(DataType.BOOLEAN, "n" + k, "v" + k);
+    }
+
+    private Operand generateIsNull(POIsNull isNull) {
+        PhysicalOperator expr = isNull.getExpr();
+        // boolean operators return a null result with a NULL status, which
+        // IS NULL passes on rather than turning into true
+        if (expr != null && expr.getResultType() == DataType.BOOLEAN
+                && !(expr instanceof POProject || expr instanceof ConstantExpression)) {
+            return null;
+        }
+        Operand in = generate(expr);
+        return in == null ? null : new Operand(DataType.BOOLEAN, "false", in.isNull);
+    }
+
+    private Operand generateBinCond(POBinCond binCond) {
+        byte type = binCond.getResultType();
+        if (!isSupportedType(type)) {
+            return null;
+        }
+        Operand cond = generateBoolean(binCond.getCond());
+        if (cond == null) {
+            return null;
+        }
+        int k = newLocal(type);
+        add("if (" + cond.isNull + ") {");
+        add("    n" + k + " = true;");
+        add("} else if (" + cond.value + ") {");
+        indent++;
+        Operand lhs = generate(binCond.getLhs());
+        if (lhs == null || lhs.type != type) {
+            return null;
+        }
+        add("n" + k + " = " + lhs.isNull + ";");
+        add("v" + k + " = " + lhs.value + ";");
+        indent--;
+        add("} else {");
+        indent++;
+        Operand rhs = generate(binCond.getRhs());
+        if (rhs == null || rhs.type != type) {
+            return null;
+        }
+        add("n" + k + " = " + rhs.isNull + ";");
+        add("v" + k + " = " + rhs.value + ";");
+        indent--;
+        add("}");
+        return new Operand(type, "n" + k, "v" + k);
+    }
+
+    /**
+     * Comparisons have the semantics of compareTo() on the boxed values,
+     * which the comparison operators use.
+     */
+    private static String compare(byte type, String lhs, String rhs, String operator) {
+        switch (type) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+            return lhs + " " + operator + " " + rhs;
+        case DataType.FLOAT:
+            return "Float.compare(" + lhs + ", " + rhs + ") " + operator + " 0";
+        case DataType.DOUBLE:
+            return "Double.compare(" + lhs + ", " + rhs + ") " + operator + " 0";
+        case DataType.BOOLEAN:
+            return "(" + lhs + " == " + rhs + " ? 0 : (" + lhs + " ? 1 : -1)) " + operator + " 0";
+        case DataType.CHARARRAY:
+            return lhs + ".compareTo(" + rhs + ") " + operator + " 0";
+        default:
+            throw new IllegalArgumentException("Unexpected type " + DataType.findTypeName(type));
+        }
+    }
+
+    /**
+     * Zero as tested by Divide, which compares the boxed values with
+     * equals(); -0.0 is not zero.
+     */
+    private static String isZero(byte type, String value) {
+        switch (type) {
+        case DataType.FLOAT:
+            return "Float.floatToIntBits(" + value + ") == 0";
+        case DataType.DOUBLE:
+            return "Double.doubleToLongBits(" + value + ") == 0L";
+        default:
+            return value + " == 0";
+        }
+    }
+
+    private static String javaType(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "int";
+        case DataType.LONG:
+            return "long";
+        case DataType.FLOAT:
+            return "float";
+        case DataType.DOUBLE:
+            return "double";
+        case DataType.BOOLEAN:
+            return "boolean";
+        case DataType.CHARARRAY:
+            return "String";
+        default:
+            throw new IllegalArgumentException("Unexpected type " + DataType.findTypeName(type));
+        }
+    }
+
+    private static String boxedType(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "Integer";
+        case DataType.LONG:
+            return "Long";
+        case DataType.FLOAT:
+            return "Float";
+        case DataType.DOUBLE:
+            return "Double";
+        case DataType.BOOLEAN:
+            return "Boolean";
+        case DataType.CHARARRAY:
+            return "String";
+        default:
+            throw new IllegalArgumentException("Unexpected type " + DataType.findTypeName(type));
+        }
+    }
+
+    private static String defaultValue(byte type) {
+        switch (type) {
+        case DataType.LONG:
+            return "0L";
+        case DataType.FLOAT:
+            return "0.0f";
+        case DataType.DOUBLE:
+            return "0.0";
+        case DataType.BOOLEAN:
+            return "false";
+        case DataType.CHARARRAY:
+            return "((String) null)";
+        default:
+            return "0";
+        }
+    }
+
+    private static String unbox(byte type, String value) {
+        if (type == DataType.CHARARRAY) {
+            return "(String) " + value;
+        }
+        return "((" + boxedType(type) + ") " + value + ")." + javaType(type) + "Value()";
+    }
+
+    private static String box(byte type, String value) {
+        if (type == DataType.CHARARRAY) {
+            return value;
+        }
+        return boxedType(type) + ".valueOf(" + value + ")";
+    }
+
+    private static boolean isSupportedType(byte type) {
+        return isNumeric(type) || type == DataType.BOOLEAN || type == DataType.CHARARRAY;
+    }
+
+    private static boolean isNumeric(byte type) {
+        return type == DataType.INTEGER || type == DataType.LONG
+                || type == DataType.FLOAT || type == DataType.DOUBLE;
+    }
+}
@@ -264,6 +264,18 @@ public class PhyPlanVisitor extends PlanVisitor<PhysicalOperator,PhysicalPlan> {
         //do nothing
     }
 
+    /**
+     * Visits each of the joins of the chain, so that the visitors of
+     * replicated joins see the ones that were chained as well.
+     * @param chain
+     * @throws VisitorException
+     */
+    public void visitFRJoinChain(POFRJoinChain chain) throws VisitorException {
+        for (POFRJoin join : chain.getJoins()) {
+            visitFRJoin(join);
+        }
+    }
+
     public void visitMergeJoin(POMergeJoin join) throws VisitorException {
         //do nothing
     }
@@ -316,5 +328,8 @@ public class PhyPlanVisitor extends PlanVisitor<PhysicalOperator,PhysicalPlan> {
 
     }
 
+    public void visitReservoirSample(POReservoirSample reservoirSample) {
+    }
+
 
 }
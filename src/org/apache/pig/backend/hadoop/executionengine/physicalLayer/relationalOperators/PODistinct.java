@@ -26,16 +26,14 @@ import java.util.HashSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pig.backend.executionengine.ExecException;
-import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
-import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.DistinctDataBag;
-import org.apache.pig.data.InternalDistinctBag;
+import org.apache.pig.data.HashedDistinctBag;
 import org.apache.pig.data.InternalSortedBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.plan.NodeIdGenerator;
@@ -86,17 +84,10 @@ public class PODistinct extends PhysicalOperator implements Cloneable {
          if (!inputsAccumulated) {
             Result in = processInput();    
             
-            // by default, we create InternalSortedBag, unless user configures
-			// explicitly to use old bag
-           	String bagType = null;
-            if (PigMapReduce.sJobConfInternal.get() != null) {
-       			bagType = PigMapReduce.sJobConfInternal.get().get("pig.cachedbag.distinct.type");       			
-       	    }            
-            if (bagType != null && bagType.equalsIgnoreCase("default")) {        	    	
-            	distinctBag = BagFactory.getInstance().newDistinctBag();    			
-       	    } else {
-       	    	distinctBag = new InternalDistinctBag(3);
-    	    }
+            // by default, we create InternalDistinctBag, unless user configures
+            // explicitly to use another bag. The tuples are read back, so
+            // the bag may not be approximate
+            distinctBag = HashedDistinctBag.newDistinctBag(false);
             
             while (in.returnStatus != POStatus.STATUS_EOP) {
                 if (in.returnStatus == POStatus.STATUS_ERR) {
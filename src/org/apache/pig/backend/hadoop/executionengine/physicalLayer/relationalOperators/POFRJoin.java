@@ -17,6 +17,7 @@
  */
 package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
@@ -28,10 +29,15 @@ import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
@@ -49,11 +55,13 @@ import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.io.MappedTupleTable;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
 import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.PlanException;
 import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.TaskJVMCache;
 
 /**
  * The operator models the join keys using the Local Rearrange operators which
@@ -64,6 +72,11 @@ import org.apache.pig.impl.plan.VisitorException;
  * value. It configures a foreach operator with the databags obtained from each
  * Hashtable for the key and also with the value for the fragment input. It then
  * returns tuples returned by this foreach operator.
+ * If {@link PigConfiguration#FRJOIN_MMAP} is set, the replicated inputs are
+ * instead written once per node into {@link MappedTupleTable}s which are
+ * memory mapped by all the tasks of the job on that node. Otherwise, when
+ * the JVMs of the tasks are reused, the hash tables are kept in the
+ * {@link TaskJVMCache} for the next tasks of the job.
  */
 
 // We intentionally skip type checking in backend for performance reasons
@@ -93,6 +106,9 @@ public class POFRJoin extends PhysicalOperator {
     // null
     // fragment is the input which is fragmented and not replicated.
     private TupleToMapKey replicates[];
+    // The memory mapped tables, one per replicated input, used instead of
+    // replicates when the tables are memory mapped
+    private transient MappedTupleTable mappedReplicates[];
     // varaible which denotes whether we are returning tuples from the foreach
     // operator
     private boolean processingPlan;
@@ -288,15 +304,15 @@ public class POFRJoin extends PhysicalOperator {
                     ce.setValue(value);
                     continue;
                 }
-                TupleToMapKey replicate = replicates[i];
-                if (replicate.get(key) == null) {
+                List<Tuple> matches = getReplicatedTuples(i, key);
+                if (matches == null) {
                     if (isLeftOuterJoin) {
                         ce.setValue(nullBag);
                     }
                     noMatch = true;
                     break;
                 }
-                ce.setValue(new NonSpillableDataBag(replicate.get(key).getList()));
+                ce.setValue(new NonSpillableDataBag(matches));
             }
 
             // If this is not LeftOuter Join and there was no match we
@@ -318,6 +334,90 @@ public class POFRJoin extends PhysicalOperator {
         }
     }
 
+    /**
+     * Joins one tuple of the fragment with the replicated inputs, for the
+     * operators that drive this join themselves instead of attaching it to
+     * an input, such as {@link POFRJoinChain}. The joined tuples are built
+     * directly, without going through the foreach operator.
+     *
+     * @param input a tuple of the fragment
+     * @return the joined tuples, empty if the tuple has no match
+     * @throws ExecException
+     */
+    public List<Tuple> join(Tuple input) throws ExecException {
+        if (!setUp) {
+            setUpHashMap();
+            setUp = true;
+        }
+        POLocalRearrange lr = LRs[fragment];
+        lr.attachInput(input);
+        Result lrOut = lr.getNextTuple();
+        if (lrOut.returnStatus != POStatus.STATUS_OK) {
+            int errCode = 2086;
+            String msg = "LocalRearrange isn't configured right or is not working";
+            throw new ExecException(msg, errCode, PigException.BUG);
+        }
+        Tuple lrOutTuple = (Tuple) lrOut.result;
+        Tuple key = mTupleFactory.newTuple(1);
+        key.set(0, lrOutTuple.get(1));
+        Tuple value = getValueTuple(lr, lrOutTuple);
+        lr.detachInput();
+
+        List<List<Tuple>> matches = new ArrayList<List<Tuple>>(constExps.length);
+        for (int i = 0; i < constExps.length; i++) {
+            if (i == fragment) {
+                matches.add(Arrays.asList(value));
+                continue;
+            }
+            List<Tuple> tuples = getReplicatedTuples(i, key);
+            if (tuples == null) {
+                if (!isLeftOuterJoin) {
+                    return new ArrayList<Tuple>(0);
+                }
+                tuples = Arrays.asList(nullBag.iterator().next());
+            }
+            matches.add(tuples);
+        }
+        List<Tuple> joined = new ArrayList<Tuple>();
+        crossProduct(matches, 0, new Tuple[matches.size()], joined);
+        return joined;
+    }
+
+    /*
+     * Adds to joined the concatenation of the fields of each combination of
+     * one tuple per input, like the flattening foreach operator does
+     */
+    private void crossProduct(List<List<Tuple>> matches, int input, Tuple[] picked,
+            List<Tuple> joined) throws ExecException {
+        if (input == matches.size()) {
+            int size = 0;
+            for (Tuple t : picked) {
+                size += t.size();
+            }
+            Tuple out = mTupleFactory.newTuple(size);
+            int j = 0;
+            for (Tuple t : picked) {
+                for (int f = 0; f < t.size(); f++) {
+                    out.set(j++, t.get(f));
+                }
+            }
+            joined.add(out);
+            return;
+        }
+        for (Tuple t : matches.get(input)) {
+            picked[input] = t;
+            crossProduct(matches, input + 1, picked, joined);
+        }
+    }
+
+    private List<Tuple> getReplicatedTuples(int input, Tuple key) throws ExecException {
+        if (mappedReplicates != null) {
+            return mappedReplicates[input].get(key.get(0));
+        }
+        TuplesToSchemaTupleList tuples = replicates[input].get(key);
+        return tuples == null ? null : tuples.getList();
+    }
+
     private static class TupleToMapKey {
         private HashMap<Tuple, TuplesToSchemaTupleList> tuples;
         private SchemaTupleFactory tf;
@@ -349,8 +449,123 @@ public class POFRJoin extends PhysicalOperator {
      * @throws ExecException
      */
     private void setUpHashMap() throws ExecException {
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        if (conf != null && conf.getBoolean(PigConfiguration.FRJOIN_MMAP, false)) {
+            setUpMappedTables(conf);
+            return;
+        }
         SchemaTupleFactory[] inputSchemaTupleFactories = new SchemaTupleFactory[inputSchemas.length];
         SchemaTupleFactory[] keySchemaTupleFactories = new SchemaTupleFactory[inputSchemas.length];
+        setUpSchemaTupleFactories(inputSchemaTupleFactories, keySchemaTupleFactories);
+
+        long time1 = System.currentTimeMillis();
+        for (int i = 0; i < replFiles.length; i++) {
+            if (i == fragment) {
+                replicates[i] = null;
+                continue;
+            }
+            if (TaskJVMCache.isEnabled(conf)) {
+                // the tasks of the job that run in this JVM share the table
+                final int input = i;
+                final SchemaTupleFactory inputSchemaTupleFactory = inputSchemaTupleFactories[i];
+                final SchemaTupleFactory keySchemaTupleFactory = keySchemaTupleFactories[i];
+                try {
+                    Path path = FileSystem.getLocal(conf).makeQualified(
+                            new Path(replFiles[i].getFileName()));
+                    replicates[i] = TaskJVMCache.get(conf, "frjoin-" + mKey + "-" + i, path,
+                            new TaskJVMCache.Loader<TupleToMapKey>() {
+                                @Override
+                                public TupleToMapKey load() throws IOException {
+                                    return buildHashMap(input, inputSchemaTupleFactory,
+                                            keySchemaTupleFactory);
+                                }
+                            });
+                } catch (ExecException e) {
+                    throw e;
+                } catch (IOException e) {
+                    int errCode = 2081;
+                    String msg = "Unable to set up the replicated table for " + replFiles[i];
+                    throw new ExecException(msg, errCode, PigException.BUG, e);
+                }
+            } else {
+                replicates[i] = buildHashMap(i, inputSchemaTupleFactories[i],
+                        keySchemaTupleFactories[i]);
+            }
+        }
+        long time2 = System.currentTimeMillis();
+        log.debug("Hash Table built. Time taken: " + (time2 - time1));
+    }
+
+    private TupleToMapKey buildHashMap(int input, SchemaTupleFactory inputSchemaTupleFactory,
+            SchemaTupleFactory keySchemaTupleFactory) throws ExecException {
+        POLoad ld = new POLoad(new OperatorKey("Repl File Loader", 1L),
+                replFiles[input]);
+
+        Properties props = ConfigurationUtil.getLocalFSProperties();
+        PigContext pc = new PigContext(ExecType.LOCAL, props);
+        ld.setPc(pc);
+        // We use LocalRearrange Operator to seperate Key and Values
+        // eg. ( a, b, c ) would generate a, ( a, b, c )
+        // And we use 'a' as the key to the HashMap
+        // The rest '( a, b, c )' is added to HashMap as value
+        // We could have manually done this, but LocalRearrange does the
+        // same thing, so utilizing its functionality
+        POLocalRearrange lr = LRs[input];
+        lr.setInputs(Arrays.asList((PhysicalOperator) ld));
+
+        TupleToMapKey replicate = new TupleToMapKey(1000, keySchemaTupleFactory);
+
+        log.debug("Completed setup. Trying to build replication hash table");
+        for (Result res = lr.getNextTuple(); res.returnStatus != POStatus.STATUS_EOP; res = lr.getNextTuple()) {
+            if (getReporter() != null)
+                getReporter().progress();
+            addReplicatedTuple(replicate, lr, (Tuple) res.result, inputSchemaTupleFactory);
+        }
+        return replicate;
+    }
+
+    /**
+     * Builds the HashMaps from the tuples of the replicated inputs instead of
+     * reading them from replFiles, for backends that ship the replicated
+     * inputs to the tasks themselves.
+     *
+     * @param replicatedInputs the tuples of each input, in the order of the
+     * inputs of the join. The entry of the fragment is ignored.
+     * @throws ExecException
+     */
+    public void setUpHashMap(List<? extends Iterable<Tuple>> replicatedInputs) throws ExecException {
+        SchemaTupleFactory[] inputSchemaTupleFactories = new SchemaTupleFactory[inputSchemas.length];
+        SchemaTupleFactory[] keySchemaTupleFactories = new SchemaTupleFactory[inputSchemas.length];
+        setUpSchemaTupleFactories(inputSchemaTupleFactories, keySchemaTupleFactories);
+
+        for (int i = 0; i < replicatedInputs.size(); i++) {
+            if (i == fragment) {
+                replicates[i] = null;
+                continue;
+            }
+            POLocalRearrange lr = LRs[i];
+            TupleToMapKey replicate = new TupleToMapKey(1000,
+                    i < keySchemaTupleFactories.length ? keySchemaTupleFactories[i] : null);
+            SchemaTupleFactory inputSchemaTupleFactory =
+                    i < inputSchemaTupleFactories.length ? inputSchemaTupleFactories[i] : null;
+            for (Tuple t : replicatedInputs.get(i)) {
+                lr.attachInput(t);
+                Result res = lr.getNextTuple();
+                lr.detachInput();
+                if (res.returnStatus != POStatus.STATUS_OK) {
+                    int errCode = 2086;
+                    String msg = "Unexpected problem while building the replicated hash table.";
+                    throw new ExecException(msg, errCode, PigException.BUG);
+                }
+                addReplicatedTuple(replicate, lr, (Tuple) res.result, inputSchemaTupleFactory);
+            }
+            replicates[i] = replicate;
+        }
+        setUp = true;
+    }
+
+    private void setUpSchemaTupleFactories(SchemaTupleFactory[] inputSchemaTupleFactories,
+            SchemaTupleFactory[] keySchemaTupleFactories) {
         for (int i = 0; i < inputSchemas.length; i++) {
             Schema schema = inputSchemas[i];
             if (schema != null) {
@@ -363,57 +578,97 @@ public class POFRJoin extends PhysicalOperator {
                 keySchemaTupleFactories[i] = SchemaTupleBackend.newSchemaTupleFactory(schema, false, GenContext.FR_JOIN);
             }
         }
+    }
 
-        int i = -1;
-        long time1 = System.currentTimeMillis();
-        for (FileSpec replFile : replFiles) {
-            ++i;
+    /**
+     * Adds the output of the LocalRearrange of a replicated input to its
+     * HashMap, tuples with a null key never match
+     */
+    private void addReplicatedTuple(TupleToMapKey replicate, POLocalRearrange lr, Tuple tuple,
+            SchemaTupleFactory inputSchemaTupleFactory) throws ExecException {
+        if (isKeyNull(tuple.get(1))) return;
+        Tuple key = mTupleFactory.newTuple(1);
+        key.set(0, tuple.get(1));
+        Tuple value = getValueTuple(lr, tuple);
+
+        if (replicate.get(key) == null) {
+            replicate.put(key, new TuplesToSchemaTupleList(1, inputSchemaTupleFactory));
+        }
 
-            SchemaTupleFactory inputSchemaTupleFactory = inputSchemaTupleFactories[i];
-            SchemaTupleFactory keySchemaTupleFactory = keySchemaTupleFactories[i];
+        replicate.get(key).add(value);
+    }
 
+    /**
+     * Maps a table per replicated input, writing it first if no other task
+     * of the job on this node did. The tables are written to the local
+     * directory of the job, which is removed once the job is over. Outside
+     * of a task, each operator writes its own temporary tables.
+     * @throws ExecException
+     */
+    private void setUpMappedTables(Configuration conf) throws ExecException {
+        String jobDir = conf.get("job.local.dir");
+        String jobId = conf.get("mapred.job.id");
+        mappedReplicates = new MappedTupleTable[replFiles.length];
+        long time1 = System.currentTimeMillis();
+        for (int i = 0; i < replFiles.length; i++) {
             if (i == fragment) {
-                replicates[i] = null;
                 continue;
             }
-
-            POLoad ld = new POLoad(new OperatorKey("Repl File Loader", 1L),
-                    replFile);
-            
-            Properties props = ConfigurationUtil.getLocalFSProperties();
-            PigContext pc = new PigContext(ExecType.LOCAL, props);   
-            ld.setPc(pc);
-            // We use LocalRearrange Operator to seperate Key and Values
-            // eg. ( a, b, c ) would generate a, ( a, b, c )
-            // And we use 'a' as the key to the HashMap
-            // The rest '( a, b, c )' is added to HashMap as value
-            // We could have manually done this, but LocalRearrange does the
-            // same thing, so utilizing its functionality
-            POLocalRearrange lr = LRs[i];
-            lr.setInputs(Arrays.asList((PhysicalOperator) ld));
-
-            TupleToMapKey replicate = new TupleToMapKey(1000, keySchemaTupleFactory);
-
-            log.debug("Completed setup. Trying to build replication hash table");
-            for (Result res = lr.getNextTuple(); res.returnStatus != POStatus.STATUS_EOP; res = lr.getNextTuple()) {
-                if (getReporter() != null)
-                    getReporter().progress();
-                Tuple tuple = (Tuple) res.result;
-                if (isKeyNull(tuple.get(1))) continue;
-                Tuple key = mTupleFactory.newTuple(1);
-                key.set(0, tuple.get(1));
-                Tuple value = getValueTuple(lr, tuple);
-
-                if (replicate.get(key) == null) {
-                    replicate.put(key, new TuplesToSchemaTupleList(1, inputSchemaTupleFactory));
+            try {
+                File file;
+                if (jobDir != null && jobId != null) {
+                    String name = ("pig-frjoin-" + jobId + "-" + mKey + "-" + i).replaceAll("[^\\w.-]", "_");
+                    file = new File(jobDir, name);
+                    if (!file.exists()) {
+                        buildMappedTable(i, file);
+                    } else {
+                        log.info("Using replicated table " + file + " written by another task");
+                    }
+                } else {
+                    file = File.createTempFile("pig-frjoin-", ".tbl");
+                    file.deleteOnExit();
+                    buildMappedTable(i, file);
                 }
-
-                replicate.get(key).add(value);
+                mappedReplicates[i] = MappedTupleTable.open(file);
+            } catch (IOException e) {
+                int errCode = 2081;
+                String msg = "Unable to set up the replicated table for " + replFiles[i];
+                throw new ExecException(msg, errCode, PigException.BUG, e);
             }
-            replicates[i] = replicate;
         }
         long time2 = System.currentTimeMillis();
-        log.debug("Hash Table built. Time taken: " + (time2 - time1));
+        log.debug("Replicated tables mapped. Time taken: " + (time2 - time1));
+    }
+
+    private void buildMappedTable(int input, File file) throws IOException {
+        // write to a file of our own then rename it, so that the tasks running
+        // at the same time never see a partial table
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        MappedTupleTable.Builder builder = new MappedTupleTable.Builder(tmp);
+
+        POLoad ld = new POLoad(new OperatorKey("Repl File Loader", 1L),
+                replFiles[input]);
+        Properties props = ConfigurationUtil.getLocalFSProperties();
+        PigContext pc = new PigContext(ExecType.LOCAL, props);
+        ld.setPc(pc);
+        POLocalRearrange lr = LRs[input];
+        lr.setInputs(Arrays.asList((PhysicalOperator) ld));
+        for (Result res = lr.getNextTuple(); res.returnStatus != POStatus.STATUS_EOP; res = lr.getNextTuple()) {
+            if (getReporter() != null)
+                getReporter().progress();
+            Tuple tuple = (Tuple) res.result;
+            if (isKeyNull(tuple.get(1))) continue;
+            builder.add(tuple.get(1), getValueTuple(lr, tuple));
+        }
+        builder.finish();
+        if (!tmp.renameTo(file)) {
+            if (!file.exists() || file.length() == 0) {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+            // another task was faster
+            tmp.delete();
+        }
+        log.info("Wrote replicated table " + file + " of " + file.length() + " bytes");
     }
 
     private boolean isKeyNull(Object key) throws ExecException {
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Runs a chain of replicated joins, each joining the output of the previous
+ * one, in a single pass. A tuple of the input is joined by the first join,
+ * then each of the tuples it produces by the second one, and so on, so that
+ * the replicated inputs of all the joins are probed without going through
+ * the foreach operators and the bags of the separate {@link POFRJoin}s.
+ */
+public class POFRJoinChain extends PhysicalOperator {
+
+    private static final long serialVersionUID = 1L;
+
+    // The joins, in the order they are applied
+    private List<POFRJoin> joins;
+
+    // The tuples produced by each join and not yet passed to the next one
+    private transient List<Iterator<Tuple>> pending;
+
+    public POFRJoinChain(OperatorKey k, List<POFRJoin> joins) {
+        super(k, joins.get(joins.size() - 1).getRequestedParallelism());
+        this.joins = new ArrayList<POFRJoin>(joins);
+        setResultType(DataType.TUPLE);
+        for (POFRJoin join : joins) {
+            addOriginalLocation(join.getAlias(), join.getOriginalLocations());
+        }
+    }
+
+    public List<POFRJoin> getJoins() {
+        return joins;
+    }
+
+    @Override
+    public void visit(PhyPlanVisitor v) throws VisitorException {
+        v.visitFRJoinChain(this);
+    }
+
+    @Override
+    public String name() {
+        StringBuilder sb = new StringBuilder(getAliasString());
+        sb.append("FRJoinChain[").append(DataType.findTypeName(resultType)).append("]");
+        for (POFRJoin join : joins) {
+            sb.append(" ").append(join.getOperatorKey());
+        }
+        return sb.append(" - ").append(mKey.toString()).toString();
+    }
+
+    @Override
+    public boolean supportsMultipleInputs() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsMultipleOutputs() {
+        return false;
+    }
+
+    @Override
+    public Result getNextTuple() throws ExecException {
+        if (pending == null) {
+            pending = new ArrayList<Iterator<Tuple>>(joins.size());
+            for (int i = 0; i < joins.size(); i++) {
+                pending.add(null);
+            }
+        }
+        while (true) {
+            // resume from the last join that still has tuples to pass on
+            int level = pending.size() - 1;
+            while (level >= 0 && (pending.get(level) == null || !pending.get(level).hasNext())) {
+                level--;
+            }
+            if (level < 0) {
+                Result inp = processInput();
+                if (inp.returnStatus != POStatus.STATUS_OK) {
+                    if (inp.returnStatus == POStatus.STATUS_NULL) {
+                        continue;
+                    }
+                    return inp;
+                }
+                pending.set(0, joins.get(0).join((Tuple) inp.result).iterator());
+                continue;
+            }
+            Tuple t = pending.get(level).next();
+            if (level == pending.size() - 1) {
+                return new Result(POStatus.STATUS_OK, t);
+            }
+            if (getReporter() != null) {
+                getReporter().progress();
+            }
+            pending.set(level + 1, joins.get(level + 1).join(t).iterator());
+        }
+    }
+
+    @Override
+    public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
+        // no op: only built for the plans that are run, not illustrated
+        return null;
+    }
+}
@@ -26,8 +26,14 @@ import org.apache.pig.data.Tuple;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.ExpressionClassGenerator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.ColumnVector;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorBatch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionCompiler;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.impl.util.IdentityHashSet;
@@ -44,6 +50,14 @@ import org.apache.pig.pen.util.LineageTracer;
  * Since the filter is supposed to return tuples only, getNext is not supported
  * on any other data type.
  * 
+ * In batch mode the filter buffers its input and evaluates the expression
+ * plan on a whole {@link VectorBatch} at a time. As the buffered tuples are
+ * only emitted once the batch is full, batch mode may only be turned on for
+ * filters that see the end of all input flag of their plan.
+ * 
+ * If {@link org.apache.pig.PigConfiguration#PROP_EXEC_CODEGEN} is set, the
+ * expression plan is evaluated row by row through a class generated for it
+ * by the {@link ExpressionClassGenerator}, when the plan supports it.
  */
 public class POFilter extends PhysicalOperator {
 
@@ -65,6 +79,20 @@ public class POFilter extends PhysicalOperator {
     // appropriate type
     byte compOperandType;
 
+    // Whether the input should be filtered a batch at a time, and the
+    // number of tuples in a batch
+    private boolean batchMode = false;
+    private int batchSize = VectorBatch.DEFAULT_SIZE;
+
+    private transient VectorExpression vectorPlan;
+    private transient VectorBatch batch;
+    private transient boolean[] selected;
+    private transient int batchPos;
+    private transient int batchCount;
+
+    private transient CompiledExpression compiledPlan;
+    private transient boolean compiledPlanChecked = false;
+
     public POFilter(OperatorKey k) {
         this(k, -1, null);
     }
@@ -89,6 +117,9 @@ public class POFilter extends PhysicalOperator {
      */
     @Override
     public Result getNextTuple() throws ExecException {
+        if (batchMode && illustrator == null) {
+            return getNextTupleFromBatch();
+        }
         Result res = null;
         Result inp = null;
         while (true) {
@@ -100,6 +131,14 @@ public class POFilter extends PhysicalOperator {
                 continue;
             }
 
+            Object cond = evaluateCompiled((Tuple) inp.result);
+            if (cond != CompiledExpression.UNSUPPORTED) {
+                if (cond != null && (Boolean) cond) {
+                    return inp;
+                }
+                continue;
+            }
+
             plan.attachInput((Tuple) inp.result);
 
             /*
@@ -160,6 +199,108 @@ public class POFilter extends PhysicalOperator {
         return inp;
     }
 
+    /**
+     * Batch mode version of getNextTuple(). Input tuples are collected
+     * until the batch is full or all input has been seen, the batch is
+     * filtered, and the qualifying tuples are handed out one per call.
+     */
+    private Result getNextTupleFromBatch() throws ExecException {
+        if (batch == null) {
+            batch = new VectorBatch(batchSize);
+            selected = new boolean[batchSize];
+            vectorPlan = VectorExpressionCompiler.compile(plan, batchSize);
+        }
+        while (true) {
+            while (batchPos < batchCount) {
+                int i = batchPos++;
+                if (selected[i]) {
+                    return new Result(POStatus.STATUS_OK, batch.get(i));
+                }
+            }
+            if (batchCount > 0) {
+                batch.clear();
+                batchPos = batchCount = 0;
+            }
+
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            }
+            if (inp.returnStatus == POStatus.STATUS_EOP) {
+                // keep the partial batch until there is no more input
+                if (batch.size() == 0 || !parentPlan.endOfAllInput) {
+                    return inp;
+                }
+            } else if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            } else {
+                batch.add((Tuple) inp.result);
+                if (!batch.isFull()) {
+                    continue;
+                }
+            }
+
+            Result err = filterBatch();
+            if (err != null) {
+                return err;
+            }
+        }
+    }
+
+    /**
+     * Evaluate the filter condition for every tuple of the batch, vectorized
+     * if possible and row by row otherwise.
+     * @return null on success, else the failed Result of the condition
+     */
+    private Result filterBatch() throws ExecException {
+        int n = batch.size();
+        ColumnVector cond = (vectorPlan == null) ? null : vectorPlan.evaluate(batch);
+        if (cond != null) {
+            for (int i = 0; i < n; i++) {
+                selected[i] = cond.isTrue(i);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                Object c = evaluateCompiled(batch.get(i));
+                if (c != CompiledExpression.UNSUPPORTED) {
+                    selected[i] = c != null && (Boolean) c;
+                    continue;
+                }
+                plan.attachInput(batch.get(i));
+                Result res = comOp.getNextBoolean();
+                plan.detachInput();
+                if (res.returnStatus != POStatus.STATUS_OK
+                        && res.returnStatus != POStatus.STATUS_NULL) {
+                    return res;
+                }
+                selected[i] = res.result != null && (Boolean) res.result;
+            }
+        }
+        batchPos = 0;
+        batchCount = n;
+        return null;
+    }
+
+    /**
+     * Evaluate the filter condition with the class generated for the
+     * expression plan, if code generation is turned on.
+     * @return the value of the condition, or
+     * {@link CompiledExpression#UNSUPPORTED} if the condition has to be
+     * evaluated by the expression plan
+     */
+    private Object evaluateCompiled(Tuple t) throws ExecException {
+        if (!compiledPlanChecked) {
+            compiledPlanChecked = true;
+            if (illustrator == null && ExpressionClassGenerator.isEnabled()) {
+                compiledPlan = ExpressionClassGenerator.compile(plan);
+            }
+        }
+        if (compiledPlan == null) {
+            return CompiledExpression.UNSUPPORTED;
+        }
+        return compiledPlan.evaluate(t);
+    }
+
     @Override
     public String name() {
         return getAliasString() + "Filter" + "["
@@ -185,12 +326,30 @@ public class POFilter extends PhysicalOperator {
     public void setPlan(PhysicalPlan plan) {
         this.plan = plan;
         comOp = plan.getLeaves().get(0);
+        compiledPlan = null;
+        compiledPlanChecked = false;
 //        compOperandType = comOp.getOperandType();
     }
 
     public PhysicalPlan getPlan() {
         return plan;
     }
+
+    public boolean isBatchMode() {
+        return batchMode;
+    }
+
+    public void setBatchMode(boolean batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
     
     @Override
     public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
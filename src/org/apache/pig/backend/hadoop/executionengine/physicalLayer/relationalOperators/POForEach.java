@@ -28,6 +28,9 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.ExpressionClassGenerator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PORelationToExprProject;
@@ -94,6 +97,14 @@ public class POForEach extends PhysicalOperator {
 
     private Schema schema;
 
+    // The classes generated for the input plans if code generation is
+    // turned on, null for the plans that have to be interpreted
+    private transient CompiledExpression[] compiledPlans = null;
+    private transient boolean compiledPlansChecked = false;
+
+    // The tuple last attached to the input plans
+    private transient Tuple planInput;
+
     public POForEach(OperatorKey k) {
         this(k,-1,null,null);
     }
@@ -357,7 +368,27 @@ public class POForEach extends PhysicalOperator {
             bags = new Object[noItems];
             earlyTermination = new BitSet(noItems);
 
+            if (!compiledPlansChecked) {
+                compilePlans();
+            }
+
             for(int i = 0; i < noItems; ++i) {
+                if (compiledPlans != null && compiledPlans[i] != null) {
+                    if (planInput == null) {
+                        // the input has been consumed, as it is by
+                        // the interpreted plans
+                        its = null;
+                        bags = null;
+                        return new Result(POStatus.STATUS_EOP, null);
+                    }
+                    Object value = compiledPlans[i].evaluate(planInput);
+                    if (value != CompiledExpression.UNSUPPORTED) {
+                        bags[i] = value;
+                        its[i] = null;
+                        continue;
+                    }
+                }
+
                 //Getting the iterators
                 //populate the input data
                 Result inputData = null;
@@ -419,6 +450,7 @@ public class POForEach extends PhysicalOperator {
                     its[i] = null;
                 }
             }
+            planInput = null;
         }
 
         // if accumulating, we haven't got data yet for some fields, just return
@@ -527,7 +559,33 @@ public class POForEach extends PhysicalOperator {
     }
 
 
+    /**
+     * Generate classes for the input plans that are expressions over
+     * the input tuple, if code generation is turned on.
+     */
+    private void compilePlans() {
+        compiledPlansChecked = true;
+        if (isAccumulative() || illustrator != null || !ExpressionClassGenerator.isEnabled()) {
+            return;
+        }
+        for (int i = 0; i < noItems; i++) {
+            // a projection is as fast as anything we could generate
+            if (planLeafOps[i] instanceof POProject
+                    || planLeafOps[i] instanceof ConstantExpression) {
+                continue;
+            }
+            CompiledExpression compiled = ExpressionClassGenerator.compile(inputPlans.get(i));
+            if (compiled != null) {
+                if (compiledPlans == null) {
+                    compiledPlans = new CompiledExpression[noItems];
+                }
+                compiledPlans[i] = compiled;
+            }
+        }
+    }
+
     protected void attachInputToPlans(Tuple t) {
+        planInput = t;
         //super.attachInput(t);
         for(PhysicalPlan p : inputPlans) {
             p.attachInput(t);
@@ -558,6 +616,8 @@ public class POForEach extends PhysicalOperator {
     }
 
     private void reInitialize() {
+        compiledPlans = null;
+        compiledPlansChecked = false;
         if(planLeafOps != null) {
             noItems = planLeafOps.length;
             resultTypes = new byte[noItems];
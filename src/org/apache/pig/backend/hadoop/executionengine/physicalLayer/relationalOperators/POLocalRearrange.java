@@ -17,15 +17,20 @@
  */
 package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.pig.ExecType;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
@@ -33,9 +38,13 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.BloomJoinHelper;
+import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileSpec;
 import org.apache.pig.impl.io.PigNullableWritable;
 import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
@@ -131,6 +140,14 @@ public class POLocalRearrange extends PhysicalOperator {
     // By default, we strip keys from the value.
     private boolean stripKeyFromValue = true;
 
+    // File holding a Bloom filter of the keys of another input of the join,
+    // tuples whose key is not in it cannot match and are dropped
+    protected FileSpec bloomFilterFile = null;
+
+    private transient BloomFilter bloomFilter = null;
+
+    private transient boolean bloomFilterLoaded = false;
+
     public POLocalRearrange(OperatorKey k) {
         this(k, -1, null);
     }
@@ -350,6 +367,14 @@ public class POLocalRearrange extends PhysicalOperator {
                 }
             }
 
+            if (bloomFilterFile != null && !mightMatch(resLst)) {
+                detachPlans(plans);
+                if (secondaryPlans != null) {
+                    detachPlans(secondaryPlans);
+                }
+                continue;
+            }
+
             // If we are using secondary sort key, our new key is:
             // (nullable, index, (key, secondary key), value)
             res.result = constructLROutput(resLst,secondaryResLst,(Tuple)inp.result);
@@ -368,6 +393,56 @@ public class POLocalRearrange extends PhysicalOperator {
     }
 
 
+    /**
+     * @return false if the key of resLst is not in the Bloom filter, i.e. if
+     * the tuple it comes from cannot produce any join output
+     */
+    protected boolean mightMatch(List<Result> resLst) throws ExecException {
+        if (!bloomFilterLoaded) {
+            loadBloomFilter();
+        }
+        if (bloomFilter == null) {
+            return true;
+        }
+        Object key;
+        if (resLst.size() == 1) {
+            key = resLst.get(0).result;
+        } else {
+            Tuple t = mTupleFactory.newTuple(resLst.size());
+            for (int i = 0; i < resLst.size(); i++) {
+                t.set(i, resLst.get(i).result);
+            }
+            key = t;
+        }
+        return BloomJoinHelper.mightMatch(bloomFilter, key);
+    }
+
+    private void loadBloomFilter() throws ExecException {
+        // The file is in the distributed cache, or on the local file
+        // system in local mode, see JobControlCompiler
+        POLoad ld = new POLoad(new OperatorKey("Bloom Filter Loader", 1L), bloomFilterFile);
+        Properties props = ConfigurationUtil.getLocalFSProperties();
+        ld.setPc(new PigContext(ExecType.LOCAL, props));
+        try {
+            Result res = ld.getNextTuple();
+            if (res.returnStatus == POStatus.STATUS_OK) {
+                bloomFilter = BloomJoinHelper.fromBytes(
+                        ((DataByteArray)((Tuple)res.result).get(0)).get());
+            } else if (res.returnStatus == POStatus.STATUS_EOP) {
+                // nothing was added to it, let all the tuples through
+                log.info("Bloom filter " + bloomFilterFile.getFileName() + " is empty");
+            } else {
+                throw new IOException("Unexpected status " + res.returnStatus);
+            }
+            ld.tearDown();
+        } catch (IOException e) {
+            int errCode = 2081;
+            String msg = "Unable to read the Bloom filter " + bloomFilterFile.getFileName();
+            throw new ExecException(msg, errCode, PigException.BUG, e);
+        }
+        bloomFilterLoaded = true;
+    }
+
     private void detachPlans(List<PhysicalPlan> plans) {
         for (PhysicalPlan ep : plans) {
             ep.detachInput();
@@ -701,6 +776,7 @@ public class POLocalRearrange extends PhysicalOperator {
         // Needs to be called as setDistinct so that the fake index tuple gets
         // created.
         clone.setDistinct(mIsDistinct);
+        clone.bloomFilterFile = bloomFilterFile;
         clone.addOriginalLocation(alias, getOriginalLocations());
         return clone;
     }
@@ -709,6 +785,21 @@ public class POLocalRearrange extends PhysicalOperator {
         return isCross;
     }
 
+    public FileSpec getBloomFilterFile() {
+        return bloomFilterFile;
+    }
+
+    /**
+     * Drop the tuples whose key is not in a Bloom filter. Only used on
+     * one of the inputs of a join, with a filter of the keys of another
+     * inner input.
+     * @param bloomFilterFile file holding the filter, written by
+     * {@link org.apache.pig.builtin.BuildBloom}
+     */
+    public void setBloomFilterFile(FileSpec bloomFilterFile) {
+        this.bloomFilterFile = bloomFilterFile;
+    }
+
     public void setCross(boolean isCross) {
         this.isCross = isCross;
     }
@@ -647,6 +647,13 @@ public class POMergeJoin extends PhysicalOperator {
         return inpPlans.get(inputs.get(index));
     }
 
+    /**
+     * @return the plans of the join key of each input, by input
+     */
+    public MultiMap<PhysicalOperator, PhysicalPlan> getJoinPlans() {
+        return inpPlans;
+    }
+
     @Override
     public void visit(PhyPlanVisitor v) throws VisitorException {
         v.visitMergeJoin(this);
@@ -39,6 +39,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.Physica
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
+import org.apache.pig.data.OffHeapTupleMap;
 import org.apache.pig.data.SelfSpillBag.MemoryLimits;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -55,6 +56,14 @@ import com.google.common.collect.Maps;
  * are fed these buffered up inputs, and results stored in a secondary
  * map. Once that map fills up or all input has been seen, results are
  * piped out into the next operator (caller of getNext()).
+ * If {@link PigConfiguration#PARTAGG_OFFHEAP} is set, the aggregated results
+ * are kept serialized in an {@link OffHeapTupleMap} instead, and merged as
+ * they come in; the results only go through the secondary map when the
+ * off-heap table is full.
+ * If {@link PigConfiguration#PARTAGG_PRIMITIVE} is set and all the value
+ * plans are builtin SUM, COUNT, MIN, MAX or AVG functions on numbers, the
+ * inputs are folded into primitive accumulators as they come in instead, see
+ * {@link PrimitivePartialAgg}.
  */
 public class POPartialAgg extends PhysicalOperator implements Spillable {
     private static final Log LOG = LogFactory.getLog(POPartialAgg.class);
@@ -75,7 +84,12 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
     // copy.
     private static final int MAX_LIST_SIZE = 9368;
 
-    private static final int DEFAULT_MIN_REDUCTION = 10;
+    public static final int DEFAULT_MIN_REDUCTION = 10;
+
+    // groups held off-heap cost little memory, so a lower reduction still pays off
+    private static final int DEFAULT_OFFHEAP_MIN_REDUCTION = 2;
+
+    private static final int DEFAULT_OFFHEAP_SIZE = 64 * 1024 * 1024;
 
     // TODO: these are temporary. The real thing should be using memory usage estimation.
     private static final int FIRST_TIER_THRESHOLD = 20000;
@@ -111,6 +125,9 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
     private int avgTupleSize = 0;
     private Iterator<Entry<Object, List<Tuple>>> spillingIterator;
     private boolean estimatedMemThresholds = false;
+    private transient OffHeapTupleMap offHeapMap;
+    private transient Iterator<Tuple> offHeapIterator;
+    private transient PrimitivePartialAgg primitiveAgg;
 
 
     public POPartialAgg(OperatorKey k) {
@@ -123,6 +140,23 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         if (percent <= 0) {
             LOG.info("No memory allocated to intermediate memory buffers. Turning off partial aggregation.");
             disableMapAgg();
+        } else if (isPrimitiveAggEnabled()) {
+            primitiveAgg = PrimitivePartialAgg.create(valuePlans);
+            if (primitiveAgg != null) {
+                LOG.info("Aggregating builtin functions into primitive accumulators.");
+            }
+        }
+        if (!mapAggDisabled() && primitiveAgg == null && PigMapReduce.sJobConfInternal.get() != null
+                && PigMapReduce.sJobConfInternal.get().getBoolean(PigConfiguration.PARTAGG_OFFHEAP, false)) {
+            int size = PigMapReduce.sJobConfInternal.get().getInt(
+                    PigConfiguration.PARTAGG_OFFHEAP_SIZE, DEFAULT_OFFHEAP_SIZE);
+            try {
+                offHeapMap = new OffHeapTupleMap(size);
+                LOG.info("Using an off-heap table of " + size + " bytes for aggregated results.");
+            } catch (OutOfMemoryError e) {
+                LOG.warn("Unable to allocate an off-heap table of " + size
+                        + " bytes. Keeping aggregated results on the heap.", e);
+            }
         }
         initialized = true;
         SpillableMemoryManager.getInstance().registerSpillable(this);
@@ -195,7 +229,11 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
                     Object key = keyRes.result;
                     keyPlan.detachInput();
                     numRecsInRawMap += 1;
-                    addKeyValToMap(rawInputMap, key, inpTuple);
+                    if (primitiveAgg != null) {
+                        primitiveAgg.add(key, inpTuple);
+                    } else {
+                        addKeyValToMap(rawInputMap, key, inpTuple);
+                    }
 
                     if (shouldAggregateFirstLevel()) {
                         aggregateFirstLevel();
@@ -212,7 +250,7 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         }
     }
 
-    private void estimateMemThresholds() {
+    private void estimateMemThresholds() throws ExecException {
         if (!mapAggDisabled()) {
             LOG.info("Getting mem limits; considering " + ALL_POPARTS.size() + " POPArtialAgg objects.");
 
@@ -220,6 +258,15 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
             memLimits = new MemoryLimits(ALL_POPARTS.size(), percent);
             int estTotalMem = 0;
             int estTuples = 0;
+            if (primitiveAgg != null) {
+                // only the aggregated results are held
+                for (Tuple t : primitiveAgg.sampleResults(NUM_RECS_TO_SAMPLE)) {
+                    estTuples += 1;
+                    int mem = (int) t.getMemorySize();
+                    estTotalMem += mem;
+                    memLimits.addNewObjSize(mem);
+                }
+            }
             for (Map.Entry<Object, List<Tuple>> entry : rawInputMap.entrySet()) {
                 for (Tuple t : entry.getValue()) {
                     estTuples += 1;
@@ -228,7 +275,7 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
                     memLimits.addNewObjSize(mem);
                 }
             }
-            avgTupleSize = estTotalMem / estTuples;
+            avgTupleSize = (estTuples == 0) ? 0 : estTotalMem / estTuples;
             int totalTuples = memLimits.getCacheLimit();
             LOG.info("Estimated total tuples to buffer, based on " + estTuples + " tuples that took up " + estTotalMem + " bytes: " + totalTuples);
             firstTierThreshold = (int) (0.5 + totalTuples * (1f - (1f / sizeReduction)));
@@ -239,10 +286,12 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
     }
 
     private void checkSizeReduction() throws ExecException {
-        int numBeforeReduction = numRecsInProcessedMap + numRecsInRawMap;
+        int numBeforeReduction = numRecsInProcessedMap + numRecsInRawMap + getOffHeapSize();
         aggregateFirstLevel();
         aggregateSecondLevel();
-        int numAfterReduction = numRecsInProcessedMap + numRecsInRawMap;
+        // the primitive accumulators may have been emitted since the sample started
+        int numAfterReduction = Math.max(1, numRecsInProcessedMap + numRecsInRawMap
+                + getOffHeapSize() + getPrimitiveAggSize());
         LOG.info("After reduction, processed map: " + numRecsInProcessedMap + "; raw map: " + numRecsInRawMap);
         int minReduction = getMinOutputReductionFromProp();
         LOG.info("Observed reduction factor: from " + numBeforeReduction +
@@ -280,6 +329,10 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
     }
 
     private boolean shouldSpill() {
+        if (primitiveAgg != null) {
+            // there is no raw input to aggregate, the whole memory goes to the results
+            return primitiveAgg.size() > firstTierThreshold + secondTierThreshold;
+        }
         // is this always the same as shouldAgg?
         return shouldAggregateSecondLevel();
     }
@@ -329,9 +382,29 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         }
         doSpill = true;
         spillingIterator = processedInputMap.entrySet().iterator();
+        if (offHeapMap != null && !offHeapMap.isEmpty()) {
+            if (LOG.isInfoEnabled()) {
+                LOG.info("In startSpill(), " + offHeapMap.size() + " aggregated results off-heap.");
+            }
+            offHeapIterator = offHeapMap.valueIterator();
+        }
     }
 
     private Result spillResult() throws ExecException {
+        if (primitiveAgg != null) {
+            Tuple result = primitiveAgg.nextResult();
+            if (result != null) {
+                return new Result(POStatus.STATUS_OK, result);
+            }
+        }
+        // the off-heap results are already aggregated, emit them as they are
+        if (offHeapIterator != null) {
+            if (offHeapIterator.hasNext()) {
+                return new Result(POStatus.STATUS_OK, offHeapIterator.next());
+            }
+            offHeapIterator = null;
+            offHeapMap.clear();
+        }
         // if no more to spill, return EOP_RESULT.
         if (processedInputMap.isEmpty()) {
             spillingIterator = null;
@@ -352,8 +425,37 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
         Tuple valueTuple = createValueTuple(key, value);
         Result res = getOutput(key, valueTuple);
         rawInputMap.remove(key);
-        addKeyValToMap(processedInputMap, key, getAggResultTuple(res.result));
-        numRecsInProcessedMap += valueTuple.size() - 1;
+        if (!addToOffHeapMap(key, getAggResultTuple(res.result))) {
+            addKeyValToMap(processedInputMap, key, getAggResultTuple(res.result));
+            numRecsInProcessedMap += valueTuple.size() - 1;
+        }
+    }
+
+    /**
+     * Merge an aggregated result with the one held off-heap for the same key.
+     * @return false if there is no off-heap table or it is full, in which case
+     * the result has to be kept on the heap
+     * @throws ExecException
+     */
+    private boolean addToOffHeapMap(Object key, Tuple aggResult) throws ExecException {
+        if (offHeapMap == null) {
+            return false;
+        }
+        Tuple merged = aggResult;
+        Tuple previous = offHeapMap.get(key);
+        if (previous != null) {
+            List<Tuple> results = new ArrayList<Tuple>(2);
+            results.add(previous);
+            results.add(aggResult);
+            merged = getAggResultTuple(getOutput(key, createValueTuple(key, results)).result);
+        }
+        if (offHeapMap.put(key, merged)) {
+            return true;
+        }
+        // emit what we have at the next opportunity, so that the table is
+        // emptied rather than growing the secondary map
+        doSpill = true;
+        return false;
     }
 
     /**
@@ -368,6 +470,9 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
             Tuple valueTuple = createValueTuple(entry.getKey(), entry.getValue());
             Result res = getOutput(entry.getKey(), valueTuple);
             iter.remove();
+            if (fromMap == rawInputMap && addToOffHeapMap(entry.getKey(), getAggResultTuple(res.result))) {
+                continue;
+            }
             addKeyValToMap(toMap, entry.getKey(), getAggResultTuple(res.result));
             numEntriesInTarget += valueTuple.size() - 1;
         }
@@ -425,15 +530,29 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
     }
 
     private int getMinOutputReductionFromProp() {
+        int defaultReduction = (offHeapMap == null) ? DEFAULT_MIN_REDUCTION : DEFAULT_OFFHEAP_MIN_REDUCTION;
         int minReduction = PigMapReduce.sJobConfInternal.get().getInt(
-                PigConfiguration.PARTAGG_MINREDUCTION, DEFAULT_MIN_REDUCTION);
+                PigConfiguration.PARTAGG_MINREDUCTION, defaultReduction);
         if (minReduction <= 0) {
-            LOG.info("Specified reduction is < 0 (" + minReduction + "). Using default " + DEFAULT_MIN_REDUCTION);
-            minReduction = DEFAULT_MIN_REDUCTION;
+            LOG.info("Specified reduction is < 0 (" + minReduction + "). Using default " + defaultReduction);
+            minReduction = defaultReduction;
         }
         return minReduction;
     }
 
+    private int getOffHeapSize() {
+        return (offHeapMap == null) ? 0 : offHeapMap.size();
+    }
+
+    private int getPrimitiveAggSize() {
+        return (primitiveAgg == null) ? 0 : primitiveAgg.size();
+    }
+
+    private boolean isPrimitiveAggEnabled() {
+        return PigMapReduce.sJobConfInternal.get() != null
+                && PigMapReduce.sJobConfInternal.get().getBoolean(PigConfiguration.PARTAGG_PRIMITIVE, false);
+    }
+
     private float getPercentUsageFromProp() {
         float percent = 0.2F;
         if (PigMapReduce.sJobConfInternal.get() != null) {
@@ -548,7 +667,8 @@ public class POPartialAgg extends PhysicalOperator implements Spillable {
 
     @Override
     public long getMemorySize() {
-        return avgTupleSize * (numRecsInProcessedMap + numRecsInRawMap);
+        int numRecs = (primitiveAgg == null) ? numRecsInRawMap : primitiveAgg.size();
+        return avgTupleSize * (numRecsInProcessedMap + numRecs);
     }
 
 }
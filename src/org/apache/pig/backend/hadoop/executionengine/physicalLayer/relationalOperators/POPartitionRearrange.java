@@ -159,6 +159,9 @@ public class POPartitionRearrange extends POLocalRearrange {
                 }
                 resLst.add(res);
             }
+            if (bloomFilterFile != null && !mightMatch(resLst)) {
+                continue;
+            }
             res.result = constructPROutput(resLst,(Tuple)inp.result);
 
             return res;
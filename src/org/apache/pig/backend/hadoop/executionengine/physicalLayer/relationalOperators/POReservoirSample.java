@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Keeps a uniform sample of a given number of its input tuples, with
+ * reservoir sampling, and returns it once all the input of the task has
+ * been read. It lets a job sample the input of an ORDER BY that it writes,
+ * as RandomSampleLoader would when reading it again.
+ */
+public class POReservoirSample extends PhysicalOperator {
+
+    private static final long serialVersionUID = 1L;
+
+    private int numSamples;
+
+    private transient List<Tuple> samples;
+
+    private transient long numSeen;
+
+    private transient Random random;
+
+    private transient Iterator<Tuple> output;
+
+    public POReservoirSample(OperatorKey k, int numSamples) {
+        super(k);
+        this.numSamples = numSamples;
+        setResultType(DataType.TUPLE);
+    }
+
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    @Override
+    public Result getNextTuple() throws ExecException {
+        if (output != null) {
+            if (output.hasNext()) {
+                return new Result(POStatus.STATUS_OK, output.next());
+            }
+            return new Result(POStatus.STATUS_EOP, null);
+        }
+        if (samples == null) {
+            samples = new ArrayList<Tuple>(numSamples);
+            random = new Random();
+        }
+        while (true) {
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            } else if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (parentPlan != null && parentPlan.endOfAllInput) {
+                    // the input of the task is over, return the sample
+                    output = samples.iterator();
+                    samples = null;
+                    return getNextTuple();
+                }
+                return inp;
+            } else if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            numSeen++;
+            if (samples.size() < numSamples) {
+                samples.add((Tuple) inp.result);
+            } else {
+                // the tuple replaces one of the sample with probability
+                // numSamples / numSeen
+                long i = (long) (random.nextDouble() * numSeen);
+                if (i < numSamples) {
+                    samples.set((int) i, (Tuple) inp.result);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return getAliasString() + "Reservoir Sample" + "(" + numSamples + ")" + " - "
+                + mKey.toString();
+    }
+
+    @Override
+    public boolean supportsMultipleInputs() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsMultipleOutputs() {
+        return false;
+    }
+
+    @Override
+    public void visit(PhyPlanVisitor v) throws VisitorException {
+        v.visitReservoirSample(this);
+    }
+
+    @Override
+    public POReservoirSample clone() throws CloneNotSupportedException {
+        POReservoirSample newSample = new POReservoirSample(new OperatorKey(mKey.scope,
+                NodeIdGenerator.getGenerator().getNextNodeId(mKey.scope)), numSamples);
+        newSample.setInputs(inputs);
+        return newSample;
+    }
+
+    @Override
+    public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
+        // the sample is only taken by the jobs of an ORDER BY, which are
+        // not compiled in illustrate
+        return (Tuple) out;
+    }
+}
@@ -32,6 +32,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserComparisonFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
@@ -39,6 +40,7 @@ import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.InternalSortedBag;
+import org.apache.pig.data.ParallelSorter;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.plan.NodeIdGenerator;
 import org.apache.pig.impl.plan.OperatorKey;
@@ -93,7 +95,12 @@ public class POSort extends PhysicalOperator {
         this.limit = -1;
 		this.mSortFunc = mSortFunc;
 		if (mSortFunc == null) {
-            mComparator = new SortComparator();
+            int[] columns = getSortColumns(sortPlans);
+            if (columns != null) {
+                mComparator = new ColumnSortComparator(columns, mAscCols);
+            } else {
+                mComparator = new SortComparator();
+            }
 			/*sortedBag = BagFactory.getInstance().newSortedBag(
 					new SortComparator());*/
 			ExprOutputTypes = new ArrayList<Byte>(sortPlans.size());
@@ -129,6 +136,88 @@ public class POSort extends PhysicalOperator {
 
 	}
 
+    /**
+     * @return the columns the sort plans project, or null if a plan is not
+     * a single projection of a column of a type that can be compared directly
+     */
+    private static int[] getSortColumns(List<PhysicalPlan> sortPlans) {
+        if (sortPlans == null || sortPlans.isEmpty()) {
+            return null;
+        }
+        int[] columns = new int[sortPlans.size()];
+        for (int i = 0; i < columns.length; i++) {
+            PhysicalPlan plan = sortPlans.get(i);
+            if (plan.size() != 1 || !(plan.getLeaves().get(0) instanceof POProject)) {
+                return null;
+            }
+            POProject prj = (POProject) plan.getLeaves().get(0);
+            if (prj.isStar() || prj.isProjectToEnd() || prj.isOverloaded()
+                    || prj.getColumns().size() != 1) {
+                return null;
+            }
+            switch (prj.getResultType()) {
+            case DataType.BYTEARRAY:
+            case DataType.CHARARRAY:
+            case DataType.DOUBLE:
+            case DataType.FLOAT:
+            case DataType.BOOLEAN:
+            case DataType.INTEGER:
+            case DataType.LONG:
+            case DataType.BIGINTEGER:
+            case DataType.BIGDECIMAL:
+            case DataType.DATETIME:
+                columns[i] = prj.getColumns().get(0);
+                break;
+            default:
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Compares tuples on the columns that the sort plans project, reading
+     * the fields directly instead of running the plans. As it keeps no state,
+     * the sorted bags can use it from several threads.
+     */
+    public static class ColumnSortComparator implements ParallelSorter.ThreadSafeComparator,
+            Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] columns;
+        private final boolean[] asc;
+
+        public ColumnSortComparator(int[] columns, List<Boolean> ascCols) {
+            this.columns = columns;
+            this.asc = new boolean[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                asc[i] = ascCols.get(i);
+            }
+        }
+
+        @Override
+        public int compare(Tuple o1, Tuple o2) {
+            try {
+                for (int i = 0; i < columns.length; i++) {
+                    Object f1 = getField(o1, columns[i]);
+                    Object f2 = getField(o2, columns[i]);
+                    int ret = asc[i] ? DataType.compare(f1, f2) : DataType.compare(f2, f1);
+                    if (ret != 0) {
+                        return ret;
+                    }
+                }
+            } catch (ExecException e) {
+                log.error("Unable to read the sort columns: " + e.getMessage());
+            }
+            return 0;
+        }
+
+        // like POProject, a null tuple or a missing column gives a null
+        private static Object getField(Tuple t, int column) throws ExecException {
+            return t == null || column >= t.size() ? null : t.get(column);
+        }
+    }
+
 	public class SortComparator implements Comparator<Tuple>,Serializable {
 		/**
          *
@@ -332,6 +421,10 @@ public class POSort extends PhysicalOperator {
 
     public void setSortPlans(List<PhysicalPlan> sortPlans) {
         this.sortPlans = sortPlans;
+        if (mComparator instanceof ColumnSortComparator) {
+            // its columns were taken from the previous plans
+            mComparator = new SortComparator();
+        }
     }
 
     public POUserComparisonFunc getMSortFunc() {
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.builtin.AVG;
+import org.apache.pig.builtin.COUNT;
+import org.apache.pig.builtin.COUNT_STAR;
+import org.apache.pig.builtin.DoubleAvg;
+import org.apache.pig.builtin.DoubleMax;
+import org.apache.pig.builtin.DoubleMin;
+import org.apache.pig.builtin.DoubleSum;
+import org.apache.pig.builtin.FloatAvg;
+import org.apache.pig.builtin.IntAvg;
+import org.apache.pig.builtin.IntMax;
+import org.apache.pig.builtin.IntMin;
+import org.apache.pig.builtin.LongAvg;
+import org.apache.pig.builtin.LongMax;
+import org.apache.pig.builtin.LongMin;
+import org.apache.pig.builtin.LongSum;
+import org.apache.pig.builtin.MAX;
+import org.apache.pig.builtin.MIN;
+import org.apache.pig.builtin.SUM;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Partial aggregation of the builtin SUM, COUNT, MIN, MAX and AVG functions
+ * on numbers, used by {@link POPartialAgg} when all of its value plans are
+ * one of those. Rather than buffering the tuples of each key and running the
+ * Intermediate functions on bags of them, the values are folded into
+ * primitive accumulators as they arrive, and turned into the tuples the
+ * Intermediate functions would have returned when the results are emitted.
+ */
+class PrimitivePartialAgg {
+
+    private static final TupleFactory TF = TupleFactory.getInstance();
+
+    private static enum Kind {
+        LONG_SUM, LONG_MIN, LONG_MAX, INT_MIN, INT_MAX,
+        DOUBLE_SUM, DOUBLE_MIN, DOUBLE_MAX, COUNT, LONG_AVG, DOUBLE_AVG
+    }
+
+    private static final Map<String, Kind> KINDS = new HashMap<String, Kind>();
+    static {
+        // IntSum and FloatSum share the Intermediate of LongSum and DoubleSum
+        KINDS.put(LongSum.Intermediate.class.getName(), Kind.LONG_SUM);
+        KINDS.put(LongMin.Intermediate.class.getName(), Kind.LONG_MIN);
+        KINDS.put(LongMax.Intermediate.class.getName(), Kind.LONG_MAX);
+        KINDS.put(IntMin.Intermediate.class.getName(), Kind.INT_MIN);
+        KINDS.put(IntMax.Intermediate.class.getName(), Kind.INT_MAX);
+        KINDS.put(DoubleSum.Intermediate.class.getName(), Kind.DOUBLE_SUM);
+        KINDS.put(DoubleMin.Intermediate.class.getName(), Kind.DOUBLE_MIN);
+        KINDS.put(DoubleMax.Intermediate.class.getName(), Kind.DOUBLE_MAX);
+        // the Initial of the bytearray versions turns the values into doubles
+        KINDS.put(SUM.Intermediate.class.getName(), Kind.DOUBLE_SUM);
+        KINDS.put(MIN.Intermediate.class.getName(), Kind.DOUBLE_MIN);
+        KINDS.put(MAX.Intermediate.class.getName(), Kind.DOUBLE_MAX);
+        KINDS.put(COUNT.Intermediate.class.getName(), Kind.COUNT);
+        KINDS.put(COUNT_STAR.Intermediate.class.getName(), Kind.COUNT);
+        KINDS.put(IntAvg.Intermediate.class.getName(), Kind.LONG_AVG);
+        KINDS.put(LongAvg.Intermediate.class.getName(), Kind.LONG_AVG);
+        KINDS.put(FloatAvg.Intermediate.class.getName(), Kind.DOUBLE_AVG);
+        KINDS.put(DoubleAvg.Intermediate.class.getName(), Kind.DOUBLE_AVG);
+        KINDS.put(AVG.Intermediate.class.getName(), Kind.DOUBLE_AVG);
+    }
+
+    // each function uses three slots of the accumulator of a key: the value,
+    // the count for AVG, and 1 once a non null value was seen. Doubles are
+    // stored as their bits.
+    private static final int SLOTS = 3;
+
+    private final Kind[] kinds;
+
+    private final int[] columns;
+
+    private final Map<Object, long[]> accumulators = Maps.newHashMap();
+
+    private Iterator<Map.Entry<Object, long[]>> resultIterator;
+
+    private PrimitivePartialAgg(Kind[] kinds, int[] columns) {
+        this.kinds = kinds;
+        this.columns = columns;
+    }
+
+    /**
+     * @param valuePlans value plans of a POPartialAgg
+     * @return the aggregator for those plans, or null if one of the plans is
+     * not the projection of a column into one of the supported functions
+     */
+    static PrimitivePartialAgg create(List<PhysicalPlan> valuePlans) {
+        Kind[] kinds = new Kind[valuePlans.size()];
+        int[] columns = new int[valuePlans.size()];
+        for (int i = 0; i < valuePlans.size(); i++) {
+            PhysicalPlan plan = valuePlans.get(i);
+            List<PhysicalOperator> leaves = plan.getLeaves();
+            if (plan.size() != 2 || leaves.size() != 1 || !(leaves.get(0) instanceof POUserFunc)) {
+                return null;
+            }
+            POUserFunc func = (POUserFunc) leaves.get(0);
+            kinds[i] = KINDS.get(func.getFuncSpec().getClassName());
+            List<PhysicalOperator> preds = plan.getPredecessors(func);
+            if (kinds[i] == null || preds == null || preds.size() != 1
+                    || preds.get(0).getClass() != POProject.class) {
+                return null;
+            }
+            POProject project = (POProject) preds.get(0);
+            if (project.isStar() || project.isProjectToEnd() || project.getColumns().size() != 1) {
+                return null;
+            }
+            columns[i] = project.getColumns().get(0);
+        }
+        return new PrimitivePartialAgg(kinds, columns);
+    }
+
+    int size() {
+        return accumulators.size();
+    }
+
+    boolean isEmpty() {
+        return accumulators.isEmpty();
+    }
+
+    /**
+     * Fold an input of the POPartialAgg into the accumulator of its key.
+     * @param key group key
+     * @param input tuple of the key and the outputs of the Initial functions
+     * @throws ExecException
+     */
+    void add(Object key, Tuple input) throws ExecException {
+        long[] acc = accumulators.get(key);
+        if (acc == null) {
+            acc = newAccumulator();
+            accumulators.put(key, acc);
+        }
+        for (int i = 0; i < kinds.length; i++) {
+            Tuple partial = (Tuple) input.get(columns[i]);
+            int s = i * SLOTS;
+            try {
+                Object value = partial.get(0);
+                switch (kinds[i]) {
+                case COUNT:
+                    acc[s] += (Long) value;
+                    break;
+                case LONG_AVG:
+                case DOUBLE_AVG:
+                    acc[s + 1] += (Long) partial.get(1);
+                    // nulls contribute to the count but not the sum
+                    if (value == null) {
+                        break;
+                    }
+                    acc[s + 2] = 1;
+                    if (kinds[i] == Kind.LONG_AVG) {
+                        acc[s] += (Long) value;
+                    } else {
+                        acc[s] = Double.doubleToRawLongBits(
+                                Double.longBitsToDouble(acc[s]) + (Double) value);
+                    }
+                    break;
+                default:
+                    if (value != null) {
+                        acc[s] = fold(kinds[i], acc[s], value);
+                        acc[s + 2] = 1;
+                    }
+                }
+            } catch (RuntimeException e) {
+                int errCode = 2103;
+                throw new ExecException("Problem doing partial aggregation of " + partial,
+                        errCode, PigException.BUG, e);
+            }
+        }
+    }
+
+    private static long fold(Kind kind, long acc, Object value) {
+        switch (kind) {
+        case LONG_SUM:
+            return acc + ((Number) value).longValue();
+        case LONG_MIN:
+            return Math.min(acc, ((Number) value).longValue());
+        case LONG_MAX:
+            return Math.max(acc, ((Number) value).longValue());
+        case INT_MIN:
+            return Math.min((int) acc, ((Integer) value).intValue());
+        case INT_MAX:
+            return Math.max((int) acc, ((Integer) value).intValue());
+        case DOUBLE_SUM:
+            return Double.doubleToRawLongBits(
+                    Double.longBitsToDouble(acc) + ((Number) value).doubleValue());
+        case DOUBLE_MIN:
+            return Double.doubleToRawLongBits(
+                    Math.min(Double.longBitsToDouble(acc), ((Number) value).doubleValue()));
+        case DOUBLE_MAX:
+            return Double.doubleToRawLongBits(
+                    Math.max(Double.longBitsToDouble(acc), ((Number) value).doubleValue()));
+        default:
+            throw new IllegalStateException("Unexpected kind " + kind);
+        }
+    }
+
+    private long[] newAccumulator() {
+        long[] acc = new long[kinds.length * SLOTS];
+        // same seeds as the functions, so that the results are identical
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+            case LONG_MIN:
+                acc[i * SLOTS] = Long.MAX_VALUE;
+                break;
+            case LONG_MAX:
+                acc[i * SLOTS] = Long.MIN_VALUE;
+                break;
+            case INT_MIN:
+                acc[i * SLOTS] = Integer.MAX_VALUE;
+                break;
+            case INT_MAX:
+                acc[i * SLOTS] = Integer.MIN_VALUE;
+                break;
+            case DOUBLE_MIN:
+                acc[i * SLOTS] = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+                break;
+            case DOUBLE_MAX:
+                acc[i * SLOTS] = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+                break;
+            default:
+                // sums and counts start at 0, which is also 0.0 for doubles
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * Remove the next key from the aggregator.
+     * @return the tuple of the key and the outputs the Intermediate functions
+     * would have had for it, or null once all keys have been returned
+     * @throws ExecException
+     */
+    Tuple nextResult() throws ExecException {
+        if (resultIterator == null) {
+            resultIterator = accumulators.entrySet().iterator();
+        }
+        if (!resultIterator.hasNext()) {
+            resultIterator = null;
+            return null;
+        }
+        Map.Entry<Object, long[]> entry = resultIterator.next();
+        resultIterator.remove();
+        return toResult(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * @return the results for up to max keys, left in the aggregator, to
+     * estimate the memory used by each key
+     * @throws ExecException
+     */
+    List<Tuple> sampleResults(int max) throws ExecException {
+        List<Tuple> sample = new ArrayList<Tuple>(Math.min(max, accumulators.size()));
+        for (Map.Entry<Object, long[]> entry : accumulators.entrySet()) {
+            if (sample.size() >= max) {
+                break;
+            }
+            sample.add(toResult(entry.getKey(), entry.getValue()));
+        }
+        return sample;
+    }
+
+    private Tuple toResult(Object key, long[] acc) throws ExecException {
+        Tuple output = TF.newTuple(kinds.length + 1);
+        output.set(0, key);
+        for (int i = 0; i < kinds.length; i++) {
+            int s = i * SLOTS;
+            boolean seen = acc[s + 2] != 0;
+            Object value;
+            switch (kinds[i]) {
+            case COUNT:
+                value = Long.valueOf(acc[s]);
+                break;
+            case INT_MIN:
+            case INT_MAX:
+                value = seen ? Integer.valueOf((int) acc[s]) : null;
+                break;
+            case DOUBLE_SUM:
+            case DOUBLE_MIN:
+            case DOUBLE_MAX:
+            case DOUBLE_AVG:
+                value = seen ? Double.valueOf(Double.longBitsToDouble(acc[s])) : null;
+                break;
+            default:
+                value = seen ? Long.valueOf(acc[s]) : null;
+            }
+            Tuple partial;
+            if (kinds[i] == Kind.LONG_AVG || kinds[i] == Kind.DOUBLE_AVG) {
+                partial = TF.newTuple(2);
+                partial.set(0, value);
+                partial.set(1, Long.valueOf(acc[s + 1]));
+            } else {
+                partial = TF.newTuple(value);
+            }
+            output.set(i + 1, partial);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.builtin.BuildBloom;
+import org.apache.pig.data.DataType;
+
+/**
+ * Helpers for the Bloom filters that joins use to drop, before the shuffle,
+ * the tuples of their last input whose key does not appear in another of
+ * their inputs. See {@link PigConfiguration#JOIN_BLOOM_FILTER}.
+ *
+ * Keys are added to and tested against the filters the way {@link BuildBloom}
+ * and {@link org.apache.pig.builtin.Bloom} do, so that filters built by either
+ * can be used.
+ */
+public class BloomJoinHelper {
+
+    public static final int DEFAULT_VECTOR_SIZE = 8 * 1024 * 1024;
+
+    public static final int DEFAULT_NUM_HASH = 3;
+
+    public static final String HASH_TYPE = "murmur";
+
+    private BloomJoinHelper() {
+    }
+
+    public static boolean isEnabled(Properties props) {
+        return Boolean.valueOf(props.getProperty(PigConfiguration.JOIN_BLOOM_FILTER, "false"));
+    }
+
+    public static int getVectorSize(Properties props) {
+        return Integer.valueOf(props.getProperty(PigConfiguration.JOIN_BLOOM_VECTOR_SIZE,
+                Integer.toString(DEFAULT_VECTOR_SIZE)));
+    }
+
+    public static int getNumHash(Properties props) {
+        return Integer.valueOf(props.getProperty(PigConfiguration.JOIN_BLOOM_HASHES,
+                Integer.toString(DEFAULT_NUM_HASH)));
+    }
+
+    /**
+     * @return the arguments to pass to {@link BuildBloom} to build the filters
+     * configured in props
+     */
+    public static String[] getBuildBloomArgs(Properties props) {
+        return new String[] { HASH_TYPE, "fixed",
+                Integer.toString(getVectorSize(props)),
+                Integer.toString(getNumHash(props)) };
+    }
+
+    public static BloomFilter newFilter(Properties props) {
+        return new BloomFilter(getVectorSize(props), getNumHash(props), Hash.MURMUR_HASH);
+    }
+
+    /**
+     * Picks the input whose keys the filter is built from, when the tuples of
+     * input probe are filtered. Tuples of probe without a match in that input
+     * must not produce any output, so it has to be an inner input.
+     * @param inner the inner flags of the join
+     * @param probe the index of the input that is filtered
+     * @return the index of the input or -1 if there is none
+     */
+    public static int getBuildInput(boolean[] inner, int probe) {
+        if (inner == null) {
+            return -1;
+        }
+        for (int i = 0; i < inner.length; i++) {
+            if (i != probe && inner[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param key a join key, a tuple if the join is on several fields
+     * @return the key of the filter for it, or null for a null key
+     */
+    public static Key toKey(Object key) throws ExecException {
+        if (key == null) {
+            return null;
+        }
+        return new Key(DataType.toBytes(key));
+    }
+
+    /**
+     * @return whether the tuples with this join key may have a match
+     */
+    public static boolean mightMatch(BloomFilter filter, Object key) throws ExecException {
+        Key k = toKey(key);
+        // null keys are left to the join
+        return k == null || filter.membershipTest(k);
+    }
+
+    public static byte[] toBytes(BloomFilter filter) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        filter.write(dos);
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    public static BloomFilter fromBytes(byte[] bytes) throws IOException {
+        BloomFilter filter = new BloomFilter();
+        filter.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+        return filter;
+    }
+}
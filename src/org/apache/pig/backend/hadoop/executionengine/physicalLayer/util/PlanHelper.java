@@ -56,6 +56,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PODemux;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PODistinct;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoinChain;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POGlobalRearrange;
@@ -72,6 +73,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartitionRearrange;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPreCombinerLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POReservoirSample;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSkewedJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
@@ -430,6 +432,12 @@ public class PlanHelper {
             visit(join);
         }
 
+        @Override
+        public void visitFRJoinChain(POFRJoinChain chain) throws VisitorException {
+            super.visitFRJoinChain(chain);
+            visit(chain);
+        }
+
         @Override
         public void visitMergeJoin(POMergeJoin join) throws VisitorException {
             super.visitMergeJoin(join);
@@ -481,6 +489,12 @@ public class PlanHelper {
             super.visitPartialAgg(poPartialAgg);
             visit(poPartialAgg);
         }
+
+        @Override
+        public void visitReservoirSample(POReservoirSample reservoirSample) {
+            super.visitReservoirSample(reservoirSample);
+            visit(reservoirSample);
+        }
     }
 
 }
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.data.DataType;
+
+/**
+ * A single column of a {@link VectorBatch}, held in primitive arrays.
+ * Integral and boolean values are stored in {@link #longs} (booleans as
+ * 0/1), floating point values in {@link #doubles}. Null values are
+ * tracked in {@link #isNull}.
+ */
+public class ColumnVector {
+
+    // Pig type of the values, one of INTEGER, LONG, FLOAT, DOUBLE, BOOLEAN
+    final byte type;
+
+    final long[] longs;
+
+    final double[] doubles;
+
+    final boolean[] isNull;
+
+    // true if no entry of isNull is set; lets the inner loops skip null checks
+    boolean noNulls = true;
+
+    ColumnVector(byte type, int capacity) {
+        this.type = type;
+        if (isFloatingPoint(type)) {
+            longs = null;
+            doubles = new double[capacity];
+        } else {
+            longs = new long[capacity];
+            doubles = null;
+        }
+        isNull = new boolean[capacity];
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public boolean isNull(int i) {
+        return !noNulls && isNull[i];
+    }
+
+    /**
+     * @return true if row i holds a non null true value. Only valid
+     * for boolean vectors.
+     */
+    public boolean isTrue(int i) {
+        return longs[i] != 0 && !isNull(i);
+    }
+
+    /**
+     * Box the value in row i into the object the row based operators
+     * would have produced for the same type.
+     */
+    public Object get(int i) {
+        if (isNull(i)) {
+            return null;
+        }
+        switch (type) {
+        case DataType.INTEGER:
+            return Integer.valueOf((int) longs[i]);
+        case DataType.LONG:
+            return Long.valueOf(longs[i]);
+        case DataType.BOOLEAN:
+            return Boolean.valueOf(longs[i] != 0);
+        case DataType.FLOAT:
+            return Float.valueOf((float) doubles[i]);
+        case DataType.DOUBLE:
+            return Double.valueOf(doubles[i]);
+        default:
+            throw new IllegalStateException("Unexpected vector type " + DataType.findTypeName(type));
+        }
+    }
+
+    void setNull(int i) {
+        isNull[i] = true;
+        noNulls = false;
+    }
+
+    /**
+     * Store a boxed value into row i.
+     * @return false if the value is not of the type of this vector
+     */
+    boolean set(int i, Object o) {
+        if (o == null) {
+            setNull(i);
+            return true;
+        }
+        isNull[i] = false;
+        switch (type) {
+        case DataType.INTEGER:
+            if (!(o instanceof Integer)) return false;
+            longs[i] = ((Integer) o).intValue();
+            return true;
+        case DataType.LONG:
+            if (!(o instanceof Long)) return false;
+            longs[i] = ((Long) o).longValue();
+            return true;
+        case DataType.BOOLEAN:
+            if (!(o instanceof Boolean)) return false;
+            longs[i] = ((Boolean) o).booleanValue() ? 1 : 0;
+            return true;
+        case DataType.FLOAT:
+            if (!(o instanceof Float)) return false;
+            doubles[i] = ((Float) o).floatValue();
+            return true;
+        case DataType.DOUBLE:
+            if (!(o instanceof Double)) return false;
+            doubles[i] = ((Double) o).doubleValue();
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Reset the null tracking before the vector is reused for a new batch.
+     */
+    void reset(int size) {
+        if (!noNulls) {
+            for (int i = 0; i < size; i++) {
+                isNull[i] = false;
+            }
+            noNulls = true;
+        }
+    }
+
+    static boolean isSupportedType(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+        case DataType.BOOLEAN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static boolean isFloatingPoint(byte type) {
+        return type == DataType.FLOAT || type == DataType.DOUBLE;
+    }
+}
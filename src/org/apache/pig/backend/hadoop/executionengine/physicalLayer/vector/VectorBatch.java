@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.Tuple;
+
+/**
+ * A batch of input tuples that is evaluated column at a time by a
+ * {@link VectorExpression}. The rows are kept as they were received so
+ * that the operator can pass the qualifying tuples on unchanged; columns
+ * referenced by the expression are extracted lazily into
+ * {@link ColumnVector}s.
+ */
+public class VectorBatch {
+
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final Tuple[] rows;
+
+    private int size = 0;
+
+    public VectorBatch(int capacity) {
+        rows = new Tuple[capacity];
+    }
+
+    public int getCapacity() {
+        return rows.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == rows.length;
+    }
+
+    public void add(Tuple t) {
+        rows[size++] = t;
+    }
+
+    public Tuple get(int i) {
+        return rows[i];
+    }
+
+    /**
+     * Drop all the rows so the batch can be refilled.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            rows[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Fill vector with the values of column col of every row.
+     * @return false if a value is not of the type of the vector, or a
+     * row is too short; the caller should then fall back to the row at
+     * a time path, which knows how to report the problem.
+     * @throws ExecException
+     */
+    boolean extract(int col, ColumnVector vector) throws ExecException {
+        vector.reset(size);
+        for (int i = 0; i < size; i++) {
+            Tuple t = rows[i];
+            if (t == null || col >= t.size()) {
+                return false;
+            }
+            if (!vector.set(i, t.get(col))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataType;
+
+/**
+ * An expression that is evaluated over a whole {@link VectorBatch} at a
+ * time. Instances are built from a physical expression plan by
+ * {@link VectorExpressionCompiler} and reuse their output vector from
+ * batch to batch, so that evaluation allocates nothing per row.
+ *
+ * The semantics, including null handling and integer overflow, are the
+ * same as those of the row at a time expression operators they replace.
+ */
+public abstract class VectorExpression {
+
+    protected final byte type;
+
+    protected final ColumnVector output;
+
+    protected VectorExpression(byte type, int capacity) {
+        this.type = type;
+        this.output = new ColumnVector(type, capacity);
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Evaluate the expression over all rows of the batch.
+     * @param batch input rows
+     * @return the vector of results, or null if the batch holds values
+     * this expression cannot handle, in which case the caller has to
+     * evaluate the batch row by row.
+     * @throws ExecException
+     */
+    public abstract ColumnVector evaluate(VectorBatch batch) throws ExecException;
+
+    /**
+     * Projection of a single column of the input tuples.
+     */
+    static class Column extends VectorExpression {
+        private final int col;
+
+        Column(byte type, int capacity, int col) {
+            super(type, capacity);
+            this.col = col;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) throws ExecException {
+            return batch.extract(col, output) ? output : null;
+        }
+    }
+
+    /**
+     * A constant, repeated for every row.
+     */
+    static class Constant extends VectorExpression {
+        Constant(byte type, int capacity, Object value) {
+            super(type, capacity);
+            for (int i = 0; i < capacity; i++) {
+                output.set(i, value);
+            }
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) {
+            return output;
+        }
+    }
+
+    /**
+     * Numeric to numeric cast.
+     */
+    static class Cast extends VectorExpression {
+        private final VectorExpression in;
+
+        Cast(byte type, int capacity, VectorExpression in) {
+            super(type, capacity);
+            this.in = in;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) throws ExecException {
+            ColumnVector v = in.evaluate(batch);
+            if (v == null) {
+                return null;
+            }
+            int n = batch.size();
+            output.reset(n);
+            copyNulls(v, output, n);
+            boolean fromDouble = ColumnVector.isFloatingPoint(v.type);
+            switch (type) {
+            case DataType.INTEGER:
+                for (int i = 0; i < n; i++) {
+                    output.longs[i] = fromDouble ? (int) v.doubles[i] : (int) v.longs[i];
+                }
+                break;
+            case DataType.LONG:
+                for (int i = 0; i < n; i++) {
+                    output.longs[i] = fromDouble ? (long) v.doubles[i] : v.longs[i];
+                }
+                break;
+            case DataType.FLOAT:
+                for (int i = 0; i < n; i++) {
+                    output.doubles[i] = fromDouble ? (float) v.doubles[i] : (float) v.longs[i];
+                }
+                break;
+            case DataType.DOUBLE:
+                for (int i = 0; i < n; i++) {
+                    output.doubles[i] = fromDouble ? v.doubles[i] : (double) v.longs[i];
+                }
+                break;
+            default:
+                return null;
+            }
+            return output;
+        }
+    }
+
+    /**
+     * Add, Subtract and Multiply.
+     */
+    static class Arithmetic extends VectorExpression {
+        static final int ADD = 0;
+        static final int SUBTRACT = 1;
+        static final int MULTIPLY = 2;
+
+        private final int op;
+        private final VectorExpression lhs;
+        private final VectorExpression rhs;
+
+        Arithmetic(byte type, int capacity, int op, VectorExpression lhs, VectorExpression rhs) {
+            super(type, capacity);
+            this.op = op;
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) throws ExecException {
+            ColumnVector l = lhs.evaluate(batch);
+            if (l == null) {
+                return null;
+            }
+            ColumnVector r = rhs.evaluate(batch);
+            if (r == null) {
+                return null;
+            }
+            int n = batch.size();
+            output.reset(n);
+            copyNulls(l, output, n);
+            copyNulls(r, output, n);
+            switch (type) {
+            case DataType.INTEGER: {
+                long[] a = l.longs, b = r.longs, o = output.longs;
+                switch (op) {
+                case ADD: for (int i = 0; i < n; i++) o[i] = (int) (a[i] + b[i]); break;
+                case SUBTRACT: for (int i = 0; i < n; i++) o[i] = (int) (a[i] - b[i]); break;
+                default: for (int i = 0; i < n; i++) o[i] = (int) (a[i] * b[i]); break;
+                }
+                break;
+            }
+            case DataType.LONG: {
+                long[] a = l.longs, b = r.longs, o = output.longs;
+                switch (op) {
+                case ADD: for (int i = 0; i < n; i++) o[i] = a[i] + b[i]; break;
+                case SUBTRACT: for (int i = 0; i < n; i++) o[i] = a[i] - b[i]; break;
+                default: for (int i = 0; i < n; i++) o[i] = a[i] * b[i]; break;
+                }
+                break;
+            }
+            case DataType.FLOAT: {
+                // float operations computed in double and rounded back give
+                // the same result as computing them in float
+                double[] a = l.doubles, b = r.doubles, o = output.doubles;
+                switch (op) {
+                case ADD: for (int i = 0; i < n; i++) o[i] = (float) (a[i] + b[i]); break;
+                case SUBTRACT: for (int i = 0; i < n; i++) o[i] = (float) (a[i] - b[i]); break;
+                default: for (int i = 0; i < n; i++) o[i] = (float) (a[i] * b[i]); break;
+                }
+                break;
+            }
+            case DataType.DOUBLE: {
+                double[] a = l.doubles, b = r.doubles, o = output.doubles;
+                switch (op) {
+                case ADD: for (int i = 0; i < n; i++) o[i] = a[i] + b[i]; break;
+                case SUBTRACT: for (int i = 0; i < n; i++) o[i] = a[i] - b[i]; break;
+                default: for (int i = 0; i < n; i++) o[i] = a[i] * b[i]; break;
+                }
+                break;
+            }
+            default:
+                return null;
+            }
+            return output;
+        }
+    }
+
+    /**
+     * The six binary comparison operators.
+     */
+    static class Comparison extends VectorExpression {
+        static final int EQ = 0;
+        static final int NE = 1;
+        static final int GT = 2;
+        static final int GTE = 3;
+        static final int LT = 4;
+        static final int LTE = 5;
+
+        private final int op;
+        private final VectorExpression lhs;
+        private final VectorExpression rhs;
+
+        Comparison(int capacity, int op, VectorExpression lhs, VectorExpression rhs) {
+            super(DataType.BOOLEAN, capacity);
+            this.op = op;
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) throws ExecException {
+            ColumnVector l = lhs.evaluate(batch);
+            if (l == null) {
+                return null;
+            }
+            ColumnVector r = rhs.evaluate(batch);
+            if (r == null) {
+                return null;
+            }
+            int n = batch.size();
+            output.reset(n);
+            copyNulls(l, output, n);
+            copyNulls(r, output, n);
+            long[] o = output.longs;
+            if (ColumnVector.isFloatingPoint(l.type)) {
+                // Double.compare orders NaN and -0.0 the way Double.compareTo
+                // and Float.compareTo do
+                double[] a = l.doubles, b = r.doubles;
+                for (int i = 0; i < n; i++) {
+                    o[i] = test(Double.compare(a[i], b[i]));
+                }
+            } else {
+                long[] a = l.longs, b = r.longs;
+                for (int i = 0; i < n; i++) {
+                    o[i] = test(a[i] < b[i] ? -1 : (a[i] == b[i] ? 0 : 1));
+                }
+            }
+            return output;
+        }
+
+        private long test(int c) {
+            boolean b;
+            switch (op) {
+            case EQ: b = c == 0; break;
+            case NE: b = c != 0; break;
+            case GT: b = c > 0; break;
+            case GTE: b = c >= 0; break;
+            case LT: b = c < 0; break;
+            default: b = c <= 0; break;
+            }
+            return b ? 1 : 0;
+        }
+    }
+
+    /**
+     * AND and OR, with the three valued logic of POAnd and POOr.
+     */
+    static class Logical extends VectorExpression {
+        private final boolean isAnd;
+        private final VectorExpression lhs;
+        private final VectorExpression rhs;
+
+        Logical(int capacity, boolean isAnd, VectorExpression lhs, VectorExpression rhs) {
+            super(DataType.BOOLEAN, capacity);
+            this.isAnd = isAnd;
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) throws ExecException {
+            ColumnVector l = lhs.evaluate(batch);
+            if (l == null) {
+                return null;
+            }
+            ColumnVector r = rhs.evaluate(batch);
+            if (r == null) {
+                return null;
+            }
+            int n = batch.size();
+            output.reset(n);
+            long[] a = l.longs, b = r.longs, o = output.longs;
+            if (l.noNulls && r.noNulls) {
+                if (isAnd) {
+                    for (int i = 0; i < n; i++) o[i] = a[i] & b[i];
+                } else {
+                    for (int i = 0; i < n; i++) o[i] = a[i] | b[i];
+                }
+                return output;
+            }
+            // a false (for AND) or true (for OR) operand decides the
+            // result even if the other one is null
+            long decisive = isAnd ? 0 : 1;
+            for (int i = 0; i < n; i++) {
+                boolean ln = l.isNull(i), rn = r.isNull(i);
+                if ((!ln && a[i] == decisive) || (!rn && b[i] == decisive)) {
+                    o[i] = decisive;
+                } else if (ln || rn) {
+                    output.setNull(i);
+                } else {
+                    o[i] = 1 - decisive;
+                }
+            }
+            return output;
+        }
+    }
+
+    /**
+     * NOT.
+     */
+    static class Not extends VectorExpression {
+        private final VectorExpression in;
+
+        Not(int capacity, VectorExpression in) {
+            super(DataType.BOOLEAN, capacity);
+            this.in = in;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) throws ExecException {
+            ColumnVector v = in.evaluate(batch);
+            if (v == null) {
+                return null;
+            }
+            int n = batch.size();
+            output.reset(n);
+            copyNulls(v, output, n);
+            for (int i = 0; i < n; i++) {
+                output.longs[i] = 1 - v.longs[i];
+            }
+            return output;
+        }
+    }
+
+    /**
+     * IS NULL; IS NOT NULL is compiled as NOT(IS NULL).
+     */
+    static class IsNull extends VectorExpression {
+        private final VectorExpression in;
+
+        IsNull(int capacity, VectorExpression in) {
+            super(DataType.BOOLEAN, capacity);
+            this.in = in;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorBatch batch) throws ExecException {
+            ColumnVector v = in.evaluate(batch);
+            if (v == null) {
+                return null;
+            }
+            int n = batch.size();
+            output.reset(n);
+            for (int i = 0; i < n; i++) {
+                output.longs[i] = v.isNull(i) ? 1 : 0;
+            }
+            return output;
+        }
+    }
+
+    private static void copyNulls(ColumnVector from, ColumnVector to, int n) {
+        if (from.noNulls) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            if (from.isNull[i]) {
+                to.setNull(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import java.util.List;
+
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LessThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Multiply;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.NotEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Subtract;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.data.DataType;
+
+/**
+ * Translates a physical expression plan into a {@link VectorExpression}.
+ * Only projections of single columns, constants, numeric casts, Add,
+ * Subtract, Multiply, the comparison operators, AND, OR, NOT and IS NULL
+ * over int, long, float, double and boolean values are supported. For
+ * any other plan the compiler returns null and the operator keeps using
+ * the row at a time path.
+ */
+public class VectorExpressionCompiler {
+
+    private final PhysicalPlan plan;
+
+    private final int capacity;
+
+    private VectorExpressionCompiler(PhysicalPlan plan, int capacity) {
+        this.plan = plan;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param plan expression plan with a single leaf
+     * @param capacity number of rows in the batches the expression will
+     * be evaluated on
+     * @return the compiled expression, or null if the plan cannot be
+     * evaluated a batch at a time
+     */
+    public static VectorExpression compile(PhysicalPlan plan, int capacity) {
+        List<PhysicalOperator> leaves = plan.getLeaves();
+        if (leaves == null || leaves.size() != 1) {
+            return null;
+        }
+        return new VectorExpressionCompiler(plan, capacity).compile(leaves.get(0));
+    }
+
+    /**
+     * @return true if plan can be evaluated a batch at a time
+     */
+    public static boolean isSupported(PhysicalPlan plan) {
+        return compile(plan, 1) != null;
+    }
+
+    private VectorExpression compile(PhysicalOperator op) {
+        if (op == null) {
+            return null;
+        }
+        if (op.getClass() == POProject.class) {
+            return compileProject((POProject) op);
+        } else if (op instanceof ConstantExpression) {
+            return compileConstant((ConstantExpression) op);
+        } else if (op instanceof POCast) {
+            return compileCast((POCast) op);
+        } else if (op instanceof Add || op instanceof Subtract || op instanceof Multiply) {
+            return compileArithmetic((BinaryExpressionOperator) op);
+        } else if (op instanceof POAnd || op instanceof POOr) {
+            // checked before the comparisons, as AND and OR are binary
+            // comparison operators too
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            VectorExpression lhs = compileBoolean(bin.getLhs());
+            VectorExpression rhs = compileBoolean(bin.getRhs());
+            if (lhs == null || rhs == null) {
+                return null;
+            }
+            return new VectorExpression.Logical(capacity, op instanceof POAnd, lhs, rhs);
+        } else if (op instanceof BinaryComparisonOperator) {
+            return compileComparison((BinaryComparisonOperator) op);
+        } else if (op instanceof PONot) {
+            VectorExpression in = compileBoolean(((PONot) op).getExpr());
+            return in == null ? null : new VectorExpression.Not(capacity, in);
+        } else if (op instanceof POIsNull) {
+            PhysicalOperator expr = ((POIsNull) op).getExpr();
+            // boolean operators return a null result with a NULL status,
+            // which IS NULL passes on rather than turning into true
+            if (expr != null && expr.getResultType() == DataType.BOOLEAN
+                    && !(expr instanceof POProject || expr instanceof ConstantExpression)) {
+                return null;
+            }
+            VectorExpression in = compile(expr);
+            return in == null ? null : new VectorExpression.IsNull(capacity, in);
+        }
+        return null;
+    }
+
+    private VectorExpression compileBoolean(PhysicalOperator op) {
+        VectorExpression e = compile(op);
+        return (e != null && e.getType() == DataType.BOOLEAN) ? e : null;
+    }
+
+    private VectorExpression compileProject(POProject project) {
+        if (plan.getPredecessors(project) != null || project.isProjectToEnd()
+                || project.isOverloaded() || project.getColumns().size() != 1
+                || !ColumnVector.isSupportedType(project.getResultType())) {
+            return null;
+        }
+        return new VectorExpression.Column(project.getResultType(), capacity,
+                project.getColumns().get(0));
+    }
+
+    private VectorExpression compileConstant(ConstantExpression constant) {
+        byte type = constant.getResultType();
+        if (!ColumnVector.isSupportedType(type)) {
+            return null;
+        }
+        Object value = constant.getValue();
+        if (value != null && DataType.findType(value) != type) {
+            return null;
+        }
+        return new VectorExpression.Constant(type, capacity, value);
+    }
+
+    private VectorExpression compileCast(POCast cast) {
+        byte type = cast.getResultType();
+        List<PhysicalOperator> preds = plan.getPredecessors(cast);
+        if (!isNumeric(type) || preds == null || preds.size() != 1) {
+            return null;
+        }
+        VectorExpression in = compile(preds.get(0));
+        if (in == null || !isNumeric(in.getType())) {
+            return null;
+        }
+        return new VectorExpression.Cast(type, capacity, in);
+    }
+
+    private VectorExpression compileArithmetic(BinaryExpressionOperator op) {
+        byte type = op.getResultType();
+        if (!isNumeric(type)) {
+            return null;
+        }
+        VectorExpression lhs = compile(op.getLhs());
+        VectorExpression rhs = compile(op.getRhs());
+        if (lhs == null || rhs == null || lhs.getType() != type || rhs.getType() != type) {
+            return null;
+        }
+        int kind;
+        if (op instanceof Add) {
+            kind = VectorExpression.Arithmetic.ADD;
+        } else if (op instanceof Subtract) {
+            kind = VectorExpression.Arithmetic.SUBTRACT;
+        } else {
+            kind = VectorExpression.Arithmetic.MULTIPLY;
+        }
+        return new VectorExpression.Arithmetic(type, capacity, kind, lhs, rhs);
+    }
+
+    private VectorExpression compileComparison(BinaryComparisonOperator op) {
+        byte type = op.getOperandType();
+        if (!ColumnVector.isSupportedType(type)) {
+            return null;
+        }
+        VectorExpression lhs = compile(op.getLhs());
+        VectorExpression rhs = compile(op.getRhs());
+        if (lhs == null || rhs == null || lhs.getType() != type || rhs.getType() != type) {
+            return null;
+        }
+        int kind;
+        if (op instanceof EqualToExpr) {
+            kind = VectorExpression.Comparison.EQ;
+        } else if (op instanceof NotEqualToExpr) {
+            kind = VectorExpression.Comparison.NE;
+        } else if (op instanceof GreaterThanExpr) {
+            kind = VectorExpression.Comparison.GT;
+        } else if (op instanceof GTOrEqualToExpr) {
+            kind = VectorExpression.Comparison.GTE;
+        } else if (op instanceof LessThanExpr) {
+            kind = VectorExpression.Comparison.LT;
+        } else if (op instanceof LTOrEqualToExpr) {
+            kind = VectorExpression.Comparison.LTE;
+        } else {
+            return null;
+        }
+        if (type == DataType.BOOLEAN && kind != VectorExpression.Comparison.EQ
+                && kind != VectorExpression.Comparison.NE) {
+            return null;
+        }
+        return new VectorExpression.Comparison(capacity, kind, lhs, rhs);
+    }
+
+    private static boolean isNumeric(byte type) {
+        return type == DataType.INTEGER || type == DataType.LONG
+                || type == DataType.FLOAT || type == DataType.DOUBLE;
+    }
+}
@@ -12,23 +12,31 @@ import com.google.common.collect.Lists;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigConstants;
 import org.apache.pig.PigException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.CombinerOptimizer;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.Launcher;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MRCompiler;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.POPackageAnnotator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCache;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCombinerPackage;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PODistinct;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POGlobalRearrange;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLimit;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPreCombinerLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSkewedJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
@@ -37,13 +45,16 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelp
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.CacheConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.DistinctConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.FilterConverter;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.FRJoinConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.ForEachConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.GlobalRearrangeConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.LimitConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.LoadConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.LocalRearrangeConverter;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.MergeJoinConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.POConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.PackageConverter;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.SkewedJoinConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.SortConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.SplitConverter;
 import org.apache.pig.backend.hadoop.executionengine.spark.converter.StoreConverter;
@@ -52,6 +63,8 @@ import org.apache.pig.data.SchemaTupleBackend;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.tools.pigstats.PigStats;
 import org.apache.pig.tools.pigstats.SparkStats;
 
@@ -89,6 +102,11 @@ public class SparkLauncher extends Launcher {
         MRCompiler mrCompiler = new MRCompiler(physicalPlan, pigContext);
         mrCompiler.compile();
         MROperPlan plan = mrCompiler.getMRPlan();
+        Map<OperatorKey, PhysicalPlan> combinePlans = new HashMap<OperatorKey, PhysicalPlan>();
+        String prop = pigContext.getProperties().getProperty(PigConfiguration.PROP_NO_COMBINER);
+        if (!pigContext.inIllustrator && !("true".equals(prop))) {
+            combinePlans = optimizeCombiners(plan, physicalPlan);
+        }
         POPackageAnnotator pkgAnnotator = new POPackageAnnotator(plan);
         pkgAnnotator.visit();
 //        // this one: not sure
@@ -108,14 +126,20 @@ public class SparkLauncher extends Launcher {
         convertMap.put(POForEach.class, new ForEachConverter());
         convertMap.put(POFilter.class,  new FilterConverter());
         convertMap.put(POPackage.class, new PackageConverter());
+        convertMap.put(POCombinerPackage.class, new PackageConverter());
         convertMap.put(POCache.class,   cacheConverter);
         convertMap.put(POLocalRearrange.class,  new LocalRearrangeConverter());
-        convertMap.put(POGlobalRearrange.class, new GlobalRearrangeConverter());
+        convertMap.put(POPreCombinerLocalRearrange.class, new LocalRearrangeConverter());
+        convertMap.put(POGlobalRearrange.class,
+                new GlobalRearrangeConverter(pigContext, physicalPlan, combinePlans));
         convertMap.put(POLimit.class, new LimitConverter());
         convertMap.put(PODistinct.class, new DistinctConverter());
         convertMap.put(POUnion.class, new UnionConverter(sparkContext));
         convertMap.put(POSort.class, new SortConverter());
         convertMap.put(POSplit.class, new SplitConverter());
+        convertMap.put(POFRJoin.class, new FRJoinConverter(sparkContext));
+        convertMap.put(POSkewedJoin.class, new SkewedJoinConverter(pigContext, physicalPlan));
+        convertMap.put(POMergeJoin.class, new MergeJoinConverter(physicalPlan));
 
         Map<OperatorKey, RDD<Tuple>> rdds = new HashMap<OperatorKey, RDD<Tuple>>();
 
@@ -129,6 +153,65 @@ public class SparkLauncher extends Launcher {
         return stats;
     }
 
+    /**
+     * Runs the {@link CombinerOptimizer} on the jobs of plan that group a
+     * rearrange of physicalPlan, and moves the operators it puts in their map
+     * and reduce plans into physicalPlan. The global rearrange then combines
+     * the values of each key with the combine plan of the job, on both sides
+     * of the shuffle, instead of grouping all of them.
+     * @return the combine plans, by the key of the global rearrange
+     */
+    private static Map<OperatorKey, PhysicalPlan> optimizeCombiners(MROperPlan plan,
+            PhysicalPlan physicalPlan) throws PlanException, VisitorException {
+        Map<OperatorKey, PhysicalPlan> combinePlans = new HashMap<OperatorKey, PhysicalPlan>();
+        // POPartialAgg does its map side aggregation for MR only, the shuffle
+        // of Spark combines on the map side already
+        CombinerOptimizer co = new CombinerOptimizer(plan, false);
+        for (MapReduceOper mro : plan) {
+            if (mro.reducePlan.isEmpty() || mro.mapPlan.getLeaves().size() != 1
+                    || mro.reducePlan.getRoots().size() != 1) {
+                continue;
+            }
+            // only the jobs that physicalPlan goes through as is, the
+            // optimizer changes the reduce plan in place
+            PhysicalOperator lr = mro.mapPlan.getLeaves().get(0);
+            PhysicalOperator pkg = mro.reducePlan.getRoots().get(0);
+            if (!(lr instanceof POLocalRearrange) || physicalPlan.getOperator(lr.getOperatorKey()) != lr) {
+                continue;
+            }
+            List<PhysicalOperator> successors = physicalPlan.getSuccessors(lr);
+            if (successors == null || successors.size() != 1
+                    || !(successors.get(0) instanceof POGlobalRearrange)) {
+                continue;
+            }
+            PhysicalOperator gr = successors.get(0);
+            if (physicalPlan.getPredecessors(gr).size() != 1
+                    || physicalPlan.getSuccessors(gr) == null
+                    || physicalPlan.getSuccessors(gr).get(0) != pkg) {
+                continue;
+            }
+
+            co.visitMROp(mro);
+            if (mro.combinePlan.isEmpty()) {
+                continue;
+            }
+            // the map plan now ends with
+            // POPreCombinerLocalRearrange -> POForEach(INITIAL) -> POLocalRearrange
+            PhysicalOperator mlr = mro.mapPlan.getLeaves().get(0);
+            PhysicalOperator mfe = mro.mapPlan.getPredecessors(mlr).get(0);
+            PhysicalOperator pclr = mro.mapPlan.getPredecessors(mfe).get(0);
+            physicalPlan.replace(lr, pclr);
+            physicalPlan.add(mfe);
+            physicalPlan.insertBetween(pclr, mfe, gr);
+            physicalPlan.add(mlr);
+            physicalPlan.insertBetween(mfe, mlr, gr);
+            // and the reduce plan starts with a POCombinerPackage
+            physicalPlan.replace(pkg, mro.reducePlan.getRoots().get(0));
+            combinePlans.put(gr.getOperatorKey(), mro.combinePlan);
+        }
+        return combinePlans;
+    }
+
     private static void startSparkIfNeeded() throws PigException {
         if (sparkContext == null) {
             String master = System.getenv("SPARK_MASTER");
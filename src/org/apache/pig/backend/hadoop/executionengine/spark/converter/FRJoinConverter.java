@@ -0,0 +1,93 @@
+package org.apache.pig.backend.hadoop.executionengine.spark.converter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
+import org.apache.pig.backend.hadoop.executionengine.spark.SparkUtil;
+import org.apache.pig.data.Tuple;
+import org.apache.spark.SparkContext;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.rdd.RDD;
+
+import scala.collection.Iterator;
+import scala.collection.JavaConversions;
+
+/**
+ * Converts a replicated join to a broadcast hash join: the replicated inputs
+ * are collected and broadcast to the tasks, which build the hash tables of
+ * the POFRJoin from them and stream the fragment through it. Nothing is
+ * shuffled.
+ */
+@SuppressWarnings({ "serial"})
+public class FRJoinConverter implements POConverter<Tuple, Tuple, POFRJoin> {
+    private static final Log LOG = LogFactory.getLog(FRJoinConverter.class);
+
+    private final SparkContext sparkContext;
+
+    public FRJoinConverter(SparkContext sparkContext) {
+        this.sparkContext = sparkContext;
+    }
+
+    @Override
+    public RDD<Tuple> convert(List<RDD<Tuple>> predecessors, POFRJoin physicalOperator)
+            throws IOException {
+        SparkUtil.assertPredecessorSizeGreaterThan(predecessors, physicalOperator, 1);
+        int fragment = physicalOperator.getFragment();
+        ArrayList<List<Tuple>> replicated = new ArrayList<List<Tuple>>(predecessors.size());
+        for (int i = 0; i < predecessors.size(); i++) {
+            if (i == fragment) {
+                replicated.add(new ArrayList<Tuple>());
+            } else {
+                List<Tuple> tuples = new ArrayList<Tuple>(predecessors.get(i).toJavaRDD().collect());
+                LOG.info("Broadcasting " + tuples.size() + " tuples of replicated input " + i);
+                replicated.add(tuples);
+            }
+        }
+        Broadcast<ArrayList<List<Tuple>>> broadcast = sparkContext.broadcast(replicated);
+        return predecessors.get(fragment).mapPartitions(
+                new FRJoinFunction(physicalOperator, broadcast), true,
+                SparkUtil.getManifest(Tuple.class));
+    }
+
+    private static class FRJoinFunction extends Function<Iterator<Tuple>, Iterator<Tuple>>
+            implements Serializable {
+
+        private final POFRJoin poFRJoin;
+
+        private final Broadcast<ArrayList<List<Tuple>>> replicated;
+
+        private transient boolean initialized;
+
+        private FRJoinFunction(POFRJoin poFRJoin, Broadcast<ArrayList<List<Tuple>>> replicated) {
+            this.poFRJoin = poFRJoin;
+            this.replicated = replicated;
+        }
+
+        public Iterator<Tuple> call(Iterator<Tuple> i) throws ExecException {
+            if (!initialized) {
+                poFRJoin.setUpHashMap(replicated.value());
+                initialized = true;
+            }
+            final java.util.Iterator<Tuple> input = JavaConversions.asJavaIterator(i);
+            Iterator<Tuple> output = JavaConversions.asScalaIterator(new POOutputConsumerIterator(input) {
+                protected void attach(Tuple tuple) {
+                    poFRJoin.setInputs(null);
+                    poFRJoin.attachInput(tuple);
+                }
+
+                protected Result getNextResult() throws ExecException {
+                    return poFRJoin.getNextTuple();
+                }
+            });
+            return output;
+        }
+    }
+}
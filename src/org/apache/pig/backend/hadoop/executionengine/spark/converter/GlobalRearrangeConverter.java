@@ -3,26 +3,47 @@ package org.apache.pig.backend.hadoop.executionengine.spark.converter;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POGlobalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage.PackageType;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.BloomJoinHelper;
 import org.apache.pig.backend.hadoop.executionengine.spark.SparkUtil;
+import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.NullableTuple;
+import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.spark.HashPartitioner;
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.rdd.CoGroupedRDD;
+import org.apache.spark.rdd.PairRDDFunctions;
 import org.apache.spark.rdd.RDD;
+import org.apache.spark.storage.StorageLevel;
 
 import scala.Product2;
 import scala.Tuple2;
 import scala.collection.JavaConversions;
 import scala.collection.Seq;
 import scala.reflect.ClassManifest;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.AbstractFunction2;
 
 @SuppressWarnings({ "serial"})
 public class GlobalRearrangeConverter implements POConverter<Tuple, Tuple, POGlobalRearrange> {
@@ -36,6 +57,32 @@ public class GlobalRearrangeConverter implements POConverter<Tuple, Tuple, POGlo
     // COGROUP FUNCTIONS
     private static final GroupTupleFunction GROUP_TUPLE_FUNCTION = new GroupTupleFunction();
     private static final ToGroupKeyValueFunction TO_GROUP_KEY_VALUE_FUNCTION = new ToGroupKeyValueFunction();
+    // COMBINE FUNCTIONS
+    private static final ToKeyIndexedValueFunction TO_KEY_INDEXED_VALUE_FUNCTION = new ToKeyIndexedValueFunction();
+    private static final CreateCombinerFunction CREATE_COMBINER_FUNCTION = new CreateCombinerFunction();
+    private static final CombinedTupleFunction COMBINED_TUPLE_FUNCTION = new CombinedTupleFunction();
+
+    // number of values of a key collected before they are combined
+    private static final int COMBINE_BATCH_SIZE = 100;
+
+    private final PigContext pigContext;
+    private final PhysicalPlan physicalPlan;
+    private final Map<OperatorKey, PhysicalPlan> combinePlans;
+
+    public GlobalRearrangeConverter(PigContext pigContext, PhysicalPlan physicalPlan) {
+        this(pigContext, physicalPlan, new HashMap<OperatorKey, PhysicalPlan>());
+    }
+
+    /**
+     * @param combinePlans the combine plans set by the CombinerOptimizer, by the
+     * key of the global rearrange whose values they combine
+     */
+    public GlobalRearrangeConverter(PigContext pigContext, PhysicalPlan physicalPlan,
+            Map<OperatorKey, PhysicalPlan> combinePlans) {
+        this.pigContext = pigContext;
+        this.physicalPlan = physicalPlan;
+        this.combinePlans = combinePlans;
+    }
 
     @Override
     public RDD<Tuple> convert(List<RDD<Tuple>> predecessors,
@@ -49,7 +96,24 @@ public class GlobalRearrangeConverter implements POConverter<Tuple, Tuple, POGlo
         }
         LOG.info("Parallelism for Spark groupBy: " + parallelism);
         
-        if (predecessors.size() == 1) {
+        PhysicalPlan combinePlan = combinePlans.get(physicalOperator.getOperatorKey());
+        if (predecessors.size() == 1 && combinePlan != null) {
+            //GROUP with algebraic functions only
+            LOG.info("Combining the values of each key on both sides of the shuffle");
+            ClassManifest<Tuple2<Object, Tuple>> tuple2ClassManifest = SparkUtil.<Object, Tuple>getTuple2Manifest();
+            RDD<Tuple2<Object, Tuple>> rddPair = predecessors.get(0)
+                .map(TO_KEY_INDEXED_VALUE_FUNCTION, tuple2ClassManifest);
+            CombineFunction combineFunction = new CombineFunction(combinePlan);
+            RDD<Tuple2<Object, ArrayList<Tuple>>> combined =
+                new PairRDDFunctions<Object, Tuple>(rddPair, SparkUtil.getManifest(Object.class),
+                        SparkUtil.getManifest(Tuple.class))
+                .combineByKey(CREATE_COMBINER_FUNCTION,
+                        new MergeValueFunction(combineFunction),
+                        new MergeCombinersFunction(combineFunction),
+                        new HashPartitioner(parallelism), true, null);
+            // convert result to a tuple (key, { values })
+            return combined.map(COMBINED_TUPLE_FUNCTION, SparkUtil.getManifest(Tuple.class));
+        } else if (predecessors.size() == 1) {
             //GROUP
             return predecessors.get(0)
                 // group by key
@@ -61,6 +125,10 @@ public class GlobalRearrangeConverter implements POConverter<Tuple, Tuple, POGlo
             // each pred returns (index, key, value)
             ClassManifest<Tuple2<Object, Tuple>> tuple2ClassManifest = SparkUtil.<Object, Tuple>getTuple2Manifest();
             
+            if (BloomJoinHelper.isEnabled(pigContext.getProperties())) {
+                predecessors = filterLastJoinInput(predecessors, physicalOperator);
+            }
+
             List<RDD<Tuple2<Object, Tuple>>> rddPairs = new ArrayList();
             for (RDD<Tuple> rdd : predecessors) {
                 RDD<Tuple2<Object, Tuple>> rddPair = rdd.map(TO_KEY_VALUE_FUNCTION, tuple2ClassManifest);
@@ -78,6 +146,284 @@ public class GlobalRearrangeConverter implements POConverter<Tuple, Tuple, POGlo
         }
     }
 
+    /**
+     * If physicalOperator is part of a join, drops the tuples of the last
+     * input whose key is not in a Bloom filter of the keys of an inner input,
+     * see {@link org.apache.pig.PigConfiguration#JOIN_BLOOM_FILTER}. The filter
+     * is built by each partition of the inner input and merged here, the
+     * inner input is cached as it is then read again by the join.
+     */
+    private List<RDD<Tuple>> filterLastJoinInput(List<RDD<Tuple>> predecessors,
+            POGlobalRearrange physicalOperator) throws IOException {
+        List<PhysicalOperator> successors = physicalPlan.getSuccessors(physicalOperator);
+        if (successors == null || successors.size() != 1 || !(successors.get(0) instanceof POPackage)
+                || ((POPackage)successors.get(0)).getPackageType() != PackageType.JOIN) {
+            return predecessors;
+        }
+        // same order as predecessors, see SparkLauncher.physicalToRDD
+        List<PhysicalOperator> inputs = physicalPlan.getPredecessors(physicalOperator);
+        int buildIndex = BloomJoinHelper.getBuildInput(((POPackage)successors.get(0)).getInner(),
+                inputs.size() - 1);
+        int probe = -1;
+        int build = -1;
+        for (int i = 0; i < inputs.size(); i++) {
+            if (!(inputs.get(i) instanceof POLocalRearrange)) {
+                return predecessors;
+            }
+            int index = ((POLocalRearrange)inputs.get(i)).getIndex();
+            if (index == inputs.size() - 1) {
+                probe = i;
+            } else if (index == buildIndex) {
+                build = i;
+            }
+        }
+        if (probe == -1 || build == -1) {
+            return predecessors;
+        }
+
+        RDD<Tuple> buildRdd = predecessors.get(build);
+        if (buildRdd.getStorageLevel() == StorageLevel.NONE()) {
+            buildRdd.cache();
+        }
+        BloomFilter filter = BloomJoinHelper.newFilter(pigContext.getProperties());
+        List<Tuple> partitionFilters = buildRdd.mapPartitions(
+                new BuildBloomFunction(BloomJoinHelper.toBytes(filter)), false,
+                SparkUtil.getManifest(Tuple.class)).toJavaRDD().collect();
+        for (Tuple t : partitionFilters) {
+            filter.or(BloomJoinHelper.fromBytes(((DataByteArray)t.get(0)).get()));
+        }
+        LOG.info("Filtering the last input of join with a Bloom filter of the keys of input " + buildIndex);
+
+        List<RDD<Tuple>> filtered = new ArrayList<RDD<Tuple>>(predecessors);
+        filtered.set(probe, predecessors.get(probe).filter(
+                new BloomFilterFunction(BloomJoinHelper.toBytes(filter))));
+        return filtered;
+    }
+
+    private static class BuildBloomFunction extends Function<scala.collection.Iterator<Tuple>, scala.collection.Iterator<Tuple>>
+            implements Serializable {
+
+        // an empty filter of the right size
+        private final byte[] emptyFilter;
+
+        public BuildBloomFunction(byte[] emptyFilter) {
+            this.emptyFilter = emptyFilter;
+        }
+
+        @Override
+        public scala.collection.Iterator<Tuple> call(scala.collection.Iterator<Tuple> input) throws IOException {
+            BloomFilter filter = BloomJoinHelper.fromBytes(emptyFilter);
+            Iterator<Tuple> it = JavaConversions.asJavaIterator(input);
+            while (it.hasNext()) {
+                // (index, key, value)
+                Key key = BloomJoinHelper.toKey(it.next().get(1));
+                if (key != null) {
+                    filter.add(key);
+                }
+            }
+            Tuple out = tf.newTuple(1);
+            out.set(0, new DataByteArray(BloomJoinHelper.toBytes(filter)));
+            List<Tuple> result = new ArrayList<Tuple>(1);
+            result.add(out);
+            return JavaConversions.asScalaIterator(result.iterator());
+        }
+    }
+
+    private static class BloomFilterFunction extends AbstractFunction1<Tuple, Object>
+            implements Serializable {
+
+        private final byte[] bytes;
+
+        private transient BloomFilter filter;
+
+        public BloomFilterFunction(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public Boolean apply(Tuple t) {
+            try {
+                if (filter == null) {
+                    filter = BloomJoinHelper.fromBytes(bytes);
+                }
+                // (index, key, value)
+                return BloomJoinHelper.mightMatch(filter, t.get(1));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class ToKeyIndexedValueFunction extends AbstractFunction1<Tuple, Tuple2<Object, Tuple>>
+            implements Serializable {
+
+        @Override
+        public Tuple2<Object, Tuple> apply(Tuple t) {
+            try {
+                // (key, (index, key, value))
+                return new Tuple2<Object, Tuple>(t.get(1), t);
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Combines the (index, key, value) tuples of a key with the combine plan
+     * of the CombinerOptimizer, a POCombinerPackage followed by the
+     * intermediate functions of the algebraic functions.
+     */
+    private static class CombineFunction implements Serializable {
+
+        private final PhysicalPlan combinePlan;
+
+        private transient POPackage pack;
+
+        private transient PhysicalOperator[] roots;
+
+        private transient PhysicalOperator leaf;
+
+        public CombineFunction(PhysicalPlan combinePlan) {
+            this.combinePlan = combinePlan;
+        }
+
+        public ArrayList<Tuple> combine(final Object key, final List<Tuple> values) {
+            try {
+                if (pack == null) {
+                    // as in PigCombiner, the package is run on its own and its
+                    // output attached to the rest of the plan
+                    pack = (POPackage)combinePlan.getRoots().get(0);
+                    List<PhysicalOperator> successors = combinePlan.getSuccessors(pack);
+                    roots = successors.toArray(new PhysicalOperator[successors.size()]);
+                    for (PhysicalOperator root : roots) {
+                        root.setInputs(null);
+                    }
+                    leaf = combinePlan.getLeaves().get(0);
+                }
+                PigNullableWritable keyWritable = new PigNullableWritable() {
+                    public Object getValueAsPigType() {
+                        return key;
+                    }
+                };
+                final Iterator<Tuple> valueIterator = values.iterator();
+                pack.attachInput(keyWritable, new Iterator<NullableTuple>() {
+                    public boolean hasNext() {
+                        return valueIterator.hasNext();
+                    }
+                    public NullableTuple next() {
+                        try {
+                            Tuple next = valueIterator.next();
+                            NullableTuple nullableTuple = new NullableTuple((Tuple)next.get(2));
+                            nullableTuple.setIndex(((Number)next.get(0)).byteValue());
+                            return nullableTuple;
+                        } catch (ExecException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                });
+                Result res = pack.getNextTuple();
+                if (res.returnStatus != POStatus.STATUS_OK) {
+                    throw new RuntimeException("Unexpected response code from operator "
+                            + pack + " : " + res);
+                }
+                for (PhysicalOperator root : roots) {
+                    root.attachInput((Tuple)res.result);
+                }
+                // (index, key, combined value)
+                ArrayList<Tuple> combined = new ArrayList<Tuple>(1);
+                while (true) {
+                    Result out = leaf.getNextTuple();
+                    if (out.returnStatus == POStatus.STATUS_OK) {
+                        combined.add((Tuple)out.result);
+                    } else if (out.returnStatus == POStatus.STATUS_EOP) {
+                        break;
+                    } else if (out.returnStatus != POStatus.STATUS_NULL) {
+                        throw new RuntimeException("Unexpected response code from operator "
+                                + leaf + " : " + out);
+                    }
+                }
+                return combined;
+            } catch (ExecException e) {
+                throw new RuntimeException("Couldn't combine the values of key: " + key, e);
+            }
+        }
+
+        public ArrayList<Tuple> combineIfFull(Object key, ArrayList<Tuple> values) {
+            return values.size() < COMBINE_BATCH_SIZE ? values : combine(key, values);
+        }
+    }
+
+    private static class CreateCombinerFunction extends AbstractFunction1<Tuple, ArrayList<Tuple>>
+            implements Serializable {
+
+        @Override
+        public ArrayList<Tuple> apply(Tuple t) {
+            ArrayList<Tuple> values = new ArrayList<Tuple>();
+            values.add(t);
+            return values;
+        }
+    }
+
+    private static class MergeValueFunction extends AbstractFunction2<ArrayList<Tuple>, Tuple, ArrayList<Tuple>>
+            implements Serializable {
+
+        private final CombineFunction combineFunction;
+
+        public MergeValueFunction(CombineFunction combineFunction) {
+            this.combineFunction = combineFunction;
+        }
+
+        @Override
+        public ArrayList<Tuple> apply(ArrayList<Tuple> values, Tuple t) {
+            values.add(t);
+            try {
+                return combineFunction.combineIfFull(t.get(1), values);
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class MergeCombinersFunction
+            extends AbstractFunction2<ArrayList<Tuple>, ArrayList<Tuple>, ArrayList<Tuple>>
+            implements Serializable {
+
+        private final CombineFunction combineFunction;
+
+        public MergeCombinersFunction(CombineFunction combineFunction) {
+            this.combineFunction = combineFunction;
+        }
+
+        @Override
+        public ArrayList<Tuple> apply(ArrayList<Tuple> values1, ArrayList<Tuple> values2) {
+            values1.addAll(values2);
+            try {
+                return combineFunction.combineIfFull(values1.get(0).get(1), values1);
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class CombinedTupleFunction extends AbstractFunction1<Tuple2<Object, ArrayList<Tuple>>, Tuple>
+            implements Serializable {
+
+        @Override
+        public Tuple apply(Tuple2<Object, ArrayList<Tuple>> v1) {
+            try {
+                Tuple tuple = tf.newTuple(2);
+                tuple.set(0, v1._1()); // the key
+                tuple.set(1, v1._2().iterator()); // the partially combined (index, key, value)s
+                return tuple;
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     private static class GetKeyFunction extends Function<Tuple, Object> implements Serializable {
 
         @Override
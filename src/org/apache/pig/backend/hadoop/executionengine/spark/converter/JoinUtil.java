@@ -0,0 +1,125 @@
+package org.apache.pig.backend.hadoop.executionengine.spark.converter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import scala.Tuple2;
+import scala.runtime.AbstractFunction1;
+
+/**
+ * Functions shared by the converters of the join operators, which pair each
+ * tuple with its join key instead of going through a local rearrange.
+ */
+@SuppressWarnings({ "serial"})
+class JoinUtil {
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private JoinUtil() {
+    }
+
+    /**
+     * Evaluates the join key of a tuple the way POLocalRearrange does, a
+     * tuple of the values if the join is on several fields
+     */
+    static Object getKey(List<PhysicalPlan> plans, Tuple t) throws ExecException {
+        List<Object> values = new ArrayList<Object>(plans.size());
+        for (PhysicalPlan plan : plans) {
+            plan.attachInput(t);
+            PhysicalOperator leaf = plan.getLeaves().get(0);
+            Result res = leaf.getNext(leaf.getResultType());
+            plan.detachInput();
+            if (res.returnStatus != POStatus.STATUS_OK && res.returnStatus != POStatus.STATUS_NULL) {
+                throw new RuntimeException("Unexpected response code from operator "
+                        + leaf + " : " + res);
+            }
+            values.add(res.result);
+        }
+        return values.size() == 1 ? values.get(0) : tf.newTuple(values);
+    }
+
+    /**
+     * @return the tuple of the fields of left followed by the fields of right
+     */
+    static Tuple join(Tuple left, Tuple right) throws ExecException {
+        Tuple joined = tf.newTuple(left.size() + right.size());
+        int i = 0;
+        for (Object o : left) {
+            joined.set(i++, o);
+        }
+        for (Object o : right) {
+            joined.set(i++, o);
+        }
+        return joined;
+    }
+
+    /**
+     * @return the tuple of nulls an outer join pads the missing side with
+     */
+    static Tuple nullTuple(int size) {
+        return tf.newTuple(size);
+    }
+
+    /**
+     * @return the number of fields of the input of the given schema, 0 if it
+     * is unknown
+     */
+    static int size(Schema schema) {
+        return schema == null ? 0 : schema.size();
+    }
+
+    static class ToKeyValueFunction extends AbstractFunction1<Tuple, Tuple2<Object, Tuple>>
+            implements Serializable {
+
+        private final List<PhysicalPlan> plans;
+
+        ToKeyValueFunction(List<PhysicalPlan> plans) {
+            this.plans = plans;
+        }
+
+        @Override
+        public Tuple2<Object, Tuple> apply(Tuple t) {
+            try {
+                // (key, tuple)
+                return new Tuple2<Object, Tuple>(getKey(plans, t), t);
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static class GetKeyFunction extends AbstractFunction1<Tuple2<Object, Tuple>, Object>
+            implements Serializable {
+
+        @Override
+        public Object apply(Tuple2<Object, Tuple> v1) {
+            return v1._1();
+        }
+    }
+
+    /**
+     * Orders join keys, null first
+     */
+    static class KeyComparator implements Comparator<Object>, Serializable {
+
+        @Override
+        public int compare(Object o1, Object o2) {
+            if (o1 == null || o2 == null) {
+                return o1 == null ? (o2 == null ? 0 : -1) : 1;
+            }
+            return DataType.compare(o1, o2);
+        }
+    }
+}
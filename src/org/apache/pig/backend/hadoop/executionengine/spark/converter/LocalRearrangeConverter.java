@@ -7,21 +7,25 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
-import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
 import org.apache.pig.backend.hadoop.executionengine.spark.SparkUtil;
 import org.apache.pig.data.Tuple;
 
 import scala.runtime.AbstractFunction1;
 import org.apache.spark.rdd.RDD;
 
+/**
+ * Converts a POLocalRearrange, or the POPreCombinerLocalRearrange that
+ * replaces it when the values of each key are combined.
+ */
 @SuppressWarnings({ "serial"})
-public class LocalRearrangeConverter implements POConverter<Tuple, Tuple, POLocalRearrange> {
+public class LocalRearrangeConverter implements POConverter<Tuple, Tuple, PhysicalOperator> {
     private static final Log LOG = LogFactory.getLog(GlobalRearrangeConverter.class);
 
     @Override
-    public RDD<Tuple> convert(List<RDD<Tuple>> predecessors, POLocalRearrange physicalOperator)
+    public RDD<Tuple> convert(List<RDD<Tuple>> predecessors, PhysicalOperator physicalOperator)
             throws IOException {
         SparkUtil.assertPredecessorSize(predecessors, physicalOperator, 1);
         RDD<Tuple> rdd = predecessors.get(0);
@@ -32,9 +36,9 @@ public class LocalRearrangeConverter implements POConverter<Tuple, Tuple, POLoca
 
     private static class LocalRearrangeFunction extends AbstractFunction1<Tuple, Tuple> implements Serializable {
 
-        private final POLocalRearrange physicalOperator;
+        private final PhysicalOperator physicalOperator;
 
-        public LocalRearrangeFunction(POLocalRearrange physicalOperator) {
+        public LocalRearrangeFunction(PhysicalOperator physicalOperator) {
             this.physicalOperator = physicalOperator;
         }
 
@@ -0,0 +1,294 @@
+package org.apache.pig.backend.hadoop.executionengine.spark.converter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
+import org.apache.pig.backend.hadoop.executionengine.spark.SparkUtil;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.JoinUtil.GetKeyFunction;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.JoinUtil.KeyComparator;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.JoinUtil.ToKeyValueFunction;
+import org.apache.pig.data.Tuple;
+import org.apache.spark.Partitioner;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.rdd.PairRDDFunctions;
+import org.apache.spark.rdd.RDD;
+
+import scala.Tuple2;
+import scala.collection.JavaConversions;
+import scala.reflect.ClassManifest;
+import scala.runtime.AbstractFunction2;
+
+/**
+ * Converts a merge join to a zipPartitions of its two inputs sorted on the
+ * join key. The partitions of the inputs do not line up in Spark, so both
+ * are first range partitioned on boundaries sampled from the left input and
+ * sorted within each partition, the matching partitions are then merged.
+ */
+@SuppressWarnings({ "serial"})
+public class MergeJoinConverter implements POConverter<Tuple, Tuple, POMergeJoin> {
+    private static final Log LOG = LogFactory.getLog(MergeJoinConverter.class);
+
+    private static final GetKeyFunction GET_KEY_FUNCTION = new GetKeyFunction();
+
+    private static final KeyComparator KEY_COMPARATOR = new KeyComparator();
+
+    // number of tuples of the left input sampled for the range boundaries
+    private static final int SAMPLE_SIZE = 10000;
+
+    private static final int SAMPLE_SEED = 42;
+
+    private final PhysicalPlan physicalPlan;
+
+    public MergeJoinConverter(PhysicalPlan physicalPlan) {
+        this.physicalPlan = physicalPlan;
+    }
+
+    @Override
+    public RDD<Tuple> convert(List<RDD<Tuple>> predecessors, POMergeJoin physicalOperator)
+            throws IOException {
+        SparkUtil.assertPredecessorSize(predecessors, physicalOperator, 2);
+        int parallelism = SparkUtil.getParallelism(predecessors, physicalOperator);
+        String reducers = System.getenv("SPARK_REDUCERS");
+        if (reducers != null ) {
+            parallelism = Integer.parseInt(reducers);
+        }
+
+        // same order as predecessors, see SparkLauncher.physicalToRDD
+        List<PhysicalOperator> inputs = physicalPlan.getPredecessors(physicalOperator);
+        ClassManifest<Tuple2<Object, Tuple>> tuple2ClassManifest = SparkUtil.<Object, Tuple>getTuple2Manifest();
+        RDD<Tuple2<Object, Tuple>> left = predecessors.get(0).map(
+                new ToKeyValueFunction(physicalOperator.getJoinPlans().get(inputs.get(0))),
+                tuple2ClassManifest);
+        RDD<Tuple2<Object, Tuple>> right = predecessors.get(1).map(
+                new ToKeyValueFunction(physicalOperator.getJoinPlans().get(inputs.get(1))),
+                tuple2ClassManifest);
+
+        KeyRangePartitioner partitioner = new KeyRangePartitioner(
+                getBoundaries(left.cache(), parallelism));
+        LOG.info("Range partitioning the inputs of merge join into "
+                + partitioner.numPartitions() + " partitions");
+        SortFunction sortFunction = new SortFunction();
+        RDD<Tuple2<Object, Tuple>> sortedLeft = partition(left, partitioner)
+                .mapPartitions(sortFunction, true, tuple2ClassManifest);
+        RDD<Tuple2<Object, Tuple>> sortedRight = partition(right, partitioner)
+                .mapPartitions(sortFunction, true, tuple2ClassManifest);
+        return sortedLeft.zipPartitions(sortedRight, new MergeFunction(),
+                tuple2ClassManifest, SparkUtil.getManifest(Tuple.class));
+    }
+
+    private static RDD<Tuple2<Object, Tuple>> partition(RDD<Tuple2<Object, Tuple>> rdd,
+            Partitioner partitioner) {
+        return new PairRDDFunctions<Object, Tuple>(rdd, SparkUtil.getManifest(Object.class),
+                SparkUtil.getManifest(Tuple.class)).partitionBy(partitioner);
+    }
+
+    /**
+     * Samples the keys of the left input
+     * @return the keys that split it in parallelism ranges of about the same
+     * size, in order
+     */
+    private static ArrayList<Object> getBoundaries(RDD<Tuple2<Object, Tuple>> left, int parallelism) {
+        ArrayList<Object> boundaries = new ArrayList<Object>();
+        long count = left.count();
+        if (count == 0 || parallelism <= 1) {
+            return boundaries;
+        }
+        double fraction = Math.min(1.0, (double) SAMPLE_SIZE / count);
+        List<Object> sample = new ArrayList<Object>(left.sample(false, fraction, SAMPLE_SEED)
+                .map(GET_KEY_FUNCTION, SparkUtil.getManifest(Object.class)).toJavaRDD().collect());
+        sample.removeAll(Collections.singleton(null));
+        Collections.sort(sample, KEY_COMPARATOR);
+        for (int i = 1; i < parallelism; i++) {
+            int index = (int) ((long) sample.size() * i / parallelism);
+            if (index >= sample.size()) {
+                break;
+            }
+            Object boundary = sample.get(index);
+            if (boundaries.isEmpty()
+                    || KEY_COMPARATOR.compare(boundaries.get(boundaries.size() - 1), boundary) < 0) {
+                boundaries.add(boundary);
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * Sends each key to the range of the boundaries it falls in, null keys to
+     * the first one
+     */
+    private static class KeyRangePartitioner extends Partitioner {
+
+        private final ArrayList<Object> boundaries;
+
+        private KeyRangePartitioner(ArrayList<Object> boundaries) {
+            this.boundaries = boundaries;
+        }
+
+        @Override
+        public int numPartitions() {
+            return boundaries.size() + 1;
+        }
+
+        @Override
+        public int getPartition(Object key) {
+            // the number of boundaries lower than key
+            int low = 0;
+            int high = boundaries.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (KEY_COMPARATOR.compare(boundaries.get(mid), key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof KeyRangePartitioner
+                    && boundaries.equals(((KeyRangePartitioner) other).boundaries);
+        }
+
+        @Override
+        public int hashCode() {
+            return boundaries.hashCode();
+        }
+    }
+
+    private static class SortFunction
+            extends Function<scala.collection.Iterator<Tuple2<Object, Tuple>>, scala.collection.Iterator<Tuple2<Object, Tuple>>>
+            implements Serializable {
+
+        public scala.collection.Iterator<Tuple2<Object, Tuple>> call(
+                scala.collection.Iterator<Tuple2<Object, Tuple>> i) {
+            List<Tuple2<Object, Tuple>> sorted = new ArrayList<Tuple2<Object, Tuple>>();
+            Iterator<Tuple2<Object, Tuple>> input = JavaConversions.asJavaIterator(i);
+            while (input.hasNext()) {
+                sorted.add(input.next());
+            }
+            Collections.sort(sorted, new Comparator<Tuple2<Object, Tuple>>() {
+                @Override
+                public int compare(Tuple2<Object, Tuple> o1, Tuple2<Object, Tuple> o2) {
+                    return KEY_COMPARATOR.compare(o1._1(), o2._1());
+                }
+            });
+            return JavaConversions.asScalaIterator(sorted.iterator());
+        }
+    }
+
+    private static class MergeFunction extends AbstractFunction2<scala.collection.Iterator<Tuple2<Object, Tuple>>,
+            scala.collection.Iterator<Tuple2<Object, Tuple>>, scala.collection.Iterator<Tuple>>
+            implements Serializable {
+
+        @Override
+        public scala.collection.Iterator<Tuple> apply(scala.collection.Iterator<Tuple2<Object, Tuple>> left,
+                scala.collection.Iterator<Tuple2<Object, Tuple>> right) {
+            return JavaConversions.asScalaIterator(new MergeIterator(
+                    JavaConversions.asJavaIterator(left), JavaConversions.asJavaIterator(right)));
+        }
+    }
+
+    /**
+     * Merges two iterators sorted on the key, returning the cross product of
+     * the tuples of each key found in both. Null keys never match.
+     */
+    private static class MergeIterator implements Iterator<Tuple> {
+
+        private final Iterator<Tuple2<Object, Tuple>> left;
+        private final Iterator<Tuple2<Object, Tuple>> right;
+
+        private Tuple2<Object, Tuple> nextLeft;
+        private Tuple2<Object, Tuple> nextRight;
+
+        // the joined tuples of the current key
+        private final List<Tuple> joined = new ArrayList<Tuple>();
+        private int position = 0;
+
+        private MergeIterator(Iterator<Tuple2<Object, Tuple>> left,
+                Iterator<Tuple2<Object, Tuple>> right) {
+            this.left = left;
+            this.right = right;
+            nextLeft = left.hasNext() ? left.next() : null;
+            nextRight = right.hasNext() ? right.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position == joined.size()) {
+                if (nextLeft == null || nextRight == null) {
+                    return false;
+                }
+                joinNextKey();
+            }
+            return true;
+        }
+
+        private void joinNextKey() {
+            joined.clear();
+            position = 0;
+            Object leftKey = nextLeft._1();
+            Object rightKey = nextRight._1();
+            int c = KEY_COMPARATOR.compare(leftKey, rightKey);
+            if (c < 0 || leftKey == null) {
+                skipLeft(leftKey);
+            } else if (c > 0 || rightKey == null) {
+                skipRight(rightKey);
+            } else {
+                List<Tuple> rightTuples = new ArrayList<Tuple>();
+                while (nextRight != null && KEY_COMPARATOR.compare(nextRight._1(), rightKey) == 0) {
+                    rightTuples.add(nextRight._2());
+                    nextRight = right.hasNext() ? right.next() : null;
+                }
+                try {
+                    while (nextLeft != null && KEY_COMPARATOR.compare(nextLeft._1(), leftKey) == 0) {
+                        for (Tuple r : rightTuples) {
+                            joined.add(JoinUtil.join(nextLeft._2(), r));
+                        }
+                        nextLeft = left.hasNext() ? left.next() : null;
+                    }
+                } catch (ExecException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        private void skipLeft(Object key) {
+            while (nextLeft != null && KEY_COMPARATOR.compare(nextLeft._1(), key) == 0) {
+                nextLeft = left.hasNext() ? left.next() : null;
+            }
+        }
+
+        private void skipRight(Object key) {
+            while (nextRight != null && KEY_COMPARATOR.compare(nextRight._1(), key) == 0) {
+                nextRight = right.hasNext() ? right.next() : null;
+            }
+        }
+
+        @Override
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return joined.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package org.apache.pig.backend.hadoop.executionengine.spark.converter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSkewedJoin;
+import org.apache.pig.backend.hadoop.executionengine.spark.SparkUtil;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.JoinUtil.GetKeyFunction;
+import org.apache.pig.backend.hadoop.executionengine.spark.converter.JoinUtil.ToKeyValueFunction;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.rdd.PairRDDFunctions;
+import org.apache.spark.rdd.RDD;
+
+import scala.Tuple2;
+import scala.collection.JavaConversions;
+import scala.collection.Seq;
+import scala.collection.TraversableOnce;
+import scala.reflect.ClassManifest;
+import scala.runtime.AbstractFunction1;
+
+/**
+ * Converts a skewed join to a cogroup on (key, salt). The keys of the left
+ * input are sampled first, each key that has more tuples than a task should
+ * get is spread over several salts: its left tuples are dealt round robin to
+ * the salts and its right tuples copied to all of them, the way the skewed
+ * partitioner of MapReduce spreads it over several reducers.
+ */
+@SuppressWarnings({ "serial"})
+public class SkewedJoinConverter implements POConverter<Tuple, Tuple, POSkewedJoin> {
+    private static final Log LOG = LogFactory.getLog(SkewedJoinConverter.class);
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private static final GetKeyFunction GET_KEY_FUNCTION = new GetKeyFunction();
+
+    // number of tuples of the left input sampled for its skewed keys
+    private static final int SAMPLE_SIZE = 10000;
+
+    private static final int SAMPLE_SEED = 42;
+
+    private final PigContext pigContext;
+    private final PhysicalPlan physicalPlan;
+
+    public SkewedJoinConverter(PigContext pigContext, PhysicalPlan physicalPlan) {
+        this.pigContext = pigContext;
+        this.physicalPlan = physicalPlan;
+    }
+
+    @Override
+    public RDD<Tuple> convert(List<RDD<Tuple>> predecessors, POSkewedJoin physicalOperator)
+            throws IOException {
+        SparkUtil.assertPredecessorSize(predecessors, physicalOperator, 2);
+        int parallelism = SparkUtil.getParallelism(predecessors, physicalOperator);
+        String reducers = System.getenv("SPARK_REDUCERS");
+        if (reducers != null ) {
+            parallelism = Integer.parseInt(reducers);
+        }
+
+        // same order as predecessors, see SparkLauncher.physicalToRDD
+        List<PhysicalOperator> inputs = physicalPlan.getPredecessors(physicalOperator);
+        ClassManifest<Tuple2<Object, Tuple>> tuple2ClassManifest = SparkUtil.<Object, Tuple>getTuple2Manifest();
+        RDD<Tuple2<Object, Tuple>> left = predecessors.get(0).map(
+                new ToKeyValueFunction(physicalOperator.getJoinPlans().get(inputs.get(0))),
+                tuple2ClassManifest);
+        RDD<Tuple2<Object, Tuple>> right = predecessors.get(1).map(
+                new ToKeyValueFunction(physicalOperator.getJoinPlans().get(inputs.get(1))),
+                tuple2ClassManifest);
+
+        HashMap<Object, Integer> salts = getSalts(left.cache(), parallelism);
+        LOG.info("Spreading " + salts.size() + " skewed keys of the join over "
+                + parallelism + " partitions");
+
+        ClassManifest<Tuple2<Tuple, Tuple>> saltedClassManifest = SparkUtil.<Tuple, Tuple>getTuple2Manifest();
+        RDD<Tuple2<Tuple, Tuple>> saltedLeft = left.mapPartitions(
+                new SaltLeftFunction(salts), false, saltedClassManifest);
+        RDD<Tuple2<Tuple, Tuple>> saltedRight = right.flatMap(
+                new SaltRightFunction(salts), saltedClassManifest);
+        RDD<Tuple2<Tuple, Tuple2<Seq<Tuple>, Seq<Tuple>>>> cogrouped =
+                new PairRDDFunctions<Tuple, Tuple>(saltedLeft, SparkUtil.getManifest(Tuple.class),
+                        SparkUtil.getManifest(Tuple.class))
+                .cogroup(saltedRight, new HashPartitioner(parallelism));
+
+        boolean[] inner = physicalOperator.getInnerFlags();
+        return cogrouped.flatMap(new JoinFunction(inner,
+                JoinUtil.size(physicalOperator.getSchema(0)),
+                JoinUtil.size(physicalOperator.getSchema(1))),
+                SparkUtil.getManifest(Tuple.class));
+    }
+
+    /**
+     * Samples the keys of the left input
+     * @return the number of salts of each key that has more tuples than a
+     * task should get
+     */
+    private HashMap<Object, Integer> getSalts(RDD<Tuple2<Object, Tuple>> left, int parallelism) {
+        HashMap<Object, Integer> salts = new HashMap<Object, Integer>();
+        long count = left.count();
+        if (count == 0 || parallelism <= 1) {
+            return salts;
+        }
+        double fraction = Math.min(1.0, (double) SAMPLE_SIZE / count);
+        List<Object> sample = left.sample(false, fraction, SAMPLE_SEED)
+                .map(GET_KEY_FUNCTION, SparkUtil.getManifest(Object.class)).toJavaRDD().collect();
+        if (sample.isEmpty()) {
+            return salts;
+        }
+        Map<Object, Integer> sampleCounts = new HashMap<Object, Integer>();
+        for (Object key : sample) {
+            // null keys never match, they are not spread
+            if (key != null) {
+                Integer c = sampleCounts.get(key);
+                sampleCounts.put(key, c == null ? 1 : c + 1);
+            }
+        }
+        long maxTuples = Long.parseLong(pigContext.getProperties().getProperty(
+                "pig.skewedjoin.reduce.maxtuple", "0"));
+        double share = maxTuples > 0 ? maxTuples : Math.ceil((double) count / parallelism);
+        for (Map.Entry<Object, Integer> entry : sampleCounts.entrySet()) {
+            double estimate = (double) entry.getValue() * count / sample.size();
+            if (estimate > share) {
+                salts.put(entry.getKey(),
+                        (int) Math.min(parallelism, Math.ceil(estimate / share)));
+            }
+        }
+        return salts;
+    }
+
+    private static Tuple saltedKey(Object key, int salt) throws ExecException {
+        Tuple saltedKey = tf.newTuple(2);
+        saltedKey.set(0, key);
+        saltedKey.set(1, salt);
+        return saltedKey;
+    }
+
+    private static class SaltLeftFunction
+            extends Function<scala.collection.Iterator<Tuple2<Object, Tuple>>, scala.collection.Iterator<Tuple2<Tuple, Tuple>>>
+            implements Serializable {
+
+        private final HashMap<Object, Integer> salts;
+
+        private SaltLeftFunction(HashMap<Object, Integer> salts) {
+            this.salts = salts;
+        }
+
+        public scala.collection.Iterator<Tuple2<Tuple, Tuple>> call(
+                scala.collection.Iterator<Tuple2<Object, Tuple>> i) {
+            // the next salt of each skewed key in this partition
+            final Map<Object, Integer> nextSalts = new HashMap<Object, Integer>();
+            return JavaConversions.asScalaIterator(new IteratorTransform<Tuple2<Object, Tuple>, Tuple2<Tuple, Tuple>>(
+                    JavaConversions.asJavaIterator(i)) {
+                @Override
+                protected Tuple2<Tuple, Tuple> transform(Tuple2<Object, Tuple> next) {
+                    Object key = next._1();
+                    Integer n = key == null ? null : salts.get(key);
+                    int salt = 0;
+                    if (n != null) {
+                        Integer s = nextSalts.get(key);
+                        salt = s == null ? 0 : s;
+                        nextSalts.put(key, (salt + 1) % n);
+                    }
+                    try {
+                        return new Tuple2<Tuple, Tuple>(saltedKey(key, salt), next._2());
+                    } catch (ExecException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    private static class SaltRightFunction
+            extends AbstractFunction1<Tuple2<Object, Tuple>, TraversableOnce<Tuple2<Tuple, Tuple>>>
+            implements Serializable {
+
+        private final HashMap<Object, Integer> salts;
+
+        private SaltRightFunction(HashMap<Object, Integer> salts) {
+            this.salts = salts;
+        }
+
+        @Override
+        public TraversableOnce<Tuple2<Tuple, Tuple>> apply(Tuple2<Object, Tuple> v1) {
+            Object key = v1._1();
+            Integer n = key == null ? null : salts.get(key);
+            List<Tuple2<Tuple, Tuple>> out = new ArrayList<Tuple2<Tuple, Tuple>>(n == null ? 1 : n);
+            try {
+                for (int salt = 0; salt < (n == null ? 1 : n); salt++) {
+                    out.add(new Tuple2<Tuple, Tuple>(saltedKey(key, salt), v1._2()));
+                }
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+            return JavaConversions.asScalaBuffer(out);
+        }
+    }
+
+    /**
+     * Joins the tuples of a (key, salt), padding the missing side of an outer
+     * join with nulls
+     */
+    private static class JoinFunction
+            extends AbstractFunction1<Tuple2<Tuple, Tuple2<Seq<Tuple>, Seq<Tuple>>>, TraversableOnce<Tuple>>
+            implements Serializable {
+
+        private final boolean[] inner;
+        private final int leftSize;
+        private final int rightSize;
+
+        private JoinFunction(boolean[] inner, int leftSize, int rightSize) {
+            this.inner = inner;
+            this.leftSize = leftSize;
+            this.rightSize = rightSize;
+        }
+
+        @Override
+        public TraversableOnce<Tuple> apply(Tuple2<Tuple, Tuple2<Seq<Tuple>, Seq<Tuple>>> v1) {
+            try {
+                Object key = v1._1().get(0);
+                int salt = (Integer) v1._1().get(1);
+                List<Tuple> left = JavaConversions.seqAsJavaList(v1._2()._1());
+                List<Tuple> right = JavaConversions.seqAsJavaList(v1._2()._2());
+                List<Tuple> out = new ArrayList<Tuple>();
+                if (key != null && !left.isEmpty() && !right.isEmpty()) {
+                    for (Tuple l : left) {
+                        for (Tuple r : right) {
+                            out.add(JoinUtil.join(l, r));
+                        }
+                    }
+                    return JavaConversions.asScalaBuffer(out);
+                }
+                // null keys never match
+                if (!inner[1]) {
+                    for (Tuple l : left) {
+                        out.add(JoinUtil.join(l, JoinUtil.nullTuple(rightSize)));
+                    }
+                }
+                // the right tuples of a skewed key are in all of its salts,
+                // the first one always has left tuples
+                if (!inner[0] && salt == 0) {
+                    for (Tuple r : right) {
+                        out.add(JoinUtil.join(JoinUtil.nullTuple(leftSize), r));
+                    }
+                }
+                return JavaConversions.asScalaBuffer(out);
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.builtin;
+
+import java.io.IOException;
+
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.data.TupleFingerprint;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.HyperLogLog;
+
+/**
+ * Estimates the number of distinct tuples of a bag with a HyperLogLog
+ * sketch, without a DISTINCT. Like COUNT, the tuples whose first field is
+ * null are not counted. The relative standard error is 0.8% by default; a
+ * precision from 4 to 18 can be given, which makes the error
+ * 1.04 / sqrt(2^precision).
+ * <p>
+ * The function is algebraic: the map and the combiner exchange serialized
+ * sketches, of a few bytes while they count few values and 16KB at most
+ * with the default precision.
+ * <p>
+ * Sample usage:
+ * <pre>
+ * A = LOAD 'visits' AS (campaign: chararray, user: chararray);
+ * B = GROUP A BY campaign;
+ * C = FOREACH B GENERATE group, APPROX_COUNT_DISTINCT(A.user);
+ *
+ * DEFINE ACD APPROX_COUNT_DISTINCT('16');
+ * </pre>
+ */
+public class APPROX_COUNT_DISTINCT extends EvalFunc<Long> implements Algebraic {
+
+    private static TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    private final int precision;
+
+    public APPROX_COUNT_DISTINCT() {
+        this(Integer.toString(HyperLogLog.DEFAULT_PRECISION));
+    }
+
+    /**
+     * @param precision number of bits of the hashes that select a register
+     * of the sketch
+     */
+    public APPROX_COUNT_DISTINCT(String precision) {
+        this.precision = Integer.parseInt(precision);
+    }
+
+    @Override
+    public Long exec(Tuple input) throws IOException {
+        try {
+            DataBag bag = (DataBag)input.get(0);
+            if (bag == null) {
+                return null;
+            }
+            return sketch(bag, precision).cardinality();
+        } catch (ExecException ee) {
+            throw ee;
+        } catch (Exception e) {
+            throw error(this, e);
+        }
+    }
+
+    @Override
+    public String getInitial() {
+        return Initial.class.getName();
+    }
+
+    @Override
+    public String getIntermed() {
+        return Intermediate.class.getName();
+    }
+
+    @Override
+    public String getFinal() {
+        return Final.class.getName();
+    }
+
+    static public class Initial extends EvalFunc<Tuple> {
+
+        private final int precision;
+
+        public Initial() {
+            this(Integer.toString(HyperLogLog.DEFAULT_PRECISION));
+        }
+
+        public Initial(String precision) {
+            this.precision = Integer.parseInt(precision);
+        }
+
+        @Override
+        public Tuple exec(Tuple input) throws IOException {
+            try {
+                DataBag bag = (DataBag)input.get(0);
+                HyperLogLog hll = bag == null ? new HyperLogLog(precision) : sketch(bag, precision);
+                return mTupleFactory.newTuple(new DataByteArray(hll.toBytes()));
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static public class Intermediate extends EvalFunc<Tuple> {
+
+        private final int precision;
+
+        public Intermediate() {
+            this(Integer.toString(HyperLogLog.DEFAULT_PRECISION));
+        }
+
+        public Intermediate(String precision) {
+            this.precision = Integer.parseInt(precision);
+        }
+
+        @Override
+        public Tuple exec(Tuple input) throws IOException {
+            try {
+                return mTupleFactory.newTuple(new DataByteArray(merge(input, precision).toBytes()));
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static public class Final extends EvalFunc<Long> {
+
+        private final int precision;
+
+        public Final() {
+            this(Integer.toString(HyperLogLog.DEFAULT_PRECISION));
+        }
+
+        public Final(String precision) {
+            this.precision = Integer.parseInt(precision);
+        }
+
+        @Override
+        public Long exec(Tuple input) throws IOException {
+            try {
+                return merge(input, precision).cardinality();
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static protected HyperLogLog sketch(DataBag bag, int precision) throws ExecException {
+        HyperLogLog hll = new HyperLogLog(precision);
+        TupleFingerprint fingerprint = new TupleFingerprint();
+        for (Tuple t : bag) {
+            if (t != null && t.size() > 0 && t.get(0) != null) {
+                hll.offer(fingerprint.set(t).high());
+            }
+        }
+        return hll;
+    }
+
+    /**
+     * Merges the sketches of a bag of the outputs of Initial or Intermediate
+     */
+    static protected HyperLogLog merge(Tuple input, int precision) throws IOException {
+        HyperLogLog hll = new HyperLogLog(precision);
+        DataBag values = (DataBag)input.get(0);
+        for (Tuple t : values) {
+            DataByteArray sketch = (DataByteArray)t.get(0);
+            if (sketch != null) {
+                hll.merge(HyperLogLog.fromBytes(sketch.get()));
+            }
+        }
+        return hll;
+    }
+
+    static private ExecException error(EvalFunc<?> func, Exception e) {
+        int errCode = 2106;
+        String msg = "Error while computing distinct count in " + func.getClass().getSimpleName();
+        return new ExecException(msg, errCode, PigException.BUG, e);
+    }
+
+    @Override
+    public Schema outputSchema(Schema input) {
+        return new Schema(new Schema.FieldSchema(null, DataType.LONG));
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.builtin;
+
+import java.io.IOException;
+
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.TDigest;
+
+/**
+ * Estimates quantiles of the first field of the tuples of a bag with a
+ * t-digest, without an ORDER BY. The quantiles, between 0 and 1, are given
+ * to the constructor, the median by default, and the result is a tuple of
+ * their values as doubles, of nulls if the bag holds no number. Null fields
+ * are ignored. The extreme quantiles are the most accurate.
+ * <p>
+ * The function is algebraic: the map and the combiner exchange serialized
+ * digests of at most a few KB.
+ * <p>
+ * Sample usage:
+ * <pre>
+ * DEFINE Percentiles APPROX_QUANTILES('0.5', '0.9', '0.99');
+ * A = LOAD 'requests' AS (url: chararray, latency: double);
+ * B = GROUP A BY url;
+ * C = FOREACH B GENERATE group, FLATTEN(Percentiles(A.latency));
+ * </pre>
+ */
+public class APPROX_QUANTILES extends EvalFunc<Tuple> implements Algebraic {
+
+    private static TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    private final double[] quantiles;
+
+    public APPROX_QUANTILES() {
+        this("0.5");
+    }
+
+    /**
+     * @param quantiles the quantiles to estimate, between 0 and 1
+     */
+    public APPROX_QUANTILES(String... quantiles) {
+        this.quantiles = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            this.quantiles[i] = Double.parseDouble(quantiles[i]);
+            if (this.quantiles[i] < 0 || this.quantiles[i] > 1) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1: "
+                        + quantiles[i]);
+            }
+        }
+    }
+
+    @Override
+    public Tuple exec(Tuple input) throws IOException {
+        try {
+            DataBag bag = (DataBag)input.get(0);
+            if (bag == null) {
+                return null;
+            }
+            return quantiles(digest(bag), quantiles);
+        } catch (ExecException ee) {
+            throw ee;
+        } catch (Exception e) {
+            throw error(this, e);
+        }
+    }
+
+    @Override
+    public String getInitial() {
+        return Initial.class.getName();
+    }
+
+    @Override
+    public String getIntermed() {
+        return Intermediate.class.getName();
+    }
+
+    @Override
+    public String getFinal() {
+        return Final.class.getName();
+    }
+
+    static public class Initial extends EvalFunc<Tuple> {
+
+        public Initial() {
+        }
+
+        public Initial(String... quantiles) {
+        }
+
+        @Override
+        public Tuple exec(Tuple input) throws IOException {
+            try {
+                DataBag bag = (DataBag)input.get(0);
+                TDigest digest = bag == null ? new TDigest() : digest(bag);
+                return mTupleFactory.newTuple(new DataByteArray(digest.toBytes()));
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static public class Intermediate extends EvalFunc<Tuple> {
+
+        public Intermediate() {
+        }
+
+        public Intermediate(String... quantiles) {
+        }
+
+        @Override
+        public Tuple exec(Tuple input) throws IOException {
+            try {
+                return mTupleFactory.newTuple(new DataByteArray(merge(input).toBytes()));
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static public class Final extends EvalFunc<Tuple> {
+
+        private final double[] quantiles;
+
+        public Final() {
+            this("0.5");
+        }
+
+        public Final(String... quantiles) {
+            this.quantiles = new APPROX_QUANTILES(quantiles).quantiles;
+        }
+
+        @Override
+        public Tuple exec(Tuple input) throws IOException {
+            try {
+                return quantiles(merge(input), quantiles);
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static protected TDigest digest(DataBag bag) throws ExecException {
+        TDigest digest = new TDigest();
+        for (Tuple t : bag) {
+            if (t != null && t.size() > 0) {
+                Double d = DataType.toDouble(t.get(0));
+                if (d != null) {
+                    digest.add(d);
+                }
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Merges the digests of a bag of the outputs of Initial or Intermediate
+     */
+    static protected TDigest merge(Tuple input) throws IOException {
+        TDigest digest = new TDigest();
+        DataBag values = (DataBag)input.get(0);
+        for (Tuple t : values) {
+            DataByteArray bytes = (DataByteArray)t.get(0);
+            if (bytes != null) {
+                digest.merge(TDigest.fromBytes(bytes.get()));
+            }
+        }
+        return digest;
+    }
+
+    static private Tuple quantiles(TDigest digest, double[] quantiles) throws ExecException {
+        Tuple result = mTupleFactory.newTuple(quantiles.length);
+        if (digest.size() > 0) {
+            for (int i = 0; i < quantiles.length; i++) {
+                result.set(i, digest.quantile(quantiles[i]));
+            }
+        }
+        return result;
+    }
+
+    static private ExecException error(EvalFunc<?> func, Exception e) {
+        int errCode = 2106;
+        String msg = "Error while computing quantiles in " + func.getClass().getSimpleName();
+        return new ExecException(msg, errCode, PigException.BUG, e);
+    }
+
+    @Override
+    public Schema outputSchema(Schema input) {
+        try {
+            Schema tupleSchema = new Schema();
+            for (int i = 0; i < quantiles.length; i++) {
+                tupleSchema.add(new Schema.FieldSchema(null, DataType.DOUBLE));
+            }
+            return new Schema(new Schema.FieldSchema(getSchemaName("quantiles", input),
+                    tupleSchema, DataType.TUPLE));
+        } catch (FrontendException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.builtin;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.SpaceSaving;
+
+/**
+ * Finds the most frequent values of the first field of the tuples of a bag
+ * with a Space-Saving summary, without grouping by the values. The result is
+ * a bag of (value, count, error) tuples, from the most frequent value, where
+ * the count may exceed the actual number of occurrences by at most the
+ * error. Null values are ignored.
+ * <p>
+ * The number of values to return, 10 by default, and the number of values
+ * the summary keeps track of, 10 times as many by default, are given to the
+ * constructor. The error of a count is at most the number of values divided
+ * by the size of the summary.
+ * <p>
+ * The function is algebraic: the map and the combiner exchange the
+ * summaries, as bags of at most that many (value, count, error) tuples.
+ * <p>
+ * Sample usage:
+ * <pre>
+ * DEFINE TopUrls APPROX_TOP('20');
+ * A = LOAD 'requests' AS (site: chararray, url: chararray);
+ * B = GROUP A BY site;
+ * C = FOREACH B GENERATE group, TopUrls(A.url);
+ * </pre>
+ */
+public class APPROX_TOP extends EvalFunc<DataBag> implements Algebraic {
+
+    private static BagFactory mBagFactory = BagFactory.getInstance();
+    private static TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    private final int k;
+    private final int capacity;
+
+    public APPROX_TOP() {
+        this("10");
+    }
+
+    /**
+     * @param k number of values to return
+     */
+    public APPROX_TOP(String k) {
+        this(k, Integer.toString(Integer.parseInt(k) * 10));
+    }
+
+    /**
+     * @param k number of values to return
+     * @param capacity number of values the summary keeps track of
+     */
+    public APPROX_TOP(String k, String capacity) {
+        this.k = Integer.parseInt(k);
+        this.capacity = Math.max(this.k, Integer.parseInt(capacity));
+    }
+
+    @Override
+    public DataBag exec(Tuple input) throws IOException {
+        try {
+            DataBag bag = (DataBag)input.get(0);
+            if (bag == null) {
+                return null;
+            }
+            return toBag(summarize(bag, capacity), k);
+        } catch (ExecException ee) {
+            throw ee;
+        } catch (Exception e) {
+            throw error(this, e);
+        }
+    }
+
+    @Override
+    public String getInitial() {
+        return Initial.class.getName();
+    }
+
+    @Override
+    public String getIntermed() {
+        return Intermediate.class.getName();
+    }
+
+    @Override
+    public String getFinal() {
+        return Final.class.getName();
+    }
+
+    static public class Initial extends EvalFunc<Tuple> {
+
+        private final int capacity;
+
+        public Initial() {
+            this("10");
+        }
+
+        public Initial(String k) {
+            this(k, Integer.toString(Integer.parseInt(k) * 10));
+        }
+
+        public Initial(String k, String capacity) {
+            this.capacity = new APPROX_TOP(k, capacity).capacity;
+        }
+
+        @Override
+        public Tuple exec(Tuple input) throws IOException {
+            try {
+                DataBag bag = (DataBag)input.get(0);
+                SpaceSaving<Object> summary = bag == null ? new SpaceSaving<Object>(capacity)
+                        : summarize(bag, capacity);
+                return mTupleFactory.newTuple(toBag(summary, capacity));
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static public class Intermediate extends EvalFunc<Tuple> {
+
+        private final int capacity;
+
+        public Intermediate() {
+            this("10");
+        }
+
+        public Intermediate(String k) {
+            this(k, Integer.toString(Integer.parseInt(k) * 10));
+        }
+
+        public Intermediate(String k, String capacity) {
+            this.capacity = new APPROX_TOP(k, capacity).capacity;
+        }
+
+        @Override
+        public Tuple exec(Tuple input) throws IOException {
+            try {
+                return mTupleFactory.newTuple(toBag(merge(input, capacity), capacity));
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static public class Final extends EvalFunc<DataBag> {
+
+        private final int k;
+        private final int capacity;
+
+        public Final() {
+            this("10");
+        }
+
+        public Final(String k) {
+            this(k, Integer.toString(Integer.parseInt(k) * 10));
+        }
+
+        public Final(String k, String capacity) {
+            APPROX_TOP top = new APPROX_TOP(k, capacity);
+            this.k = top.k;
+            this.capacity = top.capacity;
+        }
+
+        @Override
+        public DataBag exec(Tuple input) throws IOException {
+            try {
+                return toBag(merge(input, capacity), k);
+            } catch (ExecException ee) {
+                throw ee;
+            } catch (Exception e) {
+                throw error(this, e);
+            }
+        }
+    }
+
+    static protected SpaceSaving<Object> summarize(DataBag bag, int capacity)
+            throws ExecException {
+        SpaceSaving<Object> summary = new SpaceSaving<Object>(capacity);
+        for (Tuple t : bag) {
+            if (t != null && t.size() > 0 && t.get(0) != null) {
+                summary.offer(t.get(0));
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Merges the summaries of a bag of the outputs of Initial or
+     * Intermediate
+     */
+    static protected SpaceSaving<Object> merge(Tuple input, int capacity)
+            throws ExecException {
+        SpaceSaving<Object> summary = new SpaceSaving<Object>(capacity);
+        DataBag values = (DataBag)input.get(0);
+        for (Tuple t : values) {
+            DataBag counters = (DataBag)t.get(0);
+            if (counters == null) {
+                continue;
+            }
+            // a summary never holds more counters than its capacity, so
+            // offering them to an empty one rebuilds it as it was
+            SpaceSaving<Object> other = new SpaceSaving<Object>(capacity);
+            for (Tuple c : counters) {
+                other.offer(c.get(0), (Long)c.get(1), (Long)c.get(2));
+            }
+            summary.merge(other);
+        }
+        return summary;
+    }
+
+    /**
+     * @return the most counted values of a summary, as (value, count, error)
+     * tuples
+     */
+    static private DataBag toBag(SpaceSaving<Object> summary, int limit) throws ExecException {
+        DataBag bag = mBagFactory.newDefaultBag();
+        List<SpaceSaving.Counter<Object>> top = summary.getTop();
+        for (int i = 0; i < top.size() && i < limit; i++) {
+            SpaceSaving.Counter<Object> c = top.get(i);
+            Tuple t = mTupleFactory.newTuple(3);
+            t.set(0, c.getItem());
+            t.set(1, c.getCount());
+            t.set(2, c.getError());
+            bag.add(t);
+        }
+        return bag;
+    }
+
+    static private ExecException error(EvalFunc<?> func, Exception e) {
+        int errCode = 2106;
+        String msg = "Error while computing top values in " + func.getClass().getSimpleName();
+        return new ExecException(msg, errCode, PigException.BUG, e);
+    }
+
+    @Override
+    public Schema outputSchema(Schema input) {
+        try {
+            // the type of the values is the one of the first field of the
+            // tuples of the bag, if known
+            Schema.FieldSchema value = new Schema.FieldSchema("value", DataType.BYTEARRAY);
+            if (input != null && input.size() == 1 && input.getField(0).schema != null) {
+                Schema tupleSchema = input.getField(0).schema;
+                if (tupleSchema.size() == 1 && tupleSchema.getField(0).type == DataType.TUPLE) {
+                    tupleSchema = tupleSchema.getField(0).schema;
+                }
+                if (tupleSchema != null && tupleSchema.size() > 0) {
+                    value = new Schema.FieldSchema(tupleSchema.getField(0));
+                    value.alias = "value";
+                }
+            }
+            Schema tupleSchema = new Schema();
+            tupleSchema.add(value);
+            tupleSchema.add(new Schema.FieldSchema("count", DataType.LONG));
+            tupleSchema.add(new Schema.FieldSchema("error", DataType.LONG));
+            return new Schema(new Schema.FieldSchema(getSchemaName("top", input),
+                    new Schema(new Schema.FieldSchema(null, tupleSchema, DataType.TUPLE)),
+                    DataType.BAG));
+        } catch (FrontendException e) {
+            return null;
+        }
+    }
+}
@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.util.Iterator;
 
 import org.apache.hadoop.util.bloom.BloomFilter;
-import org.apache.hadoop.util.bloom.Key;
 
 import org.apache.pig.Algebraic;
 import org.apache.pig.EvalFunc;
@@ -88,7 +87,15 @@ public class BuildBloom extends BuildBloomBase<DataByteArray> implements Algebra
 
     @Override
     public DataByteArray exec(Tuple input) throws IOException {
-        throw new IOException("This must be used with algebraic!");
+        // Only called when the combiner is not used
+        filter = new BloomFilter(vSize, numHash, hType);
+        if (input != null && input.size() > 0) {
+            DataBag values = (DataBag)input.get(0);
+            for (Iterator<Tuple> it = values.iterator(); it.hasNext();) {
+                addKey(it.next());
+            }
+        }
+        return bloomOut();
     }
 
     public String getInitial() {
@@ -130,16 +137,8 @@ public class BuildBloom extends BuildBloomBase<DataByteArray> implements Algebra
             Iterator<Tuple> it = values.iterator();
             Tuple t = it.next();
 
-            // If the input tuple has only one field, then we'll extract
-            // that field and serialize it into a key.  If it has multiple
-            // fields, we'll serialize the whole tuple.
-            byte[] b;
-            if (t.size() == 1) b = DataType.toBytes(t.get(0));
-            else b = DataType.toBytes(t, DataType.TUPLE);
-
-            Key k = new Key(b);
             filter = new BloomFilter(vSize, numHash, hType);
-            filter.add(k);
+            addKey(t);
 
             return TupleFactory.getInstance().newTuple(bloomOut());
         }
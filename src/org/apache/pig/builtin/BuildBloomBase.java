@@ -26,12 +26,14 @@ import java.io.DataOutputStream;
 import java.util.Iterator;
 
 import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
 import org.apache.hadoop.util.hash.Hash;
 
 import org.apache.pig.EvalFunc;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 
 /**
@@ -97,6 +99,20 @@ public abstract class BuildBloomBase<T> extends EvalFunc<T> {
         return bloomOut();
     }
 
+    /**
+     * Add the key of t to the filter. If t has only one field, then we'll
+     * extract that field and serialize it into a key.  If it has multiple
+     * fields, we'll serialize the whole tuple. Null keys are not added, as
+     * they are never looked up.
+     */
+    protected void addKey(Tuple t) throws IOException {
+        byte[] b;
+        if (t.size() == 1) b = DataType.toBytes(t.get(0));
+        else b = DataType.toBytes(t, DataType.TUPLE);
+        if (b == null) return;
+        filter.add(new Key(b));
+    }
+
     protected DataByteArray bloomOut() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream(vSize / 8);
         DataOutputStream dos = new DataOutputStream(baos);
@@ -30,6 +30,7 @@ import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
+import org.apache.pig.data.HashedDistinctBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.logicalLayer.FrontendException;
@@ -60,6 +61,9 @@ public class COUNT extends EvalFunc<Long> implements Algebraic, Accumulator<Long
             DataBag bag = (DataBag)input.get(0);
             if(bag==null)
                 return null;
+            if (bag instanceof HashedDistinctBag && ((HashedDistinctBag)bag).isEstimated()) {
+                return ((HashedDistinctBag)bag).getEstimatedNonNullCount();
+            }
 
             Iterator it = bag.iterator();
             long cnt = 0;
@@ -23,10 +23,9 @@ import java.io.IOException;
 import org.apache.pig.Algebraic;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.backend.executionengine.ExecException;
-import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
-import org.apache.pig.data.InternalDistinctBag;
+import org.apache.pig.data.HashedDistinctBag;
 import org.apache.pig.data.SingleTupleBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -35,11 +34,25 @@ import org.apache.pig.data.TupleFactory;
  * Find the distinct set of tuples in a bag.
  * This is a blocking operator. All the input is put in the hashset implemented
  * in DistinctDataBag which also provides the other DataBag interfaces.
+ * <p>
+ * When the result of the final step is only counted, "true" is given as
+ * constructor argument, so that its bag may be approximate, see
+ * {@link org.apache.pig.PigConfiguration#PROP_DISTINCT_APPROXIMATE}.
  */
 public class Distinct  extends EvalFunc<DataBag> implements Algebraic {
 
     private static BagFactory bagFactory = BagFactory.getInstance();
     private static TupleFactory tupleFactory = TupleFactory.getInstance();
+
+    public Distinct() {
+    }
+
+    /**
+     * @param onlyCounted whether the result of the final step is only
+     * counted
+     */
+    public Distinct(String onlyCounted) {
+    }
     /* (non-Javadoc)
      * @see org.apache.pig.EvalFunc#exec(org.apache.pig.data.Tuple)
      */
@@ -74,6 +87,12 @@ public class Distinct  extends EvalFunc<DataBag> implements Algebraic {
 
     static public class Initial extends EvalFunc<Tuple> {
 
+        public Initial() {
+        }
+
+        public Initial(String onlyCounted) {
+        }
+
         /* (non-Javadoc)
          * @see org.apache.pig.EvalFunc#exec(org.apache.pig.data.Tuple)
          */
@@ -84,7 +103,7 @@ public class Distinct  extends EvalFunc<DataBag> implements Algebraic {
             // unwrap, put in a bag and send down
             try {
                 Tuple single = (Tuple)input.get(0);
-                DataBag bag = single == null ? createDataBag() : new SingleTupleBag(single);
+                DataBag bag = single == null ? createDataBag(false) : new SingleTupleBag(single);
                 return tupleFactory.newTuple(bag);
             } catch (ExecException e) {
                 throw e;
@@ -94,43 +113,52 @@ public class Distinct  extends EvalFunc<DataBag> implements Algebraic {
 
     static public class Intermediate extends EvalFunc<Tuple> {
 
+        public Intermediate() {
+        }
+
+        public Intermediate(String onlyCounted) {
+        }
+
         /* (non-Javadoc)
          * @see org.apache.pig.EvalFunc#exec(org.apache.pig.data.Tuple)
          */
         @Override
         public Tuple exec(Tuple input) throws IOException {
-            return tupleFactory.newTuple(getDistinctFromNestedBags(input, this));
+            return tupleFactory.newTuple(getDistinctFromNestedBags(input, this, false));
         }
     }
 
     static public class Final extends EvalFunc<DataBag> {
 
+        private boolean onlyCounted = false;
+
+        public Final() {
+        }
+
+        public Final(String onlyCounted) {
+            this.onlyCounted = Boolean.parseBoolean(onlyCounted);
+        }
+
         /* (non-Javadoc)
          * @see org.apache.pig.EvalFunc#exec(org.apache.pig.data.Tuple)
          */
         @Override
         public DataBag exec(Tuple input) throws IOException {
-            return getDistinctFromNestedBags(input, this);
+            // a bag that is only counted may only keep an estimate of its
+            // size
+            return getDistinctFromNestedBags(input, this, onlyCounted);
         }
     }
     
-    static private DataBag createDataBag() {
-    	// by default, we create InternalSortedBag, unless user configures
-		// explicitly to use old bag
-    	String bagType = null;
-        if (PigMapReduce.sJobConfInternal.get() != null) {     
-   			bagType = PigMapReduce.sJobConfInternal.get().get("pig.cachedbag.distinct.type");       			
-   	    }
-                      
-    	if (bagType != null && bagType.equalsIgnoreCase("default")) {        	    	
-        	return BagFactory.getInstance().newDistinctBag();    			
-   	    } else {   	    	
-   	    	return new InternalDistinctBag(3);
-	    }
+    static private DataBag createDataBag(boolean onlyCounted) {
+        // by default, we create InternalDistinctBag, unless user configures
+        // explicitly to use another bag
+        return HashedDistinctBag.newDistinctBag(onlyCounted);
     }
     
-    static private DataBag getDistinctFromNestedBags(Tuple input, EvalFunc evalFunc) throws IOException {
-        DataBag result = createDataBag();
+    static private DataBag getDistinctFromNestedBags(Tuple input, EvalFunc evalFunc,
+            boolean onlyCounted) throws IOException {
+        DataBag result = createDataBag(onlyCounted);
         long progressCounter = 0;
         try {
             DataBag bg = (DataBag)input.get(0);
@@ -158,7 +186,7 @@ public class Distinct  extends EvalFunc<DataBag> implements Algebraic {
     protected DataBag getDistinct(Tuple input) throws IOException {
         try {
             DataBag inputBg = (DataBag)input.get(0);
-            DataBag result = createDataBag();
+            DataBag result = createDataBag(false);
             if (inputBg == null) {
                 return result;
             }
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.builtin;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.apache.pig.LoadCaster;
+import org.apache.pig.PigException;
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.DefaultTuple;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.impl.util.CastUtils;
+
+/**
+ * A tuple of the fields of a delimited line read by {@link PigStorage}. The
+ * tuple keeps a copy of the line and the bounds of its fields, a field is
+ * only sliced into a {@link DataByteArray} or cast to the type of its schema
+ * the first time it is read. Integers, longs, doubles and chararrays that
+ * {@link Utf8StorageConverter} would cast are parsed straight from the line.
+ */
+class LazyDelimitedTuple extends DefaultTuple {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    // placeholder of the fields not read yet
+    private static final Object UNREAD = new Object();
+
+    private transient FieldCaster fieldCaster;
+
+    private transient byte[] line;
+
+    // start and end of each field of the line in the tuple, 2 entries each
+    private transient int[] bounds;
+
+    // position in the tuple of the first field of the line
+    private transient int firstField;
+
+    // size of the tuple before it was padded to the size of the schema
+    private transient int castLimit;
+
+    // number of fields of the line not read yet
+    private transient int unread;
+
+    /**
+     * @param fieldCaster casts the fields of the line
+     * @param line the line, owned by the tuple
+     * @param bounds start and end of each field of the line, owned by the tuple
+     * @param firstField number of fields preceding the fields of the line,
+     * they are set to null
+     */
+    LazyDelimitedTuple(FieldCaster fieldCaster, byte[] line, int[] bounds, int firstField) {
+        this.fieldCaster = fieldCaster;
+        this.line = line;
+        this.bounds = bounds;
+        this.firstField = firstField;
+        unread = bounds.length / 2;
+        castLimit = firstField + unread;
+        for (int i = 0; i < firstField; i++) {
+            mFields.add(null);
+        }
+        for (int i = 0; i < unread; i++) {
+            mFields.add(UNREAD);
+        }
+    }
+
+    @Override
+    public Object get(int fieldNum) throws ExecException {
+        Object val = mFields.get(fieldNum);
+        if (val == UNREAD) {
+            int start = bounds[2 * (fieldNum - firstField)];
+            int end = bounds[2 * (fieldNum - firstField) + 1];
+            val = start == end ? null : fieldCaster.cast(line, start, end, fieldNum, castLimit);
+            mFields.set(fieldNum, val);
+            if (--unread == 0) {
+                // let the line go
+                line = null;
+                bounds = null;
+            }
+        }
+        return val;
+    }
+
+    @Override
+    public List<Object> getAll() {
+        materialize();
+        return mFields;
+    }
+
+    @Override
+    public void set(int fieldNum, Object val) throws ExecException {
+        if (mFields.get(fieldNum) == UNREAD) {
+            unread--;
+        }
+        mFields.set(fieldNum, val);
+    }
+
+    @Override
+    public long getMemorySize() {
+        materialize();
+        return super.getMemorySize();
+    }
+
+    @Override
+    public int compareTo(Object other) {
+        materialize();
+        return super.compareTo(other);
+    }
+
+    @Override
+    public int hashCode() {
+        materialize();
+        return super.hashCode();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        sedes.writeDatum(out, this, DataType.TUPLE);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        mFields.clear();
+        unread = 0;
+        line = null;
+        bounds = null;
+        sedes.addColsToTuple(in, this);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Reads all the fields not read yet
+     */
+    private void materialize() {
+        for (int i = firstField; unread > 0 && i < castLimit; i++) {
+            try {
+                get(i);
+            } catch (ExecException e) {
+                throw new RuntimeException("Unable to read field " + i + " of tuple", e);
+            }
+        }
+    }
+
+    /**
+     * Casts the fields of the lines read by a {@link PigStorage} to the types
+     * of its schema, the same way PigStorage casts each line when it is read.
+     */
+    static class FieldCaster {
+
+        // 2^53, the doubles up to it are exact
+        private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+        // the powers of 10 that are exact doubles
+        private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private final LoadCaster caster;
+
+        // parse the numbers and chararrays without going through the caster
+        private final boolean utf8;
+
+        // schema of each field of the tuple, null if it is not cast
+        private final ResourceFieldSchema[] fieldSchemas;
+
+        // position in the schema of each field of the tuple
+        private final int[] schemaIndexes;
+
+        /**
+         * A caster that leaves every field a bytearray
+         */
+        FieldCaster() {
+            this(null, new ResourceFieldSchema[0], new int[0]);
+        }
+
+        /**
+         * @param caster the caster of the loader
+         * @param fieldSchemas schema of each field of the tuple
+         * @param schemaIndexes position in the schema of each field of the
+         * tuple, a field is only cast when it is lower than the size of the
+         * tuple read
+         */
+        FieldCaster(LoadCaster caster, ResourceFieldSchema[] fieldSchemas, int[] schemaIndexes) {
+            this.caster = caster;
+            this.utf8 = caster != null && caster.getClass() == Utf8StorageConverter.class;
+            this.fieldSchemas = fieldSchemas;
+            this.schemaIndexes = schemaIndexes;
+        }
+
+        /**
+         * @return the field of the tuple between start and end of line, cast
+         * to the type of its schema
+         */
+        Object cast(byte[] line, int start, int end, int fieldNum, int size)
+                throws ExecException {
+            if (fieldNum >= fieldSchemas.length || schemaIndexes[fieldNum] >= size) {
+                return new DataByteArray(line, start, end);
+            }
+            ResourceFieldSchema fieldSchema = fieldSchemas[fieldNum];
+            byte type = fieldSchema.getType();
+            try {
+                if (type == DataType.BYTEARRAY) {
+                    return new DataByteArray(line, start, end);
+                }
+                if (utf8) {
+                    Object val = null;
+                    switch (type) {
+                    case DataType.CHARARRAY:
+                        return new String(line, start, end - start, "UTF-8");
+                    case DataType.INTEGER:
+                        val = parseInteger(line, start, end);
+                        break;
+                    case DataType.LONG:
+                        val = parseLong(line, start, end);
+                        break;
+                    case DataType.DOUBLE:
+                        val = parseDouble(line, start, end);
+                        break;
+                    default:
+                        break;
+                    }
+                    if (val != null) {
+                        return val;
+                    }
+                }
+                byte[] bytes = new byte[end - start];
+                System.arraycopy(line, start, bytes, 0, bytes.length);
+                return CastUtils.convertToType(caster, bytes, fieldSchema, type);
+            } catch (ExecException e) {
+                throw e;
+            } catch (IOException e) {
+                int errCode = 6018;
+                String errMsg = "Error while reading input";
+                throw new ExecException(errMsg, errCode,
+                        PigException.REMOTE_ENVIRONMENT, e);
+            }
+        }
+
+        /**
+         * @return the integer written with digits and an optional minus sign
+         * between start and end, null if it is written otherwise
+         */
+        static Integer parseInteger(byte[] b, int start, int end) {
+            Long l = parseLong(b, start, end);
+            if (l == null || l.longValue() != (int) l.longValue()) {
+                return null;
+            }
+            return Integer.valueOf((int) l.longValue());
+        }
+
+        /**
+         * @return the long written with digits and an optional minus sign
+         * between start and end, null if it is written otherwise
+         */
+        static Long parseLong(byte[] b, int start, int end) {
+            boolean negative = b[start] == '-';
+            int i = negative ? start + 1 : start;
+            if (i == end) {
+                return null;
+            }
+            // accumulated negatively so that Long.MIN_VALUE fits
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = b[i] - '0';
+                if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                    return null;
+                }
+                value = value * 10 - digit;
+            }
+            if (!negative) {
+                if (value == Long.MIN_VALUE) {
+                    return null;
+                }
+                value = -value;
+            }
+            return Long.valueOf(value);
+        }
+
+        /**
+         * @return the double written as a decimal number without exponent
+         * between start and end, null if it is written otherwise or if it
+         * has too many digits to be computed exactly
+         */
+        static Double parseDouble(byte[] b, int start, int end) {
+            boolean negative = b[start] == '-';
+            int i = negative || b[start] == '+' ? start + 1 : start;
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = 0;
+            boolean point = false;
+            for (; i < end; i++) {
+                if (b[i] == '.' && !point) {
+                    point = true;
+                    continue;
+                }
+                int digit = b[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return null;
+                }
+                mantissa = mantissa * 10 + digit;
+                if (mantissa > MAX_EXACT_DOUBLE) {
+                    return null;
+                }
+                digits++;
+                if (point) {
+                    decimals++;
+                }
+            }
+            if (digits == 0 || decimals >= POWERS_OF_TEN.length) {
+                return null;
+            }
+            // both are exact, so the division is rounded the way parsing is
+            double value = mantissa / POWERS_OF_TEN[decimals];
+            return Double.valueOf(negative ? -value : value);
+        }
+    }
+}
@@ -62,6 +62,7 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTextInputFormat;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTextOutputFormat;
 import org.apache.pig.bzip2r.Bzip2TextInputFormat;
+import org.apache.pig.data.BinSedesTupleFactory;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -154,6 +155,13 @@ LoadPushDown, LoadMetadata, StoreMetadata {
     private boolean tagPath = false;
     private static final String TAG_SOURCE_PATH = "tagPath";
     private Path sourcePath = null;
+    private byte[] mSourceTag = null;
+
+    // Whether the fields of a line are parsed when they are first read
+    private boolean mLazyFields = false;
+    private LazyDelimitedTuple.FieldCaster mFieldCaster = null;
+    private int mSchemaSize = 0;
+    private int[] mFieldBounds = new int[64];
 
     private void populateValidOptions() {
         validOptions.addOption("schema", false, "Loads / Stores the schema of the relation using a hidden JSON file.");
@@ -220,19 +228,16 @@ LoadPushDown, LoadMetadata, StoreMetadata {
 
     @Override
     public Tuple getNext() throws IOException {
-        mProtoTuple = new ArrayList<Object>();
         if (!mRequiredColumnsInitialized) {
             if (signature!=null) {
                 Properties p = UDFContext.getUDFContext().getUDFProperties(this.getClass());
                 mRequiredColumns = (boolean[])ObjectSerializer.deserialize(p.getProperty(signature));
             }
             mRequiredColumnsInitialized = true;
-        }
-        //Prepend input source path if source tagging is enabled
-        if(tagFile) {
-            mProtoTuple.add(new DataByteArray(sourcePath.getName()));
-        } else if (tagPath) {
-            mProtoTuple.add(new DataByteArray(sourcePath.toString()));
+            // Loaders that read the fields themselves or make their own
+            // tuples get the fields parsed right away
+            mLazyFields = !overridesReadField()
+                    && mTupleFactory.getClass() == BinSedesTupleFactory.class;
         }
 
         try {
@@ -241,25 +246,7 @@ LoadPushDown, LoadMetadata, StoreMetadata {
                 return null;
             }
             Text value = (Text) in.getCurrentValue();
-            byte[] buf = value.getBytes();
-            int len = value.getLength();
-            int start = 0;
-            int fieldID = 0;
-            for (int i = 0; i < len; i++) {
-                if (buf[i] == fieldDel) {
-                    if (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))
-                        addTupleValue(mProtoTuple, buf, start, i);
-                    start = i + 1;
-                    fieldID++;
-                }
-            }
-            // pick up the last field
-            if (start <= len && (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))) {
-                addTupleValue(mProtoTuple, buf, start, len);
-            }
-            Tuple t =  mTupleFactory.newTupleNoCopy(mProtoTuple);
-
-            return dontLoadSchema ? t : applySchema(t);
+            return mLazyFields ? readLazyTuple(value) : readTuple(value);
         } catch (InterruptedException e) {
             int errCode = 6018;
             String errMsg = "Error while reading input";
@@ -268,7 +255,131 @@ LoadPushDown, LoadMetadata, StoreMetadata {
         }
     }
 
-    private Tuple applySchema(Tuple tup) throws IOException {
+    private Tuple readTuple(Text value) throws IOException {
+        mProtoTuple = new ArrayList<Object>();
+        //Prepend input source path if source tagging is enabled
+        if(tagFile) {
+            mProtoTuple.add(new DataByteArray(sourcePath.getName()));
+        } else if (tagPath) {
+            mProtoTuple.add(new DataByteArray(sourcePath.toString()));
+        }
+
+        byte[] buf = value.getBytes();
+        int len = value.getLength();
+        int start = 0;
+        int fieldID = 0;
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == fieldDel) {
+                if (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))
+                    addTupleValue(mProtoTuple, buf, start, i);
+                start = i + 1;
+                fieldID++;
+            }
+        }
+        // pick up the last field
+        if (start <= len && (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))) {
+            addTupleValue(mProtoTuple, buf, start, len);
+        }
+        Tuple t =  mTupleFactory.newTupleNoCopy(mProtoTuple);
+
+        return dontLoadSchema ? t : applySchema(t);
+    }
+
+    /**
+     * Reads the line into a {@link LazyDelimitedTuple}: only the bounds of
+     * the required fields are found, they are sliced and cast when they are
+     * first read.
+     */
+    private Tuple readLazyTuple(Text value) throws IOException {
+        if (mFieldCaster == null) {
+            initFieldCaster();
+        }
+        byte[] buf = value.getBytes();
+        int len = value.getLength();
+        int fields = 0;
+        int start = 0;
+        int fieldID = 0;
+        for (int i = 0; i <= len; i++) {
+            if (i == len || buf[i] == fieldDel) {
+                if (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID])) {
+                    if (mFieldBounds.length < 2 * fields + 2) {
+                        mFieldBounds = Arrays.copyOf(mFieldBounds, 2 * mFieldBounds.length);
+                    }
+                    mFieldBounds[2 * fields] = start;
+                    mFieldBounds[2 * fields + 1] = i;
+                    fields++;
+                }
+                start = i + 1;
+                fieldID++;
+            }
+        }
+        // the reader reuses its buffer
+        LazyDelimitedTuple t = new LazyDelimitedTuple(mFieldCaster, Arrays.copyOf(buf, len),
+                Arrays.copyOf(mFieldBounds, 2 * fields), tagFile || tagPath ? 1 : 0);
+
+        //Prepend input source path if source tagging is enabled
+        if (tagFile || tagPath) {
+            if (mSourceTag == null) {
+                mSourceTag = new DataByteArray(tagFile ? sourcePath.getName() : sourcePath.toString()).get();
+            }
+            t.set(0, mFieldCaster.cast(mSourceTag, 0, mSourceTag.length, 0, t.size()));
+        }
+        for (int i = t.size(); i < mSchemaSize; i++) {
+            t.append(null);
+        }
+        return t;
+    }
+
+    /**
+     * Finds how the fields of each line are cast, the same way
+     * {@link #applySchema(Tuple)} casts them.
+     */
+    private void initFieldCaster() throws IOException {
+        if (!dontLoadSchema) {
+            initSchema();
+        }
+        if (dontLoadSchema || schema == null) {
+            mFieldCaster = new LazyDelimitedTuple.FieldCaster();
+            return;
+        }
+        ResourceFieldSchema[] fieldSchemas = schema.getFields();
+        int required = 0;
+        for (int i = 0; i < fieldSchemas.length; i++) {
+            if (mRequiredColumns == null || (mRequiredColumns.length>i && mRequiredColumns[i])) {
+                required++;
+            }
+        }
+        ResourceFieldSchema[] tupleSchemas = new ResourceFieldSchema[required];
+        int[] schemaIndexes = new int[required];
+        int tupleIdx = 0;
+        for (int i = 0; i < fieldSchemas.length; i++) {
+            if (mRequiredColumns == null || (mRequiredColumns.length>i && mRequiredColumns[i])) {
+                tupleSchemas[tupleIdx] = fieldSchemas[i];
+                schemaIndexes[tupleIdx] = i;
+                tupleIdx++;
+            }
+        }
+        mFieldCaster = new LazyDelimitedTuple.FieldCaster(caster, tupleSchemas, schemaIndexes);
+        mSchemaSize = fieldSchemas.length;
+    }
+
+    /**
+     * @return whether a subclass reads the fields with its own
+     * {@link #readField(byte[], int, int)}
+     */
+    private boolean overridesReadField() {
+        for (Class<?> c = getClass(); c != PigStorage.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("readField", byte[].class, int.class, int.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look in the superclass
+            }
+        }
+        return false;
+    }
+
+    private void initSchema() throws IOException {
         if ( caster == null) {
             caster = getLoadCaster();
         }
@@ -276,13 +387,17 @@ LoadPushDown, LoadMetadata, StoreMetadata {
             Properties p = UDFContext.getUDFContext().getUDFProperties(this.getClass(),
                     new String[] {signature});
             String serializedSchema = p.getProperty(signature+".schema");
-            if (serializedSchema == null) return tup;
+            if (serializedSchema == null) return;
             try {
                 schema = new ResourceSchema(Utils.getSchemaFromString(serializedSchema));
             } catch (ParserException e) {
                 mLog.error("Unable to parse serialized schema " + serializedSchema, e);
             }
         }
+    }
+
+    private Tuple applySchema(Tuple tup) throws IOException {
+        initSchema();
 
         if (schema != null) {
 
@@ -395,6 +510,7 @@ LoadPushDown, LoadMetadata, StoreMetadata {
         in = reader;
         if (tagFile || tagPath) {
             sourcePath = ((FileSplit)split.getWrappedSplit()).getPath();
+            mSourceTag = null;
         }
     }
 
@@ -26,6 +26,8 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -750,9 +752,14 @@ public class BinInterSedes implements InterSedes {
             // treat the outermost tuple differently because we have to deal with sort order
             int result = 0;
             try {
+                byte dt1 = bb1.get();
+                byte dt2 = bb2.get();
+                if (!isRawTupleByte(dt1) || !isRawTupleByte(dt2)) {
+                    throw new UnsupportedEncodingException();
+                }
                 // first compare sizes
-                int tsz1 = readSize(bb1);
-                int tsz2 = readSize(bb2);
+                int tsz1 = readSize(bb1, dt1);
+                int tsz2 = readSize(bb2, dt2);
                 if (tsz1 > tsz2)
                     return 1;
                 else if (tsz1 < tsz2)
@@ -783,16 +790,25 @@ public class BinInterSedes implements InterSedes {
                     }
                 }
             } catch (UnsupportedEncodingException uee) {
-                Tuple t1 = mFact.newTuple();
-                Tuple t2 = mFact.newTuple();
-                t1.readFields(new DataInputStream(new ByteArrayInputStream(bb1.array(), s1, bb1.limit())));
-                t2.readFields(new DataInputStream(new ByteArrayInputStream(bb2.array(), s2, bb2.limit())));
-                // delegate to compare()
-                result = compare(t1, t2);
+                result = compareDeserialized(bb1.array(), s1, bb1.limit(), bb2.array(), s2, bb2.limit());
             }
             return result;
         }
 
+        /**
+         * Compares two tuples that cannot be compared as raw bytes by
+         * deserializing them. Subclasses may read them another way.
+         */
+        protected int compareDeserialized(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2)
+                throws IOException {
+            Tuple t1 = mFact.newTuple();
+            Tuple t2 = mFact.newTuple();
+            t1.readFields(new DataInputStream(new ByteArrayInputStream(b1, s1, l1)));
+            t2.readFields(new DataInputStream(new ByteArrayInputStream(b2, s2, l2)));
+            // delegate to compare()
+            return compare(t1, t2);
+        }
+
         private int compareBinInterSedesDatum(ByteBuffer bb1, ByteBuffer bb2, boolean[] asc) throws IOException {
             int rc = 0;
             byte type1, type2;
@@ -895,23 +911,12 @@ public class BinInterSedes implements InterSedes {
                 type1 = DataType.BIGINTEGER;
                 type2 = getGeneralizedDataType(dt2);
                 if (type1 == type2) {
+                    // stored as the chararray of BigInteger.toString()
                     int sz1 = readSize(bb1, bb1.get());
                     int sz2 = readSize(bb2, bb2.get());
-                    byte[] ca1 = new byte[sz1];
-                    byte[] ca2 = new byte[sz2];
-                    bb1.get(ca1);
-                    bb2.get(ca2);
-                    String str1 = null, str2 = null;
-                    try {
-                        str1 = new String(ca1, BinInterSedes.UTF8);
-                        str2 = new String(ca2, BinInterSedes.UTF8);
-                    } catch (UnsupportedEncodingException uee) {
-                        mLog.warn("Unsupported string encoding", uee);
-                        uee.printStackTrace();
-                    }
-                    if (str1 != null && str2 != null) {
-                        rc = new BigInteger(str1).compareTo(new BigInteger(str2));
-                    }
+                    rc = compareBigInteger(bb1.array(), bb1.position(), sz1, bb2.array(), bb2.position(), sz2);
+                    bb1.position(bb1.position() + sz1);
+                    bb2.position(bb2.position() + sz2);
                 }
                 break;
             }
@@ -919,23 +924,12 @@ public class BinInterSedes implements InterSedes {
                 type1 = DataType.BIGDECIMAL;
                 type2 = getGeneralizedDataType(dt2);
                 if (type1 == type2) {
+                    // stored as the chararray of BigDecimal.toString()
                     int sz1 = readSize(bb1, bb1.get());
                     int sz2 = readSize(bb2, bb2.get());
-                    byte[] ca1 = new byte[sz1];
-                    byte[] ca2 = new byte[sz2];
-                    bb1.get(ca1);
-                    bb2.get(ca2);
-                    String str1 = null, str2 = null;
-                    try {
-                        str1 = new String(ca1, BinInterSedes.UTF8);
-                        str2 = new String(ca2, BinInterSedes.UTF8);
-                    } catch (UnsupportedEncodingException uee) {
-                        mLog.warn("Unsupported string encoding", uee);
-                        uee.printStackTrace();
-                    }
-                    if (str1 != null && str2 != null) {
-                        rc = new BigDecimal(str1).compareTo(new BigDecimal(str2));
-                    }
+                    rc = compareBigDecimal(bb1.array(), bb1.position(), sz1, bb2.array(), bb2.position(), sz2);
+                    bb1.position(bb1.position() + sz1);
+                    bb2.position(bb2.position() + sz2);
                 }
                 break;
             }
@@ -947,9 +941,8 @@ public class BinInterSedes implements InterSedes {
                 if (type1 == type2) {
                     int basz1 = readSize(bb1, dt1);
                     int basz2 = readSize(bb2, dt2);
-                    rc = WritableComparator.compareBytes(
-                          bb1.array(), bb1.position(), basz1,
-                          bb2.array(), bb2.position(), basz2);
+                    rc = compareWords(bb1.array(), bb1.position(), basz1,
+                            bb2.array(), bb2.position(), basz2);
                     bb1.position(bb1.position() + basz1);
                     bb2.position(bb2.position() + basz2);
                 }
@@ -962,19 +955,10 @@ public class BinInterSedes implements InterSedes {
                 if (type1 == type2) {
                     int casz1 = readSize(bb1, dt1);
                     int casz2 = readSize(bb2, dt2);
-                    String str1 = null, str2 = null;
-                    try {
-                        str1 = new String(bb1.array(), bb1.position(), casz1, BinInterSedes.UTF8);
-                        str2 = new String(bb2.array(), bb2.position(), casz2, BinInterSedes.UTF8);
-                    } catch (UnsupportedEncodingException uee) {
-                        mLog.warn("Unsupported string encoding", uee);
-                        uee.printStackTrace();
-                    } finally {
-                        bb1.position(bb1.position() + casz1);
-                        bb2.position(bb2.position() + casz2);
-                    }
-                    if (str1 != null && str2 != null)
-                        rc = str1.compareTo(str2);
+                    rc = compareChararray(bb1.array(), bb1.position(), casz1,
+                            bb2.array(), bb2.position(), casz2);
+                    bb1.position(bb1.position() + casz1);
+                    bb2.position(bb2.position() + casz2);
                 }
                 break;
             }
@@ -1142,39 +1126,35 @@ public class BinInterSedes implements InterSedes {
             return writable1.compareTo(writable2);
         }
 
-        @SuppressWarnings("unchecked")
         private int compareBinInterSedesBag(ByteBuffer bb1, ByteBuffer bb2, byte dt1, byte dt2) throws IOException {
-            int s1 = bb1.position();
-            int s2 = bb2.position();
-            int l1 = bb1.remaining();
-            int l2 = bb2.remaining();
             // first compare sizes
-            int bsz1 = readSize(bb1, dt1);
-            int bsz2 = readSize(bb2, dt2);
+            long bsz1 = readBagSize(bb1, dt1);
+            long bsz2 = readBagSize(bb2, dt2);
             if (bsz1 > bsz2)
                 return 1;
             else if (bsz1 < bsz2)
                 return -1;
             else {
-                DataInputBuffer buffer1 = new DataInputBuffer();
-                DataInputBuffer buffer2 = new DataInputBuffer();
-                buffer1.reset(bb1.array(), s1, l1);
-                buffer2.reset(bb2.array(), s2, l2);
-                DataBag bag1 = (DataBag) mSedes.readDatum(buffer1, dt1);
-                DataBag bag2 = (DataBag) mSedes.readDatum(buffer2, dt2);
-                bb1.position(buffer1.getPosition());
-                bb2.position(buffer2.getPosition());
-                return bag1.compareTo(bag2);
+                // bags are equal if they hold the same tuples in any order, so
+                // both are compared in tuple order, as DefaultAbstractBag does
+                Integer[] tuples1 = sortBinInterSedesData(bb1, (int) bsz1, 1);
+                Integer[] tuples2 = sortBinInterSedesData(bb2, (int) bsz2, 1);
+                int end1 = bb1.position();
+                int end2 = bb2.position();
+                int rc = 0;
+                for (int i = 0; i < tuples1.length && rc == 0; i++) {
+                    bb1.position(tuples1[i]);
+                    bb2.position(tuples2[i]);
+                    rc = compareBinInterSedesDatum(bb1, bb2, null);
+                }
+                bb1.position(end1);
+                bb2.position(end2);
+                return rc;
             }
         }
 
-        @SuppressWarnings("unchecked")
         private int compareBinInterSedesMap(ByteBuffer bb1, ByteBuffer bb2, byte dt1, byte dt2) throws ExecException,
                 IOException {
-            int s1 = bb1.position();
-            int s2 = bb2.position();
-            int l1 = bb1.remaining();
-            int l2 = bb2.remaining();
             // first compare sizes
             int bsz1 = readSize(bb1, dt1);
             int bsz2 = readSize(bb2, dt2);
@@ -1183,15 +1163,407 @@ public class BinInterSedes implements InterSedes {
             else if (bsz1 < bsz2)
                 return -1;
             else {
-                DataInputBuffer buffer1 = new DataInputBuffer();
-                DataInputBuffer buffer2 = new DataInputBuffer();
-                buffer1.reset(bb1.array(), s1, l1);
-                buffer2.reset(bb2.array(), s2, l2);
-                Map<String, Object> map1 = (Map<String, Object>) mSedes.readDatum(buffer1, dt1);
-                Map<String, Object> map2 = (Map<String, Object>) mSedes.readDatum(buffer2, dt2);
-                bb1.position(buffer1.getPosition());
-                bb2.position(buffer2.getPosition());
-                return DataType.compare(map1, map2, DataType.MAP, DataType.MAP);
+                // entries are compared key then value in key order, as
+                // DataType.compare does
+                Integer[] entries1 = sortBinInterSedesData(bb1, bsz1, 2);
+                Integer[] entries2 = sortBinInterSedesData(bb2, bsz2, 2);
+                int end1 = bb1.position();
+                int end2 = bb2.position();
+                int rc = 0;
+                for (int i = 0; i < entries1.length && rc == 0; i++) {
+                    bb1.position(entries1[i]);
+                    bb2.position(entries2[i]);
+                    rc = compareBinInterSedesDatum(bb1, bb2, null);
+                    if (rc == 0)
+                        rc = compareBinInterSedesDatum(bb1, bb2, null);
+                }
+                bb1.position(end1);
+                bb2.position(end2);
+                return rc;
+            }
+        }
+
+        /**
+         * Finds the elements of a bag or the entries of a map and sorts them
+         * on their first datum, leaving bb past the last one.
+         *
+         * @param size number of elements
+         * @param width number of data in each element
+         * @return the positions of the elements, sorted
+         */
+        private Integer[] sortBinInterSedesData(ByteBuffer bb, int size, int width) throws IOException {
+            Integer[] positions = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = bb.position();
+                for (int j = 0; j < width; j++) {
+                    skipBinInterSedesDatum(bb);
+                }
+            }
+            final ByteBuffer d1 = bb.duplicate();
+            final ByteBuffer d2 = bb.duplicate();
+            try {
+                Arrays.sort(positions, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer p1, Integer p2) {
+                        d1.position(p1);
+                        d2.position(p2);
+                        try {
+                            return compareBinInterSedesDatum(d1, d2, null);
+                        } catch (IOException e) {
+                            throw new RawComparisonException(e);
+                        }
+                    }
+                });
+            } catch (RawComparisonException e) {
+                throw e.getCause();
+            }
+            return positions;
+        }
+
+        /**
+         * Moves bb past the datum at its position without reading it, except
+         * for writables that can only be read.
+         */
+        private void skipBinInterSedesDatum(ByteBuffer bb) throws IOException {
+            byte type = bb.get();
+            switch (type) {
+            case BinInterSedes.NULL:
+            case BinInterSedes.BOOLEAN_TRUE:
+            case BinInterSedes.BOOLEAN_FALSE:
+            case BinInterSedes.INTEGER_0:
+            case BinInterSedes.INTEGER_1:
+            case BinInterSedes.LONG_0:
+            case BinInterSedes.LONG_1:
+                break;
+            case BinInterSedes.BYTE:
+            case BinInterSedes.INTEGER_INBYTE:
+            case BinInterSedes.LONG_INBYTE:
+                bb.position(bb.position() + 1);
+                break;
+            case BinInterSedes.INTEGER_INSHORT:
+            case BinInterSedes.LONG_INSHORT:
+                bb.position(bb.position() + 2);
+                break;
+            case BinInterSedes.INTEGER:
+            case BinInterSedes.LONG_ININT:
+            case BinInterSedes.FLOAT:
+                bb.position(bb.position() + 4);
+                break;
+            case BinInterSedes.LONG:
+            case BinInterSedes.DOUBLE:
+                bb.position(bb.position() + 8);
+                break;
+            case BinInterSedes.DATETIME:
+                bb.position(bb.position() + 10);
+                break;
+            case BinInterSedes.BIGINTEGER:
+            case BinInterSedes.BIGDECIMAL:
+                skipBinInterSedesDatum(bb);
+                break;
+            case BinInterSedes.TINYBYTEARRAY:
+            case BinInterSedes.SMALLBYTEARRAY:
+            case BinInterSedes.BYTEARRAY:
+            case BinInterSedes.SMALLCHARARRAY:
+            case BinInterSedes.CHARARRAY: {
+                int sz = readSize(bb, type);
+                bb.position(bb.position() + sz);
+                break;
+            }
+            case BinInterSedes.TUPLE_0:
+            case BinInterSedes.TUPLE_1:
+            case BinInterSedes.TUPLE_2:
+            case BinInterSedes.TUPLE_3:
+            case BinInterSedes.TUPLE_4:
+            case BinInterSedes.TUPLE_5:
+            case BinInterSedes.TUPLE_6:
+            case BinInterSedes.TUPLE_7:
+            case BinInterSedes.TUPLE_8:
+            case BinInterSedes.TUPLE_9:
+            case BinInterSedes.TINYTUPLE:
+            case BinInterSedes.SMALLTUPLE:
+            case BinInterSedes.TUPLE: {
+                int sz = readSize(bb, type);
+                for (int i = 0; i < sz; i++) {
+                    skipBinInterSedesDatum(bb);
+                }
+                break;
+            }
+            case BinInterSedes.TINYBAG:
+            case BinInterSedes.SMALLBAG:
+            case BinInterSedes.BAG: {
+                long sz = readBagSize(bb, type);
+                for (long i = 0; i < sz; i++) {
+                    skipBinInterSedesDatum(bb);
+                }
+                break;
+            }
+            case BinInterSedes.TINYMAP:
+            case BinInterSedes.SMALLMAP:
+            case BinInterSedes.MAP: {
+                int sz = readSize(bb, type);
+                for (int i = 0; i < 2 * sz; i++) {
+                    skipBinInterSedesDatum(bb);
+                }
+                break;
+            }
+            case BinInterSedes.GENERIC_WRITABLECOMPARABLE: {
+                DataInputBuffer buffer = new DataInputBuffer();
+                buffer.reset(bb.array(), bb.position() - 1, bb.limit() - bb.position() + 1);
+                mSedes.readDatum(buffer);
+                bb.position(buffer.getPosition());
+                break;
+            }
+            default: {
+                mLog.info("Unsupported DataType for binary comparison, switching to object deserialization: "
+                        + DataType.genTypeToNameMap().get(type) + "(" + type + ")");
+                throw new UnsupportedEncodingException();
+            }
+            }
+        }
+
+        /**
+         * Carries the IOException of a comparison out of a Comparator
+         */
+        private static class RawComparisonException extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+
+            private RawComparisonException(IOException cause) {
+                super(cause);
+            }
+
+            @Override
+            public IOException getCause() {
+                return (IOException) super.getCause();
+            }
+        }
+
+        /**
+         * Compares bytes as unsigned, eight at a time
+         */
+        private static int compareWords(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int n = Math.min(l1, l2);
+            int i = 0;
+            if (n >= 8) {
+                ByteBuffer w1 = ByteBuffer.wrap(b1);
+                ByteBuffer w2 = ByteBuffer.wrap(b2);
+                for (; i <= n - 8; i += 8) {
+                    long v1 = w1.getLong(s1 + i);
+                    long v2 = w2.getLong(s2 + i);
+                    if (v1 != v2) {
+                        // big endian, so the first different byte decides
+                        return (v1 ^ Long.MIN_VALUE) < (v2 ^ Long.MIN_VALUE) ? -1 : 1;
+                    }
+                }
+            }
+            for (; i < n; i++) {
+                int c = (b1[s1 + i] & 0xff) - (b2[s2 + i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return l1 - l2;
+        }
+
+        /**
+         * Compares two chararrays in UTF-8 or in the modified UTF-8 of
+         * DataOutput.writeUTF with the order of String.compareTo. Only the
+         * characters from the first different byte on are decoded.
+         */
+        private static int compareChararray(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2)
+                throws UnsupportedEncodingException {
+            int n = Math.min(l1, l2);
+            int i = 0;
+            while (i < n && b1[s1 + i] == b2[s2 + i]) {
+                i++;
+            }
+            if (i == n && l1 == l2) {
+                return 0;
+            }
+            // back to the first byte of the character, the same in both
+            while (i > 0 && i < l1 && (b1[s1 + i] & 0xc0) == 0x80) {
+                i--;
+            }
+            // the same string can have different bytes in the two encodings,
+            // so compare the UTF-16 code units
+            CodeUnitReader r1 = new CodeUnitReader(b1, s1 + i, s1 + l1);
+            CodeUnitReader r2 = new CodeUnitReader(b2, s2 + i, s2 + l2);
+            while (true) {
+                int c1 = r1.next();
+                int c2 = r2.next();
+                if (c1 != c2) {
+                    return c1 < c2 ? -1 : 1;
+                } else if (c1 < 0) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Reads the UTF-16 code units of UTF-8 or modified UTF-8 bytes
+         */
+        private static class CodeUnitReader {
+            private final byte[] b;
+            private int position;
+            private final int end;
+            // second code unit of a supplementary character
+            private int lowSurrogate = -1;
+
+            private CodeUnitReader(byte[] b, int start, int end) {
+                this.b = b;
+                this.position = start;
+                this.end = end;
+            }
+
+            /**
+             * @return the next code unit, -1 at the end
+             */
+            private int next() throws UnsupportedEncodingException {
+                if (lowSurrogate >= 0) {
+                    int c = lowSurrogate;
+                    lowSurrogate = -1;
+                    return c;
+                }
+                if (position >= end) {
+                    return -1;
+                }
+                int b0 = b[position] & 0xff;
+                if (b0 < 0x80) {
+                    position++;
+                    return b0;
+                } else if ((b0 & 0xe0) == 0xc0 && position + 1 < end) {
+                    int c = ((b0 & 0x1f) << 6) | (b[position + 1] & 0x3f);
+                    position += 2;
+                    return c;
+                } else if ((b0 & 0xf0) == 0xe0 && position + 2 < end) {
+                    int c = ((b0 & 0x0f) << 12) | ((b[position + 1] & 0x3f) << 6) | (b[position + 2] & 0x3f);
+                    position += 3;
+                    return c;
+                } else if ((b0 & 0xf8) == 0xf0 && position + 3 < end) {
+                    int cp = ((b0 & 0x07) << 18) | ((b[position + 1] & 0x3f) << 12)
+                            | ((b[position + 2] & 0x3f) << 6) | (b[position + 3] & 0x3f);
+                    position += 4;
+                    cp -= 0x10000;
+                    lowSurrogate = 0xdc00 + (cp & 0x3ff);
+                    return 0xd800 + (cp >>> 10);
+                }
+                // malformed, leave it to String
+                throw new UnsupportedEncodingException();
+            }
+        }
+
+        /**
+         * Compares the decimal strings of two BigIntegers, which have no
+         * leading zeros
+         */
+        private static int compareBigInteger(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            boolean neg1 = l1 > 0 && b1[s1] == '-';
+            boolean neg2 = l2 > 0 && b2[s2] == '-';
+            if (neg1 != neg2) {
+                return neg1 ? -1 : 1;
+            }
+            int rc = l1 != l2 ? (l1 < l2 ? -1 : 1) : compareWords(b1, s1, l1, b2, s2, l2);
+            return neg1 ? -rc : rc;
+        }
+
+        /**
+         * Compares the strings of two BigDecimals, in plain or scientific
+         * notation, by value: 1.0 and 1.00 are equal as for
+         * BigDecimal.compareTo.
+         */
+        private static int compareBigDecimal(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            DecimalString d1 = new DecimalString(b1, s1, l1);
+            DecimalString d2 = new DecimalString(b2, s2, l2);
+            if (d1.signum != d2.signum) {
+                return d1.signum < d2.signum ? -1 : 1;
+            }
+            if (d1.signum == 0) {
+                return 0;
+            }
+            int rc;
+            if (d1.magnitude != d2.magnitude) {
+                rc = d1.magnitude < d2.magnitude ? -1 : 1;
+            } else {
+                // same magnitude, compare the significant digits, missing ones
+                // being zeros
+                rc = 0;
+                for (int i = 0; rc == 0 && (i < d1.digits || i < d2.digits); i++) {
+                    rc = d1.digit(i) - d2.digit(i);
+                }
+            }
+            return d1.signum < 0 ? -rc : rc;
+        }
+
+        /**
+         * The significant digits and magnitude of a BigDecimal string
+         */
+        private static class DecimalString {
+            private final byte[] b;
+            private int signum = 1;
+            // positions of the first and last significant digits, with the
+            // decimal point in between
+            private int first = -1;
+            private int last = -1;
+            private int point = -1;
+            private int digits = 0;
+            // exponent of the first significant digit
+            private long magnitude;
+
+            private DecimalString(byte[] b, int s, int l) {
+                this.b = b;
+                int end = s + l;
+                int i = s;
+                if (i < end && (b[i] == '-' || b[i] == '+')) {
+                    signum = b[i] == '-' ? -1 : 1;
+                    i++;
+                }
+                int pointAt = -1;
+                for (; i < end && b[i] != 'E' && b[i] != 'e'; i++) {
+                    if (b[i] == '.') {
+                        pointAt = i;
+                    } else if (b[i] != '0') {
+                        if (first < 0) {
+                            first = i;
+                        }
+                        last = i;
+                    }
+                }
+                int digitsEnd = i;
+                long exponent = 0;
+                if (i < end) {
+                    i++;
+                    boolean negExp = false;
+                    if (i < end && (b[i] == '-' || b[i] == '+')) {
+                        negExp = b[i] == '-';
+                        i++;
+                    }
+                    for (; i < end; i++) {
+                        exponent = exponent * 10 + (b[i] - '0');
+                    }
+                    if (negExp) {
+                        exponent = -exponent;
+                    }
+                }
+                if (first < 0) {
+                    signum = 0;
+                    return;
+                }
+                point = pointAt < 0 ? digitsEnd : pointAt;
+                digits = last - first + 1 - (first < point && point < last ? 1 : 0);
+                magnitude = exponent + (first < point ? point - first - 1 : point - first);
+            }
+
+            /**
+             * @return the i-th significant digit, 0 past the last one
+             */
+            private int digit(int i) {
+                if (i >= digits) {
+                    return 0;
+                }
+                int p = first + i;
+                if (first < point && p >= point) {
+                    p++;
+                }
+                return b[p] - '0';
             }
         }
 
@@ -1296,15 +1668,6 @@ public class BinInterSedes implements InterSedes {
             }
         }
 
-        /**
-         * @param bb ByteBuffer having serialized object, including the type information
-         * @param type serialized type information
-         * @return the size of this type
-         */
-        private static int readSize(ByteBuffer bb) {
-            return readSize(bb, bb.get());
-        }
-
         /**
          * @param bb ByteBuffer having serialized object, minus the type information
          * @param type serialized type information
@@ -1354,6 +1717,28 @@ public class BinInterSedes implements InterSedes {
             }
         }
 
+        /**
+         * @return whether the tuple of this type can be compared without
+         * deserializing it, schema tuples cannot
+         */
+        private static boolean isRawTupleByte(byte type) {
+            return isTupleByte(type) && type != BinInterSedes.SCHEMA_TUPLE
+                    && type != BinInterSedes.SCHEMA_TUPLE_BYTE_INDEX
+                    && type != BinInterSedes.SCHEMA_TUPLE_SHORT_INDEX;
+        }
+
+        /**
+         * @param bb ByteBuffer having serialized bag, minus the type information
+         * @param type serialized type information
+         * @return the number of tuples of the bag
+         */
+        private static long readBagSize(ByteBuffer bb, byte type) {
+            if (type == BinInterSedes.BAG) {
+                return bb.getLong();
+            }
+            return readSize(bb, type);
+        }
+
         //same as format used by DataInput/DataOutput for unsigned short
         private static int getUnsignedShort(ByteBuffer bb) {
             return (((bb.get() & 0xff) << 8) | (bb.get() & 0xff));
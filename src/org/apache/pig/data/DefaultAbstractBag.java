@@ -17,11 +17,15 @@
  */
 package org.apache.pig.data;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collection;
@@ -29,12 +33,17 @@ import java.util.Iterator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.PigWarning;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigHadoopLogger;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PigLogger;
+import org.apache.pig.impl.io.BlockCodec;
+import org.apache.pig.impl.io.BlockCompressedInputStream;
+import org.apache.pig.impl.io.BlockCompressedOutputStream;
 import org.apache.pig.impl.util.BagFormat;
 import org.apache.pig.impl.util.SpillableMemoryManager;
 import org.apache.pig.tools.pigstats.PigStatusReporter;
@@ -54,6 +63,10 @@ public abstract class DefaultAbstractBag implements DataBag {
     private static PigLogger pigLogger = PhysicalOperator.getPigLogger();
 
     private static InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    // The codec spill files are compressed with, null if they are not
+    private static volatile BlockCodec spillCodec = null;
+
     // Container that holds the tuples. Actual object instantiated by
     // subclasses.
     protected Collection<Tuple> mContents;
@@ -230,6 +243,15 @@ public abstract class DefaultAbstractBag implements DataBag {
         }
     }
 
+    /**
+     * @return whether the bag returns its tuples in sorted order, as sorted
+     * bags and the distinct bags do, except for {@link HashedDistinctBag}
+     * that returns them in no particular order
+     */
+    static boolean isInOrder(DataBag bag) {
+        return bag.isSorted() || (bag.isDistinct() && !(bag instanceof HashedDistinctBag));
+    }
+
     /**
      * This method is potentially very expensive since it may require a
      * sort of the bag; don't call it unless you have to.
@@ -255,7 +277,7 @@ public abstract class DefaultAbstractBag implements DataBag {
             DataBag otherClone;
             BagFactory factory = BagFactory.getInstance();
 
-            if (this.isSorted() || this.isDistinct()) {
+            if (isInOrder(this)) {
                 thisClone = this;
             } else {
                 thisClone = factory.newSortedBag(null);
@@ -263,7 +285,7 @@ public abstract class DefaultAbstractBag implements DataBag {
                 while (i.hasNext()) thisClone.add(i.next());
 
             }
-            if (((DataBag) other).isSorted() || ((DataBag)other).isDistinct()) {
+            if (isInOrder((DataBag) other)) {
                 otherClone = bOther;
             } else {
                 otherClone = factory.newSortedBag(null);
@@ -388,10 +410,39 @@ public abstract class DefaultAbstractBag implements DataBag {
         File f = File.createTempFile("pigbag", null);
         f.deleteOnExit();
         mSpillFiles.add(f);
+        BlockCodec codec = spillCodec;
+        if (codec != null) {
+            return new DataOutputStream(new BlockCompressedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(f)), codec));
+        }
         return new DataOutputStream(new BufferedOutputStream(
             new FileOutputStream(f)));
     }
 
+    /**
+     * Open a file that {@link #getSpillFile()} returned the stream of.
+     * @return stream to read tuples from.
+     */
+    protected static DataInputStream openSpillFile(File f) throws FileNotFoundException {
+        BlockCodec codec = spillCodec;
+        if (codec != null) {
+            return new DataInputStream(new BlockCompressedInputStream(
+                new BufferedInputStream(new FileInputStream(f)), codec));
+        }
+        return new DataInputStream(new BufferedInputStream(
+            new FileInputStream(f)));
+    }
+
+    /**
+     * Set the codec that spill files are compressed with, from
+     * {@link PigConfiguration#PROP_SPILL_COMPRESSION_CODEC}. Bags spilled
+     * before must be read before it changes.
+     */
+    public static void configureSpill(Configuration conf) throws IOException {
+        spillCodec = BlockCodec.getInstance(
+            conf.get(PigConfiguration.PROP_SPILL_COMPRESSION_CODEC), conf);
+    }
+
     /**
      * Report progress to HDFS.
      */
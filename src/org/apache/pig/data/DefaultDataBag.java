@@ -17,11 +17,9 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -204,8 +202,7 @@ public class DefaultDataBag extends DefaultAbstractBag {
                 // we know to read from the file next time we come
                 // through.
                 try {
-                    mIn = new DataInputStream(new BufferedInputStream(
-                        new FileInputStream(mSpillFiles.get(mFilePtr++))));
+                    mIn = openSpillFile(mSpillFiles.get(mFilePtr++));
                 } catch (FileNotFoundException fnfe) {
                     // We can't find our own spill file?  That should never
                     // happen.
@@ -283,8 +280,7 @@ public class DefaultDataBag extends DefaultAbstractBag {
             // Open the next file, then call ourselves again as it
             // will enter the if above.
             try {
-                mIn = new DataInputStream(new BufferedInputStream(
-                    new FileInputStream(mSpillFiles.get(mFilePtr++))));
+                mIn = openSpillFile(mSpillFiles.get(mFilePtr++));
             } catch (FileNotFoundException fnfe) {
                 // We can't find our own spill file?  That should never
                 // happen.
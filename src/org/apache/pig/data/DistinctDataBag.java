@@ -17,12 +17,10 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -283,9 +281,8 @@ public class DistinctDataBag extends DefaultAbstractBag {
                 // because we don't support calls to add() after calls to
                 // iterator(), and spill() won't create empty files.
                 try {
-                    in = new DataInputStream(new BufferedInputStream(
-                        new FileInputStream(mSpillFiles.get(
-                                mSpillFiles.size() - 1))));
+                    in = openSpillFile(mSpillFiles.get(
+                            mSpillFiles.size() - 1));
                     if (mStreams == null) {
                         mMergeTree = new TreeSet<TContainer>();
                         // We didn't have any files before this spill.
@@ -347,8 +344,7 @@ public class DistinctDataBag extends DefaultAbstractBag {
                 while (i.hasNext()) {
                     try {
                         DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
+                            openSpillFile(i.next());
                         mStreams.add(in);
                         // Add the first tuple from this file into the
                         // merge queue.
@@ -496,8 +492,7 @@ public class DistinctDataBag extends DefaultAbstractBag {
                         try {
                             File f = i.next();
                             DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
+                                openSpillFile(f);
                             mStreams.add(in);
                             addToQueue(null, mStreams.size() - 1);
                             i.remove();
@@ -0,0 +1,599 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigCounters;
+import org.apache.pig.PigWarning;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+import org.apache.pig.impl.util.HyperLogLog;
+
+/**
+ * An unordered collection of Tuples with no multiples, which tells the
+ * tuples apart by their 128-bit {@link TupleFingerprint}s. The fingerprints
+ * of the tuples in memory are kept in an open addressing table of longs,
+ * which is much smaller and faster than a HashSet of the tuples. When the
+ * bag spills, the tuples are written with their fingerprints to one file
+ * per partition of the fingerprints, and the fingerprints are dropped.
+ * Reading the bag then goes through one partition at a time, dropping the
+ * duplicates with a table of the fingerprints of that partition only,
+ * without sorting or merging anything. The tuples come in no particular
+ * order.
+ * <p>
+ * An approximate bag does not spill: when it outgrows its memory, it drops
+ * its tuples and only keeps a {@link HyperLogLog} estimate of its size,
+ * see {@link PigConfiguration#PROP_DISTINCT_APPROXIMATE}. It can then only
+ * be counted.
+ * <p>
+ * This bag spills pro-actively when the number of tuples in memory
+ * reaches a limit
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class HashedDistinctBag extends SelfSpillBag {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Log log = LogFactory.getLog(HashedDistinctBag.class);
+
+    private static final int PARTITIONS = 16;
+
+    private static TupleFactory gTupleFactory = TupleFactory.getInstance();
+
+    private final boolean approximate;
+
+    private transient TupleFingerprint mFingerprint = new TupleFingerprint();
+
+    // fingerprints of the tuples in mContents
+    private transient FingerprintSet mFingerprints = new FingerprintSet();
+
+    // partition of each of the spill files
+    private transient List<Integer> mFilePartitions;
+
+    // the tuples in memory of each partition, once reading started after
+    // a spill
+    private transient List<Tuple>[] mMemoryPartitions;
+
+    // once an approximate bag dropped its tuples, the estimates of the
+    // number of all of them, and of those with a first field that is not
+    // null, which is what COUNT counts
+    private transient HyperLogLog mEstimate;
+    private transient HyperLogLog mNonNullEstimate;
+
+    private transient boolean mReadStarted = false;
+
+    public HashedDistinctBag() {
+        this(1, -1.0f, false);
+    }
+
+    public HashedDistinctBag(int bagCount) {
+        this(bagCount, -1.0f, false);
+    }
+
+    /**
+     * @param approximate whether the bag keeps an estimate of its size
+     * instead of spilling
+     */
+    public HashedDistinctBag(int bagCount, boolean approximate) {
+        this(bagCount, -1.0f, approximate);
+    }
+
+    public HashedDistinctBag(int bagCount, float percent, boolean approximate) {
+        super(bagCount, percent);
+        this.approximate = approximate;
+        mContents = new ArrayList<Tuple>();
+    }
+
+    /**
+     * @return the bag nested DISTINCT collects the tuples in, as per
+     * {@link PigConfiguration#PROP_DISTINCT_BAG_TYPE}
+     * @param onlyCounted whether the tuples of the bag are only counted, so
+     * that it may be approximate
+     */
+    public static DataBag newDistinctBag(boolean onlyCounted) {
+        String bagType = null;
+        boolean approximate = false;
+        if (PigMapReduce.sJobConfInternal.get() != null) {
+            bagType = PigMapReduce.sJobConfInternal.get().get(
+                    PigConfiguration.PROP_DISTINCT_BAG_TYPE);
+            approximate = onlyCounted && PigMapReduce.sJobConfInternal.get().getBoolean(
+                    PigConfiguration.PROP_DISTINCT_APPROXIMATE, false);
+        }
+        if (bagType != null && bagType.equalsIgnoreCase("default")) {
+            return BagFactory.getInstance().newDistinctBag();
+        } else if (bagType != null && bagType.equalsIgnoreCase("hash")) {
+            return new HashedDistinctBag(3, approximate);
+        } else {
+            return new InternalDistinctBag(3);
+        }
+    }
+
+    @Override
+    public boolean isSorted() {
+        return false;
+    }
+
+    @Override
+    public boolean isDistinct() {
+        return true;
+    }
+
+    /**
+     * @return whether the bag dropped its tuples and only estimates its size
+     */
+    public boolean isEstimated() {
+        return mEstimate != null;
+    }
+
+    /**
+     * @return the estimated number of tuples whose first field is not null,
+     * if {@link #isEstimated()}
+     */
+    public long getEstimatedNonNullCount() {
+        return mNonNullEstimate.cardinality();
+    }
+
+    @Override
+    public long size() {
+        if (mEstimate != null) {
+            return mEstimate.cardinality();
+        }
+        if (mSpillFiles != null && mSpillFiles.size() > 0) {
+            // The spill files may hold duplicates, count the unique tuples
+            Iterator<Tuple> iter = iterator();
+            long newSize = 0;
+            while (iter.hasNext()) {
+                newSize++;
+                iter.next();
+            }
+            mSize = newSize;
+        }
+        return mSize;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return super.getMemorySize() + mFingerprints.getMemorySize();
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        if (mEstimate != null) {
+            throw new IllegalStateException("The distinct bag only holds an estimate of its"
+                    + " size as " + PigConfiguration.PROP_DISTINCT_APPROXIMATE
+                    + " is set, it can only be counted");
+        }
+        return new HashedDistinctBagIterator();
+    }
+
+    @Override
+    public void add(Tuple t) {
+        if (mReadStarted) {
+            throw new IllegalStateException("HashedDistinctBag is closed for adding new tuples");
+        }
+        synchronized (mContents) {
+            if (mEstimate != null) {
+                estimate(t);
+                return;
+            }
+            if (mContents.size() > memLimit.getCacheLimit()) {
+                proactive_spill();
+                if (mEstimate != null) {
+                    estimate(t);
+                    return;
+                }
+            }
+            if (mFingerprints.add(fingerprint(t))) {
+                mContents.add(t);
+                mSize++;
+
+                // check how many tuples memory can hold by getting average
+                // size of first 100 tuples
+                if (mSize < 100 && (mSpillFiles == null || mSpillFiles.isEmpty())) {
+                    memLimit.addNewObjSize(t.getMemorySize());
+                }
+            }
+        }
+        markSpillableIfNecessary();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mContents) {
+            super.clear();
+            mFingerprints.clear();
+            mFilePartitions = null;
+            mMemoryPartitions = null;
+            mEstimate = null;
+            mNonNullEstimate = null;
+        }
+    }
+
+    @Override
+    public long spill() {
+        if (mReadStarted) {
+            return 0;
+        }
+        synchronized (mContents) {
+            return proactive_spill();
+        }
+    }
+
+    private TupleFingerprint fingerprint(Tuple t) {
+        try {
+            return mFingerprint.set(t);
+        } catch (ExecException e) {
+            throw new RuntimeException("Unable to compute the fingerprint of a tuple", e);
+        }
+    }
+
+    private static int partition(TupleFingerprint f) {
+        // the table of the fingerprints uses the high bits
+        return (int) (f.low() >>> 60);
+    }
+
+    private void estimate(Tuple t) {
+        mEstimate.offer(fingerprint(t).high());
+        try {
+            if (t != null && t.size() > 0 && t.get(0) != null) {
+                mNonNullEstimate.offer(mFingerprint.high());
+            }
+        } catch (ExecException e) {
+            throw new RuntimeException("Unable to read the first field of a tuple", e);
+        }
+    }
+
+    /**
+     * Writes the tuples in memory to one spill file per partition of their
+     * fingerprints, or drops them for an estimate if the bag is approximate.
+     * @return number of tuples spilled
+     */
+    private long proactive_spill() {
+        if (mContents.size() == 0) {
+            return 0;
+        }
+        long spilled = mContents.size();
+        if (approximate) {
+            mEstimate = new HyperLogLog();
+            mNonNullEstimate = new HyperLogLog();
+            for (Tuple t : mContents) {
+                estimate(t);
+            }
+            log.info("Distinct bag outgrew its memory with " + spilled
+                    + " tuples, estimating its size from now on");
+            mContents.clear();
+            mFingerprints.clear();
+            return spilled;
+        }
+
+        //count for number of objects that have spilled
+        if (mSpillFiles == null) {
+            incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_BAGS);
+            mFilePartitions = new ArrayList<Integer>();
+        }
+
+        List<Tuple>[] partitions = partitionContents();
+        int firstFile = mSpillFiles == null ? 0 : mSpillFiles.size();
+        for (int p = 0; p < PARTITIONS; p++) {
+            if (partitions[p].isEmpty()) {
+                continue;
+            }
+            DataOutputStream out = null;
+            try {
+                out = getSpillFile();
+                mFilePartitions.add(p);
+                long written = 0;
+                for (Tuple t : partitions[p]) {
+                    TupleFingerprint f = fingerprint(t);
+                    out.writeLong(f.high());
+                    out.writeLong(f.low());
+                    t.write(out);
+                    // This will report progress every 16383 records.
+                    if ((++written & 0x3fff) == 0) reportProgress();
+                }
+                out.flush();
+            } catch (IOException ioe) {
+                // Remove the files of this spill, as the tuples stay in
+                // memory.
+                while (mSpillFiles.size() > firstFile) {
+                    File f = mSpillFiles.remove(mSpillFiles.size() - 1);
+                    if (!f.delete()) {
+                        log.warn("Failed to delete spill file: " + f.getPath());
+                    }
+                }
+                while (mFilePartitions.size() > firstFile) {
+                    mFilePartitions.remove(mFilePartitions.size() - 1);
+                }
+                warn("Unable to spill contents to disk", PigWarning.UNABLE_TO_SPILL, ioe);
+                return 0;
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        warn("Error closing spill", PigWarning.UNABLE_TO_CLOSE_SPILL_FILE, e);
+                    }
+                }
+            }
+        }
+        mContents.clear();
+        mFingerprints.clear();
+
+        incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_RECS, spilled);
+
+        return spilled;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Tuple>[] partitionContents() {
+        List<Tuple>[] partitions = new List[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; p++) {
+            partitions[p] = new ArrayList<Tuple>();
+        }
+        for (Tuple t : mContents) {
+            partitions[partition(fingerprint(t))].add(t);
+        }
+        return partitions;
+    }
+
+    /**
+     * An iterator that handles getting the next tuple from the bag. With
+     * spill files, it reads one partition at a time, first from the files
+     * and then from memory.
+     */
+    private class HashedDistinctBagIterator implements Iterator<Tuple> {
+
+        // We have to buffer a tuple because there's no easy way for next
+        // to tell whether or not there's another tuple available, other
+        // than to read it.
+        private Tuple mBuf = null;
+        private int mMemoryPtr = 0;
+        private int mCntr = 0;
+
+        private int mPartition = -1;
+        private int mFile = -1;
+        private DataInputStream mStream = null;
+        private FingerprintSet mSeen = null;
+        private TupleFingerprint mFp = new TupleFingerprint();
+
+        HashedDistinctBagIterator() {
+            if (!mReadStarted) {
+                synchronized (mContents) {
+                    if (mSpillFiles != null && mSpillFiles.size() > 0) {
+                        mMemoryPartitions = partitionContents();
+                        mFingerprints.clear();
+                    }
+                    mReadStarted = true;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            // See if we can find a tuple.  If so, buffer it.
+            mBuf = next();
+            return mBuf != null;
+        }
+
+        @Override
+        public Tuple next() {
+            // This will report progress every 1024 times through next.
+            // This should be much faster than using mod.
+            if ((mCntr++ & 0x3ff) == 0) reportProgress();
+
+            // If there's one in the buffer, use that one.
+            if (mBuf != null) {
+                Tuple t = mBuf;
+                mBuf = null;
+                return t;
+            }
+
+            if (mMemoryPartitions == null) {
+                if (mMemoryPtr < mContents.size()) {
+                    return ((ArrayList<Tuple>) mContents).get(mMemoryPtr++);
+                }
+                return null;
+            }
+            return readFromPartitions();
+        }
+
+        /**
+         * Not implemented.
+         */
+        @Override
+        public void remove() {}
+
+        private Tuple readFromPartitions() {
+            while (mPartition < PARTITIONS) {
+                if (mPartition >= 0) {
+                    Tuple t = readFromFiles();
+                    if (t != null) {
+                        return t;
+                    }
+                    // the files of the partition are done, read the tuples
+                    // in memory, which may be in the files too
+                    List<Tuple> inMemory = mMemoryPartitions[mPartition];
+                    while (mMemoryPtr < inMemory.size()) {
+                        t = inMemory.get(mMemoryPtr++);
+                        if (mSeen.add(fingerprintOf(t))) {
+                            return t;
+                        }
+                    }
+                }
+                mPartition++;
+                mFile = -1;
+                mMemoryPtr = 0;
+                mSeen = new FingerprintSet();
+            }
+            mSeen = null;
+            return null;
+        }
+
+        private Tuple readFromFiles() {
+            while (true) {
+                if (mStream == null) {
+                    mFile = nextFile(mFile + 1);
+                    if (mFile < 0) {
+                        return null;
+                    }
+                    try {
+                        mStream = openSpillFile(mSpillFiles.get(mFile));
+                    } catch (FileNotFoundException fnfe) {
+                        // We can't find our own spill file?  That should
+                        // never happen.
+                        String msg = "Unable to find our spill file.";
+                        log.fatal(msg, fnfe);
+                        throw new RuntimeException(msg, fnfe);
+                    }
+                }
+                try {
+                    long high = mStream.readLong();
+                    long low = mStream.readLong();
+                    Tuple t = gTupleFactory.newTuple();
+                    t.readFields(mStream);
+                    if (mSeen.add(high, low)) {
+                        return t;
+                    }
+                } catch (EOFException eof) {
+                    // Out of tuples in this file, go to the next one of the
+                    // partition
+                    try {
+                        mStream.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close spill file.", e);
+                    }
+                    mStream = null;
+                } catch (IOException ioe) {
+                    String msg = "Unable to read our spill file.";
+                    log.fatal(msg, ioe);
+                    throw new RuntimeException(msg, ioe);
+                }
+            }
+        }
+
+        private int nextFile(int from) {
+            for (int i = from; i < mFilePartitions.size(); i++) {
+                if (mFilePartitions.get(i) == mPartition) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private TupleFingerprint fingerprintOf(Tuple t) {
+            try {
+                return mFp.set(t);
+            } catch (ExecException e) {
+                throw new RuntimeException("Unable to compute the fingerprint of a tuple", e);
+            }
+        }
+    }
+
+    /**
+     * A set of 128-bit fingerprints in two arrays of longs, with open
+     * addressing and linear probing. A fingerprint of zero stands for an
+     * empty slot, so a zero fingerprint is stored as one.
+     */
+    static class FingerprintSet {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] highs;
+        private long[] lows;
+        private int size;
+
+        FingerprintSet() {
+            clear();
+        }
+
+        boolean add(TupleFingerprint f) {
+            return add(f.high(), f.low());
+        }
+
+        /**
+         * @return whether the fingerprint was not in the set yet
+         */
+        boolean add(long high, long low) {
+            if (high == 0 && low == 0) {
+                low = 1;
+            }
+            int mask = highs.length - 1;
+            int i = (int) (high ^ (high >>> 32)) & mask;
+            while (highs[i] != 0 || lows[i] != 0) {
+                if (highs[i] == high && lows[i] == low) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            highs[i] = high;
+            lows[i] = low;
+            // keep the table at most two thirds full
+            if (++size * 3 > highs.length * 2) {
+                grow();
+            }
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long getMemorySize() {
+            return 16L * highs.length;
+        }
+
+        void clear() {
+            highs = new long[INITIAL_CAPACITY];
+            lows = new long[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldHighs = highs;
+            long[] oldLows = lows;
+            highs = new long[oldHighs.length * 2];
+            lows = new long[oldLows.length * 2];
+            int mask = highs.length - 1;
+            for (int j = 0; j < oldHighs.length; j++) {
+                if (oldHighs[j] != 0 || oldLows[j] != 0) {
+                    int i = (int) (oldHighs[j] ^ (oldHighs[j] >>> 32)) & mask;
+                    while (highs[i] != 0 || lows[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    highs[i] = oldHighs[j];
+                    lows[i] = oldLows[j];
+                }
+            }
+        }
+    }
+}
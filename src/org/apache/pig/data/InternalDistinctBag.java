@@ -17,12 +17,10 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -256,8 +254,7 @@ public class InternalDistinctBag extends SortedSpillBag {
                 while (i.hasNext()) {
                     try {
                         DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
+                            openSpillFile(i.next());
                         mStreams.add(in);
                         // Add the first tuple from this file into the
                         // merge queue.
@@ -402,8 +399,7 @@ public class InternalDistinctBag extends SortedSpillBag {
                         try {
                             File f = i.next();
                             DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
+                                openSpillFile(f);
                             mStreams.add(in);
                             addToQueue(null, mStreams.size() - 1);
                             i.remove();
@@ -17,16 +17,13 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -63,7 +60,7 @@ public class InternalSortedBag extends SortedSpillBag{
     private transient Comparator<Tuple> mComp;
     private transient boolean mReadStarted = false;
 
-    static private class DefaultComparator implements Comparator<Tuple> {
+    static private class DefaultComparator implements ParallelSorter.ThreadSafeComparator {
         @Override
         @SuppressWarnings("unchecked")
 		public int compare(Tuple t1, Tuple t2) {
@@ -198,7 +195,7 @@ public class InternalSortedBag extends SortedSpillBag{
         	synchronized(mContents) {
 	        	if (!mReadStarted) {
 	                preMerge();
-	                Collections.sort((ArrayList<Tuple>)mContents, mComp);
+	                ParallelSorter.sort((ArrayList<Tuple>)mContents, mComp);
 	                mReadStarted = true;
 	            }            
         	}
@@ -255,8 +252,7 @@ public class InternalSortedBag extends SortedSpillBag{
                 while (i.hasNext()) {
                     try {
                         DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
+                            openSpillFile(i.next());
                         mStreams.add(in);
                         // Add the first tuple from this file into the
                         // merge queue.
@@ -347,7 +343,8 @@ public class InternalSortedBag extends SortedSpillBag{
          * Pre-merge if there are too many spill files.  This avoids the issue
          * of having too large a fan out in our merge.  Experimentation by
          * the hadoop team has shown that 100 is about the optimal number
-         * of spill files.  This function modifies the mSpillFiles array
+         * of spill files, the default of
+         * {@link ParallelSorter#getMergeFanIn()}.  This function modifies the mSpillFiles array
          * and assumes the write lock is already held. It will not unlock it.
          *
          * Tuples are reconstituted as tuples, evaluated, and rewritten as
@@ -356,7 +353,7 @@ public class InternalSortedBag extends SortedSpillBag{
          */
         private void preMerge() {
             if (mSpillFiles == null ||
-                    mSpillFiles.size() <= MAX_SPILL_FILES) {
+                    mSpillFiles.size() <= ParallelSorter.getMergeFanIn()) {
                 return;
             }
 
@@ -371,18 +368,18 @@ public class InternalSortedBag extends SortedSpillBag{
             try {
                 LinkedList<File> ll = new LinkedList<File>(mSpillFiles);
                 LinkedList<File> filesToDelete = new LinkedList<File>();
-                while (ll.size() > MAX_SPILL_FILES) {
+                int fanIn = ParallelSorter.getMergeFanIn();
+                while (ll.size() > fanIn) {
                     ListIterator<File> i = ll.listIterator();
                     mStreams =
-                        new ArrayList<DataInputStream>(MAX_SPILL_FILES);
-                    mMergeQ = new PriorityQueue<PQContainer>(MAX_SPILL_FILES);
+                        new ArrayList<DataInputStream>(fanIn);
+                    mMergeQ = new PriorityQueue<PQContainer>(fanIn);
 
-                    for (int j = 0; j < MAX_SPILL_FILES; j++) {
+                    for (int j = 0; j < fanIn; j++) {
                         try {
                             File f = i.next();
                             DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
+                                openSpillFile(f);
                             mStreams.add(in);
                             addToQueue(null, mStreams.size() - 1);
                             i.remove();
@@ -229,7 +229,7 @@ public class NonSpillableDataBag implements DataBag {
             thisClone = factory.newSortedBag(null);
             Iterator<Tuple> i = iterator();
             while (i.hasNext()) thisClone.add(i.next());
-            if (((DataBag) other).isSorted() || ((DataBag) other).isDistinct()) {
+            if (DefaultAbstractBag.isInOrder((DataBag) other)) {
                 otherClone = bOther;
             } else {
                 otherClone = factory.newSortedBag(null);
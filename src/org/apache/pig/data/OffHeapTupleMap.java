@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * A hash map from keys to tuples that keeps its contents outside of the
+ * Java heap, in direct byte buffers. Keys and values are stored serialized
+ * with {@link BinInterSedes}, and looked up by open addressing on a hash
+ * of the serialized key. Compared to a HashMap of objects, an entry only
+ * costs the size of its serialized form plus a few bytes, and creates no
+ * work for the garbage collector.
+ *
+ * Keys are compared on their serialized form. Keys holding maps or bags may
+ * serialize differently while being equal, in which case they end up in
+ * different entries; this is fine for the partial aggregation this map is
+ * used for, but makes it unfit as a general purpose map.
+ *
+ * The map has a fixed capacity. Once an entry does not fit, {@link #put}
+ * returns false and the caller is expected to empty the map.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class OffHeapTupleMap {
+
+    private static final InterSedes SEDES = InterSedesFactory.getInterSedesInstance();
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // each slot holds the hash of the key and the offset of the record + 1,
+    // 0 marking an empty slot
+    private static final int SLOT_SIZE = 8;
+
+    // a record is the length of the key, the space reserved for the value,
+    // the length of the value, then the key and value bytes
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    // one slot for every that many bytes of capacity
+    private static final int BYTES_PER_SLOT = 64;
+
+    private final ByteBuffer slots;
+
+    private final int mask;
+
+    private final int maxEntries;
+
+    private final ByteBuffer data;
+
+    private int dataEnd = 0;
+
+    private int size = 0;
+
+    private boolean full = false;
+
+    private final ExposedByteArrayOutputStream keyBytes = new ExposedByteArrayOutputStream();
+
+    private final DataOutputStream keyOut = new DataOutputStream(keyBytes);
+
+    private final ExposedByteArrayOutputStream valueBytes = new ExposedByteArrayOutputStream();
+
+    private final DataOutputStream valueOut = new DataOutputStream(valueBytes);
+
+    private byte[] readBuffer = new byte[256];
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * @param capacity number of bytes of direct memory to use, for both
+     * the hash slots and the serialized entries
+     */
+    public OffHeapTupleMap(int capacity) {
+        int numSlots = Integer.highestOneBit(Math.max(capacity / BYTES_PER_SLOT, 16));
+        slots = ByteBuffer.allocateDirect(numSlots * SLOT_SIZE);
+        mask = numSlots - 1;
+        maxEntries = (int) (numSlots * LOAD_FACTOR);
+        data = ByteBuffer.allocateDirect(Math.max(capacity - numSlots * SLOT_SIZE, 1024));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if a put failed since the map was last cleared
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return the tuple stored for key, or null
+     * @throws ExecException
+     */
+    public Tuple get(Object key) throws ExecException {
+        int hash = serializeKey(key);
+        int slot = findSlot(hash);
+        if (slot < 0) {
+            return null;
+        }
+        int record = slots.getInt(slot * SLOT_SIZE + 4) - 1;
+        return readValue(record);
+    }
+
+    /**
+     * Store value for key, replacing the previous value if any.
+     * @return false if there is no room left for the entry, in which
+     * case the map is left unchanged
+     * @throws ExecException
+     */
+    public boolean put(Object key, Tuple value) throws ExecException {
+        int hash = serializeKey(key);
+        try {
+            valueBytes.reset();
+            SEDES.writeDatum(valueOut, value, DataType.TUPLE);
+        } catch (IOException e) {
+            throw new ExecException("Unable to serialize " + value, e);
+        }
+        int valueLength = valueBytes.size();
+
+        int slot = findSlot(hash);
+        if (slot >= 0) {
+            int record = slots.getInt(slot * SLOT_SIZE + 4) - 1;
+            int keyLength = data.getInt(record);
+            if (valueLength <= data.getInt(record + 4)) {
+                // the new value fits in the space of the old one
+                data.putInt(record + 8, valueLength);
+                write(record + RECORD_HEADER_SIZE + keyLength, valueBytes.getBuffer(), valueLength);
+                return true;
+            }
+            // move the entry to the end, leaving the old record unused
+            int newRecord = appendRecord(valueLength);
+            if (newRecord < 0) {
+                return false;
+            }
+            slots.putInt(slot * SLOT_SIZE + 4, newRecord + 1);
+            return true;
+        }
+
+        if (size >= maxEntries) {
+            full = true;
+            return false;
+        }
+        int record = appendRecord(valueLength);
+        if (record < 0) {
+            return false;
+        }
+        slot = -slot - 1;
+        slots.putInt(slot * SLOT_SIZE, hash);
+        slots.putInt(slot * SLOT_SIZE + 4, record + 1);
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public void clear() {
+        for (int i = 0; i <= mask; i++) {
+            slots.putLong(i * SLOT_SIZE, 0L);
+        }
+        dataEnd = 0;
+        size = 0;
+        full = false;
+    }
+
+    /**
+     * @return an iterator over the values of the map. The map must not be
+     * modified while it is used.
+     */
+    public Iterator<Tuple> valueIterator() {
+        return new Iterator<Tuple>() {
+            private int slot = nextSlot(0);
+
+            private int nextSlot(int from) {
+                for (int i = from; i <= mask; i++) {
+                    if (slots.getInt(i * SLOT_SIZE + 4) != 0) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot >= 0;
+            }
+
+            @Override
+            public Tuple next() {
+                if (slot < 0) {
+                    throw new NoSuchElementException();
+                }
+                int record = slots.getInt(slot * SLOT_SIZE + 4) - 1;
+                slot = nextSlot(slot + 1);
+                try {
+                    return readValue(record);
+                } catch (ExecException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Serialize key into keyBytes.
+     * @return the hash of the serialized key
+     */
+    private int serializeKey(Object key) throws ExecException {
+        keyBytes.reset();
+        try {
+            SEDES.writeDatum(keyOut, key);
+        } catch (IOException e) {
+            throw new ExecException("Unable to serialize " + key, e);
+        }
+        byte[] buf = keyBytes.getBuffer();
+        int h = 17;
+        for (int i = 0, n = keyBytes.size(); i < n; i++) {
+            h = 31 * h + buf[i];
+        }
+        // spread the bits, as the slot is taken from the low ones
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    /**
+     * Look up the key in keyBytes.
+     * @return the slot of the key, or -(insertion slot + 1) if absent
+     */
+    private int findSlot(int hash) {
+        byte[] key = keyBytes.getBuffer();
+        int keyLength = keyBytes.size();
+        int i = hash & mask;
+        while (true) {
+            int record = slots.getInt(i * SLOT_SIZE + 4) - 1;
+            if (record < 0) {
+                return -i - 1;
+            }
+            if (slots.getInt(i * SLOT_SIZE) == hash && data.getInt(record) == keyLength) {
+                int start = record + RECORD_HEADER_SIZE;
+                int j = 0;
+                while (j < keyLength && data.get(start + j) == key[j]) {
+                    j++;
+                }
+                if (j == keyLength) {
+                    return i;
+                }
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Append a record with the key in keyBytes and value in valueBytes.
+     * @return the offset of the record, or -1 if there is no room left
+     */
+    private int appendRecord(int valueLength) {
+        int keyLength = keyBytes.size();
+        // leave some room for the value to grow in place
+        int valueCapacity = valueLength + (valueLength >> 2);
+        long end = (long) dataEnd + RECORD_HEADER_SIZE + keyLength + valueCapacity;
+        if (end > data.capacity()) {
+            full = true;
+            return -1;
+        }
+        int record = dataEnd;
+        data.putInt(record, keyLength);
+        data.putInt(record + 4, valueCapacity);
+        data.putInt(record + 8, valueLength);
+        write(record + RECORD_HEADER_SIZE, keyBytes.getBuffer(), keyLength);
+        write(record + RECORD_HEADER_SIZE + keyLength, valueBytes.getBuffer(), valueLength);
+        dataEnd = (int) end;
+        return record;
+    }
+
+    private void write(int offset, byte[] src, int length) {
+        data.position(offset);
+        data.put(src, 0, length);
+    }
+
+    private Tuple readValue(int record) throws ExecException {
+        int keyLength = data.getInt(record);
+        int valueLength = data.getInt(record + 8);
+        if (readBuffer.length < valueLength) {
+            readBuffer = new byte[Math.max(valueLength, readBuffer.length * 2)];
+        }
+        data.position(record + RECORD_HEADER_SIZE + keyLength);
+        data.get(readBuffer, 0, valueLength);
+        try {
+            return (Tuple) SEDES.readDatum(new DataInputStream(
+                    new ByteArrayInputStream(readBuffer, 0, valueLength)));
+        } catch (IOException e) {
+            throw new ExecException("Unable to deserialize value", e);
+        }
+    }
+}
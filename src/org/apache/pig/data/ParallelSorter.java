@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * Sorts the tuples that the sorted bags keep in memory, on several threads
+ * when {@link PigConfiguration#PROP_BAG_SORT_THREADS} allows it and the
+ * comparator of the bag is a {@link ThreadSafeComparator}. The tuples are
+ * cut into one run per thread, the runs are sorted at the same time, then
+ * merged two by two, also at the same time. A tuple is only ever compared
+ * by one thread at a time, so tuples that read their fields lazily need not
+ * be thread safe, only the comparator does.
+ * <p>
+ * It also holds the fan-in of the merges of the files that the sorted bags
+ * spilled, {@link PigConfiguration#PROP_BAG_MERGE_FANIN}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ParallelSorter {
+
+    /**
+     * A comparator that can compare tuples from several threads at the
+     * same time.
+     */
+    public interface ThreadSafeComparator extends Comparator<Tuple> {
+    }
+
+    public static final int DEFAULT_MERGE_FANIN = 100;
+
+    // below this number of tuples per thread, a single thread is faster
+    private static final int MIN_RUN_SIZE = 8192;
+
+    private static int threads = 1;
+
+    private static int mergeFanIn = DEFAULT_MERGE_FANIN;
+
+    private static ExecutorService executor;
+
+    private static final Comparator<Tuple> NATURAL_ORDER = new ThreadSafeComparator() {
+        @Override
+        public int compare(Tuple t1, Tuple t2) {
+            return t1.compareTo(t2);
+        }
+    };
+
+    /**
+     * Set the number of threads to sort with and the fan-in of the merges,
+     * from {@link PigConfiguration#PROP_BAG_SORT_THREADS} and
+     * {@link PigConfiguration#PROP_BAG_MERGE_FANIN}.
+     */
+    public static synchronized void configure(Configuration conf) {
+        threads = Math.max(1, conf.getInt(PigConfiguration.PROP_BAG_SORT_THREADS, 1));
+        mergeFanIn = Math.max(2, conf.getInt(PigConfiguration.PROP_BAG_MERGE_FANIN,
+                DEFAULT_MERGE_FANIN));
+    }
+
+    /**
+     * @return the maximum number of spill files merged at once
+     */
+    public static int getMergeFanIn() {
+        return mergeFanIn;
+    }
+
+    /**
+     * Sorts a list of tuples in place.
+     * @param comp the comparator, null for the natural order of the tuples
+     */
+    public static void sort(List<Tuple> list, Comparator<Tuple> comp) {
+        Tuple[] array = list.toArray(new Tuple[list.size()]);
+        sort(array, comp);
+        ListIterator<Tuple> it = list.listIterator();
+        for (Tuple t : array) {
+            it.next();
+            it.set(t);
+        }
+    }
+
+    /**
+     * Sorts an array of tuples in place.
+     * @param comp the comparator, null for the natural order of the tuples
+     */
+    public static void sort(Tuple[] array, Comparator<Tuple> comp) {
+        if (comp == null) {
+            comp = NATURAL_ORDER;
+        }
+        int runs = Math.min(threads, array.length / MIN_RUN_SIZE);
+        if (runs < 2 || !(comp instanceof ThreadSafeComparator)) {
+            Arrays.sort(array, comp);
+            return;
+        }
+        int[] bounds = new int[runs + 1];
+        for (int i = 0; i <= runs; i++) {
+            bounds[i] = (int) ((long) array.length * i / runs);
+        }
+
+        // sort the runs
+        List<Runnable> tasks = new ArrayList<Runnable>(runs);
+        for (int i = 0; i < runs; i++) {
+            final Tuple[] a = array;
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            final Comparator<Tuple> c = comp;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    Arrays.sort(a, from, to, c);
+                }
+            });
+        }
+        runAll(tasks);
+
+        // merge them two by two until there is one left
+        Tuple[] src = array;
+        Tuple[] dst = new Tuple[array.length];
+        while (bounds.length > 2) {
+            int runCount = bounds.length - 1;
+            int merged = (runCount + 1) / 2;
+            int[] newBounds = new int[merged + 1];
+            tasks.clear();
+            for (int i = 0; i < runCount; i += 2) {
+                final Tuple[] s = src;
+                final Tuple[] d = dst;
+                final int from = bounds[i];
+                final int mid = bounds[i + 1];
+                final int to = bounds[Math.min(i + 2, runCount)];
+                final Comparator<Tuple> c = comp;
+                newBounds[i / 2] = from;
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        merge(s, d, from, mid, to, c);
+                    }
+                });
+            }
+            newBounds[merged] = array.length;
+            runAll(tasks);
+            Tuple[] tmp = src;
+            src = dst;
+            dst = tmp;
+            bounds = newBounds;
+        }
+        if (src != array) {
+            System.arraycopy(src, 0, array, 0, array.length);
+        }
+    }
+
+    /**
+     * Merges the sorted ranges [from, mid) and [mid, to) of src into the
+     * same range of dst.
+     */
+    private static void merge(Tuple[] src, Tuple[] dst, int from, int mid, int to,
+            Comparator<Tuple> comp) {
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            // take from the left run on ties to keep the sort stable
+            if (comp.compare(src[j], src[i]) < 0) {
+                dst[k++] = src[j++];
+            } else {
+                dst[k++] = src[i++];
+            }
+        }
+        System.arraycopy(src, i, dst, k, mid - i);
+        System.arraycopy(src, j, dst, k + mid - i, to - j);
+    }
+
+    /**
+     * Runs the tasks, the last one on the calling thread, and waits for all
+     * of them to finish.
+     */
+    private static void runAll(List<Runnable> tasks) {
+        ExecutorService exec = getExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+        for (int i = 0; i < tasks.size() - 1; i++) {
+            futures.add(exec.submit(tasks.get(i)));
+        }
+        tasks.get(tasks.size() - 1).run();
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while sorting", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("Unable to sort", e.getCause());
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "pig-sort");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+}
@@ -268,6 +268,18 @@ public class SchemaTupleBackend {
         initialize(jConf, pigContext, pigContext.getExecType() == ExecType.LOCAL);
     }
 
+    /**
+     * Initializes the backend without any generated code, for the frontend to run parts
+     * of a physical plan over regular Tuples when SchemaTuples are turned off. Unlike
+     * {@link #initialize(Configuration, PigContext)} it leaves the state of the frontend
+     * alone, and it does nothing if the backend has already been initialized.
+     */
+    public static synchronized void initializeWithoutCode() {
+        if (stb == null) {
+            stb = new SchemaTupleBackend(new Configuration(false), true);
+        }
+    }
+
     public static void initialize(Configuration jConf, PigContext pigContext, boolean isLocal) throws IOException {
         if (stb != null) {
             LOG.warn("SchemaTupleBackend has already been initialized");
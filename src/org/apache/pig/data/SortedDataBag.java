@@ -17,16 +17,13 @@
  */
 package org.apache.pig.data;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -62,7 +59,7 @@ public class SortedDataBag extends DefaultAbstractBag{
     transient private Comparator<Tuple> mComp;
     private boolean mReadStarted = false;
 
-    private static class DefaultComparator implements Comparator<Tuple> {
+    private static class DefaultComparator implements ParallelSorter.ThreadSafeComparator {
         @Override
         @SuppressWarnings("unchecked")
         public int compare(Tuple t1, Tuple t2) {
@@ -135,7 +132,7 @@ public class SortedDataBag extends DefaultAbstractBag{
                 // phase, in which case more (unsorted) will be added
                 // later.
                 if (!mReadStarted) {
-                    Collections.sort((ArrayList<Tuple>)mContents, mComp);
+                    ParallelSorter.sort((ArrayList<Tuple>)mContents, mComp);
                 }
                 Iterator<Tuple> i = mContents.iterator();
                 while (i.hasNext()) {
@@ -221,7 +218,7 @@ public class SortedDataBag extends DefaultAbstractBag{
             synchronized (mContents) {
                 if (!mReadStarted) {
                     preMerge();
-                    Collections.sort((ArrayList<Tuple>)mContents, mComp);
+                    ParallelSorter.sort((ArrayList<Tuple>)mContents, mComp);
                     mReadStarted = true;
                 }
             }
@@ -274,9 +271,8 @@ public class SortedDataBag extends DefaultAbstractBag{
                 // because we don't support calls to add() after calls to
                 // iterator(), and spill() won't create empty files.
                 try {
-                    in = new DataInputStream(new BufferedInputStream(
-                        new FileInputStream(mSpillFiles.get(
-                                mSpillFiles.size() - 1))));
+                    in = openSpillFile(mSpillFiles.get(
+                            mSpillFiles.size() - 1));
                     if (mStreams == null) {
                         // We didn't have any files before this spill.
                         mMergeQ = new PriorityQueue<PQContainer>(1);
@@ -342,8 +338,7 @@ public class SortedDataBag extends DefaultAbstractBag{
                 while (i.hasNext()) {
                     try {
                         DataInputStream in = 
-                            new DataInputStream(new BufferedInputStream(
-                                new FileInputStream(i.next())));
+                            openSpillFile(i.next());
                         mStreams.add(in);
                         // Add the first tuple from this file into the
                         // merge queue.
@@ -438,7 +433,8 @@ public class SortedDataBag extends DefaultAbstractBag{
          * Pre-merge if there are too many spill files.  This avoids the issue
          * of having too large a fan out in our merge.  Experimentation by
          * the hadoop team has shown that 100 is about the optimal number
-         * of spill files.  This function modifies the mSpillFiles array
+         * of spill files, the default of
+         * {@link ParallelSorter#getMergeFanIn()}.  This function modifies the mSpillFiles array
          * and assumes the write lock is already held. It will not unlock it.
          *
          * Tuples are reconstituted as tuples, evaluated, and rewritten as
@@ -447,7 +443,7 @@ public class SortedDataBag extends DefaultAbstractBag{
          */
         private void preMerge() {
             if (mSpillFiles == null ||
-                    mSpillFiles.size() <= MAX_SPILL_FILES) {
+                    mSpillFiles.size() <= ParallelSorter.getMergeFanIn()) {
                 return;
             }
 
@@ -462,18 +458,18 @@ public class SortedDataBag extends DefaultAbstractBag{
             try {
                 LinkedList<File> ll = new LinkedList<File>(mSpillFiles);
                 LinkedList<File> filesToDelete = new LinkedList<File>();
-                while (ll.size() > MAX_SPILL_FILES) {
+                int fanIn = ParallelSorter.getMergeFanIn();
+                while (ll.size() > fanIn) {
                     ListIterator<File> i = ll.listIterator();
                     mStreams =
-                        new ArrayList<DataInputStream>(MAX_SPILL_FILES);
-                    mMergeQ = new PriorityQueue<PQContainer>(MAX_SPILL_FILES);
+                        new ArrayList<DataInputStream>(fanIn);
+                    mMergeQ = new PriorityQueue<PQContainer>(fanIn);
 
-                    for (int j = 0; j < MAX_SPILL_FILES; j++) {
+                    for (int j = 0; j < fanIn; j++) {
                         try {
                             File f = i.next();
                             DataInputStream in =
-                                new DataInputStream(new BufferedInputStream(
-                                    new FileInputStream(f)));
+                                openSpillFile(f);
                             mStreams.add(in);
                             addToQueue(null, mStreams.size() - 1);
                             i.remove();
@@ -19,7 +19,6 @@ package org.apache.pig.data;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Comparator;
 
 import org.apache.pig.PigCounters;
@@ -72,13 +71,10 @@ public abstract class SortedSpillBag extends SelfSpillBag {
             // as per documentation of collection.sort(), it copies to an array,
             // sorts and copies back to collection
             // Avoiding that extra copy back to collection (mContents) by 
-            // copying to an array and using Arrays.sort
+            // copying to an array and sorting it
             Tuple[] array = new Tuple[mContents.size()];
             mContents.toArray(array);
-            if(comp == null)
-                Arrays.sort(array);
-            else 
-                Arrays.sort(array,comp);
+            ParallelSorter.sort(array, comp);
 
             //dump the array
             for (Tuple t : array) {
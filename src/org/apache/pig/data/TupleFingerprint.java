@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+import org.joda.time.DateTime;
+
+/**
+ * Computes a 128-bit fingerprint of a datum, in the way of MurmurHash3, such
+ * that data that are equal for {@link DataType#compare(Object, Object)} have
+ * the same fingerprint. The fields of a tuple are hashed in order, while the
+ * tuples of a bag and the entries of a map are combined regardless of their
+ * order, as bags and maps compare equal regardless of it.
+ * <p>
+ * An instance keeps the fingerprint it computed last and is not thread safe.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class TupleFingerprint {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+
+    /**
+     * Computes the fingerprint of a datum.
+     * @return this, for {@link #high()} and {@link #low()}
+     */
+    public TupleFingerprint set(Object o) throws ExecException {
+        h1 = 0;
+        h2 = 0;
+        add(o);
+        h1 ^= 16;
+        h2 ^= 16;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return this;
+    }
+
+    /**
+     * @return the first 64 bits of the last fingerprint
+     */
+    public long high() {
+        return h1;
+    }
+
+    /**
+     * @return the last 64 bits of the last fingerprint
+     */
+    public long low() {
+        return h2;
+    }
+
+    private void add(Object o) throws ExecException {
+        byte type = DataType.findType(o);
+        mix(type);
+        switch (type) {
+        case DataType.NULL:
+            break;
+        case DataType.BOOLEAN:
+            mix(((Boolean) o) ? 1 : 0);
+            break;
+        case DataType.BYTE:
+        case DataType.INTEGER:
+        case DataType.LONG:
+            mix(((Number) o).longValue());
+            break;
+        case DataType.FLOAT:
+            mix(Float.floatToIntBits((Float) o));
+            break;
+        case DataType.DOUBLE:
+            mix(Double.doubleToLongBits((Double) o));
+            break;
+        case DataType.DATETIME:
+            // DateTime compares the instants only
+            mix(((DateTime) o).getMillis());
+            break;
+        case DataType.BYTEARRAY:
+            mix(((DataByteArray) o).get());
+            break;
+        case DataType.CHARARRAY:
+        case DataType.BIGCHARARRAY:
+            mix((String) o);
+            break;
+        case DataType.BIGINTEGER:
+            mix(((BigInteger) o).toByteArray());
+            break;
+        case DataType.BIGDECIMAL: {
+            // BigDecimal compares the values regardless of their scale
+            BigDecimal d = (BigDecimal) o;
+            if (d.signum() == 0) {
+                mix(0);
+            } else {
+                d = d.stripTrailingZeros();
+                mix(d.scale());
+                mix(d.unscaledValue().toByteArray());
+            }
+            break;
+        }
+        case DataType.TUPLE: {
+            Tuple t = (Tuple) o;
+            int size = t.size();
+            mix(size);
+            for (int i = 0; i < size; i++) {
+                add(t.get(i));
+            }
+            break;
+        }
+        case DataType.BAG: {
+            DataBag bag = (DataBag) o;
+            TupleFingerprint f = new TupleFingerprint();
+            long sum1 = 0;
+            long sum2 = 0;
+            for (Tuple t : bag) {
+                f.set(t);
+                sum1 += f.h1;
+                sum2 += f.h2;
+            }
+            mix(bag.size());
+            mix(sum1);
+            mix(sum2);
+            break;
+        }
+        case DataType.MAP: {
+            Map<?, ?> map = (Map<?, ?>) o;
+            TupleFingerprint f = new TupleFingerprint();
+            long sum1 = 0;
+            long sum2 = 0;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                f.h1 = 0;
+                f.h2 = 0;
+                f.add(e.getKey());
+                f.add(e.getValue());
+                sum1 += fmix(f.h1);
+                sum2 += fmix(f.h2);
+            }
+            mix(map.size());
+            mix(sum1);
+            mix(sum2);
+            break;
+        }
+        default:
+            mix(o.hashCode());
+            break;
+        }
+    }
+
+    private void mix(String s) {
+        int len = s.length();
+        mix(len);
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            mix(((long) s.charAt(i) << 48) | ((long) s.charAt(i + 1) << 32)
+                    | ((long) s.charAt(i + 2) << 16) | s.charAt(i + 3));
+        }
+        long k = 0;
+        for (; i < len; i++) {
+            k = (k << 16) | s.charAt(i);
+        }
+        mix(k);
+    }
+
+    private void mix(byte[] b) {
+        int len = b.length;
+        mix(len);
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            mix(((long) b[i] << 56) | ((b[i + 1] & 0xffL) << 48) | ((b[i + 2] & 0xffL) << 40)
+                    | ((b[i + 3] & 0xffL) << 32) | ((b[i + 4] & 0xffL) << 24)
+                    | ((b[i + 5] & 0xffL) << 16) | ((b[i + 6] & 0xffL) << 8) | (b[i + 7] & 0xffL));
+        }
+        long k = 0;
+        for (; i < len; i++) {
+            k = (k << 8) | (b[i] & 0xffL);
+        }
+        mix(k);
+    }
+
+    private void mix(long k) {
+        long k1 = k * C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        long k2 = k * C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
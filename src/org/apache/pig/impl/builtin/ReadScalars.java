@@ -21,12 +21,14 @@ import java.io.IOException;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.io.InterStorage;
 import org.apache.pig.impl.io.ReadToEndLoader;
+import org.apache.pig.impl.util.TaskJVMCache;
 import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.data.DataBag;
 
@@ -34,7 +36,8 @@ import org.apache.pig.data.DataBag;
  * ReadScalars reads a line from a file and returns it as its value. The
  * file is only read once, and the same line is returned over and over again.
  * This is useful for incorporating a result from an agregation into another
- * evaluation.
+ * evaluation. When the JVMs of the tasks are reused, the line is kept in the
+ * {@link TaskJVMCache} for the next tasks of the job.
  */
 public class ReadScalars extends EvalFunc<Object> {
     private String scalarfilename = null;
@@ -76,44 +79,67 @@ public class ReadScalars extends EvalFunc<Object> {
                 return value;
             }
             
-            ReadToEndLoader loader;
-            try {
-                pos = DataType.toInteger(input.get(0));
-                scalarfilename = DataType.toString(input.get(1));
-                
-                // Hadoop security need this property to be set
-                Configuration conf = UDFContext.getUDFContext().getJobConf();
-                if (System.getenv("HADOOP_TOKEN_FILE_LOCATION") != null) {
-                    conf.set("mapreduce.job.credentials.binary", 
-                            System.getenv("HADOOP_TOKEN_FILE_LOCATION"));
-                }
-                loader = new ReadToEndLoader(
-                        new InterStorage(), conf, scalarfilename, 0);
-            } catch (Exception e) {
-                throw new ExecException("Failed to open file '" + scalarfilename
-                        + "'; error = " + e.getMessage());
+            pos = DataType.toInteger(input.get(0));
+            scalarfilename = DataType.toString(input.get(1));
+
+            // Hadoop security need this property to be set
+            final Configuration conf = UDFContext.getUDFContext().getJobConf();
+            if (System.getenv("HADOOP_TOKEN_FILE_LOCATION") != null) {
+                conf.set("mapreduce.job.credentials.binary", 
+                        System.getenv("HADOOP_TOKEN_FILE_LOCATION"));
             }
-            try {
-                Tuple t1 = loader.getNext();
-                if(t1 == null){
-                    log.warn("No scalar field to read, returning null");
-                    return null;
-                }
-                value = t1.get(pos);
-                Tuple t2 = loader.getNext();
-                if(t2 != null){
-                    String msg = "Scalar has more than one row in the output. " 
-                        + "1st : " + t1 + ", 2nd :" + t2;
-                    throw new ExecException(msg);   
-                }
-                
-            } catch (Exception e) {
-                throw new ExecException(e.getMessage());
-            } 
+            Tuple t1;
+            if (TaskJVMCache.isEnabled(conf)) {
+                // the tasks of the job that run in this JVM share the row
+                t1 = TaskJVMCache.get(conf, "scalar", new Path(scalarfilename),
+                        new TaskJVMCache.Loader<Tuple>() {
+                            @Override
+                            public Tuple load() throws IOException {
+                                return readScalar(conf);
+                            }
+                        });
+            } else {
+                t1 = readScalar(conf);
+            }
+            if(t1 == null){
+                log.warn("No scalar field to read, returning null");
+                return null;
+            }
+            value = t1.get(pos);
         }
         return value;
     }
 
+    /**
+     * Reads the only row of the scalar file
+     * @return the row, or null if the file is empty
+     */
+    private Tuple readScalar(Configuration conf) throws ExecException {
+        ReadToEndLoader loader;
+        try {
+            loader = new ReadToEndLoader(
+                    new InterStorage(), conf, scalarfilename, 0);
+        } catch (Exception e) {
+            throw new ExecException("Failed to open file '" + scalarfilename
+                    + "'; error = " + e.getMessage());
+        }
+        try {
+            Tuple t1 = loader.getNext();
+            if (t1 == null) {
+                return null;
+            }
+            Tuple t2 = loader.getNext();
+            if(t2 != null){
+                String msg = "Scalar has more than one row in the output. " 
+                    + "1st : " + t1 + ", 2nd :" + t2;
+                throw new ExecException(msg);   
+            }
+            return t1;
+        } catch (Exception e) {
+            throw new ExecException(e.getMessage());
+        } 
+    }
+
     public void setOutputBuffer(Map<String, DataBag> inputBuffer) {
         this.inputBuffer = inputBuffer;
         value = null;
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.impl.util.Utils;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Compresses and decompresses the blocks of
+ * {@link BlockCompressedOutputStream} and {@link BlockCompressedInputStream}.
+ */
+@InterfaceAudience.Private
+public abstract class BlockCodec {
+
+    private static final Log log = LogFactory.getLog(BlockCodec.class);
+
+    /**
+     * @return the compressed bytes of the length first bytes of in
+     */
+    public abstract byte[] compress(byte[] in, int length) throws IOException;
+
+    /**
+     * Decompresses the length first bytes of in into out
+     * @param outLength the number of bytes they decompress to
+     */
+    public abstract void decompress(byte[] in, int length, byte[] out, int outLength)
+            throws IOException;
+
+    /**
+     * @param codec snappy, deflate, or a name or class name of a hadoop
+     * codec that {@link Utils#getCompressionCodecClass(String, Configuration)}
+     * takes
+     * @return the codec of name codec, null if it is null, empty or none
+     */
+    public static BlockCodec getInstance(String codec, Configuration conf) throws IOException {
+        if (codec == null || codec.isEmpty() || codec.equals("none")) {
+            return null;
+        } else if (codec.equals("snappy")) {
+            try {
+                Snappy.maxCompressedLength(0);
+                return new SnappyBlockCodec();
+            } catch (Throwable e) {
+                // the native library of snappy-java may not load
+                log.warn("Cannot load snappy, using deflate instead", e);
+                return new DeflateBlockCodec();
+            }
+        } else if (codec.equals("deflate")) {
+            return new DeflateBlockCodec();
+        }
+        return new HadoopBlockCodec((CompressionCodec) ReflectionUtils.newInstance(
+                Utils.getCompressionCodecClass(codec, conf), conf));
+    }
+
+    private static class SnappyBlockCodec extends BlockCodec {
+
+        @Override
+        public byte[] compress(byte[] in, int length) throws IOException {
+            byte[] out = new byte[Snappy.maxCompressedLength(length)];
+            int compressed = Snappy.compress(in, 0, length, out, 0);
+            byte[] result = new byte[compressed];
+            System.arraycopy(out, 0, result, 0, compressed);
+            return result;
+        }
+
+        @Override
+        public void decompress(byte[] in, int length, byte[] out, int outLength)
+                throws IOException {
+            if (Snappy.uncompress(in, 0, length, out, 0) != outLength) {
+                throw new IOException("Corrupt snappy block");
+            }
+        }
+    }
+
+    /**
+     * Deflate at its fastest level, which does not need native libraries
+     */
+    private static class DeflateBlockCodec extends BlockCodec {
+
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        private final Inflater inflater = new Inflater();
+
+        private byte[] buffer = new byte[64 * 1024];
+
+        @Override
+        public synchronized byte[] compress(byte[] in, int length) {
+            deflater.reset();
+            deflater.setInput(in, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 16);
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public synchronized void decompress(byte[] in, int length, byte[] out, int outLength)
+                throws IOException {
+            inflater.reset();
+            inflater.setInput(in, 0, length);
+            try {
+                int n = 0;
+                while (n < outLength && !inflater.finished()) {
+                    int inflated = inflater.inflate(out, n, outLength - n);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += inflated;
+                }
+                if (n != outLength) {
+                    throw new IOException("Corrupt deflate block");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt deflate block", e);
+            }
+        }
+    }
+
+    private static class HadoopBlockCodec extends BlockCodec {
+
+        private final CompressionCodec codec;
+
+        HadoopBlockCodec(CompressionCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public byte[] compress(byte[] in, int length) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 16);
+            CompressionOutputStream compressed = codec.createOutputStream(out);
+            compressed.write(in, 0, length);
+            compressed.finish();
+            compressed.close();
+            return out.toByteArray();
+        }
+
+        @Override
+        public void decompress(byte[] in, int length, byte[] out, int outLength)
+                throws IOException {
+            InputStream decompressed = codec.createInputStream(
+                    new ByteArrayInputStream(in, 0, length));
+            try {
+                IOUtils.readFully(decompressed, out, 0, outLength);
+            } finally {
+                decompressed.close();
+            }
+        }
+    }
+}
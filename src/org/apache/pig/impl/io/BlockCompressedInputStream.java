@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.pig.classification.InterfaceAudience;
+
+/**
+ * An input stream that reads data written by
+ * {@link BlockCompressedOutputStream}, checking the checksum of each block.
+ */
+@InterfaceAudience.Private
+public class BlockCompressedInputStream extends InputStream {
+
+    private final DataInputStream in;
+
+    private final BlockCodec codec;
+
+    private byte[] block = new byte[0];
+
+    private byte[] buffer = new byte[0];
+
+    private int count = 0;
+
+    private int pos = 0;
+
+    // the position of the current block in the stream
+    private long blockPos = 0;
+
+    private long nextBlockPos = 0;
+
+    private final CRC32 crc = new CRC32();
+
+    public BlockCompressedInputStream(InputStream in, BlockCodec codec) {
+        this.in = new DataInputStream(in);
+        this.codec = codec;
+    }
+
+    /**
+     * Reads the next block
+     * @return false at the end of the stream
+     */
+    private boolean readBlock() throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return false;
+        }
+        blockPos = nextBlockPos;
+        int length;
+        int blockLength;
+        int checksum;
+        try {
+            length = in.readInt();
+            blockLength = in.readInt();
+            checksum = in.readInt();
+        } catch (EOFException e) {
+            throw new ChecksumException("Truncated block", blockPos);
+        }
+        if (length < 0 || blockLength < 0
+                || (type == BlockCompressedOutputStream.STORED && blockLength != length)
+                || (type != BlockCompressedOutputStream.STORED
+                        && type != BlockCompressedOutputStream.COMPRESSED)) {
+            throw new ChecksumException("Corrupt block header", blockPos);
+        }
+        if (block.length < blockLength) {
+            block = new byte[blockLength];
+        }
+        try {
+            in.readFully(block, 0, blockLength);
+        } catch (EOFException e) {
+            throw new ChecksumException("Truncated block", blockPos);
+        }
+        nextBlockPos += 13 + blockLength;
+        crc.reset();
+        crc.update(block, 0, blockLength);
+        if ((int) crc.getValue() != checksum) {
+            throw new ChecksumException("Checksum error", blockPos);
+        }
+        if (type == BlockCompressedOutputStream.STORED) {
+            byte[] stored = buffer;
+            buffer = block;
+            block = stored;
+        } else {
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            codec.decompress(block, blockLength, buffer, length);
+        }
+        count = length;
+        pos = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (pos == count) {
+            if (!readBlock()) {
+                return -1;
+            }
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (pos == count) {
+            if (!readBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, count - pos);
+        System.arraycopy(buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return count - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import org.apache.pig.classification.InterfaceAudience;
+
+/**
+ * An output stream that writes the data in blocks, each compressed on its
+ * own with a {@link BlockCodec} and followed by a checksum, to be read with
+ * {@link BlockCompressedInputStream}.
+ * <p>
+ * A block is a byte, {@link #COMPRESSED} or {@link #STORED} if the block did
+ * not get smaller compressed, the number of bytes of the data and of the
+ * block, the CRC32 of the bytes of the block and the bytes of the block.
+ */
+@InterfaceAudience.Private
+public class BlockCompressedOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    static final byte STORED = 0;
+
+    static final byte COMPRESSED = 1;
+
+    private final DataOutputStream out;
+
+    private final BlockCodec codec;
+
+    private final byte[] buffer;
+
+    private int count = 0;
+
+    private final CRC32 crc = new CRC32();
+
+    public BlockCompressedOutputStream(OutputStream out, BlockCodec codec) {
+        this(out, codec, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize the number of bytes of data compressed together
+     */
+    public BlockCompressedOutputStream(OutputStream out, BlockCodec codec, int blockSize) {
+        this.out = new DataOutputStream(out);
+        this.codec = codec;
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            writeBlock();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) {
+                writeBlock();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        byte[] compressed = codec.compress(buffer, count);
+        byte[] block = buffer;
+        int blockLength = count;
+        byte type = STORED;
+        if (compressed.length < count) {
+            block = compressed;
+            blockLength = compressed.length;
+            type = COMPRESSED;
+        }
+        crc.reset();
+        crc.update(block, 0, blockLength);
+        out.writeByte(type);
+        out.writeInt(count);
+        out.writeInt(blockLength);
+        out.writeInt((int) crc.getValue());
+        out.write(block, 0, blockLength);
+        count = 0;
+    }
+
+    /**
+     * Writes the data written so far as a block, and flushes it
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+        } finally {
+            out.close();
+        }
+    }
+}
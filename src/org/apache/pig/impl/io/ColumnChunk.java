@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+
+/**
+ * The encoding of the values of one field of the records of a row group of
+ * {@link ColumnarInterStorage}, the records that do not have the field
+ * holding null. A chunk starts with the byte of its encoding, then, unless
+ * all its values are null, a boolean telling if some are, followed by one
+ * bit per value set for the null ones. The values that are not null follow:
+ * <ul>
+ * <li>{@link #BOOLEAN}: one bit per value</li>
+ * <li>{@link #INTEGER_DELTA}, {@link #LONG_DELTA}: the first value, then the
+ * runs of equal differences between consecutive values, as the vint length of
+ * the run and the vlong difference</li>
+ * <li>{@link #DICTIONARY}: the distinct chararrays, then the index of each
+ * value among them, on as few bits as they need</li>
+ * <li>{@link #CHARARRAY}: the vint length and UTF-8 bytes of each value</li>
+ * <li>{@link #GENERIC}: each value serialized with the default InterSedes</li>
+ * </ul>
+ */
+final class ColumnChunk {
+
+    static final byte ALL_NULL = 0;
+    static final byte GENERIC = 1;
+    static final byte BOOLEAN = 2;
+    static final byte INTEGER_DELTA = 3;
+    static final byte LONG_DELTA = 4;
+    static final byte DICTIONARY = 5;
+    static final byte CHARARRAY = 6;
+
+    /** the most distinct chararrays of a dictionary */
+    private static final int MAX_DICTIONARY = 1 << 16;
+
+    private static final String UTF8 = "UTF-8";
+
+    private static final InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    private ColumnChunk() {
+    }
+
+    /**
+     * Writes the values of field column of rows
+     * @param rows the fields of the records of the row group
+     */
+    static void write(DataOutput out, List<Object[]> rows, int column) throws IOException {
+        int count = rows.size();
+        int[] nulls = new int[count];
+        Object[] values = new Object[count];
+        int present = 0;
+        byte encoding = ALL_NULL;
+        for (int i = 0; i < count; i++) {
+            Object[] fields = rows.get(i);
+            Object value = column < fields.length ? fields[column] : null;
+            if (value == null) {
+                nulls[i] = 1;
+                continue;
+            }
+            values[present++] = value;
+            byte valueEncoding = getEncoding(value);
+            if (encoding == ALL_NULL) {
+                encoding = valueEncoding;
+            } else if (encoding != valueEncoding) {
+                encoding = GENERIC;
+            }
+        }
+        Map<String, Integer> dictionary = null;
+        if (encoding == CHARARRAY) {
+            dictionary = getDictionary(values, present);
+            if (dictionary != null) {
+                encoding = DICTIONARY;
+            }
+        }
+        out.writeByte(encoding);
+        if (encoding == ALL_NULL) {
+            return;
+        }
+        out.writeBoolean(present < count);
+        if (present < count) {
+            writePacked(out, nulls, count, 1);
+        }
+        switch (encoding) {
+        case BOOLEAN:
+            int[] bits = new int[present];
+            for (int i = 0; i < present; i++) {
+                bits[i] = (Boolean) values[i] ? 1 : 0;
+            }
+            writePacked(out, bits, present, 1);
+            break;
+        case INTEGER_DELTA:
+        case LONG_DELTA:
+            writeDeltas(out, values, present);
+            break;
+        case DICTIONARY:
+            String[] strings = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                strings[entry.getValue()] = entry.getKey();
+            }
+            WritableUtils.writeVInt(out, strings.length);
+            for (String s : strings) {
+                writeString(out, s);
+            }
+            int[] ids = new int[present];
+            for (int i = 0; i < present; i++) {
+                ids[i] = dictionary.get(values[i]);
+            }
+            int width = 32 - Integer.numberOfLeadingZeros(strings.length - 1);
+            out.writeByte(width);
+            writePacked(out, ids, present, width);
+            break;
+        case CHARARRAY:
+            for (int i = 0; i < present; i++) {
+                writeString(out, (String) values[i]);
+            }
+            break;
+        default:
+            for (int i = 0; i < present; i++) {
+                sedes.writeDatum(out, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads the values of a chunk written by
+     * {@link #write(DataOutput, List, int)}
+     * @param count the number of records of the row group
+     */
+    static Object[] read(DataInput in, int count) throws IOException {
+        Object[] values = new Object[count];
+        byte encoding = in.readByte();
+        if (encoding == ALL_NULL) {
+            return values;
+        }
+        int[] nulls = in.readBoolean() ? readPacked(in, count, 1) : null;
+        int present = count;
+        if (nulls != null) {
+            for (int isNull : nulls) {
+                present -= isNull;
+            }
+        }
+        Object[] presentValues = new Object[present];
+        switch (encoding) {
+        case BOOLEAN:
+            int[] bits = readPacked(in, present, 1);
+            for (int i = 0; i < present; i++) {
+                presentValues[i] = Boolean.valueOf(bits[i] == 1);
+            }
+            break;
+        case INTEGER_DELTA:
+        case LONG_DELTA:
+            readDeltas(in, presentValues, present, encoding == INTEGER_DELTA);
+            break;
+        case DICTIONARY:
+            String[] strings = new String[WritableUtils.readVInt(in)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+            int[] ids = readPacked(in, present, in.readByte());
+            for (int i = 0; i < present; i++) {
+                presentValues[i] = strings[ids[i]];
+            }
+            break;
+        case CHARARRAY:
+            for (int i = 0; i < present; i++) {
+                presentValues[i] = readString(in);
+            }
+            break;
+        case GENERIC:
+            for (int i = 0; i < present; i++) {
+                presentValues[i] = sedes.readDatum(in);
+            }
+            break;
+        default:
+            throw new IOException("Unknown column encoding " + encoding);
+        }
+        if (nulls == null) {
+            return presentValues;
+        }
+        for (int i = 0, j = 0; i < count; i++) {
+            if (nulls[i] == 0) {
+                values[i] = presentValues[j++];
+            }
+        }
+        return values;
+    }
+
+    private static byte getEncoding(Object value) {
+        if (value instanceof String) {
+            return CHARARRAY;
+        } else if (value instanceof Long) {
+            return LONG_DELTA;
+        } else if (value instanceof Integer) {
+            return INTEGER_DELTA;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * @return the index of each distinct value, null if they are not repeated
+     * enough for a dictionary to be smaller
+     */
+    private static Map<String, Integer> getDictionary(Object[] values, int count) {
+        Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        int max = Math.min(count / 2, MAX_DICTIONARY);
+        for (int i = 0; i < count; i++) {
+            if (!dictionary.containsKey(values[i])) {
+                if (dictionary.size() == max) {
+                    return null;
+                }
+                dictionary.put((String) values[i], dictionary.size());
+            }
+        }
+        return dictionary;
+    }
+
+    private static void writeDeltas(DataOutput out, Object[] values, int count)
+            throws IOException {
+        long previous = ((Number) values[0]).longValue();
+        WritableUtils.writeVLong(out, previous);
+        long runDelta = 0;
+        int run = 0;
+        for (int i = 1; i < count; i++) {
+            long value = ((Number) values[i]).longValue();
+            long delta = value - previous;
+            previous = value;
+            if (run > 0 && delta == runDelta) {
+                run++;
+                continue;
+            }
+            if (run > 0) {
+                WritableUtils.writeVInt(out, run);
+                WritableUtils.writeVLong(out, runDelta);
+            }
+            runDelta = delta;
+            run = 1;
+        }
+        if (run > 0) {
+            WritableUtils.writeVInt(out, run);
+            WritableUtils.writeVLong(out, runDelta);
+        }
+    }
+
+    private static void readDeltas(DataInput in, Object[] values, int count,
+            boolean integers) throws IOException {
+        long value = WritableUtils.readVLong(in);
+        int i = 0;
+        values[i++] = box(value, integers);
+        while (i < count) {
+            int run = WritableUtils.readVInt(in);
+            long delta = WritableUtils.readVLong(in);
+            for (int j = 0; j < run; j++) {
+                value += delta;
+                values[i++] = box(value, integers);
+            }
+        }
+    }
+
+    private static Object box(long value, boolean integer) {
+        if (integer) {
+            return Integer.valueOf((int) value);
+        }
+        return Long.valueOf(value);
+    }
+
+    /**
+     * Writes the width lowest bits of each of the count first values
+     */
+    private static void writePacked(DataOutput out, int[] values, int count, int width)
+            throws IOException {
+        long buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            buffer |= ((long) values[i]) << bits;
+            bits += width;
+            while (bits >= 8) {
+                out.writeByte((int) buffer);
+                buffer >>>= 8;
+                bits -= 8;
+            }
+        }
+        if (bits > 0) {
+            out.writeByte((int) buffer);
+        }
+    }
+
+    private static int[] readPacked(DataInput in, int count, int width) throws IOException {
+        int[] values = new int[count];
+        long mask = (1L << width) - 1;
+        long buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            while (bits < width) {
+                buffer |= ((long) in.readUnsignedByte()) << bits;
+                bits += 8;
+            }
+            values[i] = (int) (buffer & mask);
+            buffer >>>= width;
+            bits -= width;
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        WritableUtils.writeVInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[WritableUtils.readVInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * A record reader used to read data written using
+ * {@link ColumnarInterRecordWriter}. The row groups whose sync marker starts
+ * in the split are read, and of them only the columns that are required.
+ */
+public class ColumnarInterRecordReader extends RecordReader<Text, Tuple> {
+
+    private static final TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    private boolean[] requiredColumns;
+    private boolean pruned;
+    private int required = 0;
+
+    private long start;
+    private long end;
+    private long length;
+    private FSDataInputStream in = null;
+    private CompressionCodec codec = null;
+    private Decompressor decompressor = null;
+    private byte[] sync = new byte[ColumnarInterRecordWriter.SYNC_SIZE];
+    // whether the sync marker of the next row group was read looking for it
+    private boolean syncRead = false;
+
+    // the current row group
+    private int rows = 0;
+    private int row = 0;
+    private int[] sizes = null;
+    private Object[][] columns = null;
+
+    private Tuple value = null;
+
+    public ColumnarInterRecordReader() {
+        this(null, false);
+    }
+
+    /**
+     * @param requiredColumns whether each field is read, the others and the
+     * fields past its end being null, all of them are if it is null
+     * @param pruned whether the tuples only hold the fields that are read
+     */
+    public ColumnarInterRecordReader(boolean[] requiredColumns, boolean pruned) {
+        this.requiredColumns = requiredColumns;
+        this.pruned = pruned && requiredColumns != null;
+        if (requiredColumns != null) {
+            for (boolean r : requiredColumns) {
+                if (r) {
+                    required++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context)
+            throws IOException {
+        FileSplit split = (FileSplit) genericSplit;
+        Configuration conf = context.getConfiguration();
+        Path file = split.getPath();
+        FileSystem fs = file.getFileSystem(conf);
+        length = fs.getFileStatus(file).getLen();
+        start = split.getStart();
+        end = start + split.getLength();
+        in = fs.open(file);
+
+        byte[] magic = new byte[ColumnarInterRecordWriter.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarInterRecordWriter.MAGIC)) {
+            throw new IOException(file + " is not a columnar intermediate file");
+        }
+        String codecClass = in.readUTF();
+        if (!codecClass.isEmpty()) {
+            try {
+                codec = (CompressionCodec) ReflectionUtils.newInstance(
+                        conf.getClassByName(codecClass), conf);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot find the codec of " + file, e);
+            }
+            decompressor = CodecPool.getDecompressor(codec);
+        }
+        in.readFully(sync);
+        if (start > in.getPos()) {
+            in.seek(start);
+            syncRead = seekSync();
+        }
+    }
+
+    /**
+     * Moves past the next sync marker
+     * @return false if there is none
+     */
+    private boolean seekSync() throws IOException {
+        byte[] window = new byte[sync.length];
+        int read = 0;
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                return false;
+            }
+            window[read++ % window.length] = (byte) b;
+            if (read >= window.length) {
+                int i = 0;
+                while (i < sync.length && window[(read + i) % window.length] == sync[i]) {
+                    i++;
+                }
+                if (i == sync.length) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the next row group of the split
+     * @return false if there is none
+     */
+    private boolean readRowGroup() throws IOException {
+        long position = in.getPos() - (syncRead ? sync.length : 0);
+        if (position >= end || position >= length) {
+            return false;
+        }
+        if (!syncRead) {
+            byte[] marker = new byte[sync.length];
+            in.readFully(marker);
+            if (!Arrays.equals(marker, sync)) {
+                throw new IOException("Missing sync marker at " + position);
+            }
+        }
+        syncRead = false;
+
+        rows = in.readInt();
+        int count = in.readInt();
+        sizes = new int[rows];
+        if (in.readBoolean()) {
+            int i = 0;
+            while (i < rows) {
+                int run = WritableUtils.readVInt(in);
+                int size = WritableUtils.readVInt(in);
+                Arrays.fill(sizes, i, i + run, size);
+                i += run;
+            }
+        } else {
+            Arrays.fill(sizes, count);
+        }
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = in.readInt();
+        }
+        columns = new Object[count][];
+        long skip = 0;
+        for (int i = 0; i < count; i++) {
+            if (requiredColumns != null
+                    && (i >= requiredColumns.length || !requiredColumns[i])) {
+                skip += lengths[i];
+                continue;
+            }
+            if (skip > 0) {
+                in.seek(in.getPos() + skip);
+                skip = 0;
+            }
+            byte[] chunk = new byte[lengths[i]];
+            in.readFully(chunk);
+            InputStream chunkIn = new ByteArrayInputStream(chunk);
+            if (codec != null) {
+                if (decompressor != null) {
+                    decompressor.reset();
+                }
+                chunkIn = codec.createInputStream(chunkIn, decompressor);
+            }
+            columns[i] = ColumnChunk.read(new DataInputStream(chunkIn), rows);
+        }
+        if (skip > 0) {
+            in.seek(in.getPos() + skip);
+        }
+        row = 0;
+        return true;
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+        while (row >= rows) {
+            if (in == null || !readRowGroup()) {
+                return false;
+            }
+        }
+        int size = sizes[row];
+        if (pruned) {
+            value = mTupleFactory.newTuple(required);
+            for (int i = 0, j = 0; i < requiredColumns.length; i++) {
+                if (requiredColumns[i]) {
+                    if (i < size && columns.length > i && columns[i] != null) {
+                        value.set(j, columns[i][row]);
+                    }
+                    j++;
+                }
+            }
+        } else {
+            value = mTupleFactory.newTuple(size);
+            for (int i = 0; i < size; i++) {
+                if (columns[i] != null) {
+                    value.set(i, columns[i][row]);
+                }
+            }
+        }
+        row++;
+        return true;
+    }
+
+    @Override
+    public Text getCurrentKey() {
+        // the key is always null since we don't really have a key for each
+        // input record
+        return null;
+    }
+
+    @Override
+    public Tuple getCurrentValue() {
+        return value;
+    }
+
+    /**
+     * Get the progress within the split
+     */
+    @Override
+    public float getProgress() throws IOException {
+        if (start == end || in == null) {
+            return 0.0f;
+        }
+        return Math.min(1.0f, (in.getPos() - start) / (float) (end - start));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (decompressor != null) {
+            CodecPool.returnDecompressor(decompressor);
+            decompressor = null;
+        }
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.pig.data.Tuple;
+
+/**
+ * A record writer used to write data column by column, to be read with
+ * {@link ColumnarInterRecordReader}.
+ * <p>
+ * The file starts with {@link #MAGIC}, the name of the class of the codec
+ * the columns are compressed with, empty if they are not, and the 16 bytes of
+ * the sync marker of the file. The records follow in row groups, each made
+ * of the sync marker, the number of records and of columns, the number of
+ * fields of the records, the length of each column and the columns, see
+ * {@link ColumnChunk}. The number of fields is a boolean, false if all the
+ * records have as many fields as the row group has columns, followed
+ * otherwise by the runs of records having the same number of fields, as the
+ * vint length of the run and vint number of fields.
+ */
+public class ColumnarInterRecordWriter extends
+        RecordWriter<org.apache.hadoop.io.WritableComparable, Tuple> {
+
+    public static final byte[] MAGIC = { 'P', 'I', 'C', 1 };
+
+    public static final int SYNC_SIZE = 16;
+
+    private FSDataOutputStream out;
+
+    private CompressionCodec codec;
+
+    private Compressor compressor = null;
+
+    private byte[] sync;
+
+    private int maxRows;
+
+    private long maxBytes;
+
+    /**
+     * the fields of the records of the current row group
+     */
+    private List<Object[]> rows = new ArrayList<Object[]>();
+
+    private long bytes = 0;
+
+    private ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+
+    /**
+     * @param codec the codec to compress the columns with, null if they are
+     * not
+     * @param maxRows the most records of a row group
+     * @param maxBytes the most bytes that the records of a row group take in
+     * memory
+     */
+    public ColumnarInterRecordWriter(FSDataOutputStream out, CompressionCodec codec,
+            int maxRows, long maxBytes) throws IOException {
+        this.out = out;
+        this.codec = codec;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        if (codec != null) {
+            compressor = CodecPool.getCompressor(codec);
+        }
+        UUID uuid = UUID.randomUUID();
+        sync = ByteBuffer.allocate(SYNC_SIZE).putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits()).array();
+        out.write(MAGIC);
+        out.writeUTF(codec == null ? "" : codec.getClass().getName());
+        out.write(sync);
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.hadoop.mapreduce.RecordWriter#write(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void write(WritableComparable wc, Tuple t) throws IOException,
+            InterruptedException {
+        // the fields are copied as the tuple may be reused
+        Object[] fields = new Object[t.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = t.get(i);
+        }
+        rows.add(fields);
+        bytes += t.getMemorySize();
+        if (rows.size() >= maxRows || bytes >= maxBytes) {
+            writeRowGroup();
+        }
+    }
+
+    private void writeRowGroup() throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int columns = 0;
+        for (Object[] fields : rows) {
+            columns = Math.max(columns, fields.length);
+        }
+        byte[][] chunks = new byte[columns][];
+        for (int i = 0; i < columns; i++) {
+            chunk.reset();
+            OutputStream chunkOut = chunk;
+            if (codec != null) {
+                if (compressor != null) {
+                    compressor.reset();
+                }
+                chunkOut = codec.createOutputStream(chunk, compressor);
+            }
+            DataOutputStream chunkData = new DataOutputStream(chunkOut);
+            ColumnChunk.write(chunkData, rows, i);
+            chunkData.flush();
+            if (chunkOut instanceof CompressionOutputStream) {
+                ((CompressionOutputStream) chunkOut).finish();
+            }
+            chunks[i] = chunk.toByteArray();
+        }
+
+        out.write(sync);
+        out.writeInt(rows.size());
+        out.writeInt(columns);
+        boolean sameSize = true;
+        for (Object[] fields : rows) {
+            sameSize &= fields.length == columns;
+        }
+        out.writeBoolean(!sameSize);
+        if (!sameSize) {
+            int run = 0;
+            int size = -1;
+            for (Object[] fields : rows) {
+                if (fields.length != size && run > 0) {
+                    WritableUtils.writeVInt(out, run);
+                    WritableUtils.writeVInt(out, size);
+                    run = 0;
+                }
+                size = fields.length;
+                run++;
+            }
+            WritableUtils.writeVInt(out, run);
+            WritableUtils.writeVInt(out, size);
+        }
+        for (byte[] c : chunks) {
+            out.writeInt(c.length);
+        }
+        for (byte[] c : chunks) {
+            out.write(c);
+        }
+        rows.clear();
+        bytes = 0;
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.hadoop.mapreduce.RecordWriter#close(org.apache.hadoop.mapreduce.TaskAttemptContext)
+     */
+    @Override
+    public void close(TaskAttemptContext arg0) throws IOException,
+            InterruptedException {
+        try {
+            writeRowGroup();
+        } finally {
+            if (compressor != null) {
+                CodecPool.returnCompressor(compressor);
+                compressor = null;
+            }
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.Expression;
+import org.apache.pig.FileInputLoadFunc;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.LoadPushDown;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.StoreFunc;
+import org.apache.pig.StoreFuncInterface;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigFileInputFormat;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.ObjectSerializer;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+
+/**
+ * LOAD FUNCTION FOR PIG INTERNAL USE ONLY!
+ * This load function is used for storing intermediate data between MR jobs of
+ * a pig query when {@link PigConfiguration#PROP_TMPFILE_COLUMNAR} is turned
+ * on. The data is stored column by column, see
+ * {@link ColumnarInterRecordWriter}, so that only the fields that are needed
+ * are read.
+ * The serialization format of this load function can change in newer
+ *  versions of pig, so this should NOT be used to store any persistent data.
+ * <p>
+ * The fields given with {@link #pushProjection(RequiredFieldList)} are the
+ * only ones of the loaded tuples, those given with
+ * {@link #setRequiredColumns(String, boolean[])} keep their position, the
+ * other fields being null.
+ */
+@InterfaceAudience.Private
+public class ColumnarInterStorage extends FileInputLoadFunc
+implements StoreFuncInterface, LoadMetadata, LoadPushDown {
+
+    private static final String REQUIRED_COLUMNS = "requiredColumns";
+
+    private static final String PRUNED_COLUMNS = "prunedColumns";
+
+    private static final int DEFAULT_ROWS = 10000;
+
+    private static final long DEFAULT_BYTES = 16 * 1024 * 1024;
+
+    private ColumnarInterRecordReader recReader = null;
+    private ColumnarInterRecordWriter recWriter = null;
+    private String signature = null;
+
+    @Override
+    public Tuple getNext() throws IOException {
+        if (recReader.nextKeyValue()) {
+            return recReader.getCurrentValue();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void putNext(Tuple t) throws IOException {
+        try {
+            recWriter.write(null, t);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static class ColumnarInterInputFormat extends PigFileInputFormat<Text, Tuple> {
+
+        private final boolean[] requiredColumns;
+
+        private final boolean pruned;
+
+        public ColumnarInterInputFormat() {
+            this(null, false);
+        }
+
+        /**
+         * @see ColumnarInterRecordReader#ColumnarInterRecordReader(boolean[], boolean)
+         */
+        public ColumnarInterInputFormat(boolean[] requiredColumns, boolean pruned) {
+            this.requiredColumns = requiredColumns;
+            this.pruned = pruned;
+        }
+
+        /* (non-Javadoc)
+         * @see org.apache.hadoop.mapreduce.InputFormat#createRecordReader(org.apache.hadoop.mapreduce.InputSplit, org.apache.hadoop.mapreduce.TaskAttemptContext)
+         */
+        @Override
+        public RecordReader<Text, Tuple> createRecordReader(InputSplit split,
+                TaskAttemptContext context) throws IOException,
+                InterruptedException {
+            return new ColumnarInterRecordReader(requiredColumns, pruned);
+        }
+    }
+
+    @Override
+    public InputFormat getInputFormat() throws IOException {
+        if (signature != null) {
+            Properties p = getProperties(signature);
+            String pruned = p.getProperty(PRUNED_COLUMNS);
+            if (pruned != null) {
+                return new ColumnarInterInputFormat(
+                        (boolean[]) ObjectSerializer.deserialize(pruned), true);
+            }
+            String required = p.getProperty(REQUIRED_COLUMNS);
+            if (required != null) {
+                return new ColumnarInterInputFormat(
+                        (boolean[]) ObjectSerializer.deserialize(required), false);
+            }
+        }
+        return new ColumnarInterInputFormat();
+    }
+
+    @Override
+    public void setUDFContextSignature(String signature) {
+        this.signature = signature;
+    }
+
+    private static Properties getProperties(String signature) {
+        return UDFContext.getUDFContext().getUDFProperties(ColumnarInterStorage.class,
+                new String[] { signature });
+    }
+
+    /**
+     * Sets the fields that the loader of signature reads, the others being
+     * null in the tuples it loads.
+     */
+    public static void setRequiredColumns(String signature, boolean[] requiredColumns)
+            throws IOException {
+        getProperties(signature).setProperty(REQUIRED_COLUMNS,
+                ObjectSerializer.serialize(requiredColumns));
+    }
+
+    @Override
+    public List<OperatorSet> getFeatures() {
+        return Arrays.asList(LoadPushDown.OperatorSet.PROJECTION);
+    }
+
+    @Override
+    public RequiredFieldResponse pushProjection(RequiredFieldList requiredFieldList)
+            throws FrontendException {
+        if (requiredFieldList == null || requiredFieldList.getFields() == null) {
+            return null;
+        }
+        int lastColumn = -1;
+        for (RequiredField rf : requiredFieldList.getFields()) {
+            lastColumn = Math.max(lastColumn, rf.getIndex());
+        }
+        boolean[] requiredColumns = new boolean[lastColumn + 1];
+        for (RequiredField rf : requiredFieldList.getFields()) {
+            if (rf.getIndex() != -1) {
+                requiredColumns[rf.getIndex()] = true;
+            }
+        }
+        try {
+            getProperties(signature).setProperty(PRUNED_COLUMNS,
+                    ObjectSerializer.serialize(requiredColumns));
+        } catch (IOException e) {
+            throw new FrontendException("Cannot serialize the required columns", e);
+        }
+        return new RequiredFieldResponse(true);
+    }
+
+    @Override
+    public void prepareToRead(RecordReader reader, PigSplit split) {
+        recReader = (ColumnarInterRecordReader) reader;
+    }
+
+    @Override
+    public void setLocation(String location, Job job) throws IOException {
+        FileInputFormat.setInputPaths(job, location);
+    }
+
+    public static class ColumnarInterOutputFormat extends
+    FileOutputFormat<org.apache.hadoop.io.WritableComparable, Tuple> {
+
+        /* (non-Javadoc)
+         * @see org.apache.hadoop.mapreduce.lib.output.FileOutputFormat#getRecordWriter(org.apache.hadoop.mapreduce.TaskAttemptContext)
+         */
+        @Override
+        public RecordWriter<WritableComparable, Tuple> getRecordWriter(
+                TaskAttemptContext job) throws IOException, InterruptedException {
+            Configuration conf = job.getConfiguration();
+            Path file = getDefaultWorkFile(job, "");
+            FileSystem fs = file.getFileSystem(conf);
+            FSDataOutputStream fileOut = fs.create(file, false);
+            return new ColumnarInterRecordWriter(fileOut, getCodec(conf),
+                    conf.getInt(PigConfiguration.PROP_TMPFILE_COLUMNAR_ROWS, DEFAULT_ROWS),
+                    conf.getLong(PigConfiguration.PROP_TMPFILE_COLUMNAR_BYTES, DEFAULT_BYTES));
+        }
+
+        /**
+         * @return the codec of the intermediate files, null if they are not
+         * compressed
+         */
+        private static CompressionCodec getCodec(Configuration conf) throws IOException {
+            if (!conf.getBoolean("pig.tmpfilecompression", false)) {
+                return null;
+            }
+            String codec = conf.get("pig.tmpfilecompression.codec", "");
+            if (codec.isEmpty()) {
+                throw new IOException("Missing temporary file compression codec");
+            }
+            Class<?> codecClass = Utils.getCompressionCodecClass(codec, conf);
+            return (CompressionCodec) ReflectionUtils.newInstance(codecClass, conf);
+        }
+    }
+
+    @Override
+    public OutputFormat getOutputFormat() {
+        return new ColumnarInterOutputFormat();
+    }
+
+    @Override
+    public void prepareToWrite(RecordWriter writer) {
+        this.recWriter = (ColumnarInterRecordWriter) writer;
+    }
+
+    @Override
+    public void setStoreLocation(String location, Job job) throws IOException {
+        FileOutputFormat.setOutputPath(job, new Path(location));
+    }
+
+    @Override
+    public void checkSchema(ResourceSchema s) throws IOException {
+
+    }
+
+    @Override
+    public String relToAbsPathForStoreLocation(String location, Path curDir)
+            throws IOException {
+        return LoadFunc.getAbsolutePath(location, curDir);
+    }
+
+    @Override
+    public String[] getPartitionKeys(String location, Job job)
+            throws IOException {
+        return null;
+    }
+
+    @Override
+    public ResourceSchema getSchema(String location, Job job)
+            throws IOException {
+        return Utils.getSchema(this, location, true, job);
+    }
+
+    @Override
+    public ResourceStatistics getStatistics(String location, Job job)
+            throws IOException {
+        return null;
+    }
+
+    @Override
+    public void setPartitionFilter(Expression plan) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setStoreFuncUDFContextSignature(String signature) {
+    }
+
+    @Override
+    public void cleanupOnFailure(String location, Job job) throws IOException {
+        StoreFunc.cleanupOnFailureImpl(location, job);
+    }
+
+    @Override
+    public void cleanupOnSuccess(String location, Job job) throws IOException {
+        // DEFAULT: do nothing
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.Expression.UnaryExpression;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * Statistics of the blocks of a file written by {@link InterRecordWriter}:
+ * the number of records of each block, and the minimum, maximum and number
+ * of nulls of each field of the records. They are kept in a hidden file next
+ * to the data and let {@link InterStorage} skip the blocks and splits that
+ * cannot match a filter.
+ * <p>
+ * A block starts at the first byte of a record and ends at the first byte
+ * of the record of the next block, the blocks of a file follow each other.
+ * A filter is an {@link Expression} whose columns are named by the position
+ * of the field they stand for.
+ */
+@InterfaceAudience.Private
+public class InterBlockStatistics {
+
+    private static final InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    // number of nulls of a field whose values are not comparable
+    private static final long UNKNOWN = -1;
+
+    // the longer chararrays and bytearrays are not kept
+    private static final int MAX_VALUE_LENGTH = 256;
+
+    private static class Block {
+        private final long start;
+        private long end;
+        private long records = 0;
+        private final List<Object> mins = new ArrayList<Object>();
+        private final List<Object> maxs = new ArrayList<Object>();
+        private final List<Long> nulls = new ArrayList<Long>();
+
+        private Block(long start) {
+            this.start = start;
+        }
+    }
+
+    private final List<Block> blocks = new ArrayList<Block>();
+
+    // the block records are being added to
+    private Block current = null;
+
+    /**
+     * @return the file the statistics of file are kept in
+     */
+    public static Path getStatisticsPath(Path file) {
+        // hidden from the input formats reading the directory
+        return new Path(file.getParent(), "_" + file.getName() + ".stats");
+    }
+
+    /**
+     * @return the statistics of file, null if it has none
+     */
+    public static InterBlockStatistics read(Path file, Configuration conf) throws IOException {
+        Path path = getStatisticsPath(file);
+        FileSystem fs = path.getFileSystem(conf);
+        DataInputStream in;
+        try {
+            in = fs.open(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            InterBlockStatistics stats = new InterBlockStatistics();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Tuple t = (Tuple) sedes.readDatum(in);
+                Block block = new Block((Long) t.get(0));
+                block.end = (Long) t.get(1);
+                block.records = (Long) t.get(2);
+                for (int j = 3; j + 2 < t.size(); j += 3) {
+                    block.mins.add(t.get(j));
+                    block.maxs.add(t.get(j + 1));
+                    block.nulls.add((Long) t.get(j + 2));
+                }
+                stats.blocks.add(block);
+            }
+            return stats;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the statistics, see {@link #read(Path, Configuration)}
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(blocks.size());
+        for (Block block : blocks) {
+            Tuple t = tf.newTuple(3 + 3 * block.nulls.size());
+            t.set(0, block.start);
+            t.set(1, block.end);
+            t.set(2, block.records);
+            for (int j = 0; j < block.nulls.size(); j++) {
+                t.set(3 + 3 * j, block.mins.get(j));
+                t.set(4 + 3 * j, block.maxs.get(j));
+                t.set(5 + 3 * j, block.nulls.get(j));
+            }
+            sedes.writeDatum(out, t);
+        }
+    }
+
+    /**
+     * Adds a record to the current block, starting a block at position if
+     * there is none
+     */
+    public void add(Tuple t, long position) throws IOException {
+        if (current == null) {
+            current = new Block(position);
+        }
+        Block block = current;
+        // the fields missing from the records before are null
+        for (int i = block.nulls.size(); i < t.size(); i++) {
+            block.mins.add(null);
+            block.maxs.add(null);
+            block.nulls.add(block.records);
+        }
+        for (int i = 0; i < block.nulls.size(); i++) {
+            long nulls = block.nulls.get(i);
+            if (nulls == UNKNOWN) {
+                continue;
+            }
+            Object value = i < t.size() ? t.get(i) : null;
+            if (value == null) {
+                block.nulls.set(i, nulls + 1);
+                continue;
+            }
+            Object min = block.mins.get(i);
+            if (!isComparable(value) || (min != null
+                    && DataType.findType(value) != DataType.findType(min))) {
+                block.mins.set(i, null);
+                block.maxs.set(i, null);
+                block.nulls.set(i, UNKNOWN);
+            } else if (min == null) {
+                block.mins.set(i, value);
+                block.maxs.set(i, value);
+            } else if (DataType.compare(value, min) < 0) {
+                block.mins.set(i, value);
+            } else if (DataType.compare(value, block.maxs.get(i)) > 0) {
+                block.maxs.set(i, value);
+            }
+        }
+        block.records++;
+    }
+
+    /**
+     * Ends the current block at position, the first byte after its last
+     * record
+     */
+    public void endBlock(long position) {
+        if (current != null) {
+            current.end = position;
+            blocks.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * @return the start of the current block, -1 if there is none
+     */
+    public long getBlockStart() {
+        return current == null ? -1 : current.start;
+    }
+
+    /**
+     * @return the number of blocks
+     */
+    public int size() {
+        return blocks.size();
+    }
+
+    /**
+     * @return the first byte of a block
+     */
+    public long getStart(int block) {
+        return blocks.get(block).start;
+    }
+
+    /**
+     * @return the first byte after the last record of a block
+     */
+    public long getEnd(int block) {
+        return blocks.get(block).end;
+    }
+
+    /**
+     * @return whether none of the records between start and end can match
+     * filter, that is whether the blocks cover them and cannot match filter
+     */
+    public boolean canSkip(long start, long end, Expression filter) {
+        long covered = start;
+        for (int i = 0; i < blocks.size() && covered < end; i++) {
+            Block block = blocks.get(i);
+            if (block.end <= covered) {
+                continue;
+            }
+            if (block.start > covered || mightMatch(i, filter)) {
+                return false;
+            }
+            covered = block.end;
+        }
+        return covered >= end;
+    }
+
+    /**
+     * @return whether some record of a block may match filter
+     */
+    public boolean mightMatch(int block, Expression filter) {
+        return mightMatch(blocks.get(block), filter);
+    }
+
+    private static boolean mightMatch(Block block, Expression filter) {
+        switch (filter.getOpType()) {
+        case OP_AND:
+            return mightMatch(block, ((BinaryExpression) filter).getLhs())
+                    && mightMatch(block, ((BinaryExpression) filter).getRhs());
+        case OP_OR:
+            return mightMatch(block, ((BinaryExpression) filter).getLhs())
+                    || mightMatch(block, ((BinaryExpression) filter).getRhs());
+        case OP_NULL: {
+            Expression expr = ((UnaryExpression) filter).getExpression();
+            long nulls = getNulls(block, expr);
+            return nulls == UNKNOWN || nulls > 0;
+        }
+        case OP_NOT: {
+            // only is not null is known
+            Expression expr = ((UnaryExpression) filter).getExpression();
+            if (expr.getOpType() != OpType.OP_NULL) {
+                return true;
+            }
+            long nulls = getNulls(block, ((UnaryExpression) expr).getExpression());
+            return nulls == UNKNOWN || nulls < block.records;
+        }
+        case OP_EQ:
+        case OP_NE:
+        case OP_GT:
+        case OP_GE:
+        case OP_LT:
+        case OP_LE:
+            return mightMatchComparison(block, (BinaryExpression) filter);
+        default:
+            return true;
+        }
+    }
+
+    private static boolean mightMatchComparison(Block block, BinaryExpression filter) {
+        Expression lhs = filter.getLhs();
+        Expression rhs = filter.getRhs();
+        OpType op = filter.getOpType();
+        if (lhs.getOpType() == OpType.TERM_CONST && rhs.getOpType() == OpType.TERM_COL) {
+            Expression e = lhs;
+            lhs = rhs;
+            rhs = e;
+            op = flip(op);
+        }
+        if (lhs.getOpType() != OpType.TERM_COL || rhs.getOpType() != OpType.TERM_CONST) {
+            return true;
+        }
+        Object value = ((Const) rhs).getValue();
+        long nulls = getNulls(block, lhs);
+        if (value == null || nulls == UNKNOWN) {
+            return true;
+        }
+        if (nulls == block.records) {
+            // a comparison with null is never true
+            return false;
+        }
+        int column = getColumn(lhs);
+        Object min = block.mins.get(column);
+        Object max = block.maxs.get(column);
+        if (DataType.findType(min) != DataType.findType(value)) {
+            return true;
+        }
+        switch (op) {
+        case OP_EQ:
+            return DataType.compare(min, value) <= 0 && DataType.compare(max, value) >= 0;
+        case OP_NE:
+            return DataType.compare(min, value) != 0 || DataType.compare(max, value) != 0;
+        case OP_GT:
+            return DataType.compare(max, value) > 0;
+        case OP_GE:
+            return DataType.compare(max, value) >= 0;
+        case OP_LT:
+            return DataType.compare(min, value) < 0;
+        case OP_LE:
+            return DataType.compare(min, value) <= 0;
+        default:
+            return true;
+        }
+    }
+
+    private static OpType flip(OpType op) {
+        switch (op) {
+        case OP_GT:
+            return OpType.OP_LT;
+        case OP_GE:
+            return OpType.OP_LE;
+        case OP_LT:
+            return OpType.OP_GT;
+        case OP_LE:
+            return OpType.OP_GE;
+        default:
+            return op;
+        }
+    }
+
+    /**
+     * @return the number of nulls of the column expr in block, UNKNOWN if
+     * expr is not a column or its statistics are not known
+     */
+    private static long getNulls(Block block, Expression expr) {
+        if (expr.getOpType() != OpType.TERM_COL) {
+            return UNKNOWN;
+        }
+        int column = getColumn(expr);
+        if (column < 0) {
+            return UNKNOWN;
+        }
+        // the fields past the records of the block are null
+        return column < block.nulls.size() ? block.nulls.get(column) : block.records;
+    }
+
+    private static int getColumn(Expression column) {
+        try {
+            return Integer.parseInt(((Column) column).getName());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isComparable(Object value) {
+        switch (DataType.findType(value)) {
+        case DataType.BOOLEAN:
+        case DataType.BYTE:
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+        case DataType.DATETIME:
+        case DataType.BIGINTEGER:
+        case DataType.BIGDECIMAL:
+            return true;
+        case DataType.CHARARRAY:
+            return ((String) value).length() <= MAX_VALUE_LENGTH;
+        case DataType.BYTEARRAY:
+            return ((DataByteArray) value).size() <= MAX_VALUE_LENGTH;
+        default:
+            return false;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.pig.Expression;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.BinInterSedes;
 import org.apache.pig.data.InterSedes;
@@ -37,7 +38,9 @@ import org.apache.pig.data.Tuple;
 
 /**
  * A record reader used to read data written using {@link InterRecordWriter}
- * It uses the default InterSedes object for deserialization.
+ * It uses the default InterSedes object for deserialization. Given a filter,
+ * it skips the blocks whose {@link InterBlockStatistics} show that none of
+ * their records can match it.
  */
 public class InterRecordReader extends RecordReader<Text, Tuple> {
 
@@ -51,6 +54,24 @@ public class InterRecordReader extends RecordReader<Text, Tuple> {
   public static final int RECORD_3 = 0x03;
   private DataInputStream inData = null;
   private static InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+  private FSDataInputStream fileIn = null;
+  private Expression filter = null;
+  private InterBlockStatistics stats = null;
+  // whether each block of stats cannot match filter
+  private boolean[] skippable = null;
+  // the first block the next records may be in
+  private int block = 0;
+
+  public InterRecordReader() {
+  }
+
+  /**
+   * @param filter the records that cannot match filter may be skipped,
+   * null if none can
+   */
+  public InterRecordReader(Expression filter) {
+    this.filter = filter;
+  }
 
   public void initialize(InputSplit genericSplit,
                          TaskAttemptContext context) throws IOException {
@@ -62,15 +83,55 @@ public class InterRecordReader extends RecordReader<Text, Tuple> {
 
     // open the file and seek to the start of the split
     FileSystem fs = file.getFileSystem(job);
-    FSDataInputStream fileIn = fs.open(split.getPath());
+    fileIn = fs.open(split.getPath());
     if (start != 0) {
         fileIn.seek(start);
     }
     in = new BufferedPositionedInputStream(fileIn, start);
     inData = new DataInputStream(in);
+    if (filter != null) {
+        stats = InterBlockStatistics.read(file, job);
+    }
+    if (stats != null) {
+        skippable = new boolean[stats.size()];
+        for (int i = 0; i < skippable.length; i++) {
+            skippable[i] = !stats.mightMatch(i, filter);
+        }
+    }
+  }
+
+  /**
+   * Moves past the blocks that cannot match the filter
+   * @return false if there is nothing left to read in the split
+   */
+  private boolean skipBlocks() throws IOException {
+      long position = in.getPosition();
+      long next = position;
+      while (block < skippable.length) {
+          if (stats.getEnd(block) <= next) {
+              block++;
+          } else if (stats.getStart(block) <= next && skippable[block]) {
+              next = stats.getEnd(block);
+              block++;
+          } else {
+              break;
+          }
+      }
+      if (next >= end) {
+          return false;
+      }
+      if (next > position) {
+          fileIn.seek(next);
+          in = new BufferedPositionedInputStream(fileIn, next);
+          inData = new DataInputStream(in);
+      }
+      return true;
   }
   
   public boolean nextKeyValue() throws IOException {
+      if (stats != null && in != null && !skipBlocks()) {
+          return false;
+      }
       int b = 0;
       //    skip to next record
       while (true) {
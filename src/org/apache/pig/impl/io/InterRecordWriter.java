@@ -20,6 +20,7 @@ package org.apache.pig.impl.io;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -43,7 +44,23 @@ public class InterRecordWriter extends
      * the outputstream to write out on
      */
     private DataOutputStream out;
-    
+
+    /**
+     * out, to find the position of the records when the statistics of the
+     * blocks are recorded
+     */
+    private FSDataOutputStream fileOut = null;
+
+    /**
+     * the outputstream to write the statistics of the blocks on, null if
+     * they are not recorded
+     */
+    private FSDataOutputStream statsOut = null;
+
+    private InterBlockStatistics stats = null;
+
+    private long blockSize;
+
     /**
      * 
      */
@@ -51,12 +68,32 @@ public class InterRecordWriter extends
         this.out = out;
     }
 
+    /**
+     * Records the statistics of the blocks written on out, see
+     * {@link InterBlockStatistics}
+     * @param statsOut the outputstream to write the statistics on
+     * @param blockSize the size in bytes of the blocks
+     */
+    public InterRecordWriter(FSDataOutputStream out, FSDataOutputStream statsOut,
+            long blockSize) {
+        this.out = out;
+        this.fileOut = out;
+        this.statsOut = statsOut;
+        this.blockSize = blockSize;
+        stats = new InterBlockStatistics();
+    }
+
     /* (non-Javadoc)
      * @see org.apache.hadoop.mapreduce.RecordWriter#close(org.apache.hadoop.mapreduce.TaskAttemptContext)
      */
     @Override
     public void close(TaskAttemptContext arg0) throws IOException,
             InterruptedException {
+        if (stats != null) {
+            stats.endBlock(fileOut.getPos());
+            stats.write(statsOut);
+            statsOut.close();
+        }
         out.close();        
     }
 
@@ -67,6 +104,13 @@ public class InterRecordWriter extends
     public void write(WritableComparable wc, Tuple t) throws IOException,
             InterruptedException {
         // we really only want to write the tuple (value) out here
+        if (stats != null) {
+            long pos = fileOut.getPos();
+            if (stats.getBlockStart() >= 0 && pos - stats.getBlockStart() >= blockSize) {
+                stats.endBlock(pos);
+            }
+            stats.add(t, pos);
+        }
         out.write(RECORD_1);
         out.write(RECORD_2);
         out.write(RECORD_3);
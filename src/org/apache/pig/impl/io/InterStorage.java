@@ -18,6 +18,11 @@
 package org.apache.pig.impl.io;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -29,16 +34,19 @@ import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.pig.Expression;
 import org.apache.pig.FileInputLoadFunc;
 import org.apache.pig.LoadFunc;
 import org.apache.pig.LoadMetadata;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceStatistics;
 import org.apache.pig.StoreFunc;
@@ -47,6 +55,8 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigFileInput
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.ObjectSerializer;
+import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.impl.util.Utils;
 
 /**
@@ -55,15 +65,25 @@ import org.apache.pig.impl.util.Utils;
  * a pig query.
  * The serialization format of this load function can change in newer
  *  versions of pig, so this should NOT be used to store any persistent data.
+ * <p>
+ * The statistics of the blocks of the data are stored with it when
+ * {@link PigConfiguration#PROP_TMPFILE_STATS} is turned on. When given a filter with
+ * {@link #setFilter(String, Expression)}, the loader skips the blocks and splits
+ * that cannot match it, the filter itself still has to be applied.
  */
 @InterfaceAudience.Private
 public class InterStorage extends FileInputLoadFunc 
 implements StoreFuncInterface, LoadMetadata {
 
     private static final Log mLog = LogFactory.getLog(InterStorage.class);
-    
+
+    private static final String FILTER = "filter";
+
+    private static final long DEFAULT_STATS_BLOCKSIZE = 1024 * 1024;
+
     private InterRecordReader recReader = null;
     private InterRecordWriter recWriter = null;
+    private String signature = null;
     
     /**
      * Simple binary nested reader format
@@ -94,6 +114,20 @@ implements StoreFuncInterface, LoadMetadata {
     
     public static class InterInputFormat extends PigFileInputFormat<Text, Tuple> {
 
+        private final Expression filter;
+
+        public InterInputFormat() {
+            this(null);
+        }
+
+        /**
+         * @param filter the splits and records that cannot match filter are
+         * skipped, null if none can
+         */
+        public InterInputFormat(Expression filter) {
+            this.filter = filter;
+        }
+
         /* (non-Javadoc)
          * @see org.apache.hadoop.mapreduce.InputFormat#createRecordReader(org.apache.hadoop.mapreduce.InputSplit, org.apache.hadoop.mapreduce.TaskAttemptContext)
          */
@@ -101,15 +135,69 @@ implements StoreFuncInterface, LoadMetadata {
         public RecordReader<Text, Tuple> createRecordReader(InputSplit split,
                 TaskAttemptContext context) throws IOException,
                 InterruptedException {
-            return new InterRecordReader();
+            return new InterRecordReader(filter);
         }
 
+        @Override
+        public List<InputSplit> getSplits(JobContext job) throws IOException {
+            List<InputSplit> splits = super.getSplits(job);
+            if (filter == null) {
+                return splits;
+            }
+            List<InputSplit> kept = new ArrayList<InputSplit>();
+            Map<Path, InterBlockStatistics> stats = new HashMap<Path, InterBlockStatistics>();
+            for (InputSplit split : splits) {
+                FileSplit fileSplit = (FileSplit) split;
+                Path file = fileSplit.getPath();
+                if (!stats.containsKey(file)) {
+                    stats.put(file, InterBlockStatistics.read(file, job.getConfiguration()));
+                }
+                InterBlockStatistics fileStats = stats.get(file);
+                if (fileStats == null || !fileStats.canSkip(fileSplit.getStart(),
+                        fileSplit.getStart() + fileSplit.getLength(), filter)) {
+                    kept.add(split);
+                }
+            }
+            if (kept.isEmpty() && !splits.isEmpty()) {
+                // keep a split for the job to have a task
+                kept.add(splits.get(0));
+            }
+            if (kept.size() < splits.size()) {
+                mLog.info("Skipping " + (splits.size() - kept.size()) + " of "
+                        + splits.size() + " splits that cannot match " + filter);
+            }
+            return kept;
+        }
     }
 
     
     @Override
-    public InputFormat getInputFormat() {
-        return new InterInputFormat();
+    public InputFormat getInputFormat() throws IOException {
+        return new InterInputFormat(getFilter());
+    }
+
+    @Override
+    public void setUDFContextSignature(String signature) {
+        this.signature = signature;
+    }
+
+    /**
+     * Sets the filter that the records read by the loader of signature are
+     * given to. Its columns are named by the position of the field they
+     * stand for, see {@link InterBlockStatistics}.
+     */
+    public static void setFilter(String signature, Expression filter) throws IOException {
+        UDFContext.getUDFContext().getUDFProperties(InterStorage.class,
+                new String[] { signature }).setProperty(FILTER, ObjectSerializer.serialize(filter));
+    }
+
+    private Expression getFilter() throws IOException {
+        if (signature == null) {
+            return null;
+        }
+        String filter = UDFContext.getUDFContext().getUDFProperties(InterStorage.class,
+                new String[] { signature }).getProperty(FILTER);
+        return filter == null ? null : (Expression) ObjectSerializer.deserialize(filter);
     }
 
     @Override
@@ -140,6 +228,12 @@ implements StoreFuncInterface, LoadMetadata {
             Path file = getDefaultWorkFile(job, "");
             FileSystem fs = file.getFileSystem(conf);
             FSDataOutputStream fileOut = fs.create(file, false);
+            if (conf.getBoolean(PigConfiguration.PROP_TMPFILE_STATS, false)) {
+                FSDataOutputStream statsOut = fs.create(
+                        InterBlockStatistics.getStatisticsPath(file), false);
+                return new InterRecordWriter(fileOut, statsOut, conf.getLong(
+                        PigConfiguration.PROP_TMPFILE_STATS_BLOCKSIZE, DEFAULT_STATS_BLOCKSIZE));
+            }
             return new InterRecordWriter(fileOut);
         }
     }
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+
+/**
+ * A read-only multimap from keys to tuples, stored in a file that is memory
+ * mapped. Keys and tuples are serialized with {@link InterSedes}; a lookup
+ * only deserializes the tuples of the key looked up, so that the table
+ * neither needs to fit in the heap nor to be read as a whole by each
+ * process using it. Several processes mapping the same file share its
+ * pages.
+ *
+ * The file holds the records, each linked to the previous record of the
+ * same hash bucket, followed by the offsets of the last record of each
+ * bucket and a trailer locating them. Files are built with a
+ * {@link Builder}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class MappedTupleTable {
+
+    private static final InterSedes SEDES = InterSedesFactory.getInterSedesInstance();
+
+    private static final int MAGIC = 0x50494754;
+
+    private static final int VERSION = 1;
+
+    // header of the file: magic number and version. Records start after
+    // it, so that offset 0 can mark the end of a chain.
+    private static final int HEADER_SIZE = 8;
+
+    // trailer of the file: offset of the buckets, number of buckets, magic number
+    private static final int TRAILER_SIZE = 16;
+
+    // a record starts with the offset of the previous record of the
+    // bucket, the hash of the key and the length of the key
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    private static final int MAX_BUCKETS = 1 << 26;
+
+    // buffers are mapped by chunks, as a single one cannot exceed 2GB
+    private static final int CHUNK_BITS = 30;
+
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final File file;
+
+    private final MappedByteBuffer[] chunks;
+
+    private final long bucketsOffset;
+
+    private final int mask;
+
+    private final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+
+    private final DataOutputStream keyOut = new DataOutputStream(keyBytes);
+
+    private final byte[] scratch = new byte[8];
+
+    private MappedTupleTable(File file, MappedByteBuffer[] chunks, long bucketsOffset, int numBuckets) {
+        this.file = file;
+        this.chunks = chunks;
+        this.bucketsOffset = bucketsOffset;
+        this.mask = numBuckets - 1;
+    }
+
+    /**
+     * Map a file written by a {@link Builder}.
+     * @throws IOException if the file is not such a file
+     */
+    public static MappedTupleTable open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException(file + " is not a mapped tuple table");
+            }
+            raf.seek(0);
+            int magic = raf.readInt();
+            int version = raf.readInt();
+            raf.seek(length - TRAILER_SIZE);
+            long bucketsOffset = raf.readLong();
+            int numBuckets = raf.readInt();
+            int endMagic = raf.readInt();
+            if (magic != MAGIC || endMagic != MAGIC || version != VERSION) {
+                throw new IOException(file + " is not a mapped tuple table");
+            }
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(CHUNK_SIZE, length - start));
+            }
+            return new MappedTupleTable(file, chunks, bucketsOffset, numBuckets);
+        } finally {
+            // the mapping stays valid once the file is closed
+            raf.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the tuples added for key, in the order they were added, or
+     * null if there are none
+     * @throws ExecException
+     */
+    public List<Tuple> get(Object key) throws ExecException {
+        keyBytes.reset();
+        try {
+            SEDES.writeDatum(keyOut, key);
+        } catch (IOException e) {
+            throw new ExecException("Unable to serialize " + key, e);
+        }
+        byte[] k = keyBytes.toByteArray();
+        int hash = hash(k, k.length);
+
+        List<Tuple> values = null;
+        long record = getLong(bucketsOffset + 8L * (hash & mask));
+        while (record != 0) {
+            int keyLength = getInt(record + 12);
+            if (getInt(record + 8) == hash && keyLength == k.length
+                    && keyEquals(record + RECORD_HEADER_SIZE, k)) {
+                long valueOffset = record + RECORD_HEADER_SIZE + keyLength;
+                byte[] value = new byte[getInt(valueOffset)];
+                read(valueOffset + 4, value, value.length);
+                if (values == null) {
+                    values = new ArrayList<Tuple>();
+                }
+                try {
+                    values.add((Tuple) SEDES.readDatum(new DataInputStream(
+                            new ByteArrayInputStream(value))));
+                } catch (IOException e) {
+                    throw new ExecException("Unable to read tuple from " + file, e);
+                }
+            }
+            record = getLong(record);
+        }
+        if (values != null) {
+            // chains go from the last record to the first
+            Collections.reverse(values);
+        }
+        return values;
+    }
+
+    private boolean keyEquals(long offset, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte get(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & (CHUNK_SIZE - 1)));
+    }
+
+    private int getInt(long offset) {
+        int pos = (int) (offset & (CHUNK_SIZE - 1));
+        if (pos <= CHUNK_SIZE - 4) {
+            return chunks[(int) (offset >>> CHUNK_BITS)].getInt(pos);
+        }
+        read(offset, scratch, 4);
+        return ((scratch[0] & 0xff) << 24) | ((scratch[1] & 0xff) << 16)
+                | ((scratch[2] & 0xff) << 8) | (scratch[3] & 0xff);
+    }
+
+    private long getLong(long offset) {
+        int pos = (int) (offset & (CHUNK_SIZE - 1));
+        if (pos <= CHUNK_SIZE - 8) {
+            return chunks[(int) (offset >>> CHUNK_BITS)].getLong(pos);
+        }
+        return ((long) getInt(offset) << 32) | (getInt(offset + 4) & 0xffffffffL);
+    }
+
+    private void read(long offset, byte[] dst, int length) {
+        int done = 0;
+        while (done < length) {
+            long current = offset + done;
+            MappedByteBuffer chunk = chunks[(int) (current >>> CHUNK_BITS)];
+            int pos = (int) (current & (CHUNK_SIZE - 1));
+            int n = (int) Math.min(length - done, CHUNK_SIZE - pos);
+            // work on a duplicate, the buffer is shared by the lookups
+            ByteBuffer view = chunk.duplicate();
+            view.position(pos);
+            view.get(dst, done, n);
+            done += n;
+        }
+    }
+
+    private static int hash(byte[] bytes, int length) {
+        int h = 17;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    /**
+     * Writes a {@link MappedTupleTable}. The entries are first written as they
+     * come to a temporary file, then linked into their buckets once their
+     * number is known, so that only the bucket offsets are kept in memory.
+     */
+    public static class Builder {
+
+        private final File file;
+
+        private final File tmpFile;
+
+        private final DataOutputStream tmpOut;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream bytesOut = new DataOutputStream(bytes);
+
+        private long count = 0;
+
+        /**
+         * @param file file to write the table to
+         * @throws IOException
+         */
+        public Builder(File file) throws IOException {
+            this.file = file;
+            tmpFile = File.createTempFile(file.getName(), ".entries", file.getAbsoluteFile().getParentFile());
+            tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        }
+
+        public void add(Object key, Tuple value) throws IOException {
+            bytes.reset();
+            SEDES.writeDatum(bytesOut, key);
+            tmpOut.writeInt(bytes.size());
+            bytes.writeTo(tmpOut);
+            bytes.reset();
+            SEDES.writeDatum(bytesOut, value, DataType.TUPLE);
+            tmpOut.writeInt(bytes.size());
+            bytes.writeTo(tmpOut);
+            count++;
+        }
+
+        /**
+         * Write the table and remove the temporary file.
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            tmpOut.close();
+            int numBuckets = Integer.highestOneBit((int) Math.min(MAX_BUCKETS, Math.max(16, count)));
+            if (numBuckets < count && numBuckets < MAX_BUCKETS) {
+                numBuckets <<= 1;
+            }
+            long[] buckets = new long[numBuckets];
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tmpFile)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                long offset = HEADER_SIZE;
+                byte[] key = new byte[64];
+                byte[] value = new byte[256];
+                while (true) {
+                    int keyLength;
+                    try {
+                        keyLength = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (key.length < keyLength) {
+                        key = new byte[Math.max(keyLength, key.length * 2)];
+                    }
+                    in.readFully(key, 0, keyLength);
+                    int valueLength = in.readInt();
+                    if (value.length < valueLength) {
+                        value = new byte[Math.max(valueLength, value.length * 2)];
+                    }
+                    in.readFully(value, 0, valueLength);
+
+                    int hash = hash(key, keyLength);
+                    int bucket = hash & (numBuckets - 1);
+                    out.writeLong(buckets[bucket]);
+                    out.writeInt(hash);
+                    out.writeInt(keyLength);
+                    out.write(key, 0, keyLength);
+                    out.writeInt(valueLength);
+                    out.write(value, 0, valueLength);
+                    buckets[bucket] = offset;
+                    offset += RECORD_HEADER_SIZE + keyLength + 4 + valueLength;
+                }
+                for (long b : buckets) {
+                    out.writeLong(b);
+                }
+                out.writeLong(offset);
+                out.writeInt(numBuckets);
+                out.writeInt(MAGIC);
+            } finally {
+                in.close();
+                out.close();
+                tmpFile.delete();
+            }
+        }
+    }
+}
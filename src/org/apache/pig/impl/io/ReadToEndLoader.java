@@ -109,6 +109,16 @@ public class ReadToEndLoader extends LoadFunc implements LoadMetadata {
     
     private String udfContextSignature = null;
 
+    /**
+     * the split the loader is currently reading from
+     */
+    private InputSplit curSplit = null;
+
+    /**
+     * total length of the splits read before the current one
+     */
+    private long finishedSplitsLength = 0;
+
     /**
      * @param wrappedLoadFunc
      * @param conf
@@ -202,8 +212,9 @@ public class ReadToEndLoader extends LoadFunc implements LoadMetadata {
         }
         if(reader != null){
             reader.close();
+            finishedSplitsLength += curSplit.getLength();
         }
-        InputSplit curSplit = inpSplits.get(curSplitIndex);
+        curSplit = inpSplits.get(curSplitIndex);
         TaskAttemptContext tAContext = HadoopShims.createTaskAttemptContext(conf, 
                 new TaskAttemptID());
         reader = inputFormat.createRecordReader(curSplit, tAContext);
@@ -253,8 +264,37 @@ public class ReadToEndLoader extends LoadFunc implements LoadMetadata {
         }
         return null;
     }
-    
-    
+
+    /**
+     * @return an estimate of the number of bytes read so far, from the
+     * lengths of the splits and the progress of the current one
+     * @throws IOException
+     */
+    public long getBytesRead() throws IOException {
+        if (reader == null || curSplit == null) {
+            return finishedSplitsLength;
+        }
+        try {
+            return finishedSplitsLength + (long)(reader.getProgress() * curSplit.getLength());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Closes the split being read, for callers that stop reading before
+     * the end of the input
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        curSplitIndex = Integer.MAX_VALUE;
+    }
+
+
     /**
      * Updates curSplitIndex , just increment if splitIndexes is null,
      * else get next split in splitIndexes
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most frequent items of a stream with the Space-Saving
+ * algorithm: it counts at most capacity items, and a new item replaces the
+ * least counted one, inheriting its count as the error of its own. The
+ * count of an item is over-estimated by at most its error, which is at
+ * most the number of items counted divided by the capacity.
+ * <p>
+ * Summaries of the same capacity can be merged, in the way of Agarwal et al.,
+ * "Mergeable Summaries": an item missing from a full summary may have been
+ * counted up to the smallest count of that summary.
+ */
+public class SpaceSaving<T> {
+
+    /**
+     * An item with its count, and how much the count may exceed the number
+     * of times the item was counted.
+     */
+    public static class Counter<T> {
+        private final T item;
+        private long count;
+        private long error;
+
+        public Counter(T item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+
+    private static final Comparator<Counter<?>> BY_COUNT = new Comparator<Counter<?>>() {
+        @Override
+        public int compare(Counter<?> c1, Counter<?> c2) {
+            if (c1.count != c2.count) {
+                return c1.count > c2.count ? -1 : 1;
+            }
+            return c1.error < c2.error ? -1 : (c1.error == c2.error ? 0 : 1);
+        }
+    };
+
+    private final int capacity;
+
+    private final Map<T, Counter<T>> counters;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<T, Counter<T>>(capacity * 2);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Counts an item.
+     */
+    public void offer(T item) {
+        offer(item, 1, 0);
+    }
+
+    /**
+     * Counts an item a number of times, with the error that count already
+     * has.
+     */
+    public void offer(T item, long count, long error) {
+        Counter<T> c = counters.get(item);
+        if (c != null) {
+            c.count += count;
+            c.error += error;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(item, new Counter<T>(item, count, error));
+            return;
+        }
+        Counter<T> min = getMin();
+        counters.remove(min.item);
+        counters.put(item, new Counter<T>(item, min.count + count, min.count + error));
+    }
+
+    /**
+     * Adds the items counted by another summary.
+     */
+    public void merge(SpaceSaving<T> other) {
+        long thisMin = isFull() ? getMin().count : 0;
+        long otherMin = other.isFull() ? other.getMin().count : 0;
+        Map<T, Counter<T>> merged = new HashMap<T, Counter<T>>(counters);
+        for (Counter<T> c : merged.values()) {
+            if (!other.counters.containsKey(c.item)) {
+                c.count += otherMin;
+                c.error += otherMin;
+            }
+        }
+        for (Counter<T> o : other.counters.values()) {
+            Counter<T> c = merged.get(o.item);
+            if (c != null) {
+                c.count += o.count;
+                c.error += o.error;
+            } else {
+                merged.put(o.item, new Counter<T>(o.item, o.count + thisMin, o.error + thisMin));
+            }
+        }
+        counters.clear();
+        List<Counter<T>> top = sorted(merged);
+        for (int i = 0; i < top.size() && i < capacity; i++) {
+            counters.put(top.get(i).item, top.get(i));
+        }
+    }
+
+    /**
+     * @return the counted items, from the most counted
+     */
+    public List<Counter<T>> getTop() {
+        return sorted(counters);
+    }
+
+    private boolean isFull() {
+        return counters.size() >= capacity;
+    }
+
+    private Counter<T> getMin() {
+        Counter<T> min = null;
+        for (Counter<T> c : counters.values()) {
+            if (min == null || c.count < min.count) {
+                min = c;
+            }
+        }
+        return min;
+    }
+
+    private List<Counter<T>> sorted(Map<T, Counter<T>> map) {
+        List<Counter<T>> list = new ArrayList<Counter<T>>(map.values());
+        Collections.sort(list, BY_COUNT);
+        return list;
+    }
+}
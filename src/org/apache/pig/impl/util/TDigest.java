@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Estimates the quantiles of a distribution of values with a merging
+ * t-digest: the values are summarized by centroids, a mean and a weight,
+ * that are the smaller the closer they are to the tails, so that extreme
+ * quantiles are the most accurate. The number of centroids is about the
+ * compression, whatever the number of values.
+ * <p>
+ * Digests can be merged, and serialized for {@link #fromBytes(byte[])}.
+ */
+public class TDigest {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    // the centroids, sorted by mean
+    private double[] means;
+    private long[] weights;
+    private int size;
+
+    // the values added since the last compression
+    private double[] bufferMeans;
+    private long[] bufferWeights;
+    private int bufferSize;
+
+    private long totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) * 2 + 8;
+        means = new double[capacity];
+        weights = new long[capacity];
+        bufferMeans = new double[capacity * 4];
+        bufferWeights = new long[capacity * 4];
+    }
+
+    public double getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the number of values added
+     */
+    public long size() {
+        return totalWeight;
+    }
+
+    public void add(double x) {
+        add(x, 1);
+    }
+
+    /**
+     * Adds a value with a weight, that counts as that many values.
+     */
+    public void add(double x, long weight) {
+        if (Double.isNaN(x)) {
+            return;
+        }
+        if (bufferSize == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferSize] = x;
+        bufferWeights[bufferSize] = weight;
+        bufferSize++;
+        totalWeight += weight;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+    }
+
+    /**
+     * Adds the values of another digest.
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.size; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @param q the quantile, between 0 and 1
+     * @return the estimated value of the quantile, NaN if no value was added
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        compress();
+        if (size == 0) {
+            return Double.NaN;
+        }
+        if (size == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        double firstHalf = weights[0] / 2.0;
+        if (index <= firstHalf) {
+            return min + (means[0] - min) * index / firstHalf;
+        }
+        double lastHalf = weights[size - 1] / 2.0;
+        if (index >= totalWeight - lastHalf) {
+            return max - (max - means[size - 1]) * (totalWeight - index) / lastHalf;
+        }
+        // interpolate between the centers of the centroids around the index
+        double weightSoFar = firstHalf;
+        for (int i = 0; i < size - 1; i++) {
+            double dw = (weights[i] + weights[i + 1]) / 2.0;
+            if (weightSoFar + dw > index) {
+                double left = index - weightSoFar;
+                double right = weightSoFar + dw - index;
+                return (means[i] * right + means[i + 1] * left) / dw;
+            }
+            weightSoFar += dw;
+        }
+        return means[size - 1];
+    }
+
+    /**
+     * Merges the buffered values into the centroids, merging neighbouring
+     * centroids as long as they cover a small enough part of the
+     * distribution for where they are.
+     */
+    private void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        int n = size + bufferSize;
+        double[] m = new double[n];
+        long[] w = new long[n];
+        System.arraycopy(means, 0, m, 0, size);
+        System.arraycopy(weights, 0, w, 0, size);
+        System.arraycopy(bufferMeans, 0, m, size, bufferSize);
+        System.arraycopy(bufferWeights, 0, w, size, bufferSize);
+        sort(m, w, 0, n - 1);
+        bufferSize = 0;
+
+        int newSize = 0;
+        double weightSoFar = 0;
+        double limit = totalWeight * limit(0);
+        double mean = m[0];
+        long weight = w[0];
+        for (int i = 1; i < n; i++) {
+            if (weightSoFar + weight + w[i] <= limit) {
+                weight += w[i];
+                mean += (m[i] - mean) * w[i] / weight;
+            } else {
+                newSize = emit(newSize, mean, weight);
+                weightSoFar += weight;
+                limit = totalWeight * limit(weightSoFar / totalWeight);
+                mean = m[i];
+                weight = w[i];
+            }
+        }
+        size = emit(newSize, mean, weight);
+    }
+
+    private int emit(int index, double mean, long weight) {
+        if (index == means.length) {
+            double[] newMeans = new double[means.length * 2];
+            long[] newWeights = new long[weights.length * 2];
+            System.arraycopy(means, 0, newMeans, 0, index);
+            System.arraycopy(weights, 0, newWeights, 0, index);
+            means = newMeans;
+            weights = newWeights;
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    /**
+     * @return the largest quantile a centroid starting at quantile q may
+     * reach, by the scale function k(q) = compression / 2pi * asin(2q - 1)
+     */
+    private double limit(double q) {
+        double normalizer = compression / (2 * Math.PI);
+        double k = normalizer * Math.asin(2 * Math.min(1, q) - 1) + 1;
+        if (k >= normalizer * Math.PI / 2) {
+            return 1;
+        }
+        return (Math.sin(k / normalizer) + 1) / 2;
+    }
+
+    private static void sort(double[] m, long[] w, int lo, int hi) {
+        while (lo < hi) {
+            double pivot = m[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (m[i] < pivot) {
+                    i++;
+                }
+                while (m[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tm = m[i];
+                    m[i] = m[j];
+                    m[j] = tm;
+                    long tw = w[i];
+                    w[i] = w[j];
+                    w[j] = tw;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller part
+            if (j - lo < hi - i) {
+                sort(m, w, lo, j);
+                lo = i;
+            } else {
+                sort(m, w, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    /**
+     * @return the digest serialized, for {@link #fromBytes(byte[])}
+     */
+    public byte[] toBytes() {
+        compress();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + size * 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeDouble(compression);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(means[i]);
+                out.writeLong(weights[i]);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the digest that {@link #toBytes()} serialized
+     */
+    public static TDigest fromBytes(byte[] b) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+        TDigest digest = new TDigest(in.readDouble());
+        double min = in.readDouble();
+        double max = in.readDouble();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            digest.add(in.readDouble(), in.readLong());
+        }
+        digest.min = min;
+        digest.max = max;
+        return digest;
+    }
+}
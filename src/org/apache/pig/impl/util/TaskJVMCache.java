@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.PigConfiguration;
+
+/**
+ * Keeps the structures that the tasks of a job build from a file, such as
+ * the hash tables of replicated joins or the values of scalars, for the
+ * next tasks of the same job that run in the same JVM when the JVMs are
+ * reused. An entry is keyed by the path and the modification time of its
+ * file, and accounted for by the size of that file. The whole cache is
+ * dropped when the {@link SpillableMemoryManager} asks it to spill, and
+ * when a task of another job starts using it.
+ * <p>
+ * UDFs can keep the state they build from a file in the distributed cache
+ * here as well. The values are shared by the tasks and must not be changed
+ * once built.
+ */
+public class TaskJVMCache implements Spillable {
+
+    private static final Log log = LogFactory.getLog(TaskJVMCache.class);
+
+    /**
+     * Builds the value of an entry from its file.
+     */
+    public interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private static TaskJVMCache instance;
+
+    private String jobId;
+
+    private Map<String, Object> entries = new HashMap<String, Object>();
+
+    private long memorySize;
+
+    private TaskJVMCache(String jobId) {
+        this.jobId = jobId;
+    }
+
+    private static synchronized TaskJVMCache getInstance(String jobId) {
+        if (instance == null) {
+            instance = new TaskJVMCache(jobId);
+            SpillableMemoryManager.getInstance().registerSpillable(instance);
+        }
+        instance.setJobId(jobId);
+        return instance;
+    }
+
+    /**
+     * @param conf the configuration of the task
+     * @return whether the values built by this task are kept for the next
+     * ones, which is the case when the task runs in a JVM that is reused and
+     * {@link PigConfiguration#TASK_JVM_CACHE} is not turned off
+     */
+    public static boolean isEnabled(Configuration conf) {
+        return conf != null && conf.get("mapred.job.id") != null
+                && conf.getInt("mapred.job.reuse.jvm.num.tasks", 1) != 1
+                && conf.getBoolean(PigConfiguration.TASK_JVM_CACHE, true);
+    }
+
+    /**
+     * Gets the value built from a file by an earlier task of the job, or
+     * builds it. The value is only kept if the cache is enabled.
+     *
+     * @param conf the configuration of the task
+     * @param kind what the value is, so that different values can be built
+     * from the same file
+     * @param path the file the value is built from
+     * @param loader builds the value
+     * @return the value
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V get(Configuration conf, String kind, Path path, Loader<V> loader)
+            throws IOException {
+        if (!isEnabled(conf)) {
+            return loader.load();
+        }
+        TaskJVMCache cache = getInstance(conf.get("mapred.job.id"));
+        FileSystem fs = path.getFileSystem(conf);
+        FileStatus status = fs.getFileStatus(path);
+        String key = kind + ":" + fs.makeQualified(path) + "@" + status.getModificationTime();
+        synchronized (cache) {
+            if (cache.entries.containsKey(key)) {
+                log.info("Using " + kind + " of " + path + " built by an earlier task");
+                return (V) cache.entries.get(key);
+            }
+        }
+        // the value is built without holding the lock of the cache, as it
+        // may register spillables itself
+        V value = loader.load();
+        long size = status.isDir() ? fs.getContentSummary(path).getLength() : status.getLen();
+        synchronized (cache) {
+            if (!cache.entries.containsKey(key)) {
+                cache.entries.put(key, value);
+                cache.memorySize += size;
+            }
+        }
+        return value;
+    }
+
+    private synchronized void setJobId(String jobId) {
+        if (!jobId.equals(this.jobId)) {
+            entries.clear();
+            memorySize = 0;
+            this.jobId = jobId;
+        }
+    }
+
+    @Override
+    public synchronized long spill() {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        log.info("Dropping " + entries.size() + " cached values of " + memorySize + " bytes");
+        long spilled = entries.size();
+        entries.clear();
+        memorySize = 0;
+        return spilled;
+    }
+
+    @Override
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+}
@@ -34,17 +34,23 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.pig.FileInputLoadFunc;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.ColumnarInterStorage;
 import org.apache.pig.impl.io.InterStorage;
 import org.apache.pig.impl.io.ReadToEndLoader;
 import org.apache.pig.impl.io.TFileStorage;
@@ -238,12 +244,18 @@ public class Utils {
         if (tmpFileCompression) {
             if (codec.equals("lzo"))
                 pigContext.getProperties().setProperty("io.compression.codec.lzo.class", "com.hadoop.compression.lzo.LzoCodec");
+        }
+        if (pigContext.getProperties().getProperty(PigConfiguration.PROP_TMPFILE_COLUMNAR, "false").equals("true"))
+            return ColumnarInterStorage.class.getName();
+        if (tmpFileCompression) {
             return TFileStorage.class.getName();
         } else
             return InterStorage.class.getName();
     }
 
     public static FileInputLoadFunc getTmpFileStorageObject(Configuration conf) throws IOException {
+        if (conf.getBoolean(PigConfiguration.PROP_TMPFILE_COLUMNAR, false))
+            return new ColumnarInterStorage();
         boolean tmpFileCompression = conf.getBoolean("pig.tmpfilecompression", false);
         return tmpFileCompression ? new TFileStorage() : new InterStorage();
     }
@@ -260,8 +272,43 @@ public class Utils {
         String codec = pigContext.getProperties().getProperty("pig.tmpfilecompression.codec", "");
         if (codec.equals("gz") || codec.equals("lzo"))
             return codec;
-        else
-            throw new IOException("Invalid temporary file compression codec ["+codec+"]. Expected compression codecs are gz and lzo");
+        // the columnar intermediate files take any hadoop codec
+        if (pigContext.getProperties().getProperty(PigConfiguration.PROP_TMPFILE_COLUMNAR, "false").equals("true")
+                && !codec.isEmpty()) {
+            getCompressionCodecClass(codec, ConfigurationUtil.toConfiguration(pigContext.getProperties()));
+            return codec;
+        }
+        throw new IOException("Invalid temporary file compression codec ["+codec+"]. Expected compression codecs are gz and lzo");
+    }
+
+    /**
+     * @param codec gz, gzip, deflate, bzip2, snappy, lzo, or the class name
+     * of a compression codec
+     * @return the class of the hadoop compression codec of name codec
+     */
+    public static Class<? extends CompressionCodec> getCompressionCodecClass(String codec,
+            Configuration conf) throws IOException {
+        String className;
+        if (codec.equals("gz") || codec.equals("gzip")) {
+            className = GzipCodec.class.getName();
+        } else if (codec.equals("deflate")) {
+            className = DefaultCodec.class.getName();
+        } else if (codec.equals("bzip2")) {
+            className = "org.apache.hadoop.io.compress.BZip2Codec";
+        } else if (codec.equals("snappy")) {
+            className = "org.apache.hadoop.io.compress.SnappyCodec";
+        } else if (codec.equals("lzo")) {
+            className = conf.get("io.compression.codec.lzo.class", "com.hadoop.compression.lzo.LzoCodec");
+        } else {
+            className = codec;
+        }
+        try {
+            return conf.getClassByName(className).asSubclass(CompressionCodec.class);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot find compression codec [" + codec + "]", e);
+        } catch (ClassCastException e) {
+            throw new IOException("Invalid compression codec [" + codec + "]", e);
+        }
     }
 
     public static String getStringFromArray(String[] arr) {
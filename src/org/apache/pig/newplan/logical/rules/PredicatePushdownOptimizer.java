@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadPredicatePushdown;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.Pair;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.OperatorSubPlan;
+import org.apache.pig.newplan.logical.expression.AddExpression;
+import org.apache.pig.newplan.logical.expression.AndExpression;
+import org.apache.pig.newplan.logical.expression.BinaryExpression;
+import org.apache.pig.newplan.logical.expression.ConstantExpression;
+import org.apache.pig.newplan.logical.expression.DivideExpression;
+import org.apache.pig.newplan.logical.expression.EqualExpression;
+import org.apache.pig.newplan.logical.expression.GreaterThanEqualExpression;
+import org.apache.pig.newplan.logical.expression.GreaterThanExpression;
+import org.apache.pig.newplan.logical.expression.IsNullExpression;
+import org.apache.pig.newplan.logical.expression.LessThanEqualExpression;
+import org.apache.pig.newplan.logical.expression.LessThanExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.ModExpression;
+import org.apache.pig.newplan.logical.expression.MultiplyExpression;
+import org.apache.pig.newplan.logical.expression.NotEqualExpression;
+import org.apache.pig.newplan.logical.expression.NotExpression;
+import org.apache.pig.newplan.logical.expression.OrExpression;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.expression.RegexExpression;
+import org.apache.pig.newplan.logical.expression.SubtractExpression;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.newplan.logical.relational.LogicalSchema;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Pushes the conditions of a filter that directly follows a load down to a
+ * loader implementing {@link LoadPredicatePushdown}, and removes from the
+ * filter the conditions the loader evaluates fully.
+ */
+public class PredicatePushdownOptimizer extends Rule {
+
+    private static final Log LOG = LogFactory.getLog(PredicatePushdownOptimizer.class);
+
+    /**
+     * the loads whose filter was already pushed, the loader is offered the
+     * conditions only once
+     */
+    private Set<LOLoad> pushedLoads = new HashSet<LOLoad>();
+
+    public PredicatePushdownOptimizer(String name) {
+        super(name, false);
+    }
+
+    @Override
+    protected OperatorPlan buildPattern() {
+        LogicalPlan plan = new LogicalPlan();
+        LogicalRelationalOperator load = new LOLoad(null, plan);
+        plan.add(load);
+        return plan;
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new PredicatePushdownTransformer();
+    }
+
+    public class PredicatePushdownTransformer extends Transformer {
+        private OperatorSubPlan subPlan;
+
+        private LOLoad loLoad;
+        private LOFilter loFilter;
+        private LoadPredicatePushdown loadPredicatePushdown;
+
+        /**
+         * a map between the aliases of the fields on which the loader
+         * evaluates predicates, as present in {@link LOLoad#getSchema()}, and
+         * their names as reported by the loader
+         */
+        private Map<String, String> predicateFields = new HashMap<String, String>();
+
+        private Set<OpType> supportedTypes = new HashSet<OpType>();
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            // the transformer is reused for every load of the plan
+            predicateFields.clear();
+            supportedTypes.clear();
+            loLoad = (LOLoad)matched.getSources().get(0);
+            if (pushedLoads.contains(loLoad)) {
+                return false;
+            }
+            List<Operator> succeds = currentPlan.getSuccessors(loLoad);
+            if (succeds == null || succeds.size() == 0 || !(succeds.get(0) instanceof LOFilter)) {
+                return false;
+            }
+            loFilter = (LOFilter)succeds.get(0);
+
+            // Filter has dependency other than load, skip optimization
+            if (currentPlan.getSoftLinkPredecessors(loFilter) != null) {
+                return false;
+            }
+
+            LoadFunc loadFunc = loLoad.getLoadFunc();
+            if (!(loadFunc instanceof LoadPredicatePushdown)) {
+                return false;
+            }
+            loadPredicatePushdown = (LoadPredicatePushdown)loadFunc;
+
+            List<OpType> types = loadPredicatePushdown.getSupportedExpressionTypes();
+            if (types == null || types.isEmpty()) {
+                return false;
+            }
+            supportedTypes.addAll(types);
+
+            List<String> fields;
+            try {
+                fields = loadPredicatePushdown.getPredicateFields(
+                        loLoad.getFileSpec().getFileName(), new Job(loLoad.getConfiguration()));
+            } catch (IOException e) {
+                throw new FrontendException(e);
+            }
+            if (fields == null || fields.isEmpty()) {
+                return false;
+            }
+            setupPredicateFields(fields);
+            return !predicateFields.isEmpty();
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return subPlan;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            subPlan = new OperatorSubPlan(currentPlan);
+            pushedLoads.add(loLoad);
+
+            LogicalExpressionPlan filterPlan = loFilter.getFilterPlan();
+            List<LogicalExpression> conditions = new ArrayList<LogicalExpression>();
+            splitConjunction((LogicalExpression)filterPlan.getSources().get(0), conditions);
+
+            List<LogicalExpression> pushable = new ArrayList<LogicalExpression>();
+            List<Expression> predicates = new ArrayList<Expression>();
+            for (LogicalExpression condition : conditions) {
+                Expression predicate = getExpression(condition);
+                if (predicate != null) {
+                    pushable.add(condition);
+                    predicates.add(predicate);
+                }
+            }
+            if (predicates.isEmpty()) {
+                return;
+            }
+
+            List<Expression> evaluated;
+            try {
+                evaluated = loadPredicatePushdown.pushPredicates(predicates);
+            } catch (IOException e) {
+                throw new FrontendException(e);
+            }
+            LOG.info("Pushed " + predicates + " to " + loLoad.getFileSpec().getFuncName()
+                    + ", evaluated by the loader: " + evaluated);
+            if (evaluated == null || evaluated.isEmpty()) {
+                return;
+            }
+
+            List<LogicalExpression> removed = new ArrayList<LogicalExpression>();
+            for (int i = 0; i < predicates.size(); i++) {
+                for (Expression e : evaluated) {
+                    if (e == predicates.get(i)) {
+                        removed.add(pushable.get(i));
+                        break;
+                    }
+                }
+            }
+            if (removed.size() == conditions.size()) {
+                currentPlan.removeAndReconnect(loFilter);
+            } else {
+                for (LogicalExpression condition : removed) {
+                    removeCondition(filterPlan, condition);
+                }
+                subPlan.add(loFilter);
+            }
+        }
+
+        private void setupPredicateFields(List<String> fields) throws FrontendException {
+            LogicalSchema loLoadSchema = loLoad.getSchema();
+            LogicalSchema loadFuncSchema = loLoad.getDeterminedSchema();
+            if (loLoadSchema == null) {
+                return;
+            }
+            for (int i = 0; i < loLoadSchema.size(); i++) {
+                String alias = loLoadSchema.getField(i).alias;
+                // the user may have renamed the fields of the loader
+                String name = loadFuncSchema != null && i < loadFuncSchema.size() ?
+                        loadFuncSchema.getField(i).alias : alias;
+                if (alias != null && fields.contains(name)) {
+                    predicateFields.put(alias, name);
+                }
+            }
+        }
+
+        /**
+         * Collects the conditions of the AND at the root of the filter
+         */
+        private void splitConjunction(LogicalExpression op, List<LogicalExpression> conditions)
+                throws FrontendException {
+            if (op instanceof AndExpression) {
+                splitConjunction(((AndExpression)op).getLhs(), conditions);
+                splitConjunction(((AndExpression)op).getRhs(), conditions);
+            } else {
+                conditions.add(op);
+            }
+        }
+
+        /**
+         * @return the predicate for the loader, null if the condition uses
+         * other fields or operators than the loader supports
+         */
+        private Expression getExpression(LogicalExpression op) throws FrontendException {
+            if (op instanceof ConstantExpression) {
+                if (!supportedTypes.contains(OpType.TERM_CONST)) {
+                    return null;
+                }
+                return new Expression.Const(((ConstantExpression)op).getValue());
+            } else if (op instanceof ProjectExpression) {
+                ProjectExpression project = (ProjectExpression)op;
+                if (!supportedTypes.contains(OpType.TERM_COL) || project.isRangeOrStarProject()) {
+                    return null;
+                }
+                String name = predicateFields.get(project.getFieldSchema().alias);
+                return name == null ? null : new Expression.Column(name);
+            } else if (op instanceof NotExpression) {
+                return getExpression((NotExpression)op, OpType.OP_NOT);
+            } else if (op instanceof IsNullExpression) {
+                return getExpression((IsNullExpression)op, OpType.OP_NULL);
+            } else if (op instanceof BinaryExpression) {
+                OpType opType = getOpType((BinaryExpression)op);
+                if (opType == null || !supportedTypes.contains(opType)) {
+                    return null;
+                }
+                Expression lhs = getExpression(((BinaryExpression)op).getLhs());
+                Expression rhs = getExpression(((BinaryExpression)op).getRhs());
+                if (lhs == null || rhs == null) {
+                    return null;
+                }
+                return new Expression.BinaryExpression(lhs, rhs, opType);
+            }
+            // casts, functions, bincond, map lookups...
+            return null;
+        }
+
+        private Expression getExpression(
+                org.apache.pig.newplan.logical.expression.UnaryExpression op, OpType opType)
+                throws FrontendException {
+            if (!supportedTypes.contains(opType)) {
+                return null;
+            }
+            Expression expr = getExpression(op.getExpression());
+            return expr == null ? null : new Expression.UnaryExpression(expr, opType);
+        }
+
+        private OpType getOpType(BinaryExpression binOp) {
+            if (binOp instanceof AddExpression) {
+                return OpType.OP_PLUS;
+            } else if (binOp instanceof SubtractExpression) {
+                return OpType.OP_MINUS;
+            } else if (binOp instanceof MultiplyExpression) {
+                return OpType.OP_TIMES;
+            } else if (binOp instanceof DivideExpression) {
+                return OpType.OP_DIV;
+            } else if (binOp instanceof ModExpression) {
+                return OpType.OP_MOD;
+            } else if (binOp instanceof AndExpression) {
+                return OpType.OP_AND;
+            } else if (binOp instanceof OrExpression) {
+                return OpType.OP_OR;
+            } else if (binOp instanceof EqualExpression) {
+                return OpType.OP_EQ;
+            } else if (binOp instanceof NotEqualExpression) {
+                return OpType.OP_NE;
+            } else if (binOp instanceof GreaterThanExpression) {
+                return OpType.OP_GT;
+            } else if (binOp instanceof GreaterThanEqualExpression) {
+                return OpType.OP_GE;
+            } else if (binOp instanceof LessThanExpression) {
+                return OpType.OP_LT;
+            } else if (binOp instanceof LessThanEqualExpression) {
+                return OpType.OP_LE;
+            } else if (binOp instanceof RegexExpression) {
+                return OpType.OP_MATCH;
+            }
+            return null;
+        }
+
+        /**
+         * Removes a condition from the ANDs of the filter: the AND above it
+         * is replaced by the other condition of the AND
+         */
+        private void removeCondition(LogicalExpressionPlan plan, LogicalExpression condition)
+                throws FrontendException {
+            Operator and = plan.getPredecessors(condition).get(0);
+            List<Operator> children = new ArrayList<Operator>(plan.getSuccessors(and));
+            Operator other = children.get(0) == condition ? children.get(1) : children.get(0);
+            for (Operator child : children) {
+                plan.disconnect(and, child);
+            }
+            removeTree(plan, condition);
+            List<Operator> parents = plan.getPredecessors(and);
+            if (parents == null || parents.isEmpty()) {
+                plan.remove(and);
+            } else {
+                Operator parent = parents.get(0);
+                Pair<Integer, Integer> pos = plan.disconnect(parent, and);
+                plan.remove(and);
+                plan.connect(parent, pos.first, other, pos.second);
+            }
+        }
+
+        /**
+         * Removes an expression already disconnected from its parent
+         */
+        private void removeTree(LogicalExpressionPlan plan, Operator op) throws FrontendException {
+            List<Operator> succs = plan.getSuccessors(op);
+            if (succs != null) {
+                for (Operator succ : new ArrayList<Operator>(succs)) {
+                    plan.disconnect(op, succ);
+                    removeTree(plan, succ);
+                }
+            }
+            plan.remove(op);
+        }
+    }
+}
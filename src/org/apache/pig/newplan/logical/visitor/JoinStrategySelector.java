@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.visitor;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.IndexableLoadFunc;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.OrderedLoadFunc;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.ResourceStatistics.ResourceFieldStatistics;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.ReadToEndLoader;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.UriUtil;
+import org.apache.pig.impl.util.Utils;
+import org.apache.pig.newplan.DependencyOrderWalker;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.relational.LODistinct;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOForEach;
+import org.apache.pig.newplan.logical.relational.LOGenerate;
+import org.apache.pig.newplan.logical.relational.LOJoin;
+import org.apache.pig.newplan.logical.relational.LOJoin.JOINTYPE;
+import org.apache.pig.newplan.logical.relational.LOLimit;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LOSort;
+import org.apache.pig.newplan.logical.relational.LOSplit;
+import org.apache.pig.newplan.logical.relational.LOSplitOutput;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalNodesVisitor;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.tools.pigstats.PigStatsStore;
+
+/**
+ * Picks the strategy of the joins that the user did not give one for. It
+ * runs before the logical plan is optimized, so that the joins it picks a
+ * strategy for are handled like the ones the user gave it for.
+ * <p>
+ * With {@link PigConfiguration#JOIN_AUTO} turned on, a hash join becomes
+ * <ul>
+ * <li>a merge join if both of its inputs are loaded by loaders whose schemas
+ * declare them sorted in ascending order on the join keys, the right one
+ * being an {@link OrderedLoadFunc};</li>
+ * <li>else a replicated join if all of its inputs but the first are
+ * estimated to be smaller than
+ * {@link PigConfiguration#JOIN_REPLICATED_THRESHOLD} bytes, from the
+ * statistics of their loaders or the size of their files;</li>
+ * <li>else a skewed join if one key of its first input holds at least
+ * {@link PigConfiguration#JOIN_SKEWED_FRACTION} of the records, as reported
+ * by the statistics of its loader or found by reading a sample of it.</li>
+ * </ul>
+ * When the statistics of previous runs are kept in a {@link PigStatsStore},
+ * the recorded sizes of the inputs are used for replicated joins as well,
+ * with or without {@link PigConfiguration#JOIN_AUTO}.
+ */
+public class JoinStrategySelector extends LogicalRelationalNodesVisitor {
+
+    private static final Log LOG = LogFactory.getLog(JoinStrategySelector.class);
+
+    public static final long DEFAULT_REPLICATED_THRESHOLD = 10 * 1024 * 1024;
+
+    public static final float DEFAULT_SKEWED_FRACTION = 0.1f;
+
+    public static final int DEFAULT_SKEWED_SAMPLE = 1000;
+
+    private PigStatsStore statsStore;
+
+    private boolean auto;
+
+    private long replicatedThreshold;
+
+    private float skewedFraction;
+
+    private int skewedSample;
+
+    /**
+     * @param plan the logical plan
+     * @param pigContext the context the plan is compiled in
+     * @param statsStore the statistics of previous runs, or null
+     * @throws FrontendException
+     */
+    public JoinStrategySelector(OperatorPlan plan, PigContext pigContext,
+            PigStatsStore statsStore) throws FrontendException {
+        super(plan, new DependencyOrderWalker(plan));
+        this.statsStore = statsStore;
+        Properties props = pigContext.getProperties();
+        this.auto = Boolean.valueOf(props.getProperty(PigConfiguration.JOIN_AUTO, "false"));
+        this.replicatedThreshold = Long.parseLong(props.getProperty(
+                PigConfiguration.JOIN_REPLICATED_THRESHOLD,
+                String.valueOf(DEFAULT_REPLICATED_THRESHOLD)));
+        this.skewedFraction = Float.parseFloat(props.getProperty(
+                PigConfiguration.JOIN_SKEWED_FRACTION, String.valueOf(DEFAULT_SKEWED_FRACTION)));
+        this.skewedSample = Integer.parseInt(props.getProperty(
+                PigConfiguration.JOIN_SKEWED_SAMPLE, String.valueOf(DEFAULT_SKEWED_SAMPLE)));
+    }
+
+    /**
+     * @return whether there is anything to pick the join strategies from
+     */
+    public boolean isEnabled() {
+        return auto || statsStore != null;
+    }
+
+    @Override
+    public void visit(LOJoin join) throws FrontendException {
+        if (join.isPinnedOption(LOJoin.OPTION_JOIN) || join.getJoinType() != JOINTYPE.HASH
+                || join.getCustomPartitioner() != null) {
+            return;
+        }
+        List<Operator> inputs = plan.getPredecessors(join);
+        if (auto && isMergeable(join, inputs)) {
+            LOG.info("Using a merge join for " + join.getAlias()
+                    + " as both of its inputs are sorted on the join keys");
+            join.setJoinType(JOINTYPE.MERGE);
+        } else if (isReplicable(join, inputs)) {
+            join.setJoinType(JOINTYPE.REPLICATED);
+        } else if (auto && isSkewed(join, inputs)) {
+            join.setJoinType(JOINTYPE.SKEWED);
+        }
+    }
+
+    private boolean isMergeable(LOJoin join, List<Operator> inputs) throws FrontendException {
+        if (inputs.size() != 2 || !join.isInner(0) || !join.isInner(1)) {
+            return false;
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            if (!(inputs.get(i) instanceof LOLoad)) {
+                return false;
+            }
+            LOLoad load = (LOLoad)inputs.get(i);
+            if (i == 1 && !(load.getLoadFunc() instanceof OrderedLoadFunc
+                    || load.getLoadFunc() instanceof IndexableLoadFunc)) {
+                return false;
+            }
+            int[] keys = getKeyColumns(join, i);
+            ResourceSchema schema = getLoaderSchema(load);
+            if (keys == null || schema == null || schema.getSortKeys() == null
+                    || schema.getSortKeys().length < keys.length) {
+                return false;
+            }
+            for (int k = 0; k < keys.length; k++) {
+                if (schema.getSortKeys()[k] != keys[k]
+                        || schema.getSortKeyOrders()[k] != ResourceSchema.Order.ASCENDING) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isReplicable(LOJoin join, List<Operator> inputs) throws FrontendException {
+        // a replicated join keeps all of the inputs but the first in memory,
+        // and can only be outer on the first one when it has two
+        if (inputs.size() < 2 || !join.isInner(0) || (inputs.size() > 2 && !join.isInner(1))) {
+            return false;
+        }
+        long bytes = 0;
+        for (int i = 1; i < inputs.size(); i++) {
+            long size = getEstimatedSize((LogicalRelationalOperator)inputs.get(i));
+            if (size < 0) {
+                return false;
+            }
+            bytes += size;
+        }
+        if (bytes > replicatedThreshold) {
+            return false;
+        }
+        LOG.info("Using a replicated join for " + join.getAlias() + " as its replicated inputs"
+                + " are estimated to be " + bytes + " bytes");
+        return true;
+    }
+
+    private boolean isSkewed(LOJoin join, List<Operator> inputs) throws FrontendException {
+        if (inputs.size() != 2 || !(inputs.get(0) instanceof LOLoad)) {
+            return false;
+        }
+        int[] keys = getKeyColumns(join, 0);
+        if (keys == null || keys.length != 1) {
+            return false;
+        }
+        LOLoad load = (LOLoad)inputs.get(0);
+        float fraction = getMostCommonValueFraction(load, keys[0]);
+        if (fraction < skewedFraction) {
+            return false;
+        }
+        LOG.info("Using a skewed join for " + join.getAlias() + " as a key holds "
+                + fraction + " of the records of " + load.getAlias());
+        return true;
+    }
+
+    /**
+     * @return the columns that the keys of the given input of the join
+     * project, or null if some key is not the projection of a column
+     */
+    private int[] getKeyColumns(LOJoin join, int input) {
+        Collection<LogicalExpressionPlan> keyPlans = join.getJoinPlan(input);
+        int[] columns = new int[keyPlans.size()];
+        int i = 0;
+        for (LogicalExpressionPlan keyPlan : keyPlans) {
+            if (keyPlan.size() != 1 || !(keyPlan.getSources().get(0) instanceof ProjectExpression)) {
+                return null;
+            }
+            ProjectExpression project = (ProjectExpression)keyPlan.getSources().get(0);
+            if (project.isRangeOrStarProject() || project.getColNum() < 0) {
+                return null;
+            }
+            columns[i++] = project.getColNum();
+        }
+        return columns;
+    }
+
+    private ResourceSchema getLoaderSchema(LOLoad load) throws FrontendException {
+        if (!(load.getLoadFunc() instanceof LoadMetadata)) {
+            return null;
+        }
+        try {
+            return ((LoadMetadata)load.getLoadFunc()).getSchema(
+                    load.getFileSpec().getFileName(), new Job(load.getConfiguration()));
+        } catch (IOException e) {
+            LOG.warn("Unable to get the schema of " + load.getFileSpec().getFileName(), e);
+            return null;
+        }
+    }
+
+    private ResourceStatistics getLoaderStatistics(LOLoad load) throws FrontendException {
+        if (!(load.getLoadFunc() instanceof LoadMetadata)) {
+            return null;
+        }
+        try {
+            return ((LoadMetadata)load.getLoadFunc()).getStatistics(
+                    load.getFileSpec().getFileName(), new Job(load.getConfiguration()));
+        } catch (IOException e) {
+            LOG.warn("Unable to get the statistics of " + load.getFileSpec().getFileName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Estimates the size of a relation from the size recorded by a previous
+     * run, or from the size of the input it is loaded from when it is only
+     * filtered, projected or limited after being loaded.
+     * @return the size in bytes, or -1 if it cannot be estimated
+     */
+    private long getEstimatedSize(LogicalRelationalOperator op) throws FrontendException {
+        if (statsStore != null && op.getAlias() != null) {
+            Map<String, Long> stats = statsStore.getRelationStats(op.getAlias());
+            if (stats != null && stats.get(PigStatsStore.BYTES) != null) {
+                return stats.get(PigStatsStore.BYTES);
+            }
+        }
+        if (!auto) {
+            return -1;
+        }
+        if (op instanceof LOLoad) {
+            return getInputSize((LOLoad)op);
+        }
+        if (op instanceof LOFilter || op instanceof LOLimit || op instanceof LODistinct
+                || op instanceof LOSort || op instanceof LOSplit || op instanceof LOSplitOutput
+                || (op instanceof LOForEach && isProjection((LOForEach)op))) {
+            List<Operator> preds = plan.getPredecessors(op);
+            if (preds != null && preds.size() == 1) {
+                return getEstimatedSize((LogicalRelationalOperator)preds.get(0));
+            }
+        }
+        return -1;
+    }
+
+    private boolean isProjection(LOForEach foreach) {
+        LOGenerate gen = (LOGenerate)foreach.getInnerPlan().getSinks().get(0);
+        for (boolean flatten : gen.getFlattenFlags()) {
+            if (flatten) {
+                return false;
+            }
+        }
+        for (LogicalExpressionPlan outputPlan : gen.getOutputPlans()) {
+            if (outputPlan.size() != 1
+                    || !(outputPlan.getSources().get(0) instanceof ProjectExpression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long getInputSize(LOLoad load) throws FrontendException {
+        ResourceStatistics statistics = getLoaderStatistics(load);
+        if (statistics != null && statistics.getSizeInBytes() != null) {
+            return statistics.getSizeInBytes();
+        }
+        long size = 0;
+        boolean found = false;
+        try {
+            for (String location : LoadFunc.getPathStrings(load.getFileSpec().getFileName())) {
+                if (!UriUtil.isHDFSFileOrLocalOrS3N(location)) {
+                    return -1;
+                }
+                Path path = new Path(location);
+                FileSystem fs = path.getFileSystem(load.getConfiguration());
+                FileStatus[] status = fs.globStatus(path);
+                if (status != null) {
+                    for (FileStatus s : status) {
+                        size += Utils.getPathLength(fs, s);
+                        found = true;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to get the size of " + load.getFileSpec().getFileName(), e);
+            return -1;
+        }
+        return found ? size : -1;
+    }
+
+    /**
+     * Finds the fraction of the records of an input that its most common
+     * value of a column holds, from the statistics of its loader, or else
+     * from the first records of the input.
+     */
+    private float getMostCommonValueFraction(LOLoad load, int column) throws FrontendException {
+        ResourceStatistics statistics = getLoaderStatistics(load);
+        if (statistics != null && statistics.getFields() != null
+                && statistics.getFields().length > column) {
+            ResourceFieldStatistics field = statistics.getFields()[column];
+            if (field != null && field.getMostCommonValuesFreq() != null) {
+                float max = 0;
+                for (float freq : field.getMostCommonValuesFreq()) {
+                    max = Math.max(max, freq);
+                }
+                return max;
+            }
+        }
+        if (skewedSample <= 0) {
+            return 0;
+        }
+
+        Map<Object, Integer> counts = new HashMap<Object, Integer>();
+        int records = 0;
+        int max = 0;
+        try {
+            LoadFunc loadFunc = (LoadFunc)PigContext.instantiateFuncFromSpec(
+                    load.getFileSpec().getFuncSpec());
+            ReadToEndLoader loader = new ReadToEndLoader(loadFunc, load.getConfiguration(),
+                    load.getFileSpec().getFileName(), 0, load.getSignature());
+            try {
+                Tuple t;
+                while (records < skewedSample && (t = loader.getNext()) != null) {
+                    records++;
+                    Object key = t.size() > column ? t.get(column) : null;
+                    if (key == null) {
+                        // null keys never match, they are not skewed
+                        continue;
+                    }
+                    Integer count = counts.get(key);
+                    count = count == null ? 1 : count + 1;
+                    counts.put(key, count);
+                    max = Math.max(max, count);
+                }
+            } finally {
+                loader.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to sample " + load.getFileSpec().getFileName(), e);
+            return 0;
+        }
+        return records == 0 ? 0 : (float)max / records;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tools.pigstats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * Default {@link PigStatsStore}, which keeps the statistics of each script in
+ * a properties file of a local directory, set by pig.stats.store.dir and
+ * ~/.pigstats by default. The file of a script is rewritten as a whole when
+ * it is saved, so the last of concurrent runs of a script wins.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class FilePigStatsStore implements PigStatsStore {
+
+    private static final Log LOG = LogFactory.getLog(FilePigStatsStore.class);
+
+    private static final String JOB_PREFIX = "job/";
+
+    private static final String RELATION_PREFIX = "relation/";
+
+    private File file;
+
+    private Map<String, Map<String, Long>> jobs = new HashMap<String, Map<String, Long>>();
+
+    private Map<String, Map<String, Long>> relations = new HashMap<String, Map<String, Long>>();
+
+    @Override
+    public void open(String scriptSignature, Configuration conf) throws IOException {
+        String dir = conf.get(PigConfiguration.PROP_STATS_STORE_DIR);
+        if (dir == null) {
+            dir = System.getProperty("user.home") + File.separator + ".pigstats";
+        }
+        file = new File(dir, scriptSignature.replaceAll("[^A-Za-z0-9._-]", "_") + ".properties");
+        jobs.clear();
+        relations.clear();
+        if (!file.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        for (String key : props.stringPropertyNames()) {
+            // keys are <prefix><alias>/<statistic>
+            int end = key.lastIndexOf('/');
+            long value;
+            try {
+                value = Long.parseLong(props.getProperty(key));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring statistic " + key + " of " + file);
+                continue;
+            }
+            if (key.startsWith(JOB_PREFIX) && end > JOB_PREFIX.length()) {
+                put(jobs, key.substring(JOB_PREFIX.length(), end), key.substring(end + 1), value);
+            } else if (key.startsWith(RELATION_PREFIX) && end > RELATION_PREFIX.length()) {
+                put(relations, key.substring(RELATION_PREFIX.length(), end), key.substring(end + 1), value);
+            }
+        }
+        LOG.info("Read the statistics of " + jobs.size() + " jobs and " + relations.size()
+                + " relations from " + file);
+    }
+
+    private static void put(Map<String, Map<String, Long>> map, String name, String stat, long value) {
+        Map<String, Long> stats = map.get(name);
+        if (stats == null) {
+            stats = new HashMap<String, Long>();
+            map.put(name, stats);
+        }
+        stats.put(stat, value);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getJobStats(String jobAlias) {
+        return jobs.get(jobAlias);
+    }
+
+    @Override
+    public synchronized void putJobStats(String jobAlias, Map<String, Long> stats) {
+        jobs.put(jobAlias, new HashMap<String, Long>(stats));
+    }
+
+    @Override
+    public synchronized Map<String, Long> getRelationStats(String alias) {
+        return relations.get(alias);
+    }
+
+    @Override
+    public synchronized void putRelationStats(String alias, Map<String, Long> stats) {
+        relations.put(alias, new HashMap<String, Long>(stats));
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        Properties props = new Properties();
+        addProperties(props, JOB_PREFIX, jobs);
+        addProperties(props, RELATION_PREFIX, relations);
+
+        file.getParentFile().mkdirs();
+        // replace the file at once so that concurrent runs never read half of it
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            props.store(out, "Pig statistics");
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Unable to write " + file);
+        }
+    }
+
+    private static void addProperties(Properties props, String prefix,
+            Map<String, Map<String, Long>> map) {
+        for (Map.Entry<String, Map<String, Long>> e : map.entrySet()) {
+            for (Map.Entry<String, Long> stat : e.getValue().entrySet()) {
+                props.setProperty(prefix + e.getKey() + "/" + stat.getKey(),
+                        stat.getValue().toString());
+            }
+        }
+    }
+}
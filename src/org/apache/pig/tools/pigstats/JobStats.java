@@ -116,7 +116,9 @@ public final class JobStats extends Operator {
     
     private long mapInputRecords = 0;
     private long mapOutputRecords = 0;
+    private long mapOutputBytes = 0;
     private long reduceInputRecords = 0;
+    private long reduceInputGroups = 0;
     private long reduceOutputRecords = 0;
     private long hdfsBytesWritten = 0;
     private long hdfsBytesRead = 0;
@@ -175,6 +177,10 @@ public final class JobStats extends Operator {
 
     public long getReduceInputRecords() { return reduceInputRecords; }
 
+    public long getMapOutputBytes() { return mapOutputBytes; }
+
+    public long getReduceInputGroups() { return reduceInputGroups; }
+
     public long getSMMSpillCount() { return spillCount; }
     
     public long getProactiveSpillCountObjects() { return activeSpillCountObj; }
@@ -285,6 +291,10 @@ public final class JobStats extends Operator {
         }                    
     }
     
+    Configuration getConf() {
+        return conf;
+    }
+
     void setMapStat(int size, long max, long min, long avg, long median) {
         numberMaps = size;
         maxMapTime = max;
@@ -364,8 +374,12 @@ public final class JobStats extends Operator {
                     PigStatsUtil.MAP_INPUT_RECORDS).getCounter();
             mapOutputRecords = taskgroup.getCounterForName(
                     PigStatsUtil.MAP_OUTPUT_RECORDS).getCounter();
+            mapOutputBytes = taskgroup.getCounterForName(
+                    PigStatsUtil.MAP_OUTPUT_BYTES).getCounter();
             reduceInputRecords = taskgroup.getCounterForName(
                     PigStatsUtil.REDUCE_INPUT_RECORDS).getCounter();
+            reduceInputGroups = taskgroup.getCounterForName(
+                    PigStatsUtil.REDUCE_INPUT_GROUPS).getCounter();
             reduceOutputRecords = taskgroup.getCounterForName(
                     PigStatsUtil.REDUCE_OUTPUT_RECORDS).getCounter();
             hdfsBytesRead = hdfsgroup.getCounterForName(
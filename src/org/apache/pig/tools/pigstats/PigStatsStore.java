@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tools.pigstats;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * Interface to implement when you want to keep the statistics of the runs of
+ * a script somewhere else than in local files. The statistics of the
+ * map-reduce jobs and of the relations they store are recorded when the jobs
+ * finish, and looked up when the next run of the script is compiled to choose
+ * join strategies, the number of reducers and map side partial aggregation.
+ * <p>
+ * Statistics are sets of named numbers. Jobs are identified by the aliases
+ * they process, as in {@link JobStats#getAlias()}, and relations by their
+ * alias.
+ *
+ * @see FilePigStatsStore
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface PigStatsStore {
+
+    /** Number of records read by the maps of a job */
+    static final String MAP_INPUT_RECORDS = "map.input.records";
+
+    /** Number of records output by the maps of a job */
+    static final String MAP_OUTPUT_RECORDS = "map.output.records";
+
+    /** Number of bytes output by the maps of a job, before any compression */
+    static final String MAP_OUTPUT_BYTES = "map.output.bytes";
+
+    /** Number of distinct keys read by the reduces of a job */
+    static final String REDUCE_INPUT_GROUPS = "reduce.input.groups";
+
+    /** Number of reduces of a job */
+    static final String REDUCES = "reduces";
+
+    /** Average time of the maps of a job in milliseconds */
+    static final String AVG_MAP_TIME = "avg.map.time";
+
+    /** Average time of the reduces of a job in milliseconds */
+    static final String AVG_REDUCE_TIME = "avg.reduce.time";
+
+    /** Number of records of a relation */
+    static final String RECORDS = "records";
+
+    /** Number of bytes of a relation, as stored */
+    static final String BYTES = "bytes";
+
+    /**
+     * Opens the statistics of a script.
+     * @param scriptSignature identifies the script across its runs
+     * @param conf configuration
+     * @throws IOException
+     */
+    public void open(String scriptSignature, Configuration conf) throws IOException;
+
+    /**
+     * Returns the statistics recorded for a job by the latest run.
+     * @param jobAlias the aliases processed by the job
+     * @return the statistics, or null if none were recorded
+     */
+    public Map<String, Long> getJobStats(String jobAlias);
+
+    /**
+     * Records the statistics of a job, in place of the previous ones.
+     * @param jobAlias the aliases processed by the job
+     * @param stats the statistics
+     */
+    public void putJobStats(String jobAlias, Map<String, Long> stats);
+
+    /**
+     * Returns the statistics recorded for a relation by the latest run.
+     * @param alias the alias of the relation
+     * @return the statistics, or null if none were recorded
+     */
+    public Map<String, Long> getRelationStats(String alias);
+
+    /**
+     * Records the statistics of a relation, in place of the previous ones.
+     * @param alias the alias of the relation
+     * @param stats the statistics
+     */
+    public void putRelationStats(String alias, Map<String, Long> stats);
+
+    /**
+     * Makes the statistics recorded so far available to later runs.
+     * @throws IOException
+     */
+    public void save() throws IOException;
+}
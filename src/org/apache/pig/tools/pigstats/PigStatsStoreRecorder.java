@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tools.pigstats;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+
+/**
+ * Records the statistics of the jobs of a script into a {@link PigStatsStore}
+ * as they finish, and saves them once all the jobs are done.
+ * <p>
+ * Besides the counters of each job, the number of records and bytes of the
+ * relation that a job stores, when it stores only one, and the number of
+ * groups of the relation that a job groups are recorded under the alias of
+ * the relation.
+ */
+class PigStatsStoreRecorder implements PigProgressNotificationListener {
+
+    private static final Log LOG = LogFactory.getLog(PigStatsStoreRecorder.class);
+
+    private PigStatsStore store;
+
+    // relations recorded by this run, whose statistics are merged
+    private Set<String> relations = new HashSet<String>();
+
+    PigStatsStoreRecorder(PigStatsStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void jobFinishedNotification(String scriptId, JobStats js) {
+        if (js.getHadoopCounters() == null || js.getAlias() == null) {
+            return;
+        }
+        Map<String, Long> stats = new HashMap<String, Long>();
+        stats.put(PigStatsStore.MAP_INPUT_RECORDS, js.getMapInputRecords());
+        stats.put(PigStatsStore.MAP_OUTPUT_RECORDS, js.getMapOutputRecords());
+        stats.put(PigStatsStore.MAP_OUTPUT_BYTES, js.getMapOutputBytes());
+        stats.put(PigStatsStore.REDUCE_INPUT_GROUPS, js.getReduceInputGroups());
+        stats.put(PigStatsStore.REDUCES, (long)js.getNumberReduces());
+        stats.put(PigStatsStore.AVG_MAP_TIME, js.getAvgMapTime());
+        stats.put(PigStatsStore.AVG_REDUCE_TIME, js.getAvgREduceTime());
+        store.putJobStats(js.getAlias(), stats);
+
+        PigStats ps = PigStats.get();
+        MapReduceOper mro = (ps instanceof SimplePigStats)
+                ? ((SimplePigStats)ps).getMapReduceOper(js) : null;
+        if (mro == null) {
+            return;
+        }
+
+        if (!mro.reducePlan.isEmpty()) {
+            List<PhysicalOperator> mapLeaves = mro.mapPlan.getLeaves();
+            if (mapLeaves.size() == 1 && mapLeaves.get(0) instanceof POLocalRearrange
+                    && mapLeaves.get(0).getAlias() != null) {
+                stats = new HashMap<String, Long>();
+                stats.put(PigStatsStore.RECORDS, js.getReduceInputGroups());
+                stats.put(PigStatsStore.MAP_INPUT_RECORDS, js.getMapInputRecords());
+                putRelationStats(mapLeaves.get(0).getAlias(), stats);
+            }
+        }
+
+        PhysicalPlan plan = mro.reducePlan.isEmpty() ? mro.mapPlan : mro.reducePlan;
+        List<PhysicalOperator> leaves = plan.getLeaves();
+        if (leaves.size() == 1 && leaves.get(0) instanceof POStore) {
+            List<PhysicalOperator> preds = plan.getPredecessors(leaves.get(0));
+            if (preds != null && preds.size() == 1 && preds.get(0).getAlias() != null) {
+                long bytes = JobStats.getOutputSize((POStore)leaves.get(0), js.getConf());
+                if (bytes >= 0) {
+                    stats = new HashMap<String, Long>();
+                    stats.put(PigStatsStore.RECORDS, mro.reducePlan.isEmpty()
+                            ? js.getMapOutputRecords() : js.getReduceOutputRecords());
+                    stats.put(PigStatsStore.BYTES, bytes);
+                    putRelationStats(preds.get(0).getAlias(), stats);
+                }
+            }
+        }
+    }
+
+    private void putRelationStats(String alias, Map<String, Long> stats) {
+        if (!relations.add(alias)) {
+            Map<String, Long> previous = store.getRelationStats(alias);
+            if (previous != null) {
+                previous = new HashMap<String, Long>(previous);
+                previous.putAll(stats);
+                stats = previous;
+            }
+        }
+        store.putRelationStats(alias, stats);
+    }
+
+    @Override
+    public void launchCompletedNotification(String scriptId, int numJobsSucceeded) {
+        try {
+            store.save();
+        } catch (IOException e) {
+            LOG.warn("Unable to save the statistics of the script", e);
+        }
+    }
+
+    @Override
+    public void initialPlanNotification(String scriptId, MROperPlan plan) {
+    }
+
+    @Override
+    public void launchStartedNotification(String scriptId, int numJobsToLaunch) {
+    }
+
+    @Override
+    public void jobsSubmittedNotification(String scriptId, int numJobsSubmitted) {
+    }
+
+    @Override
+    public void jobStartedNotification(String scriptId, String assignedJobId) {
+    }
+
+    @Override
+    public void jobFailedNotification(String scriptId, JobStats jobStats) {
+    }
+
+    @Override
+    public void outputCompletedNotification(String scriptId, OutputStats outputStats) {
+    }
+
+    @Override
+    public void progressUpdatedNotification(String scriptId, int progress) {
+    }
+}
@@ -57,8 +57,12 @@ public abstract class PigStatsUtil {
             = "MAP_INPUT_RECORDS";
     public static final String MAP_OUTPUT_RECORDS 
             = "MAP_OUTPUT_RECORDS";
+    public static final String MAP_OUTPUT_BYTES 
+            = "MAP_OUTPUT_BYTES";
     public static final String REDUCE_INPUT_RECORDS 
             = "REDUCE_INPUT_RECORDS";
+    public static final String REDUCE_INPUT_GROUPS 
+            = "REDUCE_INPUT_GROUPS";
     public static final String REDUCE_OUTPUT_RECORDS 
             = "REDUCE_OUTPUT_RECORDS";
     public static final String HDFS_BYTES_WRITTEN 
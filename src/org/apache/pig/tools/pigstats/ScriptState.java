@@ -31,17 +31,21 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.VersionInfo;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.NativeMapReduceOper;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
@@ -198,6 +202,10 @@ public class ScriptState {
     private List<PigProgressNotificationListener> listeners
             = new ArrayList<PigProgressNotificationListener>();
 
+    private PigStatsStore statsStore = null;
+
+    private boolean statsStoreOpened = false;
+
     public static ScriptState start(String commandLine, PigContext pigContext) {
         ScriptState ss = new ScriptState(UUID.randomUUID().toString());
         ss.setCommandLine(commandLine);
@@ -226,6 +234,55 @@ public class ScriptState {
         return listeners;
     }
 
+    /**
+     * Returns the statistics of the previous runs of the script when
+     * pig.stats.store is turned on, and records the statistics of this
+     * run into them.
+     * @param pigContext the context of the script
+     * @return the statistics, or null if they are turned off, cannot be
+     * opened, or the script cannot be identified
+     */
+    public synchronized PigStatsStore getStatsStore(PigContext pigContext) {
+        if (statsStoreOpened || pigContext == null) {
+            return statsStore;
+        }
+        statsStoreOpened = true;
+        Properties props = pigContext.getProperties();
+        if (!Boolean.valueOf(props.getProperty(PigConfiguration.PROP_STATS_STORE, "false"))) {
+            return null;
+        }
+        String signature = props.getProperty(PigConfiguration.PROP_STATS_STORE_KEY);
+        if (signature == null && fileName != null) {
+            signature = new File(fileName).getName();
+        }
+        if (signature == null && script != null && script.length() > 0) {
+            signature = DigestUtils.md5Hex(script);
+        }
+        if (signature == null) {
+            LOG.info("Not using the statistics of previous runs as the script has no name,"
+                    + " set " + PigConfiguration.PROP_STATS_STORE_KEY + " to name it");
+            return null;
+        }
+        String className = props.getProperty(PigConfiguration.PROP_STATS_STORE_CLASS,
+                FilePigStatsStore.class.getName());
+        PigStatsStore store;
+        try {
+            store = (PigStatsStore)PigContext.instantiateFuncFromSpec(className);
+        } catch (RuntimeException e) {
+            // a misspelled class is not worth failing the script for
+            LOG.warn("Unable to instantiate the statistics store " + className, e);
+            return null;
+        }
+        try {
+            store.open(signature, ConfigurationUtil.toConfiguration(props));
+            registerListener(new PigStatsStoreRecorder(store));
+            statsStore = store;
+        } catch (IOException e) {
+            LOG.warn("Unable to open the statistics of previous runs of " + signature, e);
+        }
+        return statsStore;
+    }
+
     public void emitInitialPlanNotification(MROperPlan plan) {
         for (PigProgressNotificationListener listener: listeners) {
             try {
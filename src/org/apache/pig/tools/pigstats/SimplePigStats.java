@@ -430,6 +430,21 @@ final class SimplePigStats extends PigStats {
         return js;
     }
     
+    /**
+     * @return the MR operator that a job was run for, or null if unknown
+     */
+    MapReduceOper getMapReduceOper(JobStats js) {
+        if (mroJobMap == null) {
+            return null;
+        }
+        for (Map.Entry<MapReduceOper, JobStats> e : mroJobMap.entrySet()) {
+            if (e.getValue() == js) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
     @SuppressWarnings("deprecation")
     public JobStats addJobStatsForNative(NativeMapReduceOper mr) {
         JobStats js = mroJobMap.get(mr);
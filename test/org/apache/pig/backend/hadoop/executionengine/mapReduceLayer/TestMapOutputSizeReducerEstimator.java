@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.ExecType;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.test.Util;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestMapOutputSizeReducerEstimator {
+
+    private static File input;
+
+    private static PigContext pc;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        input = File.createTempFile("TestMapOutputSizeReducerEstimator", ".txt");
+        input.deleteOnExit();
+        PrintWriter w = new PrintWriter(input);
+        for (int i = 0; i < 2000; i++) {
+            w.println(i + "\ta b c d e f g h i j\t" + (i % 100));
+        }
+        w.close();
+        pc = new PigContext(ExecType.LOCAL, new Properties());
+        pc.connect();
+    }
+
+    private static MapReduceOper compile(String script) throws Exception {
+        MROperPlan mrPlan = Util.buildMRPlan("a = load '" + Util.encodeEscape(input.getAbsolutePath())
+                + "' as (k:int, words:chararray, v:int);" + script, pc);
+        return mrPlan.getRoots().get(0);
+    }
+
+    private static int estimate(PigReducerEstimator estimator, MapReduceOper mro)
+            throws Exception {
+        Configuration conf = ConfigurationUtil.toConfiguration(pc.getProperties());
+        conf.setLong(PigReducerEstimator.BYTES_PER_REDUCER_PARAM, input.length() / 10);
+        return estimator.estimateNumberOfReducers(new Job(conf), mro);
+    }
+
+    @Test
+    public void testSelectiveFilter() throws Exception {
+        MapReduceOper mro = compile("b = filter a by k < 20;"
+                + "c = group b by v; store c into 'output';");
+        Assert.assertEquals(10, estimate(new InputSizeReducerEstimator(), mro));
+        Assert.assertEquals(1, estimate(new MapOutputSizeReducerEstimator(), mro));
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        MapReduceOper mro = compile("b = foreach a generate v;"
+                + "c = distinct b; store c into 'output';");
+        int reducers = estimate(new MapOutputSizeReducerEstimator(), mro);
+        Assert.assertTrue("reducers: " + reducers, reducers > 0 && reducers < 10);
+    }
+
+    @Test
+    public void testFlatten() throws Exception {
+        MapReduceOper mro = compile("b = foreach a generate k, flatten(TOKENIZE(words));"
+                + "c = group b by $1; store c into 'output';");
+        int reducers = estimate(new MapOutputSizeReducerEstimator(), mro);
+        Assert.assertTrue("reducers: " + reducers, reducers > 10);
+    }
+
+    @Test
+    public void testUnsupportedPlan() throws Exception {
+        MapReduceOper mro = compile("b = filter a by k < 20;"
+                + "c = group b by v; store b into 'output1'; store c into 'output2';");
+        Assert.assertEquals(estimate(new InputSizeReducerEstimator(), mro),
+                estimate(new MapOutputSizeReducerEstimator(), mro));
+    }
+
+    @Test
+    public void testSampleRecords() throws Exception {
+        MapReduceOper mro = compile("b = filter a by k < 20;"
+                + "c = group b by v; store c into 'output';");
+        Configuration conf = ConfigurationUtil.toConfiguration(pc.getProperties());
+        conf.setLong(PigReducerEstimator.BYTES_PER_REDUCER_PARAM, input.length() / 10);
+        conf.setInt(MapOutputSizeReducerEstimator.SAMPLE_RECORDS_PARAM, 0);
+        Assert.assertEquals(10, new MapOutputSizeReducerEstimator()
+                .estimateNumberOfReducers(new Job(conf), mro));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.builtin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.Test;
+
+public class TestLazyDelimitedTuple {
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private static ResourceFieldSchema field(byte type) {
+        return new ResourceFieldSchema().setType(type);
+    }
+
+    private static LazyDelimitedTuple.FieldCaster caster(byte... types) {
+        ResourceFieldSchema[] fieldSchemas = new ResourceFieldSchema[types.length];
+        int[] schemaIndexes = new int[types.length];
+        for (int i = 0; i < types.length; i++) {
+            fieldSchemas[i] = field(types[i]);
+            schemaIndexes[i] = i;
+        }
+        return new LazyDelimitedTuple.FieldCaster(new Utf8StorageConverter(),
+                fieldSchemas, schemaIndexes);
+    }
+
+    private static LazyDelimitedTuple lazyTuple(LazyDelimitedTuple.FieldCaster caster,
+            String line, int firstField) throws Exception {
+        byte[] bytes = line.getBytes("UTF-8");
+        String[] fields = line.split("\t", -1);
+        int[] bounds = new int[2 * fields.length];
+        int start = 0;
+        for (int i = 0; i < fields.length; i++) {
+            bounds[2 * i] = start;
+            start += fields[i].getBytes("UTF-8").length;
+            bounds[2 * i + 1] = start;
+            start++;
+        }
+        return new LazyDelimitedTuple(caster, bytes, bounds, firstField);
+    }
+
+    @Test
+    public void testCast() throws Exception {
+        LazyDelimitedTuple t = lazyTuple(caster(DataType.INTEGER, DataType.LONG,
+                DataType.DOUBLE, DataType.CHARARRAY, DataType.BYTEARRAY, DataType.FLOAT),
+                "-12\t9223372036854775807\t0.25\tcafé\tab\t1.5", 0);
+        assertEquals(6, t.size());
+        assertEquals(1.5f, t.get(5));
+        assertEquals(-12, t.get(0));
+        assertEquals(Long.MAX_VALUE, t.get(1));
+        assertEquals(0.25, t.get(2));
+        assertEquals("café", t.get(3));
+        assertEquals(new DataByteArray("ab"), t.get(4));
+    }
+
+    @Test
+    public void testNotCast() throws Exception {
+        // the last field is past the size of the line read, as when a line
+        // has less fields than the schema
+        LazyDelimitedTuple.FieldCaster caster = new LazyDelimitedTuple.FieldCaster(
+                new Utf8StorageConverter(),
+                new ResourceFieldSchema[] { field(DataType.INTEGER), field(DataType.INTEGER) },
+                new int[] { 0, 5 });
+        LazyDelimitedTuple t = lazyTuple(caster, "1\t\t2\t3", 0);
+        assertEquals(1, t.get(0));
+        assertNull(t.get(1));
+        assertEquals(new DataByteArray("2"), t.get(2));
+        assertEquals(new DataByteArray("3"), t.get(3));
+
+        t = lazyTuple(new LazyDelimitedTuple.FieldCaster(), "1\t2", 1);
+        assertEquals(3, t.size());
+        assertNull(t.get(0));
+        assertEquals(new DataByteArray("1"), t.get(1));
+    }
+
+    @Test
+    public void testSetAndAppend() throws Exception {
+        LazyDelimitedTuple t = lazyTuple(caster(DataType.INTEGER, DataType.INTEGER),
+                "1\t2", 1);
+        t.set(0, "tag");
+        t.set(2, 5);
+        t.append(null);
+        assertEquals(tf.newTuple(java.util.Arrays.<Object>asList("tag", 1, 5, null)), t);
+        assertEquals(t.hashCode(), tf.newTuple(t.getAll()).hashCode());
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        LazyDelimitedTuple t = lazyTuple(caster(DataType.INTEGER, DataType.CHARARRAY,
+                DataType.DOUBLE), "7\tx\t", 0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        t.write(new DataOutputStream(bytes));
+        Tuple read = tf.newTuple();
+        read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(tf.newTuple(java.util.Arrays.<Object>asList(7, "x", null)), read);
+        assertEquals(read, t);
+    }
+
+    @Test
+    public void testParseNumbers() throws Exception {
+        String[] values = { "0", "-0", "007", "-", "+1", " 1", "1 ", "2147483647",
+                "2147483648", "-2147483648", "-2147483649", "9223372036854775807",
+                "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+                "12L", "1.", ".5", "-.5", ".", "1.5.2", "1e3", "0.1", "0.3", "-3.14",
+                "123456789.123456", "3.14159265358979323846", "9007199254740993",
+                "9007199254740992", "0.000000000000000000001", "NaN", "Infinity", "abc" };
+        for (String value : values) {
+            checkParse(value);
+        }
+        Random r = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (r.nextBoolean()) {
+                sb.append('-');
+            }
+            int digits = 1 + r.nextInt(20);
+            for (int j = 0; j < digits; j++) {
+                sb.append((char) ('0' + r.nextInt(10)));
+            }
+            if (r.nextBoolean()) {
+                sb.insert(r.nextInt(sb.length() + 1), '.');
+            }
+            checkParse(sb.toString());
+        }
+    }
+
+    private void checkParse(String value) throws Exception {
+        Utf8StorageConverter converter = new Utf8StorageConverter();
+        byte[] bytes = value.getBytes("UTF-8");
+        LazyDelimitedTuple t = lazyTuple(caster(DataType.INTEGER, DataType.LONG,
+                DataType.DOUBLE), value + "\t" + value + "\t" + value, 0);
+        assertEquals(value, converter.bytesToInteger(bytes), t.get(0));
+        assertEquals(value, converter.bytesToLong(bytes), t.get(1));
+        assertEquals(value, converter.bytesToDouble(bytes), t.get(2));
+    }
+}
@@ -4,6 +4,7 @@ import static org.apache.pig.builtin.mock.Storage.bag;
 import static org.apache.pig.builtin.mock.Storage.tuple;
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -22,6 +23,7 @@ import org.apache.pig.backend.executionengine.ExecJob;
 import org.apache.pig.builtin.mock.Storage;
 import org.apache.pig.builtin.mock.Storage.Data;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.test.Util;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -213,6 +215,32 @@ public class TestSpark {
         pigServer.shutdown();
     }
 
+    @Test
+    public void testAlgebraicGroupBy() throws Exception {
+        PigServer pigServer = newPigServer();
+        Data data = Storage.resetData(pigServer);
+        // enough values per key for them to be combined several times
+        Tuple[] input = new Tuple[1000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = tuple("key" + (i % 3), i);
+        }
+        data.set("input", "k:chararray,v:int", input);
+
+        pigServer.registerQuery("A = LOAD 'input' using mock.Storage;");
+        pigServer.registerQuery("B = GROUP A BY k;");
+        pigServer.registerQuery("C = FOREACH B GENERATE group, COUNT(A), SUM(A.v), MAX(A.v);");
+        pigServer.registerQuery("STORE C INTO 'output' using mock.Storage;");
+
+        assertEquals(
+                Arrays.asList(
+                        tuple("key0", 334l, 166833l, 999),
+                        tuple("key1", 333l, 166167l, 997),
+                        tuple("key2", 333l, 166500l, 998)),
+                sortByIndex(data.get("output"), 0));
+
+        pigServer.shutdown();
+    }
+
     @Test
     public void testForEach() throws Exception {
         PigServer pigServer = newPigServer();
@@ -639,6 +667,117 @@ public class TestSpark {
         pigServer.shutdown();
     }
 
+    @Test
+    public void testReplicatedJoin() throws Exception {
+        PigServer pigServer = newPigServer();
+        Data data = Storage.resetData(pigServer);
+        data.set("input1",
+                tuple(1, "a"),
+                tuple(2, "b"),
+                tuple(3, "c"),
+                tuple(1, "d"));
+        data.set("input2",
+                tuple(1, "e"),
+                tuple(2, "f"),
+                tuple(1, "g"));
+
+        pigServer.registerQuery("A = LOAD 'input1' using mock.Storage() as (k:int, v:chararray);");
+        pigServer.registerQuery("B = LOAD 'input2' using mock.Storage() as (k:int, v:chararray);");
+        pigServer.registerQuery("C = JOIN A BY k LEFT OUTER, B BY k USING 'replicated';");
+        pigServer.registerQuery("STORE C INTO 'output' using mock.Storage;");
+
+        List<Tuple> sortedOutput = data.get("output");
+        Collections.sort(sortedOutput);
+
+        assertEquals(
+                Arrays.asList(
+                        tuple(1, "a", 1, "e"),
+                        tuple(1, "a", 1, "g"),
+                        tuple(1, "d", 1, "e"),
+                        tuple(1, "d", 1, "g"),
+                        tuple(2, "b", 2, "f"),
+                        tuple(3, "c", null, null)
+                        ),
+                        sortedOutput);
+
+        pigServer.shutdown();
+    }
+
+    @Test
+    public void testSkewedJoin() throws Exception {
+        PigServer pigServer = newPigServer();
+        Data data = Storage.resetData(pigServer);
+        List<Tuple> input1 = new ArrayList<Tuple>();
+        // key 1 is skewed
+        for (int i = 0; i < 100; i++) {
+            input1.add(tuple(i < 90 ? 1 : i, "a" + i));
+        }
+        input1.add(tuple(null, "n"));
+        data.set("input1", input1);
+        data.set("input2",
+                tuple(1, "e"),
+                tuple(1, "f"),
+                tuple(95, "g"),
+                tuple(200, "h"),
+                tuple(null, "m"));
+
+        pigServer.registerQuery("A = LOAD 'input1' using mock.Storage() as (k:int, v:chararray);");
+        pigServer.registerQuery("B = LOAD 'input2' using mock.Storage() as (k:int, v:chararray);");
+        pigServer.registerQuery("C = JOIN A BY k FULL OUTER, B BY k USING 'skewed' PARALLEL 4;");
+        pigServer.registerQuery("STORE C INTO 'output' using mock.Storage;");
+
+        List<Tuple> output = data.get("output");
+        // 90 * 2 for key 1, 1 for key 95, 9 left only, 1 right only and the 2 nulls
+        assertEquals(180 + 1 + 9 + 1 + 2, output.size());
+        int key1 = 0;
+        for (Tuple t : output) {
+            if (Integer.valueOf(1).equals(t.get(0))) {
+                assertEquals(1, t.get(2));
+                key1++;
+            }
+        }
+        assertEquals(180, key1);
+        assertEquals(1, Collections.frequency(output, tuple(95, "a95", 95, "g")));
+        assertEquals(1, Collections.frequency(output, tuple(null, null, 200, "h")));
+        assertEquals(1, Collections.frequency(output, tuple(null, "n", null, null)));
+        assertEquals(1, Collections.frequency(output, tuple(null, null, null, "m")));
+
+        pigServer.shutdown();
+    }
+
+    @Test
+    public void testMergeJoin() throws Exception {
+        PigServer pigServer = newPigServer();
+        Data data = Storage.resetData(pigServer);
+        // merge join needs an OrderedLoadFunc on the right
+        File input1 = Util.createInputFile("input1", ".txt",
+                new String[] { "1\ta", "1\td", "2\tb", "3\tc" });
+        File input2 = Util.createInputFile("input2", ".txt",
+                new String[] { "1\te", "1\tg", "2\tf" });
+
+        pigServer.registerQuery("A = LOAD '" + Util.encodeEscape(input1.getAbsolutePath())
+                + "' as (k:int, v:chararray);");
+        pigServer.registerQuery("B = LOAD '" + Util.encodeEscape(input2.getAbsolutePath())
+                + "' as (k:int, v:chararray);");
+        pigServer.registerQuery("C = JOIN A BY k, B BY k USING 'merge';");
+        pigServer.registerQuery("STORE C INTO 'output' using mock.Storage;");
+
+        List<Tuple> sortedOutput = data.get("output");
+        Collections.sort(sortedOutput);
+
+        assertEquals(
+                Arrays.asList(
+                        tuple(1, "a", 1, "e"),
+                        tuple(1, "a", 1, "g"),
+                        tuple(1, "d", 1, "e"),
+                        tuple(1, "d", 1, "g"),
+                        tuple(2, "b", 2, "f")
+                        ),
+                        sortedOutput);
+
+        pigServer.shutdown();
+    }
+
     @Test
     public void testCachingLoad() throws Exception {
 
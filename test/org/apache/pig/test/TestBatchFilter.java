@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionCompiler;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.test.utils.GenPhyOp;
+import org.junit.Test;
+
+public class TestBatchFilter {
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private Random r = new Random(42L);
+
+    private POProject intProject(int col) {
+        POProject p = GenPhyOp.exprProject(col);
+        p.setResultType(DataType.INTEGER);
+        return p;
+    }
+
+    private ConstantExpression intConst(int value) {
+        ConstantExpression c = GenPhyOp.exprConst();
+        c.setValue(value);
+        c.setResultType(DataType.INTEGER);
+        return c;
+    }
+
+    /**
+     * ($0 + $1 > 10) AND ($1 == 1)
+     */
+    private PhysicalPlan buildPlan() throws Exception {
+        POProject p0 = intProject(0);
+        POProject p1 = intProject(1);
+        Add add = new Add(new OperatorKey("", r.nextLong()));
+        add.setLhs(p0);
+        add.setRhs(p1);
+        add.setResultType(DataType.INTEGER);
+        ConstantExpression ten = intConst(10);
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(add, ten, DataType.INTEGER);
+
+        POProject p2 = intProject(1);
+        ConstantExpression one = intConst(1);
+        EqualToExpr eq = GenPhyOp.compEqualToExpr(p2, one, DataType.INTEGER);
+        POAnd and = GenPhyOp.compAndExpr(gt, eq);
+
+        PhysicalPlan ip = new PhysicalPlan();
+        ip.add(p0);
+        ip.add(p1);
+        ip.add(add);
+        ip.add(ten);
+        ip.add(gt);
+        ip.add(p2);
+        ip.add(one);
+        ip.add(eq);
+        ip.add(and);
+        ip.connect(p0, add);
+        ip.connect(p1, add);
+        ip.connect(add, gt);
+        ip.connect(ten, gt);
+        ip.connect(p2, eq);
+        ip.connect(one, eq);
+        ip.connect(gt, and);
+        ip.connect(eq, and);
+        return ip;
+    }
+
+    private DataBag buildInput(int rows) throws Exception {
+        DataBag bag = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < rows; i++) {
+            Tuple t = tf.newTuple(2);
+            int rand = r.nextInt(10);
+            t.set(0, rand == 0 ? null : Integer.valueOf(r.nextInt(20)));
+            t.set(1, rand == 1 ? null : Integer.valueOf(r.nextInt(3)));
+            bag.add(t);
+        }
+        // overflows to a negative number, as the row path does
+        Tuple t = tf.newTuple(2);
+        t.set(0, Integer.MAX_VALUE);
+        t.set(1, 1);
+        bag.add(t);
+        return bag;
+    }
+
+    /**
+     * ($0 > $1) IS NULL
+     */
+    private PhysicalPlan buildIsNullPlan() throws Exception {
+        POProject p0 = intProject(0);
+        POProject p1 = intProject(1);
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(p0, p1, DataType.INTEGER);
+        POIsNull isNull = GenPhyOp.compIsNullExpr();
+        isNull.setExpr(gt);
+        isNull.setOperandType(DataType.BOOLEAN);
+        isNull.setResultType(DataType.BOOLEAN);
+
+        PhysicalPlan ip = new PhysicalPlan();
+        ip.add(p0);
+        ip.add(p1);
+        ip.add(gt);
+        ip.add(isNull);
+        ip.connect(p0, gt);
+        ip.connect(p1, gt);
+        ip.connect(gt, isNull);
+        return ip;
+    }
+
+    private List<Tuple> runFilter(DataBag input, boolean batchMode, int batchSize) throws Exception {
+        return runFilter(buildPlan(), input, batchMode, batchSize);
+    }
+
+    private List<Tuple> runFilter(PhysicalPlan plan, DataBag input, boolean batchMode,
+            int batchSize) throws Exception {
+        PORead read = GenPhyOp.topReadOp(input);
+        POFilter filter = GenPhyOp.connectedFilterOp(read);
+        filter.setPlan(plan);
+        filter.setBatchMode(batchMode);
+        filter.setBatchSize(batchSize);
+
+        PhysicalPlan op = new PhysicalPlan();
+        op.add(read);
+        op.add(filter);
+        op.connect(read, filter);
+        op.endOfAllInput = true;
+        filter.setParentPlan(op);
+
+        List<Tuple> out = new ArrayList<Tuple>();
+        Result res;
+        while ((res = filter.getNextTuple()).returnStatus == POStatus.STATUS_OK) {
+            out.add((Tuple) res.result);
+        }
+        assertEquals(POStatus.STATUS_EOP, res.returnStatus);
+        return out;
+    }
+
+    @Test
+    public void testBatchModeMatchesRowMode() throws Exception {
+        DataBag input = buildInput(1000);
+        List<Tuple> expected = runFilter(input, false, 0);
+        assertFalse(expected.isEmpty());
+        // batch sizes that divide the input evenly and that leave a
+        // partial last batch
+        for (int batchSize : new int[] { 1, 7, 1001, 4096 }) {
+            assertEquals("batch size " + batchSize, expected, runFilter(input, true, batchSize));
+        }
+    }
+
+    @Test
+    public void testIsNullOverComparison() throws Exception {
+        // a comparison with a null operand has a NULL status, which IS NULL
+        // passes on, so the row is dropped rather than kept
+        assertNull(VectorExpressionCompiler.compile(buildIsNullPlan(), 16));
+        DataBag input = buildInput(100);
+        List<Tuple> expected = runFilter(buildIsNullPlan(), input, false, 0);
+        assertTrue(expected.isEmpty());
+        assertEquals(expected, runFilter(buildIsNullPlan(), input, true, 7));
+    }
+
+    @Test
+    public void testPartialBatchHeldUntilEndOfAllInput() throws Exception {
+        DataBag input = BagFactory.getInstance().newDefaultBag();
+        Tuple t = tf.newTuple(2);
+        t.set(0, 20);
+        t.set(1, 1);
+        input.add(t);
+
+        PORead read = GenPhyOp.topReadOp(input);
+        POFilter filter = GenPhyOp.connectedFilterOp(read);
+        filter.setPlan(buildPlan());
+        filter.setBatchMode(true);
+        filter.setBatchSize(16);
+        PhysicalPlan op = new PhysicalPlan();
+        op.add(read);
+        op.add(filter);
+        op.connect(read, filter);
+        filter.setParentPlan(op);
+
+        assertEquals(POStatus.STATUS_EOP, filter.getNextTuple().returnStatus);
+        op.endOfAllInput = true;
+        Result res = filter.getNextTuple();
+        assertEquals(POStatus.STATUS_OK, res.returnStatus);
+        assertEquals(t, res.result);
+        assertEquals(POStatus.STATUS_EOP, filter.getNextTuple().returnStatus);
+    }
+
+    @Test
+    public void testCompiler() throws Exception {
+        assertNotNull(VectorExpressionCompiler.compile(buildPlan(), 16));
+
+        // chararray comparisons are not supported
+        POProject p = GenPhyOp.exprProject(0);
+        p.setResultType(DataType.CHARARRAY);
+        ConstantExpression c = GenPhyOp.exprConst();
+        c.setValue("a");
+        c.setResultType(DataType.CHARARRAY);
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(p, c, DataType.CHARARRAY);
+        PhysicalPlan ip = new PhysicalPlan();
+        ip.add(p);
+        ip.add(c);
+        ip.add(gt);
+        ip.connect(p, gt);
+        ip.connect(c, gt);
+        assertNull(VectorExpressionCompiler.compile(ip, 16));
+        assertTrue(VectorExpressionCompiler.isSupported(buildPlan()));
+    }
+}
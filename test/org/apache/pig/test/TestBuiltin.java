@@ -41,10 +41,14 @@ import java.util.StringTokenizer;
 import org.apache.pig.Algebraic;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.ExecType;
+import org.apache.pig.FuncSpec;
 import org.apache.pig.LoadFunc;
 import org.apache.pig.PigServer;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.builtin.APPROX_COUNT_DISTINCT;
+import org.apache.pig.builtin.APPROX_QUANTILES;
+import org.apache.pig.builtin.APPROX_TOP;
 import org.apache.pig.builtin.ARITY;
 import org.apache.pig.builtin.AddDuration;
 import org.apache.pig.builtin.BagSize;
@@ -1006,6 +1010,115 @@ public class TestBuiltin {
         assertEquals("Expected count to be 100", 100, output.longValue());
     }
 
+    /**
+     * Runs an algebraic function the way the combiner does: Initial on one
+     * tuple at a time, Intermediate on groups of the outputs, Final on all
+     */
+    private Object execAlgebraic(Algebraic func, String[] ctorArgs, List<Tuple> input)
+            throws Exception {
+        EvalFunc<?> initial = (EvalFunc<?>) PigContext.instantiateFuncFromSpec(
+                new FuncSpec(func.getInitial(), ctorArgs));
+        EvalFunc<?> intermed = (EvalFunc<?>) PigContext.instantiateFuncFromSpec(
+                new FuncSpec(func.getIntermed(), ctorArgs));
+        EvalFunc<?> fin = (EvalFunc<?>) PigContext.instantiateFuncFromSpec(
+                new FuncSpec(func.getFinal(), ctorArgs));
+        DataBag finalInput = bagFactory.newDefaultBag();
+        DataBag intermedInput = bagFactory.newDefaultBag();
+        for (Tuple t : input) {
+            DataBag b = bagFactory.newDefaultBag();
+            b.add(t);
+            intermedInput.add((Tuple) initial.exec(tupleFactory.newTuple(b)));
+            if (intermedInput.size() == 1000) {
+                finalInput.add((Tuple) intermed.exec(tupleFactory.newTuple(intermedInput)));
+                intermedInput = bagFactory.newDefaultBag();
+            }
+        }
+        finalInput.add((Tuple) intermed.exec(tupleFactory.newTuple(intermedInput)));
+        return fin.exec(tupleFactory.newTuple(finalInput));
+    }
+
+    @Test
+    public void testAPPROX_COUNT_DISTINCT() throws Exception {
+        List<Tuple> input = new ArrayList<Tuple>();
+        DataBag bag = bagFactory.newDefaultBag();
+        for (int i = 0; i < 30000; i++) {
+            Tuple t = tupleFactory.newTuple(i % 10000 == 0 ? null : "user" + (i % 10000));
+            input.add(t);
+            bag.add(t);
+        }
+        // 9999 distinct values that are not null
+        APPROX_COUNT_DISTINCT func = new APPROX_COUNT_DISTINCT();
+        assertEquals(9999, func.exec(tupleFactory.newTuple(bag)), 9999 * 0.03);
+        Long estimate = (Long) execAlgebraic(func, null, input);
+        assertEquals(func.exec(tupleFactory.newTuple(bag)), estimate);
+
+        // small counts are exact
+        bag = bagFactory.newDefaultBag();
+        for (int i = 0; i < 10; i++) {
+            bag.add(tupleFactory.newTuple(i % 5));
+        }
+        assertEquals(Long.valueOf(5), new APPROX_COUNT_DISTINCT("10").exec(tupleFactory.newTuple(bag)));
+    }
+
+    @Test
+    public void testAPPROX_QUANTILES() throws Exception {
+        List<Tuple> input = new ArrayList<Tuple>();
+        DataBag bag = bagFactory.newDefaultBag();
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 1; i <= 100000; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new Random(7));
+        for (Integer i : values) {
+            Tuple t = tupleFactory.newTuple(i);
+            input.add(t);
+            bag.add(t);
+        }
+        bag.add(tupleFactory.newTuple((Object) null));
+        String[] quantiles = { "0", "0.01", "0.5", "0.99", "1" };
+        APPROX_QUANTILES func = new APPROX_QUANTILES(quantiles);
+        Tuple output = func.exec(tupleFactory.newTuple(bag));
+        Tuple merged = (Tuple) execAlgebraic(func, quantiles, input);
+        double[] expected = { 1, 1000, 50000, 99000, 100000 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], (Double) output.get(i), 100000 * 0.005);
+            assertEquals(expected[i], (Double) merged.get(i), 100000 * 0.005);
+        }
+
+        Tuple empty = func.exec(tupleFactory.newTuple(bagFactory.newDefaultBag()));
+        assertEquals(quantiles.length, empty.size());
+        assertNull(empty.get(0));
+    }
+
+    @Test
+    public void testAPPROX_TOP() throws Exception {
+        List<Tuple> input = new ArrayList<Tuple>();
+        DataBag bag = bagFactory.newDefaultBag();
+        Random r = new Random(11);
+        // a few heavy hitters among many values seen once
+        for (int i = 0; i < 20000; i++) {
+            String value = i % 4 == 0 ? "heavy" + (i % 3) : "light" + r.nextInt(1000000);
+            Tuple t = tupleFactory.newTuple(value);
+            input.add(t);
+            bag.add(t);
+        }
+        String[] ctorArgs = { "3", "50" };
+        APPROX_TOP func = new APPROX_TOP(ctorArgs[0], ctorArgs[1]);
+        for (DataBag top : new DataBag[] { func.exec(tupleFactory.newTuple(bag)),
+                (DataBag) execAlgebraic(func, ctorArgs, input) }) {
+            assertEquals(3, top.size());
+            Set<Object> values = new HashSet<Object>();
+            for (Tuple t : top) {
+                values.add(t.get(0));
+                long count = (Long) t.get(1);
+                long error = (Long) t.get(2);
+                // each heavy hitter occurs 5000 / 3 times
+                assertTrue(count - error <= 1667 && count >= 1666);
+            }
+            assertEquals(new HashSet<Object>(Arrays.asList("heavy0", "heavy1", "heavy2")), values);
+        }
+    }
+
     @Test
     public void testCOUNTBagNullCheck() throws Exception{
 
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.io.ColumnarInterRecordReader;
+import org.apache.pig.impl.io.ColumnarInterRecordWriter;
+import org.apache.pig.impl.io.InterRecordWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestColumnarInterStorage {
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private Configuration conf;
+    private FileSystem fs;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = new Configuration();
+        fs = FileSystem.getLocal(conf);
+        File tmp = File.createTempFile("columnar", "");
+        tmp.delete();
+        file = new Path(tmp.getAbsolutePath(), "part-m-00000");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fs.delete(file.getParent(), true);
+    }
+
+    /**
+     * @return records with fields of every encoding, nulls and different
+     * numbers of fields
+     */
+    private static List<Tuple> createTuples(int count) throws Exception {
+        Random random = new Random(17);
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < count; i++) {
+            Tuple t = tf.newTuple(i % 50 == 49 ? 4 : 8);
+            t.set(0, i);
+            t.set(1, 42L);
+            t.set(2, "key" + random.nextInt(10));
+            t.set(3, i % 3 == 0 ? null : Boolean.valueOf(random.nextBoolean()));
+            if (t.size() > 4) {
+                t.set(4, "value" + random.nextLong());
+                t.set(5, i % 2 == 0 ? Long.valueOf(random.nextLong()) : Integer.valueOf(i));
+                DataBag bag = BagFactory.getInstance().newDefaultBag();
+                bag.add(tf.newTuple(new DataByteArray("b" + i)));
+                Map<String, Object> map = new HashMap<String, Object>();
+                map.put("k", random.nextDouble());
+                t.set(6, i % 2 == 0 ? bag : map);
+                t.set(7, i % 7 == 0 ? null : Integer.MIN_VALUE + random.nextInt());
+            }
+            tuples.add(t);
+        }
+        return tuples;
+    }
+
+    private void write(List<Tuple> tuples, CompressionCodec codec, int rows) throws Exception {
+        ColumnarInterRecordWriter writer = new ColumnarInterRecordWriter(fs.create(file),
+                codec, rows, Long.MAX_VALUE);
+        for (Tuple t : tuples) {
+            writer.write(null, t);
+        }
+        writer.close(null);
+    }
+
+    private List<Tuple> read(long splitSize, boolean[] requiredColumns, boolean pruned)
+            throws Exception {
+        long length = fs.getFileStatus(file).getLen();
+        TaskAttemptContext context = HadoopShims.createTaskAttemptContext(conf,
+                HadoopShims.createTaskAttemptID("jt", 1, true, 1, 1));
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (long start = 0; start < length; start += splitSize) {
+            ColumnarInterRecordReader reader = new ColumnarInterRecordReader(
+                    requiredColumns, pruned);
+            reader.initialize(new FileSplit(file, start,
+                    Math.min(splitSize, length - start), null), context);
+            while (reader.nextKeyValue()) {
+                tuples.add(reader.getCurrentValue());
+            }
+            reader.close();
+        }
+        return tuples;
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        List<Tuple> tuples = createTuples(1000);
+        write(tuples, null, 128);
+        assertEquals(tuples, read(Long.MAX_VALUE, null, false));
+        // the row groups are read once whatever the splits
+        assertEquals(tuples, read(1000, null, false));
+        assertEquals(tuples, read(7777, null, false));
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        List<Tuple> tuples = createTuples(1000);
+        write(tuples, (CompressionCodec) ReflectionUtils.newInstance(GzipCodec.class, conf), 300);
+        assertEquals(tuples, read(Long.MAX_VALUE, null, false));
+        assertEquals(tuples, read(3000, null, false));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        write(new ArrayList<Tuple>(), null, 10);
+        assertEquals(0, read(Long.MAX_VALUE, null, false).size());
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        List<Tuple> tuples = createTuples(500);
+        write(tuples, null, 100);
+        boolean[] required = new boolean[] { false, true, false, false, true };
+
+        List<Tuple> read = read(Long.MAX_VALUE, required, false);
+        assertEquals(tuples.size(), read.size());
+        for (int i = 0; i < tuples.size(); i++) {
+            Tuple t = tuples.get(i);
+            Tuple r = read.get(i);
+            assertEquals(t.size(), r.size());
+            for (int j = 0; j < t.size(); j++) {
+                if (j == 1 || j == 4) {
+                    assertEquals(t.get(j), r.get(j));
+                } else {
+                    assertNull(r.get(j));
+                }
+            }
+        }
+
+        read = read(Long.MAX_VALUE, required, true);
+        assertEquals(tuples.size(), read.size());
+        for (int i = 0; i < tuples.size(); i++) {
+            Tuple t = tuples.get(i);
+            Tuple r = read.get(i);
+            assertEquals(2, r.size());
+            assertEquals(t.get(1), r.get(0));
+            assertEquals(t.size() > 4 ? t.get(4) : null, r.get(1));
+        }
+    }
+
+    @Test
+    public void testEncodedSize() throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 10000; i++) {
+            tuples.add(tf.newTuple(Arrays.asList((Object) (long) i,
+                    "country" + (i % 20), Boolean.valueOf(i % 3 == 0), 7)));
+        }
+        write(tuples, null, 10000);
+        long columnar = fs.getFileStatus(file).getLen();
+        InterRecordWriter writer = new InterRecordWriter(fs.create(file, true));
+        for (Tuple t : tuples) {
+            writer.write(null, t);
+        }
+        writer.close(null);
+        long rows = fs.getFileStatus(file).getLen();
+        assertTrue(columnar + " vs " + rows, columnar * 4 < rows);
+    }
+
+    @Test
+    public void testColumnarIntermediateFiles() throws Exception {
+        String[] input = new String[500];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = i + "\t" + (i % 13) + "\t" + "name" + (i % 5) + "\t" + i * 0.5;
+        }
+        File inputFile = Util.createInputFile("columnar", ".txt", input);
+        List<Tuple> expected = run(inputFile, false, false);
+        assertEquals(13, expected.size());
+        assertEquals(expected, run(inputFile, true, false));
+        assertEquals(expected, run(inputFile, true, true));
+    }
+
+    private List<Tuple> run(File inputFile, boolean columnar, boolean compressed)
+            throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_TMPFILE_COLUMNAR, Boolean.toString(columnar));
+        props.setProperty(PigConfiguration.PROP_TMPFILE_COLUMNAR_ROWS, "10");
+        props.setProperty("pig.tmpfilecompression", Boolean.toString(compressed));
+        props.setProperty("pig.tmpfilecompression.codec", "gz");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (i:int, k:int, n:chararray, d:double);");
+        // the group of the first job is followed by a foreach using some of
+        // its fields in the second
+        pigServer.registerQuery("B = group A by (k, n);");
+        pigServer.registerQuery("C = foreach B generate flatten(group) as (k, n), COUNT(A) as c, SUM(A.d) as s, A;");
+        pigServer.registerQuery("D = group C by k;");
+        pigServer.registerQuery("E = foreach D generate group, SUM(C.c), MAX(C.s);");
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        Iterator<Tuple> it = pigServer.openIterator("E");
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        Collections.sort(tuples);
+        return tuples;
+    }
+}
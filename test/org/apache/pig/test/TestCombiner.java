@@ -32,6 +32,7 @@ import java.util.Properties;
 
 import org.apache.pig.EvalFunc;
 import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigServer;
 import org.apache.pig.builtin.PigStorage;
 import org.apache.pig.data.DataBag;
@@ -247,6 +248,59 @@ public class TestCombiner {
 
     }
 
+    @Test
+    public void testDistinctAggsApproximate() throws Exception {
+        // only the distinct bags that are counted may be approximate, the
+        // others are still read by the aggregates. The memory usage of 0
+        // makes every distinct bag outgrow its memory.
+        String input[] = {
+                        "pig1\t18\t2.1",
+                        "pig2\t24\t3.3",
+                        "pig5\t45\t2.4",
+                        "pig1\t18\t2.1",
+                        "pig1\t19\t2.1",
+                        "pig2\t24\t4.5",
+                        "pig1\t20\t3.1" };
+
+        Util.createInputFile(cluster, "distinctAggsApproxInput.txt", input);
+        Properties props = new Properties();
+        props.putAll(cluster.getProperties());
+        props.setProperty(PigConfiguration.PROP_DISTINCT_BAG_TYPE, "hash");
+        props.setProperty(PigConfiguration.PROP_DISTINCT_APPROXIMATE, "true");
+        props.setProperty(PigConfiguration.PROP_CACHEDBAG_MEMUSAGE, "0");
+        PigServer pigServer = new PigServer(ExecType.MAPREDUCE, props);
+        pigServer.registerQuery("a = load 'distinctAggsApproxInput.txt' as (name:chararray, age:int, gpa:double);");
+        pigServer.registerQuery("b = group a by name;");
+        pigServer.registerQuery("c = foreach b  {" +
+                "        x = distinct a.age;" +
+                "        y = distinct a.gpa;" +
+                "        generate group, SUM(x.age), MAX(y.gpa);};");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos);
+        pigServer.explain("c", ps);
+        assertTrue(baos.toString().matches("(?si).*combine plan.*"));
+
+        HashMap<String, Object[]> results = new HashMap<String, Object[]>();
+        results.put("pig1", new Object[] { "pig1", 57L, 3.1 });
+        results.put("pig2", new Object[] { "pig2", 24L, 4.5 });
+        results.put("pig5", new Object[] { "pig5", 45L, 2.4 });
+        Iterator<Tuple> it = pigServer.openIterator("c");
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            List<Object> fields = t.getAll();
+            Object[] expected = results.get((String)fields.get(0));
+            int i = 0;
+            for (Object field : fields) {
+                assertEquals(expected[i++], field);
+            }
+            count++;
+        }
+        assertEquals(3, count);
+        Util.deleteFile(cluster, "distinctAggsApproxInput.txt");
+    }
+
     @Test
     public void testGroupElements() throws Exception {
         // test use of combiner when group elements are accessed in the foreach
@@ -1122,7 +1122,95 @@ public class TestDataBag  {
         }
         assertEquals(bg6, bg7);
     }
-    
+
+    @Test
+    public void testHashedDistinctBag() throws Exception {
+        // check adding empty tuple
+        DataBag bg0 = new HashedDistinctBag();
+        bg0.add(TupleFactory.getInstance().newTuple());
+        bg0.add(TupleFactory.getInstance().newTuple());
+        assertEquals(1, bg0.size());
+
+        String[][] tupleContents = new String[][] {{ "e", "f"}, {"a", "b"}, {"e", "d" }, {"a", "b"}, {"e", "f"}};
+        DataBag bg1 = new HashedDistinctBag();
+        for (int i = 0; i < tupleContents.length; i++) {
+            bg1.add(Util.createTuple(tupleContents[i]));
+        }
+        assertEquals(3, bg1.size());
+        assertFalse(bg1.isSorted());
+        assertTrue(bg1.isDistinct());
+
+        // check bag with data written to disk on every add
+        DataBag bg2 = new HashedDistinctBag(1, 0.0f, false);
+        for (int i = 0; i < tupleContents.length; i++) {
+            bg2.add(Util.createTuple(tupleContents[i]));
+        }
+        assertEquals(bg1, bg2);
+        assertEquals(3, bg2.size());
+
+        // call iterator methods with irregular order
+        Iterator<Tuple> iter = bg2.iterator();
+        assertTrue(iter.hasNext());
+        assertTrue(iter.hasNext());
+        iter.next();
+        iter.next();
+        assertTrue(iter.hasNext());
+        iter.next();
+        assertFalse(iter.hasNext());
+        assertFalse(iter.hasNext());
+
+        // most data spilled out, with duplicates across the spills and in
+        // memory
+        DataBag bg3 = new HashedDistinctBag();
+        DataBag bg4 = new DistinctDataBag();
+        for (int j = 0; j < 20; j++) {
+            for (int i = 0; i < 100; i++) {
+                Tuple t = Util.createTuple(new Object[] { i % (j + 10), "x" + (i % 7) });
+                bg3.add(t);
+                bg4.add(t);
+            }
+            if (j != 19) {
+                bg3.spill();
+            }
+        }
+        assertEquals(bg4.size(), bg3.size());
+        assertEquals(bg4, bg3);
+
+        // equal values of different representations are the same tuple
+        DataBag bg5 = new HashedDistinctBag();
+        Map<String, Object> m1 = new LinkedHashMap<String, Object>();
+        m1.put("a", 1);
+        m1.put("b", 2);
+        Map<String, Object> m2 = new LinkedHashMap<String, Object>();
+        m2.put("b", 2);
+        m2.put("a", 1);
+        bg5.add(Util.createTuple(new Object[] { new java.math.BigDecimal("1.0"), m1 }));
+        bg5.add(Util.createTuple(new Object[] { new java.math.BigDecimal("1.00"), m2 }));
+        assertEquals(1, bg5.size());
+        // but values of different types are not
+        bg5.add(Util.createTuple(new Object[] { 1, m1 }));
+        bg5.add(Util.createTuple(new Object[] { 1L, m1 }));
+        assertEquals(3, bg5.size());
+        bg3.clear();
+        assertEquals(0, bg3.size());
+    }
+
+    @Test
+    public void testApproximateHashedDistinctBag() throws Exception {
+        HashedDistinctBag bg = new HashedDistinctBag(1, true);
+        for (int i = 0; i < 20000; i++) {
+            bg.add(Util.createTuple(new Object[] { i % 10000 == 0 ? null : i % 10000 }));
+        }
+        assertFalse(bg.isEstimated());
+        bg.spill();
+        assertTrue(bg.isEstimated());
+        for (int i = 0; i < 100000; i++) {
+            bg.add(Util.createTuple(new Object[] { i }));
+        }
+        assertEquals(100001, bg.size(), 3000);
+        assertEquals(100000, bg.getEstimatedNonNullCount(), 3000);
+    }
+
     // See PIG-1231
     @Test
     public void testDataBagIterIdempotent() throws Exception {
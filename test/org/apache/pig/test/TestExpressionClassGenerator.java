@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.ExpressionClassGenerator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POBinCond;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PORegexp;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.test.utils.GenPhyOp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExpressionClassGenerator {
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private Random r = new Random(42L);
+
+    @Before
+    public void setUp() {
+        Configuration conf = new Configuration(false);
+        conf.setBoolean(PigConfiguration.PROP_EXEC_CODEGEN, true);
+        PigMapReduce.sJobConfInternal.set(conf);
+    }
+
+    @After
+    public void tearDown() {
+        PigMapReduce.sJobConfInternal.set(null);
+    }
+
+    private OperatorKey key() {
+        return new OperatorKey("", r.nextLong());
+    }
+
+    private POProject project(int col, byte type) {
+        POProject p = GenPhyOp.exprProject(col);
+        p.setResultType(type);
+        return p;
+    }
+
+    private ConstantExpression constant(Object value, byte type) {
+        ConstantExpression c = GenPhyOp.exprConst();
+        c.setValue(value);
+        c.setResultType(type);
+        return c;
+    }
+
+    /**
+     * ($0 + $1 > limit) AND ($1 == 1)
+     */
+    private PhysicalPlan buildAndPlan(int limit) throws Exception {
+        POProject p0 = project(0, DataType.INTEGER);
+        POProject p1 = project(1, DataType.INTEGER);
+        Add add = new Add(key());
+        add.setLhs(p0);
+        add.setRhs(p1);
+        add.setResultType(DataType.INTEGER);
+        ConstantExpression c = constant(limit, DataType.INTEGER);
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(add, c, DataType.INTEGER);
+
+        POProject p2 = project(1, DataType.INTEGER);
+        ConstantExpression one = constant(1, DataType.INTEGER);
+        EqualToExpr eq = GenPhyOp.compEqualToExpr(p2, one, DataType.INTEGER);
+        POAnd and = GenPhyOp.compAndExpr(gt, eq);
+
+        PhysicalPlan ip = new PhysicalPlan();
+        for (PhysicalOperator op : new PhysicalOperator[] { p0, p1, add, c, gt, p2, one, eq, and }) {
+            ip.add(op);
+        }
+        ip.connect(p0, add);
+        ip.connect(p1, add);
+        ip.connect(add, gt);
+        ip.connect(c, gt);
+        ip.connect(p2, eq);
+        ip.connect(one, eq);
+        ip.connect(gt, and);
+        ip.connect(eq, and);
+        return ip;
+    }
+
+    /**
+     * ($2 > 'm') OR NOT ($0 IS NULL)
+     */
+    private PhysicalPlan buildOrPlan() throws Exception {
+        POProject p2 = project(2, DataType.CHARARRAY);
+        ConstantExpression m = constant("m", DataType.CHARARRAY);
+        GreaterThanExpr gt = GenPhyOp.compGreaterThanExpr(p2, m, DataType.CHARARRAY);
+
+        POProject p0 = project(0, DataType.INTEGER);
+        POIsNull isNull = GenPhyOp.compIsNullExpr();
+        isNull.setExpr(p0);
+        isNull.setOperandType(DataType.INTEGER);
+        isNull.setResultType(DataType.BOOLEAN);
+        PONot not = new PONot(key());
+        not.setExpr(isNull);
+        not.setOperandType(DataType.BOOLEAN);
+        not.setResultType(DataType.BOOLEAN);
+
+        POOr or = new POOr(key());
+        or.setLhs(gt);
+        or.setRhs(not);
+        or.setOperandType(DataType.BOOLEAN);
+        or.setResultType(DataType.BOOLEAN);
+
+        PhysicalPlan ip = new PhysicalPlan();
+        for (PhysicalOperator op : new PhysicalOperator[] { p2, m, gt, p0, isNull, not, or }) {
+            ip.add(op);
+        }
+        ip.connect(p2, gt);
+        ip.connect(m, gt);
+        ip.connect(p0, isNull);
+        ip.connect(isNull, not);
+        ip.connect(gt, or);
+        ip.connect(not, or);
+        return ip;
+    }
+
+    /**
+     * ($1 == 1 ? $0 / $1 : $0 / ($1 + $1))
+     */
+    private PhysicalPlan buildBinCondPlan() throws Exception {
+        POProject p1 = project(1, DataType.INTEGER);
+        ConstantExpression one = constant(1, DataType.INTEGER);
+        EqualToExpr eq = GenPhyOp.compEqualToExpr(p1, one, DataType.INTEGER);
+
+        Divide lhs = new Divide(key());
+        POProject lp0 = project(0, DataType.INTEGER);
+        POProject lp1 = project(1, DataType.INTEGER);
+        lhs.setLhs(lp0);
+        lhs.setRhs(lp1);
+        lhs.setResultType(DataType.INTEGER);
+
+        Divide rhs = new Divide(key());
+        POProject rp0 = project(0, DataType.INTEGER);
+        POProject rp1 = project(1, DataType.INTEGER);
+        POProject rp2 = project(1, DataType.INTEGER);
+        Add add = new Add(key());
+        add.setLhs(rp1);
+        add.setRhs(rp2);
+        add.setResultType(DataType.INTEGER);
+        rhs.setLhs(rp0);
+        rhs.setRhs(add);
+        rhs.setResultType(DataType.INTEGER);
+
+        POBinCond binCond = new POBinCond(key(), -1, eq, lhs, rhs);
+        binCond.setResultType(DataType.INTEGER);
+
+        PhysicalPlan ip = new PhysicalPlan();
+        for (PhysicalOperator op : new PhysicalOperator[] {
+                p1, one, eq, lp0, lp1, lhs, rp0, rp1, rp2, add, rhs, binCond }) {
+            ip.add(op);
+        }
+        ip.connect(p1, eq);
+        ip.connect(one, eq);
+        ip.connect(lp0, lhs);
+        ip.connect(lp1, lhs);
+        ip.connect(rp1, add);
+        ip.connect(rp2, add);
+        ip.connect(rp0, rhs);
+        ip.connect(add, rhs);
+        ip.connect(eq, binCond);
+        ip.connect(lhs, binCond);
+        ip.connect(rhs, binCond);
+        return ip;
+    }
+
+    private DataBag buildInput(int rows) throws Exception {
+        DataBag bag = BagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i < rows; i++) {
+            Tuple t = tf.newTuple(3);
+            int rand = r.nextInt(10);
+            t.set(0, rand == 0 ? null : Integer.valueOf(r.nextInt(20)));
+            t.set(1, rand == 1 ? null : Integer.valueOf(r.nextInt(3)));
+            t.set(2, rand == 2 ? null : String.valueOf((char) ('a' + r.nextInt(26))));
+            bag.add(t);
+        }
+        // overflows to a negative number, as the interpreted plan does
+        bag.add(tf.newTuple(Arrays.asList((Object) Integer.MAX_VALUE, 1, "z")));
+        return bag;
+    }
+
+    private Object interpret(PhysicalPlan plan, Tuple t) throws Exception {
+        PhysicalOperator leaf = plan.getLeaves().get(0);
+        plan.attachInput(t);
+        Result res = leaf.getNext(leaf.getResultType());
+        plan.detachInput();
+        return res.result;
+    }
+
+    private void checkPlan(PhysicalPlan plan, DataBag input) throws Exception {
+        CompiledExpression compiled = ExpressionClassGenerator.compile(plan);
+        assertNotNull(compiled);
+        for (Tuple t : input) {
+            Object value = compiled.evaluate(t);
+            if (value != CompiledExpression.UNSUPPORTED) {
+                assertEquals(t.toString(), interpret(plan, t), value);
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() throws Exception {
+        DataBag input = buildInput(1000);
+        checkPlan(buildAndPlan(10), input);
+        checkPlan(buildOrPlan(), input);
+        checkPlan(buildBinCondPlan(), input);
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        CompiledExpression compiled = ExpressionClassGenerator.compile(buildBinCondPlan());
+        // division by zero is left to the Divide operator, which warns
+        assertSame(CompiledExpression.UNSUPPORTED, compiled.evaluate(tf.newTuple(
+                Arrays.asList((Object) 1, 0, "a"))));
+        // so are values of unexpected types and missing fields
+        assertSame(CompiledExpression.UNSUPPORTED, compiled.evaluate(tf.newTuple(
+                Arrays.asList((Object) 1L, 1, "a"))));
+        assertSame(CompiledExpression.UNSUPPORTED, compiled.evaluate(tf.newTuple(1)));
+        assertEquals(4, compiled.evaluate(tf.newTuple(Arrays.asList((Object) 4, 1, "a"))));
+
+        // regular expressions are not supported
+        PhysicalPlan ip = new PhysicalPlan();
+        POProject p = project(0, DataType.CHARARRAY);
+        PORegexp re = new PORegexp(key());
+        ConstantExpression c = constant("a.*", DataType.CHARARRAY);
+        re.setLhs(p);
+        re.setRhs(c);
+        re.setOperandType(DataType.CHARARRAY);
+        ip.add(p);
+        ip.add(c);
+        ip.add(re);
+        ip.connect(p, re);
+        ip.connect(c, re);
+        assertNull(ExpressionClassGenerator.compile(ip));
+    }
+
+    @Test
+    public void testClassSharedByConstants() throws Exception {
+        CompiledExpression e1 = ExpressionClassGenerator.compile(buildAndPlan(1));
+        CompiledExpression e2 = ExpressionClassGenerator.compile(buildAndPlan(20));
+        assertSame(e1.getClass(), e2.getClass());
+        Tuple t = tf.newTuple(Arrays.asList((Object) 10, 1));
+        assertEquals(Boolean.TRUE, e1.evaluate(t));
+        assertEquals(Boolean.FALSE, e2.evaluate(t));
+    }
+
+    private List<Tuple> runFilter(DataBag input) throws Exception {
+        PORead read = GenPhyOp.topReadOp(input);
+        POFilter filter = GenPhyOp.connectedFilterOp(read);
+        filter.setPlan(buildAndPlan(10));
+        List<Tuple> out = new ArrayList<Tuple>();
+        Result res;
+        while ((res = filter.getNextTuple()).returnStatus == POStatus.STATUS_OK) {
+            out.add((Tuple) res.result);
+        }
+        return out;
+    }
+
+    private List<Tuple> runForEach(DataBag input, boolean withProject) throws Exception {
+        PORead read = GenPhyOp.topReadOp(input);
+        List<PhysicalPlan> plans = new ArrayList<PhysicalPlan>();
+        plans.add(buildBinCondPlan());
+        plans.add(buildAndPlan(10));
+        POProject p = project(2, DataType.CHARARRAY);
+        PhysicalPlan pp = new PhysicalPlan();
+        pp.add(p);
+        if (withProject) {
+            plans.add(pp);
+        }
+        List<Boolean> flattens = new ArrayList<Boolean>();
+        for (int i = 0; i < plans.size(); i++) {
+            flattens.add(false);
+        }
+        POForEach fe = new POForEach(key(), -1, plans, flattens);
+        List<PhysicalOperator> inputs = new ArrayList<PhysicalOperator>();
+        inputs.add(read);
+        fe.setInputs(inputs);
+        List<Tuple> out = new ArrayList<Tuple>();
+        Result res;
+        while ((res = fe.getNextTuple()).returnStatus == POStatus.STATUS_OK) {
+            out.add((Tuple) res.result);
+        }
+        return out;
+    }
+
+    @Test
+    public void testOperators() throws Exception {
+        DataBag input = buildInput(1000);
+        List<Tuple> compiledFilter = runFilter(input);
+        // all the plans compiled, or only some of them
+        List<Tuple> compiledForEach = runForEach(input, false);
+        List<Tuple> compiledForEachWithProject = runForEach(input, true);
+        PigMapReduce.sJobConfInternal.set(new Configuration(false));
+        List<Tuple> filter = runFilter(input);
+        assertFalse(filter.isEmpty());
+        assertEquals(filter, compiledFilter);
+        List<Tuple> forEach = runForEach(input, false);
+        assertEquals(input.size(), forEach.size());
+        assertEquals(forEach, compiledForEach);
+        assertEquals(runForEach(input, true), compiledForEachWithProject);
+    }
+}
@@ -24,17 +24,23 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.pig.EvalFunc;
 import org.apache.pig.ExecType;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigServer;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoinChain;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.builtin.PigStorage;
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
@@ -45,6 +51,7 @@ import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.io.FileSpec;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
 import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.test.utils.TestHelper;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -548,6 +555,64 @@ public class TestFRJoin {
         assertEquals(shjSch, frjSch);
     }
 
+    @Test
+    public void testFRJoinChain() throws IOException {
+        Properties props = new Properties();
+        props.putAll(cluster.getProperties());
+        props.setProperty(PigConfiguration.FRJOIN_CHAIN, "true");
+        pigServer = new PigServer(ExecType.MAPREDUCE, props);
+        pigServer.registerQuery("A = LOAD '" + INPUT_FILE + "' as (x:int,y:int);");
+        pigServer.registerQuery("B = LOAD '" + INPUT_FILE2 + "' as (x:int,y:int);");
+        pigServer.registerQuery("C = LOAD '" + INPUT_FILE + "' as (x:int,y:int);");
+        DataBag dbfrj = BagFactory.getInstance().newDefaultBag(), dbshj = BagFactory.getInstance()
+                .newDefaultBag();
+        {
+            pigServer.registerQuery("D = join A by x left, B by x using 'replicated';");
+            pigServer.registerQuery("E = join D by A::y, C by y using 'replicated';");
+            Iterator<Tuple> iter = pigServer.openIterator("E");
+
+            while (iter.hasNext()) {
+                dbfrj.add(iter.next());
+            }
+        }
+        {
+            pigServer.registerQuery("D = join A by x left, B by x;");
+            pigServer.registerQuery("E = join D by A::y, C by y;");
+            Iterator<Tuple> iter = pigServer.openIterator("E");
+
+            while (iter.hasNext()) {
+                dbshj.add(iter.next());
+            }
+        }
+        assertTrue(dbfrj.size() > 0);
+        assertTrue(dbshj.size() > 0);
+        assertTrue(TestHelper.compareBags(dbfrj, dbshj));
+    }
+
+    @Test
+    public void testFRJoinChainPlan() throws Exception {
+        String query = "A = LOAD '" + INPUT_FILE + "' as (x:int,y:int);"
+                + "B = LOAD '" + INPUT_FILE2 + "' as (x:int,y:int);"
+                + "C = LOAD '" + INPUT_FILE + "' as (x:int,y:int);"
+                + "D = join A by x left, B by x using 'replicated';"
+                + "E = join D by A::y, C by y using 'replicated';"
+                + "store E into 'output';";
+        PigContext pc = pigServer.getPigContext();
+        pc.getProperties().setProperty(PigConfiguration.FRJOIN_CHAIN, "true");
+        assertEquals(1, countFRJoinChains(Util.buildMRPlan(query, pc)));
+        pc.getProperties().remove(PigConfiguration.FRJOIN_CHAIN);
+        assertEquals(0, countFRJoinChains(Util.buildMRPlan(query, pc)));
+    }
+
+    private int countFRJoinChains(MROperPlan mrPlan) throws VisitorException {
+        int count = 0;
+        for (MapReduceOper mro : mrPlan) {
+            count += PlanHelper.getPhysicalOperators(mro.mapPlan, POFRJoinChain.class).size();
+            count += PlanHelper.getPhysicalOperators(mro.reducePlan, POFRJoinChain.class).size();
+        }
+        return count;
+    }
+
     @Test
     public void testFRJoinSch4() throws IOException {
         pigServer.registerQuery("A = LOAD '" + INPUT_FILE + "';");
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.pig.ExecType;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.Expression.UnaryExpression;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.io.InterBlockStatistics;
+import org.apache.pig.impl.io.InterRecordReader;
+import org.apache.pig.impl.io.InterRecordWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInterBlockStatistics {
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    private Configuration conf;
+    private FileSystem fs;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = new Configuration();
+        fs = FileSystem.getLocal(conf);
+        File tmp = File.createTempFile("interstats", "");
+        tmp.delete();
+        file = new Path(tmp.getAbsolutePath(), "part-m-00000");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fs.delete(file.getParent(), true);
+    }
+
+    private static Expression compare(int column, Object value, OpType op) {
+        return new BinaryExpression(new Column(Integer.toString(column)), new Const(value), op);
+    }
+
+    /**
+     * Writes 1000 records (i, "k" + i / 100, null or i), in blocks of about
+     * 100 records
+     */
+    private void write() throws Exception {
+        InterRecordWriter writer = new InterRecordWriter(fs.create(file),
+                fs.create(InterBlockStatistics.getStatisticsPath(file)), 1000);
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = tf.newTuple(3);
+            t.set(0, i);
+            t.set(1, "k" + i / 100);
+            t.set(2, i < 500 ? null : Long.valueOf(i));
+            writer.write(null, t);
+        }
+        writer.close(null);
+    }
+
+    private List<Integer> read(long start, long length, Expression filter) throws Exception {
+        InterRecordReader reader = new InterRecordReader(filter);
+        TaskAttemptContext context = HadoopShims.createTaskAttemptContext(conf,
+                HadoopShims.createTaskAttemptID("jt", 1, true, 1, 1));
+        reader.initialize(new FileSplit(file, start, length, null), context);
+        List<Integer> read = new ArrayList<Integer>();
+        while (reader.nextKeyValue()) {
+            read.add((Integer) reader.getCurrentValue().get(0));
+        }
+        reader.close();
+        return read;
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        write();
+        InterBlockStatistics stats = InterBlockStatistics.read(file, conf);
+        long length = fs.getFileStatus(file).getLen();
+        assertTrue(stats.size() > 5);
+        assertEquals(0, stats.getStart(0));
+        assertEquals(length, stats.getEnd(stats.size() - 1));
+        for (int i = 1; i < stats.size(); i++) {
+            assertEquals(stats.getEnd(i - 1), stats.getStart(i));
+        }
+
+        assertTrue(stats.mightMatch(0, compare(0, 0, OpType.OP_EQ)));
+        assertFalse(stats.mightMatch(0, compare(0, 999, OpType.OP_EQ)));
+        assertTrue(stats.mightMatch(stats.size() - 1, compare(0, 999, OpType.OP_EQ)));
+        // the types have to match
+        assertTrue(stats.mightMatch(0, compare(0, 999L, OpType.OP_EQ)));
+        assertFalse(stats.mightMatch(0, compare(1, "k9", OpType.OP_GE)));
+        assertFalse(stats.mightMatch(0, new BinaryExpression(new Const("k9"),
+                new Column("1"), OpType.OP_LE)));
+        // all nulls
+        assertFalse(stats.mightMatch(0, compare(2, 600L, OpType.OP_LT)));
+        assertFalse(stats.mightMatch(0, new UnaryExpression(new UnaryExpression(
+                new Column("2"), OpType.OP_NULL), OpType.OP_NOT)));
+        assertTrue(stats.mightMatch(0, new UnaryExpression(new Column("2"), OpType.OP_NULL)));
+        assertFalse(stats.mightMatch(stats.size() - 1,
+                new UnaryExpression(new Column("2"), OpType.OP_NULL)));
+        // fields past the end are null
+        assertFalse(stats.mightMatch(0, compare(3, 0, OpType.OP_NE)));
+        assertFalse(stats.mightMatch(0, new BinaryExpression(compare(0, 0, OpType.OP_EQ),
+                compare(0, 999, OpType.OP_EQ), OpType.OP_AND)));
+        assertTrue(stats.mightMatch(0, new BinaryExpression(compare(0, 0, OpType.OP_EQ),
+                compare(0, 999, OpType.OP_EQ), OpType.OP_OR)));
+        // unknown expressions might match
+        assertTrue(stats.mightMatch(0, compare(0, 999, OpType.OP_MATCH)));
+
+        assertTrue(stats.canSkip(0, length / 2, compare(0, 990, OpType.OP_GT)));
+        assertFalse(stats.canSkip(length / 2, length, compare(0, 990, OpType.OP_GT)));
+        assertFalse(stats.canSkip(0, length + 1, compare(0, 1000, OpType.OP_GT)));
+    }
+
+    @Test
+    public void testSkipBlocks() throws Exception {
+        write();
+        long length = fs.getFileStatus(file).getLen();
+        assertEquals(1000, read(0, length, null).size());
+
+        List<Integer> read = read(0, length, compare(0, 990, OpType.OP_GT));
+        assertTrue(read.size() < 200);
+        assertTrue(read.containsAll(Arrays.asList(991, 995, 999)));
+
+        read = read(0, length, new BinaryExpression(compare(0, 10, OpType.OP_LT),
+                compare(1, "k5", OpType.OP_EQ), OpType.OP_OR));
+        assertTrue(read.size() < 400);
+        assertTrue(read.containsAll(Arrays.asList(0, 9, 500, 599)));
+
+        // the records of a split are read once whatever it skips
+        Expression filter = compare(0, 300, OpType.OP_GE);
+        List<Integer> all = new ArrayList<Integer>();
+        for (long start = 0; start < length; start += 777) {
+            all.addAll(read(start, Math.min(777, length - start), filter));
+        }
+        List<Integer> expected = read(0, length, filter);
+        Collections.sort(all);
+        assertEquals(expected, all);
+        assertTrue(expected.size() >= 700);
+        assertTrue(expected.containsAll(Arrays.asList(300, 999)));
+    }
+
+    @Test
+    public void testFilterAfterIntermediate() throws Exception {
+        String[] input = new String[1000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = i + "\t" + (i % 7);
+        }
+        File inputFile = Util.createInputFile("interstats", ".txt", input);
+        List<Tuple> expected = run(inputFile, false);
+        List<Tuple> actual = run(inputFile, true);
+        assertEquals(7, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    private List<Tuple> run(File inputFile, boolean stats) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_TMPFILE_STATS, Boolean.toString(stats));
+        props.setProperty(PigConfiguration.PROP_TMPFILE_STATS_BLOCKSIZE, "100");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        String location = Util.encodeEscape(file.getParent().toString());
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (k:int, v:int);");
+        pigServer.registerQuery("B = group A by k;");
+        pigServer.registerQuery("C = foreach B generate group as k, SUM(A.v) as s;");
+        pigServer.store("C", location, "org.apache.pig.impl.io.InterStorage()");
+        assertEquals(stats, fs.exists(InterBlockStatistics.getStatisticsPath(
+                new Path(file.getParent(), "part-r-00000"))));
+
+        pigServer.registerQuery("D = load '" + location
+                + "' using org.apache.pig.impl.io.InterStorage() as (k:int, s:long);");
+        pigServer.registerQuery("E = filter D by k >= 990 or s is null;");
+        pigServer.registerQuery("F = group E by s;");
+        pigServer.registerQuery("G = foreach F generate group, COUNT(E);");
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        Iterator<Tuple> it = pigServer.openIterator("G");
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        Collections.sort(tuples);
+        fs.delete(file.getParent(), true);
+        return tuples;
+    }
+}
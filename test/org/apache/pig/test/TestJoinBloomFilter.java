@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.BloomJoinHelper;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.builtin.BuildBloom;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestJoinBloomFilter {
+    private static final TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    private static File factFile;
+    private static File dimFile;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // only one key in ten of the facts has a dimension
+        String[] facts = new String[500];
+        for (int i = 0; i < facts.length; i++) {
+            facts[i] = (i % 100) + "\t" + (i % 3) + "\t" + i;
+        }
+        String[] dims = new String[20];
+        for (int i = 0; i < dims.length; i++) {
+            dims[i] = (i % 10) * 10 + "\t" + (i % 3) + "\td" + i;
+        }
+        factFile = Util.createInputFile("facts", ".txt", facts);
+        dimFile = Util.createInputFile("dims", ".txt", dims);
+    }
+
+    @Test
+    public void testKeys() throws Exception {
+        // filters built by BuildBloom match the keys of the join
+        BuildBloom bb = new BuildBloom(BloomJoinHelper.HASH_TYPE, "fixed", "1024", "3");
+        DataBag keys = BagFactory.getInstance().newDefaultBag();
+        keys.add(mTupleFactory.newTuple((Object) 1));
+        keys.add(mTupleFactory.newTuple((Object) null));
+        DataBag pairs = BagFactory.getInstance().newDefaultBag();
+        Tuple pair = mTupleFactory.newTuple(2);
+        pair.set(0, "a");
+        pair.set(1, 2L);
+        pairs.add(pair);
+
+        BloomFilter filter = BloomJoinHelper.fromBytes(
+                ((DataByteArray) bb.exec(mTupleFactory.newTuple((Object) keys))).get());
+        assertTrue(BloomJoinHelper.mightMatch(filter, 1));
+        assertFalse(BloomJoinHelper.mightMatch(filter, 2));
+        assertTrue(BloomJoinHelper.mightMatch(filter, null));
+
+        filter = BloomJoinHelper.fromBytes(
+                ((DataByteArray) bb.exec(mTupleFactory.newTuple((Object) pairs))).get());
+        Tuple key = mTupleFactory.newTuple(2);
+        key.set(0, "a");
+        key.set(1, 2L);
+        assertTrue(BloomJoinHelper.mightMatch(filter, key));
+        key.set(1, 3L);
+        assertFalse(BloomJoinHelper.mightMatch(filter, key));
+    }
+
+    @Test
+    public void testBuildInput() throws Exception {
+        assertEquals(0, BloomJoinHelper.getBuildInput(new boolean[] { true, true }, 1));
+        assertEquals(0, BloomJoinHelper.getBuildInput(new boolean[] { true, false }, 1));
+        assertEquals(-1, BloomJoinHelper.getBuildInput(new boolean[] { false, true }, 1));
+        assertEquals(1, BloomJoinHelper.getBuildInput(new boolean[] { false, true, true }, 2));
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.JOIN_BLOOM_FILTER, "true");
+        PigContext pc = new PigContext(ExecType.LOCAL, props);
+        pc.connect();
+        String query = "A = load 'facts' as (k:int, g:int, v:int);"
+            + "B = load 'dims' as (k:int, g:int, d:chararray);"
+            + "C = join B by k, A by k;"
+            + "store C into 'out';";
+        MROperPlan mrPlan = Util.buildMRPlan(query, pc);
+        // the inner input is stored, then its filter built before the join
+        assertEquals(3, mrPlan.size());
+        MapReduceOper join = mrPlan.getLeaves().get(0);
+        assertEquals(2, mrPlan.getPredecessors(join).size());
+        int filtered = 0;
+        for (POLocalRearrange lr : PlanHelper.getPhysicalOperators(join.mapPlan, POLocalRearrange.class)) {
+            if (lr.getIndex() == 1) {
+                assertNotNull(lr.getBloomFilterFile());
+                filtered++;
+            } else {
+                assertNull(lr.getBloomFilterFile());
+            }
+        }
+        assertEquals(1, filtered);
+
+        // the last input is preserved, nothing to filter
+        query = "A = load 'facts' as (k:int, g:int, v:int);"
+            + "B = load 'dims' as (k:int, g:int, d:chararray);"
+            + "C = join B by k right outer, A by k;"
+            + "store C into 'out';";
+        assertEquals(1, Util.buildMRPlan(query, pc).size());
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        checkJoin("C = join B by k, A by k;", 100);
+    }
+
+    @Test
+    public void testMultiKeyJoin() throws Exception {
+        checkJoin("C = join B by (k, g), A by (k, g);", 40);
+    }
+
+    @Test
+    public void testLeftOuterJoin() throws Exception {
+        checkJoin("C = join B by k left outer, A by k;", 100);
+    }
+
+    @Test
+    public void testRightOuterJoin() throws Exception {
+        checkJoin("C = join B by k right outer, A by k;", 550);
+    }
+
+    @Test
+    public void testSkewedJoin() throws Exception {
+        checkJoin("C = join B by k, A by k using 'skewed';", 100);
+    }
+
+    private void checkJoin(String join, int expectedSize) throws Exception {
+        List<Tuple> expected = runJoin(join, false);
+        assertEquals(expectedSize, expected.size());
+        assertEquals(expected, runJoin(join, true));
+    }
+
+    private List<Tuple> runJoin(String join, boolean bloom) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.JOIN_BLOOM_FILTER, Boolean.toString(bloom));
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(factFile.getAbsolutePath())
+                + "' as (k:int, g:int, v:int);");
+        pigServer.registerQuery("B = load '" + Util.encodeEscape(dimFile.getAbsolutePath())
+                + "' as (k:int, g:int, d:chararray);");
+        pigServer.registerQuery(join);
+        List<Tuple> results = new ArrayList<Tuple>();
+        Iterator<Tuple> it = pigServer.openIterator("C");
+        while (it.hasNext()) {
+            results.add(it.next());
+        }
+        Collections.sort(results);
+        return results;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.JobStats;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.apache.pig.tools.pigstats.ScriptState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestJoinStrategySelector {
+
+    private File dir;
+    private String left;
+    private String right;
+    private List<String> expected;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File("build/test/tmp/TestJoinStrategySelector");
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+
+        // key 0 holds half of the left input
+        String[] lines1 = new String[200];
+        for (int i = 0; i < lines1.length; i++) {
+            lines1[i] = (i % 2 == 0 ? 0 : i % 20) + "\t" + i;
+        }
+        left = Util.encodeEscape(Util.createLocalInputFile(
+                new File(dir, "left").getAbsolutePath(), lines1).getAbsolutePath());
+
+        String[] lines2 = new String[10];
+        for (int i = 0; i < lines2.length; i++) {
+            lines2[i] = i + "\tv" + i;
+        }
+        right = Util.encodeEscape(Util.createLocalInputFile(
+                new File(dir, "right").getAbsolutePath(), lines2).getAbsolutePath());
+
+        expected = new ArrayList<String>();
+        for (String l : lines1) {
+            for (String r : lines2) {
+                if (l.split("\t")[0].equals(r.split("\t")[0])) {
+                    expected.add("(" + l.replace('\t', ',') + "," + r.replace('\t', ',') + ")");
+                }
+            }
+        }
+        Collections.sort(expected);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private PigServer newPigServer(String threshold) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.JOIN_AUTO, "true");
+        props.setProperty(PigConfiguration.JOIN_REPLICATED_THRESHOLD, threshold);
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        ScriptState.start("", pigServer.getPigContext());
+        return pigServer;
+    }
+
+    /**
+     * Runs the join of C and returns the features of the job that does it,
+     * after checking its result.
+     */
+    private String runJoin(PigServer pigServer) throws Exception {
+        List<String> actual = new ArrayList<String>();
+        Iterator<Tuple> it = pigServer.openIterator("C");
+        while (it.hasNext()) {
+            actual.add(it.next().toString());
+        }
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+
+        for (JobStats js : PigStats.get().getJobGraph()) {
+            if (js.getAlias().contains("C")) {
+                return js.getFeature();
+            }
+        }
+        return "";
+    }
+
+    @Test
+    public void testReplicated() throws Exception {
+        PigServer pigServer = newPigServer("10485760");
+        pigServer.registerQuery("A = load '" + left + "' as (k:int, v:int);");
+        pigServer.registerQuery("B = load '" + right + "' as (k:int, w:chararray);");
+        pigServer.registerQuery("B1 = filter B by k is not null;");
+        pigServer.registerQuery("C = join A by k, B1 by k;");
+        assertTrue(runJoin(pigServer).contains("REPLICATED_JOIN"));
+    }
+
+    @Test
+    public void testSkewed() throws Exception {
+        PigServer pigServer = newPigServer("10");
+        pigServer.registerQuery("A = load '" + left + "' as (k:int, v:int);");
+        pigServer.registerQuery("B = load '" + right + "' as (k:int, w:chararray);");
+        pigServer.registerQuery("C = join A by k, B by k;");
+        assertTrue(runJoin(pigServer).contains("SKEWED_JOIN"));
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        PigServer pigServer = newPigServer("10");
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.JOIN_SKEWED_FRACTION, "0.9");
+        pigServer.registerQuery("A = load '" + left + "' as (k:int, v:int);");
+        pigServer.registerQuery("B = load '" + right + "' as (k:int, w:chararray);");
+        pigServer.registerQuery("C = join A by k, B by k;");
+        assertTrue(runJoin(pigServer).contains("HASH_JOIN"));
+    }
+
+    @Test
+    public void testHintKept() throws Exception {
+        PigServer pigServer = newPigServer("10485760");
+        pigServer.registerQuery("A = load '" + left + "' as (k:int, v:int);");
+        pigServer.registerQuery("B = load '" + right + "' as (k:int, w:chararray);");
+        pigServer.registerQuery("C = join A by k, B by k using 'hash';");
+        assertTrue(runJoin(pigServer).contains("HASH_JOIN"));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        String sortedLeft = Util.encodeEscape(new File(dir, "sortedLeft").getAbsolutePath());
+        String sortedRight = Util.encodeEscape(new File(dir, "sortedRight").getAbsolutePath());
+        PigServer pigServer = new PigServer(ExecType.LOCAL);
+        pigServer.setBatchOn();
+        pigServer.registerQuery("A = load '" + left + "' as (k:int, v:int);");
+        pigServer.registerQuery("A1 = order A by k;");
+        pigServer.registerQuery("store A1 into '" + sortedLeft + "' using PigStorage('\\t', '-schema');");
+        pigServer.registerQuery("B = load '" + right + "' as (k:int, w:chararray);");
+        pigServer.registerQuery("B1 = order B by k;");
+        pigServer.registerQuery("store B1 into '" + sortedRight + "' using PigStorage('\\t', '-schema');");
+        pigServer.executeBatch();
+
+        pigServer = newPigServer("10");
+        pigServer.registerQuery("A = load '" + sortedLeft + "' using PigStorage('\\t', '-schema');");
+        pigServer.registerQuery("B = load '" + sortedRight + "' using PigStorage('\\t', '-schema');");
+        pigServer.registerQuery("C = join A by k, B by k;");
+        assertTrue(runJoin(pigServer).contains("MERGE_JOIN"));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.io.MappedTupleTable;
+import org.junit.Test;
+
+public class TestMappedTupleTable {
+    private static final TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    @Test
+    public void testGet() throws Exception {
+        File file = File.createTempFile("table", ".tbl");
+        file.deleteOnExit();
+        MappedTupleTable.Builder builder = new MappedTupleTable.Builder(file);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i % 100, mTupleFactory.newTuple((Object) ("value " + i)));
+        }
+        builder.add("a", mTupleFactory.newTuple((Object) "string key"));
+        builder.add(mTupleFactory.newTuple((Object) 1), mTupleFactory.newTuple((Object) "tuple key"));
+        builder.finish();
+
+        MappedTupleTable table = MappedTupleTable.open(file);
+        for (int k = 0; k < 100; k++) {
+            List<Tuple> values = table.get(k);
+            assertEquals(10, values.size());
+            for (int j = 0; j < 10; j++) {
+                // in the order they were added
+                assertEquals(mTupleFactory.newTuple((Object) ("value " + (k + 100 * j))), values.get(j));
+            }
+        }
+        assertEquals(Collections.singletonList(mTupleFactory.newTuple((Object) "string key")),
+                table.get("a"));
+        assertEquals(Collections.singletonList(mTupleFactory.newTuple((Object) "tuple key")),
+                table.get(mTupleFactory.newTuple((Object) 1)));
+        assertNull(table.get(100));
+        assertNull(table.get(1L));
+        assertNull(table.get("b"));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        File file = File.createTempFile("table", ".tbl");
+        file.deleteOnExit();
+        new MappedTupleTable.Builder(file).finish();
+        assertNull(MappedTupleTable.open(file).get(1));
+    }
+
+    @Test
+    public void testReplicatedJoin() throws Exception {
+        String[] left = new String[200];
+        for (int i = 0; i < left.length; i++) {
+            left[i] = (i % 50) + "\t" + i;
+        }
+        String[] right = new String[60];
+        for (int i = 0; i < right.length; i++) {
+            right[i] = (i % 30) + "\tr" + i;
+        }
+        File leftFile = Util.createInputFile("left", ".txt", left);
+        File rightFile = Util.createInputFile("right", ".txt", right);
+
+        List<Tuple> expected = runJoin(leftFile, rightFile, false, "");
+        List<Tuple> actual = runJoin(leftFile, rightFile, true, "");
+        assertEquals(120 * 2, expected.size());
+        assertEquals(expected, actual);
+
+        expected = runJoin(leftFile, rightFile, false, "left outer");
+        actual = runJoin(leftFile, rightFile, true, "left outer");
+        assertEquals(120 * 2 + 80, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    private List<Tuple> runJoin(File leftFile, File rightFile, boolean mmap, String type)
+            throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.FRJOIN_MMAP, Boolean.toString(mmap));
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(leftFile.getAbsolutePath())
+                + "' as (k:int, v:int);");
+        pigServer.registerQuery("B = load '" + Util.encodeEscape(rightFile.getAbsolutePath())
+                + "' as (k:int, v:chararray);");
+        pigServer.registerQuery("C = join A by k " + type + ", B by k using 'replicated';");
+        List<Tuple> results = new ArrayList<Tuple>();
+        Iterator<Tuple> it = pigServer.openIterator("C");
+        while (it.hasNext()) {
+            results.add(it.next());
+        }
+        Collections.sort(results);
+        return results;
+    }
+}
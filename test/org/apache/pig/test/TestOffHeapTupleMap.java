@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.pig.data.OffHeapTupleMap;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.Test;
+
+public class TestOffHeapTupleMap {
+    private static final TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+    @Test
+    public void testPutGet() throws Exception {
+        OffHeapTupleMap map = new OffHeapTupleMap(64 * 1024);
+        assertTrue(map.isEmpty());
+        map.put(1, mTupleFactory.newTuple((Object) "one"));
+        map.put("1", mTupleFactory.newTuple((Object) "string one"));
+        map.put(null, mTupleFactory.newTuple((Object) "null"));
+        map.put(mTupleFactory.newTuple((Object) 1), mTupleFactory.newTuple((Object) "tuple one"));
+
+        assertEquals(4, map.size());
+        assertEquals(mTupleFactory.newTuple((Object) "one"), map.get(1));
+        assertEquals(mTupleFactory.newTuple((Object) "string one"), map.get("1"));
+        assertEquals(mTupleFactory.newTuple((Object) "null"), map.get(null));
+        assertEquals(mTupleFactory.newTuple((Object) "tuple one"),
+                map.get(mTupleFactory.newTuple((Object) 1)));
+        assertNull(map.get(1L));
+        assertNull(map.get(2));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        OffHeapTupleMap map = new OffHeapTupleMap(64 * 1024);
+        map.put(1, mTupleFactory.newTuple((Object) 1L));
+        // fits in place
+        map.put(1, mTupleFactory.newTuple((Object) 2L));
+        assertEquals(mTupleFactory.newTuple((Object) 2L), map.get(1));
+        // needs to be moved
+        map.put(1, mTupleFactory.newTuple((Object) "a much longer value than before"));
+        assertEquals(mTupleFactory.newTuple((Object) "a much longer value than before"), map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testFullAndClear() throws Exception {
+        OffHeapTupleMap map = new OffHeapTupleMap(4 * 1024);
+        Map<Integer, Tuple> expected = new HashMap<Integer, Tuple>();
+        int i = 0;
+        while (map.put(i, mTupleFactory.newTuple((Object) ("value " + i)))) {
+            expected.put(i, mTupleFactory.newTuple((Object) ("value " + i)));
+            i++;
+        }
+        assertTrue(map.isFull());
+        assertEquals(expected.size(), map.size());
+        // a failed put leaves the map unchanged
+        assertNull(map.get(i));
+
+        int count = 0;
+        Iterator<Tuple> it = map.valueIterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            String value = (String) t.get(0);
+            assertEquals(expected.get(Integer.valueOf(value.substring(6))), t);
+            count++;
+        }
+        assertEquals(expected.size(), count);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.isFull());
+        assertFalse(map.valueIterator().hasNext());
+        assertNull(map.get(0));
+        assertTrue(map.put(i, mTupleFactory.newTuple((Object) "again")));
+        assertEquals(mTupleFactory.newTuple((Object) "again"), map.get(i));
+    }
+}
@@ -26,7 +26,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
@@ -143,7 +146,31 @@ public class TestPODistinct {
         confirmDistinct();
      }
 
-    public void confirmDistinct() throws ExecException {
+    @Test
+    public void testPODistinctApproximateHashedBagSpill() throws ExecException {
+        input = BagFactory.getInstance().newDefaultBag();
+        TupleFactory tf = TupleFactory.getInstance();
+        for (int i = 0; i < MAX_SAMPLES; i++) {
+            Tuple t = tf.newTuple();
+            t.append(i % MAX_VALUE);
+            input.add(t);
+        }
+
+        // an approximate bag would drop its tuples on the first spill, and
+        // the memory usage of 0 spills on every add
+        Configuration conf = new Configuration(false);
+        conf.set(PigConfiguration.PROP_DISTINCT_BAG_TYPE, "hash");
+        conf.set(PigConfiguration.PROP_DISTINCT_APPROXIMATE, "true");
+        conf.set(PigConfiguration.PROP_CACHEDBAG_MEMUSAGE, "0");
+        PigMapReduce.sJobConfInternal.set(conf);
+        try {
+            assertEquals(MAX_VALUE, confirmDistinct());
+        } finally {
+            PigMapReduce.sJobConfInternal.set(null);
+        }
+    }
+
+    public int confirmDistinct() throws ExecException {
 
         PORead read = new PORead(new OperatorKey("", r.nextLong()), input);
         List<PhysicalOperator> inputs = new LinkedList<PhysicalOperator>();
@@ -169,6 +196,7 @@ public class TestPODistinct {
             // System.out.println(e.getKey());
             assertEquals(1, i);
         }
+        return output.size();
     }
 
 }
@@ -18,10 +18,13 @@
 package org.apache.pig.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.pig.FuncSpec;
@@ -35,9 +38,15 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
+import org.apache.pig.builtin.COUNT;
+import org.apache.pig.builtin.DoubleAvg;
+import org.apache.pig.builtin.DoubleMax;
+import org.apache.pig.builtin.IntMin;
 import org.apache.pig.builtin.IntSum;
+import org.apache.pig.builtin.LongAvg;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.plan.PlanException;
 import org.apache.pig.parser.ParserException;
 import org.apache.pig.test.utils.GenPhyOp;
@@ -217,6 +226,143 @@ public class TestPOPartialAgg {
         checkInputAndOutput(inputTups, outputTups, false);
     }
 
+    @Test
+    public void testOffHeapMultiInput() throws Exception {
+        // input tuple has key, and bag containing SUM.Init output
+        String[] inputTups = { "(1,(1L))", "(2,(2L))", "(1,(2L))", "(null,(2L))", "(null,(3L))" };
+        String[] outputTups = { "(1,(3L))", "(2,(2L))", "(null,(5L))" };
+        checkInputAndOutput(inputTups, outputTups, false, true);
+    }
+
+    @Test
+    public void testOffHeapHighCardinality() throws Exception {
+        // 2 records per key: too little reduction to keep aggregating on the
+        // heap, but enough with the off-heap table. The table is made small
+        // enough to fill up several times.
+        PigMapReduce.sJobConfInternal.set(new Configuration());
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PARTAGG_OFFHEAP, true);
+        PigMapReduce.sJobConfInternal.get().setInt(PigConfiguration.PARTAGG_OFFHEAP_SIZE, 64 * 1024);
+
+        int numKeys = 5000;
+        int numOutputs = 0;
+        Map<Integer, Long> sums = new HashMap<Integer, Long>();
+        for (int i = 0; i < 4 * numKeys; i++) {
+            Tuple t = TupleFactory.getInstance().newTuple(2);
+            t.set(0, i % numKeys);
+            t.set(1, TupleFactory.getInstance().newTuple((Object) Long.valueOf(1)));
+            partAggOp.attachInput(t);
+            Result res = partAggOp.getNextTuple();
+            while (res.returnStatus == POStatus.STATUS_OK) {
+                numOutputs++;
+                addSum((Tuple) res.result, sums);
+                res = partAggOp.getNextTuple();
+            }
+            assertEquals(POStatus.STATUS_EOP, res.returnStatus);
+        }
+        parentPlan.endOfAllInput = true;
+        Result res = partAggOp.getNextTuple();
+        while (res.returnStatus == POStatus.STATUS_OK) {
+            numOutputs++;
+            addSum((Tuple) res.result, sums);
+            res = partAggOp.getNextTuple();
+        }
+        assertEquals(POStatus.STATUS_EOP, res.returnStatus);
+
+        assertEquals(numKeys, sums.size());
+        for (Long sum : sums.values()) {
+            assertEquals(Long.valueOf(4), sum);
+        }
+        // aggregation stayed on
+        assertTrue(numOutputs < 4 * numKeys);
+    }
+
+    @Test
+    public void testPrimitiveAgg() throws Exception {
+        // the primitive accumulators give the same results as the
+        // Intermediate functions
+        Map<Object, Tuple> expected = runBuiltinAggs(false);
+        Map<Object, Tuple> actual = runBuiltinAggs(true);
+        assertEquals(100, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    private Map<Object, Tuple> runBuiltinAggs(boolean primitive) throws Exception {
+        PigMapReduce.sJobConfInternal.set(new Configuration());
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PARTAGG_PRIMITIVE, primitive);
+
+        String[] funcs = { COUNT.Intermediate.class.getName(), IntSum.Intermediate.class.getName(),
+                IntMin.Intermediate.class.getName(), DoubleMax.Intermediate.class.getName(),
+                DoubleAvg.Intermediate.class.getName(), LongAvg.Intermediate.class.getName() };
+        List<PhysicalPlan> valuePlans = new ArrayList<PhysicalPlan>();
+        for (int i = 0; i < funcs.length; i++) {
+            PhysicalPlan valPlan = new PhysicalPlan();
+            POProject projVal = new POProject(GenPhyOp.getOK(), -1, i + 1);
+            projVal.setResultType(DataType.BAG);
+            valPlan.add(projVal);
+            List<PhysicalOperator> udfInps = new ArrayList<PhysicalOperator>();
+            udfInps.add(projVal);
+            POUserFunc udf = new POUserFunc(GenPhyOp.getOK(), -1, udfInps, new FuncSpec(funcs[i]));
+            valPlan.add(udf);
+            valPlan.connect(projVal, udf);
+            valuePlans.add(valPlan);
+        }
+        partAggOp = GenPhyOp.topPOPartialAgg();
+        parentPlan = new PhysicalPlan();
+        partAggOp.setParentPlan(parentPlan);
+        PhysicalPlan keyPlan = new PhysicalPlan();
+        POProject keyProj = new POProject(GenPhyOp.getOK(), -1, 0);
+        keyProj.setResultType(DataType.INTEGER);
+        keyPlan.add(keyProj);
+        partAggOp.setKeyPlan(keyPlan);
+        partAggOp.setValuePlans(valuePlans);
+
+        TupleFactory tf = TupleFactory.getInstance();
+        List<Tuple> outputs = new ArrayList<Tuple>();
+        for (int i = 0; i < 20000; i++) {
+            boolean isNull = i % 7 == 0;
+            Tuple t = tf.newTuple(funcs.length + 1);
+            t.set(0, i % 100 == 99 ? null : i % 100);
+            t.set(1, tf.newTuple((Object) Long.valueOf(isNull ? 0 : 1)));
+            t.set(2, tf.newTuple((Object) (isNull ? null : i)));
+            t.set(3, tf.newTuple((Object) (isNull ? null : i % 1000 - 500)));
+            t.set(4, tf.newTuple((Object) (isNull ? null : i / 3.0)));
+            Tuple avg = tf.newTuple(2);
+            avg.set(0, isNull ? null : i * 0.5);
+            avg.set(1, 1L);
+            t.set(5, avg);
+            avg = tf.newTuple(2);
+            // a key with only nulls
+            avg.set(0, isNull || i % 100 == 42 ? null : (long) i);
+            avg.set(1, 1L);
+            t.set(6, avg);
+            partAggOp.attachInput(t);
+            Result res = partAggOp.getNextTuple();
+            while (addResults(res, outputs)) {
+                res = partAggOp.getNextTuple();
+            }
+        }
+        parentPlan.endOfAllInput = true;
+        while (addResults(partAggOp.getNextTuple(), outputs)) {
+        }
+        Map<Object, Tuple> results = new HashMap<Object, Tuple>();
+        for (Tuple t : outputs) {
+            // enough reduction for every key to be emitted once
+            assertTrue(results.put(t.get(0) == null ? "null" : t.get(0), t) == null);
+        }
+        return results;
+    }
+
+    private void addSum(Tuple out, Map<Integer, Long> sums) throws ExecException {
+        Integer key = (Integer) out.get(0);
+        Long value = (Long) ((Tuple) out.get(1)).get(0);
+        Long sum = sums.get(key);
+        sums.put(key, sum == null ? value : sum + value);
+    }
+
+    private void checkInputAndOutput(String[] inputTups, String[] outputTups,
+            boolean isMapMemEmpty) throws Exception {
+        checkInputAndOutput(inputTups, outputTups, isMapMemEmpty, false);
+    }
 
     /**
      * run the plan on inputTups and check if output matches outputTups if
@@ -226,18 +372,20 @@ public class TestPOPartialAgg {
      * @param inputTups
      * @param outputTups
      * @param isMapMemEmpty
+     * @param offHeap keep aggregated results in an off-heap table
      * @throws ParserException
      * @throws ExecException
      * @throws PlanException
      */
     private void checkInputAndOutput(String[] inputTups, String[] outputTups,
-            boolean isMapMemEmpty) throws Exception {
+            boolean isMapMemEmpty, boolean offHeap) throws Exception {
 
         PigMapReduce.sJobConfInternal.set(new Configuration());
         if (isMapMemEmpty) {
             PigMapReduce.sJobConfInternal.get().set(PigConfiguration.PROP_CACHEDBAG_MEMUSAGE,
                     "0");
         }
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PARTAGG_OFFHEAP, offHeap);
 
         List<Tuple> inputs = Util.getTuplesFromConstantTupleStrings(inputTups);
         List<Tuple> expectedOuts = Util
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.InternalSortedBag;
+import org.apache.pig.data.ParallelSorter;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestParallelSorter {
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    @Before
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.setInt(PigConfiguration.PROP_BAG_SORT_THREADS, 4);
+        conf.setInt(PigConfiguration.PROP_BAG_MERGE_FANIN, 3);
+        ParallelSorter.configure(conf);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ParallelSorter.configure(new Configuration(false));
+    }
+
+    private Tuple[] randomTuples(int n) throws Exception {
+        Random r = new Random(42);
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; i++) {
+            Tuple t = tf.newTuple(2);
+            // few distinct keys, so that the stability of the sort shows
+            t.set(0, r.nextInt(100));
+            t.set(1, i);
+            tuples[i] = t;
+        }
+        return tuples;
+    }
+
+    @Test
+    public void testNaturalOrder() throws Exception {
+        Tuple[] tuples = randomTuples(50000);
+        Tuple[] expected = tuples.clone();
+        Arrays.sort(expected);
+        ParallelSorter.sort(tuples, null);
+        assertEquals(Arrays.asList(expected), Arrays.asList(tuples));
+    }
+
+    @Test
+    public void testStable() throws Exception {
+        Tuple[] tuples = randomTuples(40001);
+        Comparator<Tuple> comp = new POSort.ColumnSortComparator(new int[] { 0 },
+                Arrays.asList(false));
+        Tuple[] expected = tuples.clone();
+        Arrays.sort(expected, comp);
+        ParallelSorter.sort(tuples, comp);
+        for (int i = 0; i < tuples.length; i++) {
+            assertSame(expected[i], tuples[i]);
+        }
+    }
+
+    @Test
+    public void testList() throws Exception {
+        List<Tuple> list = new ArrayList<Tuple>(Arrays.asList(randomTuples(30000)));
+        List<Tuple> expected = new ArrayList<Tuple>(list);
+        Collections.sort(expected);
+        ParallelSorter.sort(list, null);
+        assertEquals(expected, list);
+    }
+
+    @Test
+    public void testMergeFanIn() throws Exception {
+        assertEquals(3, ParallelSorter.getMergeFanIn());
+        DataBag bag = new InternalSortedBag(null);
+        Tuple[] tuples = randomTuples(100);
+        for (int i = 0; i < tuples.length; i++) {
+            bag.add(tuples[i]);
+            if (i % 10 == 9) {
+                bag.spill();
+            }
+        }
+        Arrays.sort(tuples);
+        Iterator<Tuple> it = bag.iterator();
+        for (Tuple t : tuples) {
+            assertEquals(t, it.next());
+        }
+        bag.clear();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.tools.pigstats.FilePigStatsStore;
+import org.apache.pig.tools.pigstats.JobStats;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.apache.pig.tools.pigstats.PigStatsStore;
+import org.apache.pig.tools.pigstats.ScriptState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPigStatsStore {
+
+    private static final String KEY = "TestPigStatsStore";
+
+    private File dir;
+    private File input1;
+    private File input2;
+    private File output;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File("build/test/tmp/TestPigStatsStore");
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+
+        String[] lines1 = new String[100];
+        for (int i = 0; i < lines1.length; i++) {
+            lines1[i] = (i % 5) + "\t" + i;
+        }
+        input1 = new File(dir, "input1");
+        Util.createLocalInputFile(input1.getAbsolutePath(), lines1);
+
+        String[] lines2 = new String[20];
+        for (int i = 0; i < lines2.length; i++) {
+            lines2[i] = (i % 10) + "\t" + i;
+        }
+        input2 = new File(dir, "input2");
+        Util.createLocalInputFile(input2.getAbsolutePath(), lines2);
+
+        output = new File(dir, "output");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private Configuration getConf() {
+        Configuration conf = new Configuration(false);
+        conf.set(PigConfiguration.PROP_STATS_STORE_DIR, new File(dir, "stats").getAbsolutePath());
+        return conf;
+    }
+
+    private PigStats run() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_STATS_STORE, "true");
+        props.setProperty(PigConfiguration.PROP_STATS_STORE_KEY, KEY);
+        props.setProperty(PigConfiguration.PROP_STATS_STORE_DIR,
+                new File(dir, "stats").getAbsolutePath());
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        ScriptState.start("", pigServer.getPigContext());
+        FileUtils.deleteDirectory(output);
+
+        pigServer.setBatchOn();
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(input1.getAbsolutePath())
+                + "' as (k:int, v:int);");
+        pigServer.registerQuery("B = group A by k;");
+        pigServer.registerQuery("C = foreach B generate group, COUNT(A) as c;");
+        pigServer.registerQuery("D = load '" + Util.encodeEscape(input2.getAbsolutePath())
+                + "' as (k:int, w:int);");
+        pigServer.registerQuery("E = join D by k, C by group;");
+        pigServer.registerQuery("store E into '" + Util.encodeEscape(output.getAbsolutePath())
+                + "';");
+        ExecJob job = pigServer.executeBatch().get(0);
+        assertEquals(ExecJob.JOB_STATUS.COMPLETED, job.getStatus());
+        return job.getStatistics();
+    }
+
+    private JobStats getJob(PigStats stats, String alias) {
+        for (JobStats js : stats.getJobGraph()) {
+            if (js.getAlias().contains(alias)) {
+                return js;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testSaveAndOpen() throws Exception {
+        PigStatsStore store = new FilePigStatsStore();
+        store.open("my script.pig", getConf());
+        assertNull(store.getJobStats("A,B"));
+
+        Map<String, Long> stats = new HashMap<String, Long>();
+        stats.put(PigStatsStore.MAP_OUTPUT_BYTES, 1234L);
+        store.putJobStats("A,B", stats);
+        stats = new HashMap<String, Long>();
+        stats.put(PigStatsStore.RECORDS, 5L);
+        stats.put(PigStatsStore.BYTES, 50L);
+        store.putRelationStats("C", stats);
+        store.save();
+
+        store = new FilePigStatsStore();
+        store.open("my script.pig", getConf());
+        assertEquals(1234L, store.getJobStats("A,B").get(PigStatsStore.MAP_OUTPUT_BYTES).longValue());
+        assertEquals(5L, store.getRelationStats("C").get(PigStatsStore.RECORDS).longValue());
+        assertEquals(50L, store.getRelationStats("C").get(PigStatsStore.BYTES).longValue());
+        assertNull(store.getRelationStats("A"));
+    }
+
+    @Test
+    public void testWithoutHistory() throws Exception {
+        PigStats stats = run();
+        assertTrue(stats.isSuccessful());
+        JobStats join = getJob(stats, "E");
+        assertTrue(join.getFeature().contains("HASH_JOIN"));
+        assertTrue(new File(dir, "stats/" + KEY + ".properties").exists());
+    }
+
+    @Test
+    public void testUnknownStoreClass() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_STATS_STORE, "true");
+        props.setProperty(PigConfiguration.PROP_STATS_STORE_KEY, KEY);
+        props.setProperty(PigConfiguration.PROP_STATS_STORE_CLASS, "org.apache.pig.NoSuchStatsStore");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        ScriptState.start("", pigServer.getPigContext());
+        assertNull(ScriptState.get().getStatsStore(pigServer.getPigContext()));
+    }
+
+    @Test
+    public void testReplicatedJoinFromHistory() throws Exception {
+        PigStatsStore store = new FilePigStatsStore();
+        store.open(KEY, getConf());
+        Map<String, Long> stats = new HashMap<String, Long>();
+        stats.put(PigStatsStore.RECORDS, 5L);
+        stats.put(PigStatsStore.BYTES, 20L);
+        store.putRelationStats("C", stats);
+        store.save();
+
+        PigStats pigStats = run();
+        JobStats join = getJob(pigStats, "E");
+        assertTrue(join.getFeature().contains("REPLICATED_JOIN"));
+    }
+
+    @Test
+    public void testMapPartialAggFromHistory() throws Exception {
+        PigStatsStore store = new FilePigStatsStore();
+        store.open(KEY, getConf());
+        Map<String, Long> stats = new HashMap<String, Long>();
+        stats.put(PigStatsStore.RECORDS, 5L);
+        stats.put(PigStatsStore.MAP_INPUT_RECORDS, 100L);
+        store.putRelationStats("B", stats);
+        store.save();
+
+        PigStats pigStats = run();
+        JobStats group = getJob(pigStats, "B");
+        assertTrue(group.getFeature().contains("MAP_PARTIALAGG"));
+        assertTrue(getJob(pigStats, "E").getFeature().contains("HASH_JOIN"));
+    }
+}
@@ -572,4 +572,41 @@ public class TestPigStorage  {
         assertEquals(tuple(1,null,null), it.next());
         assertFalse(it.hasNext());
     }
+
+    @Test
+    public void testLazyFieldsWithPigSchema() throws Exception {
+        File parent = new File(datadir, "lazy_fields_with_pig_schema");
+        parent.deleteOnExit();
+        parent.mkdirs();
+        File tmpInput = File.createTempFile("tmp", "tmp");
+        tmpInput.deleteOnExit();
+        File outFile = new File(parent, "out");
+        pig.registerQuery("a = load '"+tmpInput.getAbsolutePath()+"' as (i:int, l:long, d:double, c:chararray, f:float);");
+        pig.store("a", outFile.getAbsolutePath(), "PigStorage('\\t', '-schema')");
+
+        File inputDir = new File(parent, "input");
+        inputDir.mkdirs();
+        FileUtils.moveFile(new File(outFile, ".pig_schema"), new File(inputDir, ".pig_schema"));
+        Util.writeToFile(new File(inputDir, "data"), new String[] {
+                "1\t-9223372036854775808\t0.1\tx\t1.5",
+                " 2\t12L\t1e3\t\t",
+                "3000000000\t007\t-3.14159265358979323846\ty",
+                "4\t5" });
+        pig.registerQuery("b = load '"+inputDir.getAbsolutePath()+"';");
+        Iterator<Tuple> it = pig.openIterator("b");
+        assertEquals(tuple(1,Long.MIN_VALUE,0.1,"x",1.5f), it.next());
+        assertEquals(tuple(2,12L,1000.0,null,null), it.next());
+        assertEquals(tuple(null,7L,-3.14159265358979323846,"y",null), it.next());
+        assertEquals(tuple(4,5L,null,null,null), it.next());
+        assertFalse(it.hasNext());
+
+        // only the projected fields are read
+        pig.registerQuery("c = foreach b generate l, i;");
+        it = pig.openIterator("c");
+        assertEquals(tuple(Long.MIN_VALUE,1), it.next());
+        assertEquals(tuple(12L,2), it.next());
+        assertEquals(tuple(7L,null), it.next());
+        assertEquals(tuple(5L,4), it.next());
+        assertFalse(it.hasNext());
+    }
 }
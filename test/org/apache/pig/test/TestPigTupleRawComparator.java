@@ -23,10 +23,14 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.joda.time.DateTime;
@@ -360,6 +364,100 @@ public class TestPigTupleRawComparator {
         assertTrue(res < 0);
     }
 
+    @Test
+    public void testCompareUnicodeCharArray() throws IOException {
+        // U+1D11E is a supplementary character, below U+FFFD in UTF-16
+        String[] strings = new String[] { "", "a", "ab", "\u00e9", "\u0000", "a\u0000b", "\ud834\udd1e",
+                "\ufffd", "\uffff", "x\ud834\udd1ey", "x\uffe0", "\u4e2d\u6587", "\u4e2d\u6587\u00e9" };
+        for (String s1 : strings) {
+            for (String s2 : strings) {
+                // short strings are written in modified UTF-8, long ones in UTF-8
+                String long2 = appendChars(s2, 'z', 30000);
+                checkCompare(tf.newTuple(s1), tf.newTuple(s2));
+                checkCompare(tf.newTuple(appendChars(s1, 'z', 30000)), tf.newTuple(long2));
+                checkCompare(tf.newTuple(s1 + "z"), tf.newTuple(long2));
+                checkCompare(tf.newTuple(appendChars(s1, 'z', 30000)), tf.newTuple(s2 + "z"));
+            }
+        }
+    }
+
+    @Test
+    public void testCompareBigNumbers() throws IOException {
+        BigInteger[] integers = new BigInteger[] { BigInteger.ZERO, BigInteger.ONE, BigInteger.TEN,
+                new BigInteger("-1"), new BigInteger("-10"), new BigInteger("-9"), new BigInteger("99"),
+                new BigInteger("123456789012345678901234567890"), new BigInteger("-123456789012345678901234567890") };
+        for (BigInteger i1 : integers) {
+            for (BigInteger i2 : integers) {
+                checkCompare(tf.newTuple(i1), tf.newTuple(i2));
+            }
+        }
+        BigDecimal[] decimals = new BigDecimal[] { BigDecimal.ZERO, new BigDecimal("0.000"), new BigDecimal("-0.0"),
+                BigDecimal.ONE, new BigDecimal("1.00"), new BigDecimal("1E+3"), new BigDecimal("1000"),
+                new BigDecimal("999.999"), new BigDecimal("0.001"), new BigDecimal("1E-3"), new BigDecimal("1.5E-7"),
+                new BigDecimal("0.00000015"), new BigDecimal("-2.5"), new BigDecimal("-2.50"), new BigDecimal("-25E-1"),
+                new BigDecimal("-3"), new BigDecimal("10.01"), new BigDecimal("10.1"), new BigDecimal("1.01E+1"),
+                new BigDecimal("123456789.123456789"), new BigDecimal("-123456789.123456789") };
+        for (BigDecimal d1 : decimals) {
+            for (BigDecimal d2 : decimals) {
+                checkCompare(tf.newTuple(d1), tf.newTuple(d2));
+            }
+        }
+    }
+
+    @Test
+    public void testCompareUnorderedBagsAndMaps() throws IOException {
+        DataBag bag1 = new DefaultDataBag();
+        DataBag bag2 = new DefaultDataBag();
+        for (int i = 0; i < 10; i++) {
+            bag1.add(tf.newTuple(Arrays.<Object> asList(i, "v" + i)));
+            bag2.add(tf.newTuple(Arrays.<Object> asList(9 - i, "v" + (9 - i))));
+        }
+        assertEquals(0, checkCompare(tf.newTuple(bag1), tf.newTuple(bag2)));
+        bag2.add(tf.newTuple(Arrays.<Object> asList(10, "v10")));
+        bag1.add(tf.newTuple(Arrays.<Object> asList(10, "v11")));
+        assertTrue(checkCompare(tf.newTuple(bag1), tf.newTuple(bag2)) > 0);
+
+        Map<String, Object> map1 = new LinkedHashMap<String, Object>();
+        Map<String, Object> map2 = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < 10; i++) {
+            map1.put("k" + i, i);
+            map2.put("k" + (9 - i), 9 - i);
+        }
+        assertEquals(0, checkCompare(tf.newTuple(map1), tf.newTuple(map2)));
+        map1.put("k9", bag1);
+        assertTrue(checkCompare(tf.newTuple(map1), tf.newTuple(map2)) > 0);
+        map2.put("k9", bag2);
+        assertTrue(checkCompare(tf.newTuple(map1), tf.newTuple(map2)) > 0);
+        map2.put("k9", bag1);
+        assertEquals(0, checkCompare(tf.newTuple(Arrays.<Object> asList(map1, 1)),
+                tf.newTuple(Arrays.<Object> asList(map2, 1))));
+        assertTrue(checkCompare(tf.newTuple(Arrays.<Object> asList(map1, 1)),
+                tf.newTuple(Arrays.<Object> asList(map2, 2))) < 0);
+    }
+
+    /**
+     * Checks the raw comparators agree with the comparison of the tuples
+     */
+    private int checkCompare(Tuple t1, Tuple t2) throws IOException {
+        NullableTuple nt1 = new NullableTuple(t1);
+        NullableTuple nt2 = new NullableTuple(t2);
+        int expected = (int) Math.signum(nt1.compareTo(nt2));
+        int res = compareHelper(nt1, nt2, comparator);
+        assertEquals(t1 + " " + t2, expected, Math.signum(res), 0);
+        assertEquals(t1 + " " + t2, -expected, Math.signum(compareHelper(nt2, nt1, comparator)), 0);
+        // the default comparator compares the tuples without the null flag
+        // and index of NullableTuple
+        t1.write(dos1);
+        t2.write(dos2);
+        byte[] b1 = baos1.toByteArray();
+        byte[] b2 = baos2.toByteArray();
+        baos1.reset();
+        baos2.reset();
+        assertEquals(t1 + " " + t2, expected,
+                Math.signum(oldComparator.compare(b1, 0, b1.length, b2, 0, b2.length)), 0);
+        return res;
+    }
+
     @Test
     public void testCompareDateTime() throws IOException {
         list.set(9, ((DateTime) list.get(9)).plus(1L));
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PipelinedJobScheduler;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestPipelinedJobScheduler {
+    private static File bigFile;
+    private static File smallFile;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        String[] big = new String[2000];
+        for (int i = 0; i < big.length; i++) {
+            big[i] = (i % 10) + "\t" + i;
+        }
+        String[] small = new String[20];
+        for (int i = 0; i < small.length; i++) {
+            small[i] = (i % 4) + "\t" + (i % 3);
+        }
+        bigFile = Util.createInputFile("big", ".txt", big);
+        smallFile = Util.createInputFile("small", ".txt", small);
+    }
+
+    private String getQuery() {
+        // a chain of three jobs on the big input, one job on the small one
+        return "A = load '" + Util.encodeEscape(bigFile.getAbsolutePath()) + "' as (k:int, v:int);"
+            + "B = group A by k;"
+            + "C = foreach B generate group, SUM(A.v) as s;"
+            + "D = order C by s;"
+            + "store D into 'out1';"
+            + "E = load '" + Util.encodeEscape(smallFile.getAbsolutePath()) + "' as (k:int, v:int);"
+            + "F = group E by v;"
+            + "G = foreach F generate group, COUNT(E);"
+            + "store G into 'out2';";
+    }
+
+    @Test
+    public void testReadyJobs() throws Exception {
+        PigContext pc = new PigContext(ExecType.LOCAL, new Properties());
+        pc.connect();
+        MROperPlan mrPlan = Util.buildMRPlan(getQuery(), pc);
+        assertEquals(2, mrPlan.getRoots().size());
+
+        PipelinedJobScheduler scheduler = new PipelinedJobScheduler(mrPlan,
+                ConfigurationUtil.toConfiguration(pc.getProperties()), 1);
+        // the head of the longest chain goes first
+        List<MapReduceOper> ready = scheduler.getReadyJobs(0);
+        assertEquals(1, ready.size());
+        assertTrue(getInput(ready.get(0)).contains("big"));
+        assertTrue(scheduler.getCriticalPath(ready.get(0)) >= 3 * bigFile.length());
+        // no room for more
+        assertEquals(0, scheduler.getReadyJobs(1).size());
+        ready = scheduler.getReadyJobs(0);
+        assertEquals(1, ready.size());
+        assertTrue(getInput(ready.get(0)).contains("small"));
+        // each job is handed out once
+        assertEquals(0, scheduler.getReadyJobs(0).size());
+
+        // the next jobs are handed out once the first one is done
+        MapReduceOper first = mrPlan.getRoots().get(0);
+        if (!getInput(first).contains("big")) {
+            first = mrPlan.getRoots().get(1);
+        }
+        mrPlan.remove(first);
+        ready = scheduler.getReadyJobs(0);
+        assertEquals(1, ready.size());
+        assertTrue(mrPlan.getRoots().contains(ready.get(0)));
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        List<Tuple> expected1 = new ArrayList<Tuple>();
+        List<Tuple> expected2 = new ArrayList<Tuple>();
+        run(false, expected1, expected2);
+        List<Tuple> actual1 = new ArrayList<Tuple>();
+        List<Tuple> actual2 = new ArrayList<Tuple>();
+        run(true, actual1, actual2);
+        assertEquals(10, expected1.size());
+        assertEquals(3, expected2.size());
+        // order is kept
+        assertEquals(expected1, actual1);
+        assertEquals(expected2, actual2);
+    }
+
+    private void run(boolean pipelined, List<Tuple> out1, List<Tuple> out2) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_EXEC_PIPELINED, Boolean.toString(pipelined));
+        props.setProperty(PigConfiguration.PROP_EXEC_PIPELINED_MAXJOBS, "1");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        File out = File.createTempFile("pipelined", "");
+        out.delete();
+        String query = getQuery().replace("'out1'", "'" + Util.encodeEscape(out.getAbsolutePath() + "1") + "'")
+                .replace("'out2'", "'" + Util.encodeEscape(out.getAbsolutePath() + "2") + "'");
+        pigServer.setBatchOn();
+        for (String line : query.split(";")) {
+            pigServer.registerQuery(line + ";");
+        }
+        pigServer.executeBatch();
+        readAll(pigServer, out.getAbsolutePath() + "1", out1);
+        readAll(pigServer, out.getAbsolutePath() + "2", out2);
+        Collections.sort(out2);
+    }
+
+    private void readAll(PigServer pigServer, String location, List<Tuple> tuples) throws Exception {
+        pigServer.registerQuery("R = load '" + Util.encodeEscape(location) + "';");
+        Iterator<Tuple> it = pigServer.openIterator("R");
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+    }
+
+    private String getInput(MapReduceOper mro) throws Exception {
+        return PlanHelper.getPhysicalOperators(mro.mapPlan, POLoad.class).get(0)
+                .getLFile().getFileName();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.ExecType;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.LoadPredicatePushdown;
+import org.apache.pig.PigServer;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.logical.optimizer.LogicalPlanOptimizer;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestPredicatePushdown {
+    private static File input;
+    private PigServer pigServer;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        String[] lines = new String[20];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = i + "\tv" + (i % 3);
+        }
+        input = Util.createInputFile("predicate", ".txt", lines);
+    }
+
+    @Before
+    public void setUpServer() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL, new Properties());
+        TestLoader.pushed = null;
+        EqualityLoader.pushed = null;
+    }
+
+    /**
+     * Loads (a:int, b:chararray) and evaluates the comparisons of a with an
+     * integer constant
+     */
+    public static class TestLoader extends PigStorage implements LoadPredicatePushdown {
+        static List<Expression> pushed;
+
+        private String signature;
+        private List<String> predicates;
+
+        @Override
+        public void setUDFContextSignature(String signature) {
+            super.setUDFContextSignature(signature);
+            this.signature = signature;
+        }
+
+        @Override
+        public ResourceSchema getSchema(String location, Job job) throws IOException {
+            return new ResourceSchema(Utils.getSchemaFromString("a:int, b:chararray"));
+        }
+
+        @Override
+        public List<String> getPredicateFields(String location, Job job) {
+            return Arrays.asList("a");
+        }
+
+        @Override
+        public List<OpType> getSupportedExpressionTypes() {
+            return Arrays.asList(OpType.TERM_COL, OpType.TERM_CONST, OpType.OP_EQ, OpType.OP_GT,
+                    OpType.OP_LT, OpType.OP_OR);
+        }
+
+        @Override
+        public List<Expression> pushPredicates(List<Expression> predicates) {
+            pushed = predicates;
+            List<Expression> evaluated = new ArrayList<Expression>();
+            StringBuilder sb = new StringBuilder();
+            for (Expression e : predicates) {
+                if (e.getOpType() != OpType.OP_OR && ((BinaryExpression)e).getLhs() instanceof Column
+                        && ((BinaryExpression)e).getRhs() instanceof Const) {
+                    evaluated.add(e);
+                    sb.append(e.getOpType().name()).append(":")
+                        .append(((Const)((BinaryExpression)e).getRhs()).getValue()).append(",");
+                }
+            }
+            UDFContext.getUDFContext().getUDFProperties(getClass(), new String[] { signature })
+                .setProperty("predicates", sb.toString());
+            return evaluated;
+        }
+
+        @Override
+        public Tuple getNext() throws IOException {
+            if (predicates == null) {
+                predicates = new ArrayList<String>();
+                String p = UDFContext.getUDFContext().getUDFProperties(getClass(),
+                        new String[] { signature }).getProperty("predicates", "");
+                for (String s : p.split(",")) {
+                    if (s.length() > 0) {
+                        predicates.add(s);
+                    }
+                }
+            }
+            Tuple t;
+            while ((t = super.getNext()) != null) {
+                t.set(0, Integer.valueOf(((DataByteArray)t.get(0)).toString()));
+                t.set(1, ((DataByteArray)t.get(1)).toString());
+                if (matches((Integer)t.get(0))) {
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        private boolean matches(int a) {
+            for (String p : predicates) {
+                String[] s = p.split(":");
+                int value = Integer.parseInt(s[1]);
+                OpType op = OpType.valueOf(s[0]);
+                if (op == OpType.OP_EQ && a != value || op == OpType.OP_GT && a <= value
+                        || op == OpType.OP_LT && a >= value) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Loads (a:int, b:chararray) and offers to evaluate the equalities of b
+     * only
+     */
+    public static class EqualityLoader extends PigStorage implements LoadPredicatePushdown {
+        static List<Expression> pushed;
+
+        @Override
+        public ResourceSchema getSchema(String location, Job job) throws IOException {
+            return new ResourceSchema(Utils.getSchemaFromString("a:int, b:chararray"));
+        }
+
+        @Override
+        public List<String> getPredicateFields(String location, Job job) {
+            return Arrays.asList("b");
+        }
+
+        @Override
+        public List<OpType> getSupportedExpressionTypes() {
+            return Arrays.asList(OpType.TERM_COL, OpType.TERM_CONST, OpType.OP_EQ);
+        }
+
+        @Override
+        public List<Expression> pushPredicates(List<Expression> predicates) {
+            pushed = predicates;
+            return new ArrayList<Expression>();
+        }
+    }
+
+    private String load() {
+        return "A = load '" + Util.encodeEscape(input.getAbsolutePath()) + "' using "
+            + TestLoader.class.getName() + "();";
+    }
+
+    private LogicalPlan optimize(String query) throws Exception {
+        LogicalPlan plan = Util.buildLp(pigServer, query + "store B into 'out';");
+        new LogicalPlanOptimizer(plan, 100, new HashSet<String>()).optimize();
+        return plan;
+    }
+
+    private LOFilter getFilter(LogicalPlan plan) {
+        Operator load = plan.getSources().get(0);
+        assertTrue(load instanceof LOLoad);
+        Operator next = plan.getSuccessors(load).get(0);
+        return next instanceof LOFilter ? (LOFilter)next : null;
+    }
+
+    private List<Tuple> run(String query) throws Exception {
+        pigServer.registerQuery(load());
+        pigServer.registerQuery(query);
+        List<Tuple> result = new ArrayList<Tuple>();
+        Iterator<Tuple> it = pigServer.openIterator("B");
+        while (it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    @Test
+    public void testPartiallyEvaluated() throws Exception {
+        String query = "B = filter A by a > 5 and b == 'v1' and a < 15;";
+        LogicalPlan plan = optimize(load() + query);
+        assertEquals("[(a > 5), (a < 15)]", TestLoader.pushed.toString());
+        // the condition on b stays
+        LOFilter filter = getFilter(plan);
+        assertEquals(3, filter.getFilterPlan().size());
+
+        List<Tuple> result = run(query);
+        assertEquals("[(7,v1), (10,v1), (13,v1)]", result.toString());
+    }
+
+    @Test
+    public void testFullyEvaluated() throws Exception {
+        String query = "B = filter A by a > 5 and a < 8;";
+        LogicalPlan plan = optimize(load() + query);
+        assertEquals("[(a > 5), (a < 8)]", TestLoader.pushed.toString());
+        assertNull(getFilter(plan));
+
+        List<Tuple> result = run(query);
+        assertEquals("[(6,v0), (7,v1)]", result.toString());
+    }
+
+    @Test
+    public void testOfferedNotEvaluated() throws Exception {
+        // the loader supports the condition but does not evaluate it
+        String query = "B = filter A by (a == 1 or a == 2) and b == 'v2';";
+        LogicalPlan plan = optimize(load() + query);
+        assertEquals("[((a == 1) or (a == 2))]", TestLoader.pushed.toString());
+        assertEquals(11, getFilter(plan).getFilterPlan().size());
+
+        List<Tuple> result = run(query);
+        assertEquals("[(2,v2)]", result.toString());
+    }
+
+    @Test
+    public void testNotPushed() throws Exception {
+        // a condition on a field the loader does not know
+        String query = "B = filter A by a > 5 or b == 'v1';";
+        LogicalPlan plan = optimize(load() + query);
+        assertNull(TestLoader.pushed);
+        assertEquals(7, getFilter(plan).getFilterPlan().size());
+
+        List<Tuple> result = run(query);
+        assertEquals(16, result.size());
+    }
+
+    @Test
+    public void testLoadsWithDifferentPredicates() throws Exception {
+        // each load is offered the conditions on its own fields and
+        // operators only
+        String query = load()
+            + "C = load '" + Util.encodeEscape(input.getAbsolutePath()) + "' using "
+            + EqualityLoader.class.getName() + "();"
+            + "A1 = filter A by a > 5 and b == 'v1';"
+            + "C1 = filter C by a > 5 and b == 'v1';"
+            + "B = union A1, C1;";
+        optimize(query);
+        assertEquals("[(a > 5)]", TestLoader.pushed.toString());
+        assertEquals("[(b == 'v1')]", EqualityLoader.pushed.toString());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestSkewedGroup {
+
+    private static File eventFile;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        // most of the events have no user
+        String[] events = new String[1000];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = (i % 10 < 8 ? "" : "u" + (i % 7)) + "\t" + i;
+        }
+        eventFile = Util.createInputFile("events", ".txt", events);
+    }
+
+    private PigContext getPigContext() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_SKEWED_GROUP, "true");
+        PigContext pc = new PigContext(ExecType.LOCAL, props);
+        pc.connect();
+        return pc;
+    }
+
+    private MapReduceOper getSkewedGroup(MROperPlan mrPlan) {
+        MapReduceOper group = null;
+        for (MapReduceOper mro : mrPlan) {
+            if (mro.isSkewedGroup()) {
+                assertTrue(group == null);
+                group = mro;
+            }
+        }
+        assertNotNull(group);
+        // its keys are sampled first
+        assertEquals(1, mrPlan.getPredecessors(group).size());
+        assertTrue(mrPlan.getPredecessors(group).get(0).isSampler());
+        return group;
+    }
+
+    @Test
+    public void testAlgebraicPlan() throws Exception {
+        String query = "A = load 'events' as (u:chararray, v:int);"
+            + "B = group A by u;"
+            + "C = foreach B generate group, COUNT(A), SUM(A.v);"
+            + "store C into 'out';";
+        MROperPlan mrPlan = Util.buildMRPlan(query, getPigContext());
+        MapReduceOper group = getSkewedGroup(mrPlan);
+        // the hot keys are spread, and the partial results merged by the
+        // job after
+        assertTrue(group.isSkewedGroupSpread());
+        assertTrue(group.isSkewedJoin());
+        assertFalse(group.combinePlan.isEmpty());
+        assertEquals(1, mrPlan.getSuccessors(group).size());
+        MapReduceOper merge = mrPlan.getSuccessors(group).get(0);
+        POStore partial = (POStore) group.reducePlan.getLeaves().get(0);
+        POLoad load = (POLoad) merge.mapPlan.getRoots().get(0);
+        assertEquals(partial.getSFile().getFileName(), load.getLFile().getFileName());
+        assertFalse(merge.isSkewedGroupSpread());
+        assertFalse(merge.isSkewedJoin());
+        assertEquals("out", ((POStore) merge.reducePlan.getLeaves().get(0)).getSFile().getFileName());
+    }
+
+    @Test
+    public void testHolisticPlan() throws Exception {
+        String query = "A = load 'events' as (u:chararray, v:int);"
+            + "B = group A by u;"
+            + "C = foreach B generate group, A;"
+            + "store C into 'out';";
+        MROperPlan mrPlan = Util.buildMRPlan(query, getPigContext());
+        MapReduceOper group = getSkewedGroup(mrPlan);
+        // all the records of a key still go to one reducer
+        assertFalse(group.isSkewedGroupSpread());
+        assertFalse(group.isSkewedJoin());
+        assertTrue(mrPlan.getSuccessors(group) == null || mrPlan.getSuccessors(group).isEmpty());
+    }
+
+    @Test
+    public void testAlgebraicGroup() throws Exception {
+        checkGroup("C = foreach B generate group, COUNT(A), SUM(A.v), MIN(A.v);", 8);
+    }
+
+    @Test
+    public void testDistinctGroup() throws Exception {
+        checkGroup("C = foreach B { D = distinct A.v; generate group, COUNT(D); };", 8);
+    }
+
+    @Test
+    public void testHolisticGroup() throws Exception {
+        checkGroup("C = foreach B { D = order A by v; E = limit D 3; generate group, E; };", 8);
+    }
+
+    private void checkGroup(String foreach, int expectedSize) throws Exception {
+        List<Tuple> expected = runGroup(foreach, false);
+        assertEquals(expectedSize, expected.size());
+        assertEquals(expected, runGroup(foreach, true));
+    }
+
+    private List<Tuple> runGroup(String foreach, boolean skewed) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_SKEWED_GROUP, Boolean.toString(skewed));
+        // makes the missing user need several reducers
+        props.setProperty("pig.skewedjoin.reduce.maxtuple", "50");
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(eventFile.getAbsolutePath())
+                + "' as (u:chararray, v:int);");
+        pigServer.registerQuery("B = group A by u parallel 4;");
+        pigServer.registerQuery(foreach);
+        List<Tuple> results = new ArrayList<Tuple>();
+        Iterator<Tuple> it = pigServer.openIterator("C");
+        while (it.hasNext()) {
+            results.add(it.next());
+        }
+        Collections.sort(results);
+        return results;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POReservoirSample;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.builtin.RandomSampleLoader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestSortSampling {
+
+    private static File inputFile;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        String[] lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "k" + (i % 13) + "\t" + ((i * 7919) % 1000);
+        }
+        inputFile = Util.createInputFile("sorted", ".txt", lines);
+    }
+
+    private PigContext getPigContext(Properties props) throws Exception {
+        PigContext pc = new PigContext(ExecType.LOCAL, props);
+        pc.connect();
+        return pc;
+    }
+
+    private MapReduceOper getSampler(MROperPlan mrPlan) {
+        MapReduceOper sampler = null;
+        for (MapReduceOper mro : mrPlan) {
+            if (mro.isSampler()) {
+                assertTrue(sampler == null);
+                sampler = mro;
+            }
+        }
+        return sampler;
+    }
+
+    @Test
+    public void testPiggybackPlan() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_SORT_SAMPLE_PIGGYBACK, "true");
+        String query = "A = load 'input' as (k:chararray, v:int);"
+            + "B = filter A by v > 10;"
+            + "C = order B by v;"
+            + "store C into 'out';";
+        MROperPlan mrPlan = Util.buildMRPlan(query, getPigContext(props));
+        MapReduceOper sampler = getSampler(mrPlan);
+        assertNotNull(sampler);
+
+        // the job before samples the output of its map
+        MapReduceOper prev = mrPlan.getPredecessors(sampler).get(0);
+        POSplit split = (POSplit) prev.mapPlan.getLeaves().get(0);
+        assertEquals(2, split.getPlans().size());
+        assertTrue(split.getPlans().get(1).getRoots().get(0) instanceof POReservoirSample);
+        POStore sampleStore = (POStore) split.getPlans().get(1).getLeaves().get(0);
+
+        // which is all the sampling job reads
+        POLoad load = (POLoad) sampler.mapPlan.getRoots().get(0);
+        assertEquals(sampleStore.getSFile().getFileName(), load.getLFile().getFileName());
+        assertFalse(RandomSampleLoader.class.getName().equals(load.getLFile().getFuncName()));
+    }
+
+    @Test
+    public void testNoPiggybackAfterLoad() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_SORT_SAMPLE_PIGGYBACK, "true");
+        String query = "A = load 'input' as (k:chararray, v:int);"
+            + "C = order A by v;"
+            + "store C into 'out';";
+        MROperPlan mrPlan = Util.buildMRPlan(query, getPigContext(props));
+        // the sampling job reads the input, as without piggybacking
+        MapReduceOper sampler = getSampler(mrPlan);
+        assertEquals(2, mrPlan.size());
+        assertEquals(RandomSampleLoader.class.getName(),
+                ((POLoad) sampler.mapPlan.getRoots().get(0)).getLFile().getFuncName());
+    }
+
+    @Test
+    public void testPiggybackMapOrder() throws Exception {
+        checkOrder("B = filter A by v > 10;"
+                + "C = order B by v desc, k;");
+    }
+
+    @Test
+    public void testPiggybackReduceOrder() throws Exception {
+        String query = "B = group A by k;"
+            + "S = foreach B generate group as k, SIZE(A) as s;"
+            + "C = order S by s, k;";
+        // the group job samples the output of its reduce
+        MROperPlan mrPlan = buildPiggybackPlan(query);
+        MapReduceOper group = mrPlan.getPredecessors(getSampler(mrPlan)).get(0);
+        assertTrue(group.reducePlan.getLeaves().get(0) instanceof POSplit);
+        checkOrder(query);
+    }
+
+    @Test
+    public void testNoPiggybackCombinable() throws Exception {
+        String query = "B = group A by k;"
+            + "S = foreach B generate group as k, SUM(A.v) as s;"
+            + "C = order S by s, k;";
+        // the group job keeps its combiner, and its plan ends with a store
+        MROperPlan mrPlan = buildPiggybackPlan(query);
+        MapReduceOper group = mrPlan.getPredecessors(getSampler(mrPlan)).get(0);
+        assertFalse(group.combinePlan.isEmpty());
+        assertTrue(group.reducePlan.getLeaves().get(0) instanceof POStore);
+        checkOrder(query);
+    }
+
+    private MROperPlan buildPiggybackPlan(String query) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_SORT_SAMPLE_PIGGYBACK, "true");
+        return Util.buildMRPlan("A = load 'input' as (k:chararray, v:int);" + query
+                + "store C into 'out';", getPigContext(props));
+    }
+
+    private void checkOrder(String query) throws Exception {
+        Properties props = new Properties();
+        List<Tuple> expected = runOrder(props, query);
+        assertFalse(expected.isEmpty());
+        props.setProperty(PigConfiguration.PROP_SORT_SAMPLE_PIGGYBACK, "true");
+        assertEquals(expected, runOrder(props, query));
+    }
+
+    @Test
+    public void testQuantileCache() throws Exception {
+        File cacheDir = File.createTempFile("quantiles", "");
+        cacheDir.delete();
+        cacheDir.deleteOnExit();
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PROP_SORT_QUANTILE_CACHE_DIR, cacheDir.getAbsolutePath());
+        String query = "C = order A by v parallel 1;";
+
+        List<Tuple> expected = runOrder(props, query);
+        assertEquals(1000, expected.size());
+        // the sampling job kept its quantile file
+        assertTrue(cacheDir.isDirectory());
+        assertEquals(1, cacheDir.list().length);
+
+        // which the same ORDER BY reuses, without sampling its input again
+        String script = "A = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+            + "' as (k:chararray, v:int);" + query + "store C into 'out';";
+        MROperPlan mrPlan = Util.buildMRPlan(script, getPigContext(props));
+        assertEquals(1, mrPlan.size());
+        assertTrue(mrPlan.getRoots().get(0).isGlobalSort());
+        assertEquals(expected, runOrder(props, query));
+
+        // but not an ORDER BY on other keys
+        mrPlan = Util.buildMRPlan(script.replace("by v", "by k"), getPigContext(props));
+        assertNotNull(getSampler(mrPlan));
+    }
+
+    private List<Tuple> runOrder(Properties props, String query) throws Exception {
+        PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile.getAbsolutePath())
+                + "' as (k:chararray, v:int);");
+        for (String statement : query.split(";")) {
+            pigServer.registerQuery(statement + ";");
+        }
+        List<Tuple> results = new ArrayList<Tuple>();
+        Iterator<Tuple> it = pigServer.openIterator("C");
+        while (it.hasNext()) {
+            results.add(it.next());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultAbstractBag;
+import org.apache.pig.data.DefaultDataBag;
+import org.apache.pig.data.DistinctDataBag;
+import org.apache.pig.data.InternalCachedBag;
+import org.apache.pig.data.InternalSortedBag;
+import org.apache.pig.data.SortedDataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.io.BlockCodec;
+import org.apache.pig.impl.io.BlockCompressedInputStream;
+import org.apache.pig.impl.io.BlockCompressedOutputStream;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestSpillCompression {
+
+    private static final String[] CODECS = { "deflate", "snappy", "gz" };
+
+    private final Random random = new Random(31);
+
+    @After
+    public void tearDown() throws Exception {
+        DefaultAbstractBag.configureSpill(new Configuration());
+    }
+
+    /**
+     * @return compressible bytes, followed by random ones
+     */
+    private byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length / 2; i++) {
+            data[i] = (byte) ("pig".charAt(i % 3) + i % 5);
+        }
+        byte[] noise = new byte[length - length / 2];
+        random.nextBytes(noise);
+        System.arraycopy(noise, 0, data, length / 2, noise.length);
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, BlockCodec codec, int blockSize)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new BlockCompressedOutputStream(bytes, codec, blockSize);
+        // some single bytes, then unaligned chunks
+        int i = 0;
+        for (; i < Math.min(10, data.length); i++) {
+            out.write(data[i]);
+        }
+        while (i < data.length) {
+            int n = Math.min(data.length - i, 1 + i % 777);
+            out.write(data, i, n);
+            i += n;
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, BlockCodec codec, int length)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BlockCompressedInputStream(
+                new ByteArrayInputStream(compressed), codec));
+        byte[] data = new byte[length];
+        in.readFully(data);
+        assertEquals(-1, in.read());
+        in.close();
+        return data;
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        Configuration conf = new Configuration();
+        for (String name : CODECS) {
+            BlockCodec codec = BlockCodec.getInstance(name, conf);
+            for (int length : new int[] { 0, 1, 1000, 100000 }) {
+                for (int blockSize : new int[] { 100, 4096, 64 * 1024 }) {
+                    byte[] data = createData(length);
+                    byte[] compressed = compress(data, codec, blockSize);
+                    assertArrayEquals(name, data, decompress(compressed, codec, length));
+                    if (length == 100000 && blockSize > 100) {
+                        // the random half stays as it is
+                        assertTrue(name + " " + compressed.length,
+                                compressed.length < length * 0.6);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        BlockCodec codec = BlockCodec.getInstance("deflate", new Configuration());
+        byte[] data = createData(10000);
+        byte[] compressed = compress(data, codec, 1000);
+        for (int position : new int[] { 20, compressed.length / 2, compressed.length - 1 }) {
+            byte[] corrupt = compressed.clone();
+            corrupt[position] ^= 0x10;
+            try {
+                decompress(corrupt, codec, data.length);
+                fail("Corruption at " + position + " not detected");
+            } catch (ChecksumException e) {
+                // expected
+            }
+        }
+        byte[] truncated = new byte[compressed.length - 5];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        try {
+            decompress(truncated, codec, data.length);
+            fail("Truncation not detected");
+        } catch (ChecksumException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCodecNames() throws Exception {
+        Configuration conf = new Configuration();
+        assertEquals(null, BlockCodec.getInstance(null, conf));
+        assertEquals(null, BlockCodec.getInstance("none", conf));
+        BlockCodec codec = BlockCodec.getInstance(
+                "org.apache.hadoop.io.compress.DefaultCodec", conf);
+        byte[] data = createData(5000);
+        assertArrayEquals(data, decompress(compress(data, codec, 1024), codec, data.length));
+        try {
+            BlockCodec.getInstance("nosuchcodec", conf);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private List<Tuple> createTuples(int count) throws Exception {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < count; i++) {
+            Tuple t = TupleFactory.getInstance().newTuple(2);
+            t.set(0, random.nextInt(count / 2));
+            t.set(1, "value" + (i % 10));
+            tuples.add(t);
+        }
+        return tuples;
+    }
+
+    private static List<Tuple> fill(DataBag bag, List<Tuple> tuples, int spills) {
+        int perSpill = tuples.size() / (spills + 1);
+        for (int i = 0; i < tuples.size(); i++) {
+            bag.add(tuples.get(i));
+            if (i % perSpill == perSpill - 1 && i < spills * perSpill) {
+                bag.spill();
+            }
+        }
+        List<Tuple> read = new ArrayList<Tuple>();
+        Iterator<Tuple> it = bag.iterator();
+        while (it.hasNext()) {
+            read.add(it.next());
+        }
+        return read;
+    }
+
+    @Test
+    public void testSpilledBags() throws Exception {
+        for (String name : CODECS) {
+            Configuration conf = new Configuration();
+            conf.set(PigConfiguration.PROP_SPILL_COMPRESSION_CODEC, name);
+            DefaultAbstractBag.configureSpill(conf);
+
+            List<Tuple> tuples = createTuples(3000);
+            assertEquals(tuples, fill(new DefaultDataBag(), tuples, 5));
+
+            InternalCachedBag cached = new InternalCachedBag(1, 0.0f);
+            assertEquals(tuples, fill(cached, tuples, 0));
+
+            List<Tuple> sorted = new ArrayList<Tuple>(tuples);
+            Collections.sort(sorted);
+            // more spills than can be merged at once
+            assertEquals(sorted, fill(new SortedDataBag(null), tuples, 150));
+            assertEquals(sorted, fill(new InternalSortedBag(), tuples, 150));
+
+            List<Tuple> distinct = new ArrayList<Tuple>(new TreeSet<Tuple>(tuples));
+            assertEquals(distinct, fill(new DistinctDataBag(), tuples, 150));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.impl.util.TaskJVMCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTaskJVMCache {
+
+    private File dir;
+    private Path file;
+    private int loads;
+
+    private TaskJVMCache.Loader<String> loader = new TaskJVMCache.Loader<String>() {
+        @Override
+        public String load() throws IOException {
+            loads++;
+            return "value" + loads;
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File("build/test/tmp/TestTaskJVMCache");
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        File f = new File(dir, "input");
+        FileUtils.writeStringToFile(f, "1\t2\n");
+        file = new Path(f.getAbsolutePath());
+        loads = 0;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private Configuration newConf(String jobId) {
+        Configuration conf = new Configuration(false);
+        conf.set("fs.default.name", "file:///");
+        conf.set("mapred.job.id", jobId);
+        conf.setInt("mapred.job.reuse.jvm.num.tasks", -1);
+        return conf;
+    }
+
+    @Test
+    public void testReused() throws Exception {
+        Configuration conf = newConf("job_1");
+        assertEquals("value1", TaskJVMCache.get(conf, "a", file, loader));
+        assertEquals("value1", TaskJVMCache.get(conf, "a", file, loader));
+        assertEquals(1, loads);
+
+        // another kind of value of the same file
+        assertEquals("value2", TaskJVMCache.get(conf, "b", file, loader));
+        assertEquals(2, loads);
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        Configuration conf = newConf("job_2");
+        assertEquals("value1", TaskJVMCache.get(conf, "a", file, loader));
+        new File(file.toUri().getPath()).setLastModified(System.currentTimeMillis() + 10000);
+        assertEquals("value2", TaskJVMCache.get(conf, "a", file, loader));
+    }
+
+    @Test
+    public void testOtherJob() throws Exception {
+        assertEquals("value1", TaskJVMCache.get(newConf("job_3"), "a", file, loader));
+        assertEquals("value2", TaskJVMCache.get(newConf("job_4"), "a", file, loader));
+        assertEquals("value3", TaskJVMCache.get(newConf("job_3"), "a", file, loader));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        Configuration conf = newConf("job_5");
+        conf.setInt("mapred.job.reuse.jvm.num.tasks", 1);
+        assertFalse(TaskJVMCache.isEnabled(conf));
+        TaskJVMCache.get(conf, "a", file, loader);
+        TaskJVMCache.get(conf, "a", file, loader);
+        assertEquals(2, loads);
+
+        conf = newConf("job_5");
+        conf.setBoolean(PigConfiguration.TASK_JVM_CACHE, false);
+        assertFalse(TaskJVMCache.isEnabled(conf));
+        assertTrue(TaskJVMCache.isEnabled(newConf("job_5")));
+    }
+}